@@ -5,10 +5,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
 @SpringBootApplication
 @EnableWebMvc
+@EnableScheduling
 public class OplsApplication {
 	
 	@Autowired
@@ -17,6 +19,8 @@ public class OplsApplication {
 	@Bean
 	public InitializingBean initDatabase() {
 		return () -> {
+			startupService.initializeSchema();
+
 			String isTestMode = System.getenv("opls_test_mode");
 			if (isTestMode == null || !Boolean.parseBoolean(isTestMode)) {
 				startupService.startupBoot();
@@ -3,20 +3,25 @@ package ca.mcgill.ecse321.opls;
 import static ca.mcgill.ecse321.opls.auth.OAuthHelper.OAUTH_ACCESS_TOKEN_EXPIRY;
 
 import java.sql.Time;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import ca.mcgill.ecse321.opls.dto.auth.AccessToken;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto.SpotRange;
 import ca.mcgill.ecse321.opls.model.ParkingLotSystem;
-import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
 import ca.mcgill.ecse321.opls.model.Schedule.Day;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClient;
 import ca.mcgill.ecse321.opls.model.auth.UserAccount;
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository;
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository.BookingTable;
+import ca.mcgill.ecse321.opls.repository.ConfirmationNumberRepository;
 import ca.mcgill.ecse321.opls.repository.CustomerRepository;
 import ca.mcgill.ecse321.opls.repository.EmployeeRepository;
 import ca.mcgill.ecse321.opls.repository.EmployeeScheduleRepository;
@@ -30,6 +35,10 @@ import ca.mcgill.ecse321.opls.repository.UserAccountClaimRepository;
 import ca.mcgill.ecse321.opls.repository.UserAccountRepository;
 import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
 import ca.mcgill.ecse321.opls.repository.VehicleServiceRepository;
+import ca.mcgill.ecse321.opls.service.ParkingSpotOccupancyIndex;
+import ca.mcgill.ecse321.opls.service.ParkingSpotService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService;
+import ca.mcgill.ecse321.opls.service.VehicleServiceBookingIndex;
 
 @Service
 public class OplsStartupService {
@@ -47,6 +56,12 @@ public class OplsStartupService {
 
 	private final int incrementTime = 15, maxIncrementTime = 12 * 60;
 
+	@Autowired
+	private BookingHistoryRepository bookingHistoryRepository;
+
+	@Autowired
+	private ConfirmationNumberRepository confirmationNumberRepository;
+
 	@Autowired
 	private CustomerRepository customerRepository;
 
@@ -86,6 +101,18 @@ public class OplsStartupService {
 	@Autowired
 	private VehicleServiceRepository vehicleServiceRepository;
 
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Autowired
+	private VehicleServiceBookingIndex vehicleServiceBookingIndex;
+
+	@Autowired
+	private ParkingSpotService parkingSpotService;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
 	/** Save a default system configuration. */
 	public void initializeConfiguration() {
 		var config = parkingLotSystemRepository.getActiveParkingLotSystem();
@@ -111,6 +138,7 @@ public class OplsStartupService {
 				}
 			}
 		}
+		resourceVersionService.bumpAll();
 	}
 
 	private static String getOrDefault(String str, String defaultStr) {
@@ -152,42 +180,34 @@ public class OplsStartupService {
 	/** Initialize all parking spots. */
 	public void initializeParkingLotStructure() {
 		if (parkingSpotRepository.count() == 0) {
-			char floor;
-			int i;
-
 			// floor A has specific configuration
-			// A00-A04 are reserved for employees
-			floor = 'A';
-			for (i = 0; i < 5; ++i) {
-				parkingSpotRepository.save(new ParkingSpot(floor, i,
-						VehicleType.REGULAR, ParkingSpotStatus.CLOSED));
-			}
-			// A05-A24 are open spots for large vehicles
-			for (; i < 25; ++i) {
-				parkingSpotRepository.save(new ParkingSpot(floor, i,
-						VehicleType.LARGE, ParkingSpotStatus.OPEN));
-			}
-			// A25-A69 are open spots for regular vehicles
-			for (; i < 70; ++i) {
-				parkingSpotRepository.save(new ParkingSpot(floor, i,
-						VehicleType.REGULAR, ParkingSpotStatus.OPEN));
-			}
+			parkingSpotService.applyFloorLayout("A", Arrays.asList(
+					// A00-A04 are reserved for employees
+					new SpotRange(0, 4, VehicleType.REGULAR,
+							ParkingSpotStatus.CLOSED),
+					// A05-A24 are open spots for large vehicles
+					new SpotRange(5, 24, VehicleType.LARGE,
+							ParkingSpotStatus.OPEN),
+					// A25-A69 are open spots for regular vehicles
+					new SpotRange(25, 69, VehicleType.REGULAR,
+							ParkingSpotStatus.OPEN)));
 
 			// floors B and C are reserved and have 100 spots
-			for (floor = 'B'; floor <= 'C'; ++floor) {
-				for (i = 0; i < 100; ++i) {
-					parkingSpotRepository.save(new ParkingSpot(floor, i,
-							VehicleType.REGULAR, ParkingSpotStatus.RESERVED));
-				}
+			for (char floor = 'B'; floor <= 'C'; ++floor) {
+				parkingSpotService.applyFloorLayout(String.valueOf(floor),
+						Collections.singletonList(new SpotRange(0, 99,
+								VehicleType.REGULAR,
+								ParkingSpotStatus.RESERVED)));
 			}
 
 			// floors D and E are open and have 100 spots
-			for (floor = 'D'; floor <= 'E'; ++floor) {
-				for (i = 0; i < 100; ++i) {
-					parkingSpotRepository.save(new ParkingSpot(floor, i,
-							VehicleType.REGULAR, ParkingSpotStatus.OPEN));
-				}
+			for (char floor = 'D'; floor <= 'E'; ++floor) {
+				parkingSpotService.applyFloorLayout(String.valueOf(floor),
+						Collections.singletonList(new SpotRange(0, 99,
+								VehicleType.REGULAR, ParkingSpotStatus.OPEN)));
 			}
+
+			occupancyIndex.invalidate();
 		}
 	}
 
@@ -222,10 +242,24 @@ public class OplsStartupService {
 		}
 	}
 
+	/** Add the constraints the entity mappings cannot express. */
+	public void initializeSchema() {
+		parkingSpotBookingRepository.initializeNoOverlapConstraint();
+		parkingSpotBookingRepository.addCompletableIndex();
+		parkingSpotBookingRepository.addHeldIndex();
+		vehicleServiceBookingRepository.addNoOverlapConstraint();
+		for (var table : BookingTable.values()) {
+			bookingHistoryRepository.initializeHistory(table);
+		}
+		confirmationNumberRepository.initializeSequence();
+	}
+
 	/** Initialize database data for boot. */
 	public void startupBoot() throws Exception {
 		initializeConfiguration();
+		parkingSpotRepository.backfillFloorAndSpotNumber();
 		initializeParkingLotStructure();
+		occupancyIndex.reconcile();
 
 		String defaultPw = System.getenv("opls_admin_default_pw");
 		String defaultSecQ = System.getenv("opls_admin_default_security_q");
@@ -238,9 +272,11 @@ public class OplsStartupService {
 	public void startupTest() throws Exception {
 		vehicleServiceBookingRepository.deleteAll();
 		vehicleServiceRepository.deleteAll();
+		vehicleServiceBookingIndex.invalidate();
 
 		parkingSpotBookingRepository.deleteAll();
 		parkingSpotRepository.deleteAll();
+		occupancyIndex.invalidate();
 
 		customerRepository.deleteAll();
 
@@ -249,6 +285,7 @@ public class OplsStartupService {
 
 		parkingLotSystemScheduleRepository.deleteAll();
 		parkingLotSystemRepository.deleteAll();
+		resourceVersionService.bumpAll();
 
 		clientSessionRepository.deleteAll();
 		clientRepository.deleteAll();
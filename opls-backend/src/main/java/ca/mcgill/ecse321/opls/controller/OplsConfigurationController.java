@@ -11,11 +11,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import ca.mcgill.ecse321.opls.auth.AccessTokenHelper;
 import ca.mcgill.ecse321.opls.dto.OplsConfigurationDto;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
 import ca.mcgill.ecse321.opls.service.OplsConfigurationService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
 import jakarta.validation.Valid;
 
 /**
@@ -28,19 +31,27 @@ public class OplsConfigurationController {
     @Autowired
     OplsConfigurationService oplsConfigurationService;
 
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
     /**
      * Retrieves the active parking lot system configuration.
      * 
      * @HTTPmethod          GET
      * @URL                 /config
      * @param token			Bearer access token. No required registration or user claims.
+     * @param webRequest    The request, answered as not modified if its If-None-Match header matches the configuration version.
      * @return				The currently active configuration.
      */
     @GetMapping(value = "/config")
     @ResponseBody
     public OplsConfigurationDto getActiveConfiguration(
-            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token) {
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+            WebRequest webRequest) {
     	AccessTokenHelper.parseAccessToken(token, false, null);
+        if (webRequest.checkNotModified(resourceVersionService.getETag(Family.CONFIGURATION))) {
+            return null;
+        }
     	
         return new OplsConfigurationDto(oplsConfigurationService.getParkingLotSystem());
     }
@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import ca.mcgill.ecse321.opls.auth.AccessTokenHelper;
 import ca.mcgill.ecse321.opls.dto.ScheduleDto;
@@ -23,6 +24,8 @@ import ca.mcgill.ecse321.opls.model.Schedule.Day;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
 import ca.mcgill.ecse321.opls.service.OplsConfigurationScheduleService;
 import ca.mcgill.ecse321.opls.service.OplsConfigurationService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 
@@ -39,18 +42,27 @@ public class OplsConfigurationScheduleController {
     @Autowired
     OplsConfigurationScheduleService oplsConfigurationScheduleService;
 
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
     /**
      * Retrieves the schedule of the active parking lot system configuration.
      * 
      * @HTTPmethod          GET
      * @URL                 /config/schedule
      * @param token			Bearer access token. No required registration or user claims.
+     * @param webRequest    The request, answered as not modified if its If-None-Match header matches the schedule version.
      * @return              A list of schedule elements for the currently active configuration.
      */
     @GetMapping(value = "/config/schedule")
     @ResponseBody
     public List<ScheduleDto> getConfigurationSchedules(
-            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token) {
+            @RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+            WebRequest webRequest) {
+        if (webRequest.checkNotModified(resourceVersionService.getETag(Family.SCHEDULE))) {
+            return null;
+        }
+
         return oplsConfigurationScheduleService.getAllParkingLotSystemSchedules().stream()
                 .map(ScheduleDto::new).collect(Collectors.toList());
     }
@@ -1,15 +1,23 @@
 package ca.mcgill.ecse321.opls.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -17,13 +25,32 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import ca.mcgill.ecse321.opls.auth.AccessTokenHelper;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorStatusRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotAvailabilityDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotBatchRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotBatchResponseDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryRequestDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.PatchParkingSpotRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.SpotBookingResponseDto;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
+import ca.mcgill.ecse321.opls.service.ParkingSpotBookingService;
+import ca.mcgill.ecse321.opls.service.ParkingSpotEventService;
 import ca.mcgill.ecse321.opls.service.ParkingSpotService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 
@@ -37,6 +64,18 @@ public class ParkingSpotController {
 	@Autowired
 	private ParkingSpotService parkingSpotService;
 
+	@Autowired
+	private ParkingSpotBookingService parkingSpotBookingService;
+
+	@Autowired
+	private ParkingSpotEventService parkingSpotEventService;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	/**
 	 * Create a parking spot.
 	 * 
@@ -58,6 +97,51 @@ public class ParkingSpotController {
 				parkingSpotService.createParkingSpot(request.toModel()));
 	}
 
+	/**
+	 * Create or modify the parking spots of a floor from ranges of spot
+	 * numbers, in one transaction.
+	 * 
+	 * @HTTPMethod			PUT
+	 * @URL					/spot/floor/{floor}
+	 * @param token			Bearer access token. Must have the ADMIN user claim.
+	 * @param floor			The floor letter.
+	 * @param request		The layout of the floor.
+	 * @return				The number of created, modified and unchanged spots.
+	 */
+	@PutMapping(value = "/spot/floor/{floor}")
+	@ResponseBody
+	public FloorLayoutResponseDto applyFloorLayout(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@NotNull @PathVariable("floor") String floor,
+			@Valid @RequestBody FloorLayoutRequestDto request) {
+		AccessTokenHelper.parseAccessToken(token, true,
+				Collections.singleton(OAuthClaim.ADMIN));
+		return parkingSpotService.applyFloorLayout(floor, request.ranges);
+	}
+
+	/**
+	 * Change the status of all parking spots on a floor, for example to close
+	 * it for maintenance.
+	 * 
+	 * @HTTPMethod			PUT
+	 * @URL					/spot/floor/{floor}/status
+	 * @param token			Bearer access token. Must have the ADMIN or EMPLOYEE user claims.
+	 * @param floor			The floor letter.
+	 * @param request		The new status, and the vehicle types to change.
+	 * @return				The number of modified and unchanged spots.
+	 */
+	@PutMapping(value = "/spot/floor/{floor}/status")
+	@ResponseBody
+	public FloorLayoutResponseDto setFloorStatus(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@NotNull @PathVariable("floor") String floor,
+			@Valid @RequestBody FloorStatusRequestDto request) {
+		AccessTokenHelper.parseAccessToken(token, true,
+				Arrays.asList(OAuthClaim.ADMIN, OAuthClaim.EMPLOYEE));
+		return parkingSpotService.setFloorStatus(floor,
+				request.parkingSpotStatus, request.vehicleTypes);
+	}
+
 	/**
 	 * Update a parking spot.
 	 * 
@@ -79,6 +163,29 @@ public class ParkingSpotController {
 				parkingSpotService.updateParkingSpot(id, request));
 	}
 	
+	/**
+	 * Modify some fields of a parking spot in place.
+	 * 
+	 * @HTTPMethod			PATCH
+	 * @URL					/spot/{id}
+	 * @param token 		Bearer access token. Must have the ADMIN or EMPLOYEE user claims.
+	 * @param id 			The spot id to modify.
+	 * @param request		The fields to modify, and optionally the version they are based on.
+	 * @return				The modified parking spot entity.
+	 */
+	@PatchMapping(value = "/spot/{id}")
+	@ResponseBody
+	public ParkingSpotDto patchParkingSpot(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@NotNull @PathVariable("id") String id,
+			@Valid @RequestBody PatchParkingSpotRequestDto request) {
+		AccessTokenHelper.parseAccessToken(token, true,
+				Arrays.asList(OAuthClaim.ADMIN, OAuthClaim.EMPLOYEE));
+		return new ParkingSpotDto(parkingSpotService.patchParkingSpot(id,
+				request.version, request.vehicleType,
+				request.parkingSpotStatus, request.message));
+	}
+
 	/**
 	 * Get a parking spot.
 	 * 
@@ -86,17 +193,66 @@ public class ParkingSpotController {
 	 * @URL					/spot/{id}
 	 * @param token 		Bearer access token. No required registration or user claims.
 	 * @param id 			The spot id to fetch.
+	 * @param webRequest	The request, answered as not modified if its If-None-Match header matches the spots version.
 	 * @return				The retrieved parking spot entity.
 	 */
 	@GetMapping(value = "/spot/{id}")
 	@ResponseBody
 	public ParkingSpotDto getParkingSpot(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
-			@NotNull @PathVariable("id") String id) {
+			@NotNull @PathVariable("id") String id,
+			WebRequest webRequest) {
 		AccessTokenHelper.parseAccessToken(token, false, null);
-		return new ParkingSpotDto(parkingSpotService.getParkingSpot(id));
+		// read the version first, so that a later write changes the tag
+		var etag = resourceVersionService.getETag(Family.SPOTS);
+		// a missing spot is not found whatever the version
+		var spot = parkingSpotService.getParkingSpot(id);
+		if (webRequest.checkNotModified(etag)) {
+			return null;
+		}
+		return new ParkingSpotDto(spot);
 	}
 	
+	/**
+	 * Get several parking spots with their current bookings. The spots are
+	 * fetched in one query, and their bookings in another.
+	 * 
+	 * @HTTPMethod			POST
+	 * @URL					/spot/batch
+	 * @param token			Bearer access token. Must have the ADMIN or EMPLOYEE user claim.
+	 * @param request		The ids of the parking spots.
+	 * @return				The parking spots in order of request, and the ids that were not found.
+	 */
+	@PostMapping(value = "/spot/batch")
+	@ResponseBody
+	public ParkingSpotBatchResponseDto getParkingSpots(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@Valid @RequestBody ParkingSpotBatchRequestDto request) {
+		AccessTokenHelper.parseAccessToken(token, false,
+				Arrays.asList(OAuthClaim.ADMIN, OAuthClaim.EMPLOYEE));
+
+		var spots = parkingSpotService.getParkingSpots(request.ids);
+		var bookings = parkingSpotBookingService.getBookings(spots);
+
+		var response = new ParkingSpotBatchResponseDto();
+		for (var spot : spots) {
+			var booking = bookings.get(spot.getId());
+			response.parkingSpots.add(new ParkingSpotBatchResponseDto.Entry(
+					new ParkingSpotDto(spot),
+					booking == null ? null : new SpotBookingResponseDto(booking)));
+		}
+
+		var found = spots.stream().map((ps) -> ps.getId())
+				.collect(Collectors.toSet());
+		for (var id : new LinkedHashSet<>(request.ids)) {
+			if (id != null && !found.contains(id)) {
+				response.notFound.add(id);
+			}
+		}
+
+		return response;
+	}
+
 	/**
 	 * Delete a parking spot
 	 * 
@@ -117,29 +273,84 @@ public class ParkingSpotController {
 	}
 	
 	/**
-	 * Query for parking spots with filters.
+	 * Query for parking spots with filters. If the request has a limit, the
+	 * response holds the cursor of the next page.
 	 * 
 	 * @HTTPMethod			POST
 	 * @URL					/spot/search
 	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param ifNoneMatch	Entity tag of cached results, answered as not modified if still current.
 	 * @param queryReq		The query request.
-	 * @return				Search results.
+	 * @return				Search results, in order of id.
 	 */
 	@PostMapping(value="/spot/search")
 	@ResponseBody
-	public ParkingSpotQueryResponseDto exactQueryParkingSpots(
+	public ResponseEntity<ParkingSpotQueryResponseDto> exactQueryParkingSpots(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
-			@Valid @RequestBody ParkingSpotQueryRequestDto queryReq) {
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@Valid @RequestBody ParkingSpotQueryRequestDto queryReq)
+			throws JsonProcessingException {
 		AccessTokenHelper.parseAccessToken(token, false, null);
 
-		// query
-		var results = parkingSpotService.query(queryReq);
+		return conditionalQuery(ifNoneMatch, queryReq, () -> {
+			// query
+			var results = parkingSpotService.query(queryReq);
+
+			// cursor of the next page
+			String next = null;
+			if (queryReq.limit != null && results.size() == queryReq.limit) {
+				next = results.get(results.size() - 1).getId();
+			}
+
+			// convert
+			return new ParkingSpotQueryResponseDto(
+					results.stream().map((ps) -> new ParkingSpotDto(ps))
+							.collect(Collectors.toList()),
+					next);
+		});
+	}
+
+	/**
+	 * Query for parking spots with filters, writing each spot to the response
+	 * as it is read from the database. The response has the same format as
+	 * /spot/search.
+	 * 
+	 * @HTTPMethod			POST
+	 * @URL					/spot/search/stream
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param queryReq		The query request.
+	 * @param response		The response to write the search results to.
+	 */
+	@PostMapping(value="/spot/search/stream")
+	public void streamQueryParkingSpots(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@Valid @RequestBody ParkingSpotQueryRequestDto queryReq,
+			HttpServletResponse response) throws IOException {
+		AccessTokenHelper.parseAccessToken(token, false, null);
 
-		// convert
-		return new ParkingSpotQueryResponseDto(
-				StreamSupport.stream(results.spliterator(), false)
-						.map((ps) -> new ParkingSpotDto(ps))
-						.collect(Collectors.toList()));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		var writer = objectMapper.writer()
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (var generator = objectMapper.getFactory()
+				.createGenerator(response.getOutputStream())) {
+			var last = new String[1];
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("parkingSpots");
+			int count = parkingSpotService.streamQuery(queryReq, (ps) -> {
+				try {
+					writer.writeValue(generator, new ParkingSpotDto(ps));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				last[0] = ps.getId();
+			});
+			generator.writeEndArray();
+			generator.writeNumberField("count", count);
+			if (queryReq.limit != null && count == queryReq.limit) {
+				generator.writeStringField("next", last[0]);
+			}
+			generator.writeEndObject();
+		}
 	}
 	
 	/**
@@ -148,23 +359,106 @@ public class ParkingSpotController {
 	 * @HTTPMethod			POST
 	 * @URL					/spot/search/count
 	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param ifNoneMatch	Entity tag of a cached count, answered as not modified if still current.
 	 * @param queryReq		The query request.
 	 * @return				Search results.
 	 */
 	@PostMapping(value="/spot/search/count")
 	@ResponseBody
-	public ParkingSpotQueryResponseDto exactQueryParkingSpotCount(
+	public ResponseEntity<ParkingSpotQueryResponseDto> exactQueryParkingSpotCount(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
-			@Valid @RequestBody ParkingSpotQueryRequestDto queryReq) {
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@Valid @RequestBody ParkingSpotQueryRequestDto queryReq)
+			throws JsonProcessingException {
 		AccessTokenHelper.parseAccessToken(token, false, null);
 
-		// query
-		var count = parkingSpotService.queryCount(queryReq);
-		
-		// return count
-		var response = new ParkingSpotQueryResponseDto();
-		response.count = count;
-		return response;
+		return conditionalQuery(ifNoneMatch, queryReq, () -> {
+			// query
+			var count = parkingSpotService.queryCount(queryReq);
+
+			// return count
+			var response = new ParkingSpotQueryResponseDto();
+			response.count = count;
+			return response;
+		});
+	}
+
+	/**
+	 * Answer a query as not modified if the spots and the query are unchanged
+	 * since the entity tag in If-None-Match was issued. Searches are POST
+	 * requests, so the tag also depends on the query body.
+	 */
+	private ResponseEntity<ParkingSpotQueryResponseDto> conditionalQuery(
+			String ifNoneMatch, ParkingSpotQueryRequestDto queryReq,
+			Supplier<ParkingSpotQueryResponseDto> query)
+			throws JsonProcessingException {
+		// read the version before the spots, so that a change during the
+		// query gives a stale tag rather than stale results
+		var etag = resourceVersionService.getETag(Family.SPOTS,
+				objectMapper.writeValueAsString(queryReq));
+		if (ResourceVersionService.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+					.build();
+		}
+		return ResponseEntity.ok().eTag(etag).body(query.get());
+	}
+
+	/**
+	 * Get the number of parking spots, and of available spots, for each floor,
+	 * vehicle type and status.
+	 * 
+	 * @HTTPMethod			GET
+	 * @URL					/spot/availability
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param webRequest	The request, answered as not modified if its If-None-Match header matches the spots version.
+	 * @return				The availability counters.
+	 */
+	@GetMapping(value="/spot/availability")
+	@ResponseBody
+	public List<ParkingSpotAvailabilityDto> getAvailability(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			WebRequest webRequest) {
+		AccessTokenHelper.parseAccessToken(token, false, null);
+		if (webRequest.checkNotModified(
+				resourceVersionService.getETag(Family.SPOTS))) {
+			return null;
+		}
+		return parkingSpotService.getAvailability();
+	}
+
+	/**
+	 * Subscribe to changes of the occupancy of parking spots. The first event,
+	 * named snapshot, holds the state of all spots. Each following event, named
+	 * spot, holds the new state of a changed spot.
+	 * 
+	 * @HTTPMethod			GET
+	 * @URL					/spot/events
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @return				The stream of events.
+	 */
+	@GetMapping(value="/spot/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter subscribeToEvents(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token) {
+		AccessTokenHelper.parseAccessToken(token, false, null);
+
+		var emitter = new SseEmitter(parkingSpotEventService.getTimeout());
+		var subscription = parkingSpotEventService
+				.subscribe(new ParkingSpotEventService.Sink() {
+					@Override
+					public void send(String name, Object data) throws IOException {
+						emitter.send(SseEmitter.event().name(name).data(data,
+								MediaType.APPLICATION_JSON));
+					}
+
+					@Override
+					public void abort() {
+						emitter.complete();
+					}
+				});
+		emitter.onCompletion(subscription::close);
+		emitter.onTimeout(subscription::close);
+		emitter.onError((e) -> subscription.close());
+		return emitter;
 	}
 
 }
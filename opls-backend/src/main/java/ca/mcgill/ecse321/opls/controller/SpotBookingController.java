@@ -1,7 +1,9 @@
 package ca.mcgill.ecse321.opls.controller;
 
+import java.net.URI;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -22,15 +24,26 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
 import ca.mcgill.ecse321.opls.auth.AccessTokenHelper;
+import ca.mcgill.ecse321.opls.dto.auth.AccessToken;
+import ca.mcgill.ecse321.opls.dto.spot.booking.BatchSpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.BatchSpotBookingResponseDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.IncrementalSpotBookingRequestDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.MonthlySpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.ParkAndServiceBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.ParkAndServiceBookingResponseDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.PatchSpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.PaymentStatusDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.SpotBookingResponseDto;
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
+import ca.mcgill.ecse321.opls.service.IdempotencyService;
+import ca.mcgill.ecse321.opls.service.ParkAndServiceBookingService;
 import ca.mcgill.ecse321.opls.service.ParkingSpotBookingService;
 import ca.mcgill.ecse321.opls.service.ParkingSpotService;
+import ca.mcgill.ecse321.opls.service.PaymentPipeline;
 import ca.mcgill.ecse321.opls.service.PaymentService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
@@ -51,45 +64,223 @@ public class SpotBookingController {
 	@Autowired
 	private PaymentService paymentService;
 
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private PaymentPipeline paymentPipeline;
+
+	@Autowired
+	private ParkAndServiceBookingService parkAndServiceBookingService;
+
+	/** Preference of clients polling for the outcome of the payment. */
+	private static final String RESPOND_ASYNC = "respond-async";
+
 	/**
 	 * Request an incremental parking spot booking.
 	 * 
 	 * @HTTPMethod			POST
 	 * @URL 				/spot/booking/incremental
 	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param idempotencyKey	Optional key identifying the request, so that retries return the original booking.
+	 * @param prefer		Optional preferences. With respond-async, the booking is returned as requested and its payment is polled.
 	 * @param spotRequest	The parking spot booking request.
 	 * @return				The created booking.
 	 */
 	@PostMapping(value = "/spot/booking/incremental")
 	@ResponseBody
-	public SpotBookingResponseDto requestIncrementalBooking(
+	public ResponseEntity<SpotBookingResponseDto> requestIncrementalBooking(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			@RequestHeader(name = "Prefer", required = false) String prefer,
 			@Valid @RequestBody IncrementalSpotBookingRequestDto spotRequest) {
 		var credentials = AccessTokenHelper.parseAccessToken(token, false,
 				null);
 
+		boolean async = prefersAsync(prefer);
+		return idempotencyService.execute(idempotencyKey, credentials,
+				"/spot/booking/incremental", spotRequest,
+				() -> incrementalBooking(credentials, spotRequest, async));
+	}
+
+	/** Book, pay for and save an incremental parking spot booking. */
+	private ResponseEntity<SpotBookingResponseDto> incrementalBooking(
+			AccessToken credentials,
+			IncrementalSpotBookingRequestDto spotRequest, boolean async) {
 		// determine if user is registered
 		Integer userAccountId = credentials.getCustomerUserId();
 
 		// get requested spot
 		var spot = parkingSpotService.getParkingSpot(spotRequest.parkingSpotId);
 
-		// validate request with service
+		// hold the spot until the booking is saved
+		ParkingSpotBooking booking;
+		var claim = parkingSpotBookingService.claimSpot(spot);
+		try {
+			// validate request with service
+			Date now = new Date();
+			booking = parkingSpotBookingService.processIncrementalBooking(spot,
+					now, spotRequest.duration, spotRequest.vehicleType);
+
+			if (async) {
+				// hold the spot in the database until payment completes
+				booking = parkingSpotBookingService.holdBooking(booking,
+						userAccountId, spotRequest.licensePlate);
+				return submitPayment(credentials, booking,
+						spotRequest.creditCardNumber);
+			}
+
+			// request payment, refunded if the booking is not saved
+			var reference = booking.getUuid().toString();
+			paymentService.submitPayment(
+					credentials.hasClaim(OAuthClaim.EMPLOYEE),
+					spotRequest.creditCardNumber, booking.getCost(),
+					reference);
+			booking.setBookingStatus(BookingStatus.PAID);
+
+			// save booking
+			try {
+				booking = parkingSpotBookingService.saveBooking(booking,
+						userAccountId, spotRequest.licensePlate);
+			} catch (RuntimeException e) {
+				paymentService.refundPayment(reference);
+				throw e;
+			}
+		} finally {
+			claim.close();
+		}
+
+		// generate response
+		return ResponseEntity.ok(new SpotBookingResponseDto(booking));
+	}
+
+	/**
+	 * Request incremental bookings of several parking spots, paid at once.
+	 * 
+	 * @HTTPMethod			POST
+	 * @URL 				/spot/booking/batch
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param idempotencyKey	Optional key identifying the request, so that retries return the original bookings.
+	 * @param batchRequest	The batch booking request.
+	 * @return				The created bookings, and the spots that could not be booked.
+	 */
+	@PostMapping(value = "/spot/booking/batch")
+	@ResponseBody
+	public BatchSpotBookingResponseDto requestBatchBooking(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			@Valid @RequestBody BatchSpotBookingRequestDto batchRequest) {
+		var credentials = AccessTokenHelper.parseAccessToken(token, false,
+				null);
+
+		return idempotencyService.execute(idempotencyKey, credentials,
+				"/spot/booking/batch", batchRequest,
+				() -> batchBooking(credentials, batchRequest));
+	}
+
+	/** Book, pay for and save a batch of incremental parking spot bookings. */
+	private BatchSpotBookingResponseDto batchBooking(AccessToken credentials,
+			BatchSpotBookingRequestDto batchRequest) {
+		// determine if user is registered
+		Integer userAccountId = credentials.getCustomerUserId();
+
+		// validate request with service, holding the spots until saved
 		Date now = new Date();
-		var booking = parkingSpotBookingService.processIncrementalBooking(spot,
-				now, spotRequest.duration, spotRequest.vehicleType);
+		try (var batch = parkingSpotBookingService.processIncrementalBookings(
+				batchRequest.parkingSpotIds, now, batchRequest.duration,
+				batchRequest.vehicleType, batchRequest.bestEffort)) {
+			// request a single payment, refunded if the bookings are not saved
+			double cost = batch.getCost();
+			var reference = batch.getReference();
+			paymentService.submitPayment(
+					credentials.hasClaim(OAuthClaim.EMPLOYEE),
+					batchRequest.creditCardNumber, cost, reference);
+			batch.getBookings().forEach(
+					booking -> booking.setBookingStatus(BookingStatus.PAID));
+
+			// save bookings
+			List<ParkingSpotBooking> bookings;
+			try {
+				bookings = parkingSpotBookingService.saveBookings(
+						batch.getBookings(), userAccountId,
+						batchRequest.licensePlate);
+			} catch (RuntimeException e) {
+				paymentService.refundPayment(reference);
+				throw e;
+			}
+
+			// generate response
+			var response = new BatchSpotBookingResponseDto();
+			bookings.forEach(booking -> response.bookings
+					.add(new SpotBookingResponseDto(booking)));
+			batch.getFailures().forEach((id, reason) -> response.failed
+					.add(new BatchSpotBookingResponseDto.Failure(id, reason)));
+			response.cost = cost;
+			return response;
+		}
+	}
 
-		// request payment
-		paymentService.submitPayment(credentials.hasClaim(OAuthClaim.EMPLOYEE),
-				spotRequest.creditCardNumber, booking.getCost());
-		booking.setBookingStatus(BookingStatus.PAID);
+	/**
+	 * Request an incremental parking spot booking and a vehicle service done
+	 * during the parking, paid at once and saved together.
+	 * 
+	 * @HTTPMethod			POST
+	 * @URL 				/spot/booking/incremental/service
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param idempotencyKey	Optional key identifying the request, so that retries return the original bookings.
+	 * @param bundleRequest	The parking spot and vehicle service booking request.
+	 * @return				The created bookings.
+	 */
+	@PostMapping(value = "/spot/booking/incremental/service")
+	@ResponseBody
+	public ParkAndServiceBookingResponseDto requestParkAndServiceBooking(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			@Valid @RequestBody ParkAndServiceBookingRequestDto bundleRequest) {
+		var credentials = AccessTokenHelper.parseAccessToken(token, false,
+				null);
 
-		// save booking
-		booking = parkingSpotBookingService.saveBooking(booking, userAccountId,
-				spotRequest.licensePlate);
+		return idempotencyService.execute(idempotencyKey, credentials,
+				"/spot/booking/incremental/service", bundleRequest,
+				() -> parkAndServiceBooking(credentials, bundleRequest));
+	}
 
-		// generate response
-		return new SpotBookingResponseDto(booking);
+	/** Book, pay for and save a parking spot and a vehicle service. */
+	private ParkAndServiceBookingResponseDto parkAndServiceBooking(
+			AccessToken credentials,
+			ParkAndServiceBookingRequestDto bundleRequest) {
+		// determine if user is registered
+		Integer userAccountId = credentials.getCustomerUserId();
+
+		// get requested spot
+		var spot = parkingSpotService
+				.getParkingSpot(bundleRequest.parkingSpotId);
+
+		// validate both bookings, holding the spot until saved
+		Date now = new Date();
+		try (var bundle = parkAndServiceBookingService.processBundle(spot, now,
+				bundleRequest.duration, bundleRequest.vehicleType,
+				bundleRequest.vehicleServiceId,
+				bundleRequest.serviceStartDate)) {
+			// request a single payment, refunded if the bookings are not saved
+			var reference = bundle.getReference();
+			paymentService.submitPayment(
+					credentials.hasClaim(OAuthClaim.EMPLOYEE),
+					bundleRequest.creditCardNumber, bundle.getCost(),
+					reference);
+			bundle.getSpotBooking().setBookingStatus(BookingStatus.PAID);
+			bundle.getServiceBooking().setBookingStatus(BookingStatus.PAID);
+
+			// save both bookings in one transaction
+			try {
+				return new ParkAndServiceBookingResponseDto(
+						parkAndServiceBookingService.saveBundle(bundle,
+								userAccountId, bundleRequest.licensePlate));
+			} catch (RuntimeException e) {
+				paymentService.refundPayment(reference);
+				throw e;
+			}
+		}
 	}
 
 	/**
@@ -98,17 +289,31 @@ public class SpotBookingController {
 	 * @HTTPMethod 			POST
 	 * @URL 				/spot/booking/monthly
 	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param idempotencyKey	Optional key identifying the request, so that retries return the original booking.
+	 * @param prefer		Optional preferences. With respond-async, the booking is returned as requested and its payment is polled.
 	 * @param spotRequest	The parking spot booking request.
 	 * @return 				The created booking.
 	 */
 	@PostMapping(value = "/spot/booking/monthly")
 	@ResponseBody
-	public SpotBookingResponseDto requestMonthlyBooking(
+	public ResponseEntity<SpotBookingResponseDto> requestMonthlyBooking(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+			@RequestHeader(name = "Prefer", required = false) String prefer,
 			@Valid @RequestBody MonthlySpotBookingRequestDto spotRequest) {
 		var credentials = AccessTokenHelper.parseAccessToken(token, false,
 				null);
 
+		boolean async = prefersAsync(prefer);
+		return idempotencyService.execute(idempotencyKey, credentials,
+				"/spot/booking/monthly", spotRequest,
+				() -> monthlyBooking(credentials, spotRequest, async));
+	}
+
+	/** Pay for and save a monthly parking spot booking. */
+	private ResponseEntity<SpotBookingResponseDto> monthlyBooking(
+			AccessToken credentials, MonthlySpotBookingRequestDto spotRequest,
+			boolean async) {
 		// determine if user is registered
 		Integer userAccountId = credentials.getCustomerUserId();
 
@@ -116,18 +321,96 @@ public class SpotBookingController {
 		Date now = new Date();
 		var booking = parkingSpotBookingService.processMonthlyBooking(now,
 				spotRequest.vehicleType);
+		if (spotRequest.autoRenew) {
+			if (spotRequest.creditCardNumber
+					.equals(PaymentService.CASH_ACCOUNT)) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Cannot renew cash payments.");
+			}
+			booking.setBillingAccountId(spotRequest.creditCardNumber);
+		}
+
+		if (async) {
+			// hold a spot in the database until payment completes
+			booking = parkingSpotBookingService.holdBooking(booking,
+					userAccountId, spotRequest.licensePlate);
+			return submitPayment(credentials, booking,
+					spotRequest.creditCardNumber);
+		}
 
-		// request payment
+		// request payment, refunded if the booking is not saved
+		var reference = booking.getUuid().toString();
 		paymentService.submitPayment(credentials.hasClaim(OAuthClaim.EMPLOYEE),
-				spotRequest.creditCardNumber, booking.getCost());
+				spotRequest.creditCardNumber, booking.getCost(), reference);
 		booking.setBookingStatus(BookingStatus.PAID);
 
 		// save booking
-		booking = parkingSpotBookingService.saveBooking(booking, userAccountId,
-				spotRequest.licensePlate);
+		try {
+			booking = parkingSpotBookingService.saveBooking(booking,
+					userAccountId, spotRequest.licensePlate);
+		} catch (RuntimeException e) {
+			paymentService.refundPayment(reference);
+			throw e;
+		}
 
 		// generate response
-		return new SpotBookingResponseDto(booking);
+		return ResponseEntity.ok(new SpotBookingResponseDto(booking));
+	}
+
+	/** Determine whether a client prefers to poll for the payment. */
+	private static boolean prefersAsync(String prefer) {
+		if (prefer == null) {
+			return false;
+		}
+		for (var preference : prefer.split(",")) {
+			if (preference.trim().equalsIgnoreCase(RESPOND_ASYNC)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Queue the payment of a held booking, which is confirmed once paid and
+	 * removed otherwise.
+	 */
+	private ResponseEntity<SpotBookingResponseDto> submitPayment(
+			AccessToken credentials, ParkingSpotBooking booking,
+			String creditCardNumber) {
+		var bookingId = booking.getUuid();
+		try {
+			paymentPipeline.submit(bookingId,
+					credentials.hasClaim(OAuthClaim.EMPLOYEE), creditCardNumber,
+					booking.getCost(), paid -> parkingSpotBookingService
+							.completePayment(bookingId, paid));
+		} catch (OplsApiException e) {
+			parkingSpotBookingService.deleteBooking(bookingId);
+			throw e;
+		}
+
+		return ResponseEntity.accepted()
+				.location(URI.create("/spot/booking/" + bookingId + "/payment"))
+				.header("Preference-Applied", RESPOND_ASYNC)
+				.body(new SpotBookingResponseDto(booking));
+	}
+
+	/**
+	 * Get the state of the payment of a booking requested with respond-async.
+	 * 
+	 * @HTTPMethod 			GET
+	 * @URL 				/spot/booking/{uuid}/payment
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param uuid			The parking spot booking ID.
+	 * @return 				The state of the payment.
+	 */
+	@GetMapping(value = "/spot/booking/{uuid}/payment")
+	@ResponseBody
+	public PaymentStatusDto getPaymentStatus(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@NotNull @PathVariable("uuid") UUID uuid) {
+		AccessTokenHelper.parseAccessToken(token, false, null);
+
+		return new PaymentStatusDto(paymentPipeline.getPayment(uuid));
 	}
 
 	/**
@@ -200,8 +483,8 @@ public class SpotBookingController {
 			@NotNull @PathVariable("confirmationNumber") String confirmationNumber) {
 		AccessTokenHelper.parseAccessToken(token, false, null);
 
-		return new SpotBookingResponseDto(parkingSpotBookingService
-				.getBooking(confirmationNumber.toUpperCase()));
+		return parkingSpotBookingService
+				.getBookingResponse(confirmationNumber.toUpperCase());
 	}
 
 	/**
@@ -3,7 +3,6 @@ package ca.mcgill.ecse321.opls.controller;
 import java.util.Arrays;
 import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -15,18 +14,23 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import ca.mcgill.ecse321.opls.DateHelper;
 import ca.mcgill.ecse321.opls.auth.AccessTokenHelper;
+import ca.mcgill.ecse321.opls.dto.auth.AccessToken;
 import ca.mcgill.ecse321.opls.dto.DateRangeDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingQueryRequestDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingQueryResponseDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.service.booking.ServiceSlotsResponseDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.UpdateServiceBookingRequestDto;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
+import ca.mcgill.ecse321.opls.service.IdempotencyService;
 import ca.mcgill.ecse321.opls.service.PaymentService;
 import ca.mcgill.ecse321.opls.service.VehicleServiceBookingService;
 import jakarta.validation.Valid;
@@ -45,12 +49,16 @@ public class VehicleServiceBookingController {
 	@Autowired
 	private PaymentService paymentService;
 
+	@Autowired
+	private IdempotencyService idempotencyService;
+
 	/**
 	 * Request a vehicle service.
 	 * 
 	 * @HTTPMethod 			POST
 	 * @URL 				/service/{serviceId}/booking
 	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param idempotencyKey	Optional key identifying the request, so that retries return the original booking.
 	 * @param request 		Booking request.
 	 * @return				The created booking.
 	 */
@@ -58,27 +66,66 @@ public class VehicleServiceBookingController {
 	@ResponseBody
 	public ServiceBookingDto requestBooking(
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
 			@NotNull @PathVariable("serviceId") String serviceId,
 			@Valid @RequestBody ServiceBookingRequestDto request) {
 		var credentials = AccessTokenHelper.parseAccessToken(token, false,
 				null);
 
+		return idempotencyService.execute(idempotencyKey, credentials,
+				"/service/" + serviceId + "/booking", request,
+				() -> serviceBooking(credentials, serviceId, request));
+	}
+
+	/** Pay for and save a vehicle service booking. */
+	private ServiceBookingDto serviceBooking(AccessToken credentials,
+			String serviceId, ServiceBookingRequestDto request) {
 		// Check if user is registered
 		Integer userAccountId = credentials.getCustomerUserId();
 		// Validate request with service
 		var booking = vehicleServiceBookingService.processBooking(serviceId,
 				request.startDate);
-		// Payment
+		// Payment, refunded if the booking is not saved
+		var reference = booking.getUuid().toString();
 		paymentService.submitPayment(credentials.hasClaim(OAuthClaim.EMPLOYEE),
-				request.creditCardNumber, booking.getCost());
+				request.creditCardNumber, booking.getCost(), reference);
 		booking.setBookingStatus(BookingStatus.PAID);
 		// Save booking
-		booking = vehicleServiceBookingService.saveBooking(booking,
-				userAccountId, request.licensePlate);
+		try {
+			booking = vehicleServiceBookingService.saveBooking(booking,
+					userAccountId, request.licensePlate);
+		} catch (RuntimeException e) {
+			paymentService.refundPayment(reference);
+			throw e;
+		}
 
 		return new ServiceBookingDto(booking);
 	}
 
+	/**
+	 * Get the start times at which a vehicle service can be booked.
+	 * 
+	 * @HTTPMethod 			GET
+	 * @URL 				/service/{serviceId}/slots?from={from}&to={to}
+	 * @param token			Bearer access token. No required registration or user claims.
+	 * @param serviceId		The vehicle service ID.
+	 * @param from			Start of the range, inclusive, formatted as DateHelper.DATE_FORMAT.
+	 * @param to			End of the range, exclusive, at most 31 days after the start.
+	 * @return				The free start times in the range.
+	 */
+	@GetMapping(value = "/service/{serviceId}/slots")
+	@ResponseBody
+	public ServiceSlotsResponseDto getSlots(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
+			@NotNull @PathVariable("serviceId") String serviceId,
+			@RequestParam("from") String from,
+			@RequestParam("to") String to) {
+		AccessTokenHelper.parseAccessToken(token, false, null);
+		var slots = vehicleServiceBookingService.getAvailableSlots(serviceId,
+				DateHelper.parseDate(from), DateHelper.parseDate(to));
+		return new ServiceSlotsResponseDto(serviceId, slots);
+	}
+
 	/**
 	 * Get a vehicle service booking by its ID.
 	 * 
@@ -114,9 +161,8 @@ public class VehicleServiceBookingController {
 			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String token,
 			@NotNull @PathVariable("confirmationNumber") String confirmationNumber) {
 		AccessTokenHelper.parseAccessToken(token, false, null);
-		var vsb = vehicleServiceBookingService
-				.getVehicleServiceBooking(confirmationNumber.toUpperCase());
-		return new ServiceBookingDto(vsb);
+		return vehicleServiceBookingService.getVehicleServiceBookingResponse(
+				confirmationNumber.toUpperCase());
 	}
 
 	/**
@@ -162,7 +208,9 @@ public class VehicleServiceBookingController {
 	}
 	
 	/**
-	 * Search for existing bookings.
+	 * Search for existing bookings, in order of start date. Results are
+	 * returned in pages, and the response holds the continuation token of the
+	 * next page.
 	 * 
 	 * @HTTPMethod			POST
 	 * @URL					/service/booking/search
@@ -180,15 +228,25 @@ public class VehicleServiceBookingController {
 		Integer customerUserId = request.queryOwn
 				? credentials.getCustomerUserId()
 				: null;
+		int limit = request.limit == null
+				? ServiceBookingQueryRequestDto.MAX_LIMIT
+				: request.limit;
 
-		// query
+		// query one more to know if there is a next page
 		var results = vehicleServiceBookingService.queryBookings(customerUserId,
-				request.vehicleServiceIds, request.startDate, request.endDate);
+				request.vehicleServiceIds, request.startDate, request.endDate,
+				request.next, limit + 1);
+		String next = null;
+		if (results.size() > limit) {
+			results = results.subList(0, limit);
+			next = VehicleServiceBookingService
+					.getContinuationToken(results.get(limit - 1));
+		}
 
 		// convert
-		return new ServiceBookingQueryResponseDto(StreamSupport.stream(results.spliterator(), false)
+		return new ServiceBookingQueryResponseDto(results.stream()
 				.map((dr) -> new DateRangeDto(dr))
-				.collect(Collectors.toList()));
+				.collect(Collectors.toList()), next);
 	}
 	
 }
@@ -73,7 +73,8 @@ public class VehicleServiceController {
 				Collections.singleton(OAuthClaim.ADMIN));
 
 		return new VehicleServiceDto(vehicleService.createVehicleService(
-				request.displayName, request.duration, request.fee));
+				request.displayName, request.duration, request.fee,
+				request.bays));
 	}
 
 	 /**
@@ -94,7 +95,7 @@ public class VehicleServiceController {
         AccessTokenHelper.parseAccessToken(
                 token, true, Collections.singleton(OAuthClaim.ADMIN));
 
-        return new VehicleServiceDto(vehicleService.updateVehicleService(id, request.displayName, request.duration, request.fee));
+        return new VehicleServiceDto(vehicleService.updateVehicleService(id, request.displayName, request.duration, request.fee, request.bays));
     }
 
 	/**
@@ -4,6 +4,7 @@ import org.hibernate.validator.constraints.Length;
 
 import ca.mcgill.ecse321.opls.model.VehicleService;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
 /**
@@ -37,6 +38,12 @@ public class VehicleServiceDto {
 	@NotNull
 	public int duration;
 
+	/**
+	 * The number of bookings of the vehicle service that can overlap, unchanged
+	 * if not given
+	 */
+	@Min(value = 1, message = "The number of bays must be at least 1!")
+	public Integer bays;
 	
 	/** 
 	 * Default constructor for deserialization.
@@ -52,6 +59,7 @@ public class VehicleServiceDto {
 		this.displayName = vs.getDisplayName();
 		this.fee = vs.getFee();
 		this.duration = vs.getDuration();
+		this.bays = vs.getBays();
 	}
 
 	/** 
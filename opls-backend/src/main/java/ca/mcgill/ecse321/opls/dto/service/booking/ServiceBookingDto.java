@@ -59,6 +59,11 @@ public class ServiceBookingDto {
 	@NotNull
 	public String vehicleServiceId;
 
+	/**
+	 * The bay of the vehicle service, assigned when the booking is confirmed.
+	 */
+	public Integer bay;
+
 	/**
 	 * License plate.
 	 */
@@ -87,6 +92,7 @@ public class ServiceBookingDto {
 		this.confirmationNumber = vsb.getConfirmationNumber();
 		this.cost = vsb.getCost();
 		this.vehicleServiceId = vsb.getVehicleService().getId();
+		this.bay = vsb.getBay();
 	}
 
 }
@@ -6,6 +6,8 @@ import java.util.Date;
 import com.fasterxml.jackson.annotation.JsonFormat;
 
 import ca.mcgill.ecse321.opls.DateHelper;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 
 /**
@@ -13,6 +15,9 @@ import jakarta.validation.constraints.NotNull;
  */
 public class ServiceBookingQueryRequestDto {
 
+	/** The maximum number of bookings in a page. */
+	public static final int MAX_LIMIT = 1000;
+
 	/**
 	 * Whether to only query the user's own bookings.
 	 */
@@ -37,4 +42,16 @@ public class ServiceBookingQueryRequestDto {
 	@JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DateHelper.DATE_FORMAT)
 	public Date endDate;
 
+	/**
+	 * The continuation token of the previous page, null for the first page.
+	 */
+	public String next = null;
+
+	/**
+	 * The maximum number of bookings to return. Defaults to MAX_LIMIT.
+	 */
+	@Min(1)
+	@Max(MAX_LIMIT)
+	public Integer limit = null;
+
 }
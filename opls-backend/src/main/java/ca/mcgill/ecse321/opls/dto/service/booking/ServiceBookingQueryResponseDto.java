@@ -21,6 +21,12 @@ public class ServiceBookingQueryResponseDto {
 	@Min(0)
 	public int count;
 
+	/**
+	 * The continuation token to request the next page with, null if there are
+	 * no more results.
+	 */
+	public String next;
+
 	/** Default constructor. */
 	public ServiceBookingQueryResponseDto() {
 	}
@@ -31,4 +37,11 @@ public class ServiceBookingQueryResponseDto {
 		this.count = bookings == null ? 0 : bookings.size();
 	}
 
+	/** Constructor with fields for a page of results. */
+	public ServiceBookingQueryResponseDto(Collection<DateRangeDto> bookings,
+			String next) {
+		this(bookings);
+		this.next = next;
+	}
+
 }
@@ -0,0 +1,45 @@
+package ca.mcgill.ecse321.opls.dto.service.booking;
+
+import java.util.Date;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import ca.mcgill.ecse321.opls.DateHelper;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Response model for the free start times of a vehicle service.
+ */
+public class ServiceSlotsResponseDto {
+
+	/**
+	 * ID of the vehicle service.
+	 */
+	public String vehicleServiceId;
+
+	/**
+	 * The start times at which the service can be booked, in order.
+	 */
+	@JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DateHelper.DATE_FORMAT)
+	public List<Date> startDates = null;
+
+	/**
+	 * The number of start times.
+	 */
+	@Min(0)
+	public int count;
+
+	/** Default constructor. */
+	public ServiceSlotsResponseDto() {
+	}
+
+	/** Constructor with fields. */
+	public ServiceSlotsResponseDto(String vehicleServiceId,
+			List<Date> startDates) {
+		this.vehicleServiceId = vehicleServiceId;
+		this.startDates = startDates;
+		this.count = startDates == null ? 0 : startDates.size();
+	}
+
+}
@@ -0,0 +1,74 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import java.util.List;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.NotEmpty;
+
+/**
+ * Layout of the parking spots on a floor, as ranges of spot numbers.
+ */
+public class FloorLayoutRequestDto {
+
+	/** Highest spot number on a floor. */
+	public static final int MAX_SPOT_NUMBER = 999;
+
+	/**
+	 * Consecutive spot numbers sharing a vehicle type and status. Validated by
+	 * the service, since nested public fields cannot be bound to errors.
+	 */
+	public static class SpotRange {
+
+		/**
+		 * The first spot number, inclusive.
+		 */
+		public Integer first;
+
+		/**
+		 * The last spot number, inclusive.
+		 */
+		public Integer last;
+
+		/**
+		 * The vehicle type of the spots.
+		 */
+		public VehicleType vehicleType = VehicleType.REGULAR;
+
+		/**
+		 * The status of the spots.
+		 */
+		public ParkingSpotStatus parkingSpotStatus = ParkingSpotStatus.OPEN;
+
+		/** Default constructor. */
+		public SpotRange() {
+		}
+
+		/** Constructor with fields. */
+		public SpotRange(int first, int last, VehicleType vehicleType,
+				ParkingSpotStatus parkingSpotStatus) {
+			this.first = first;
+			this.last = last;
+			this.vehicleType = vehicleType;
+			this.parkingSpotStatus = parkingSpotStatus;
+		}
+
+	}
+
+	/**
+	 * The ranges of spots. Spots of the floor outside of every range are left
+	 * as they are.
+	 */
+	@NotEmpty
+	public List<SpotRange> ranges;
+
+	/** Default constructor. */
+	public FloorLayoutRequestDto() {
+	}
+
+	/** Constructor with fields. */
+	public FloorLayoutRequestDto(List<SpotRange> ranges) {
+		this.ranges = ranges;
+	}
+
+}
@@ -0,0 +1,42 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import jakarta.validation.constraints.Min;
+
+/**
+ * Summary of a change to the parking spots of a floor.
+ */
+public class FloorLayoutResponseDto {
+
+	/**
+	 * The floor.
+	 */
+	public Character floor;
+
+	/**
+	 * The number of created parking spots.
+	 */
+	@Min(0)
+	public int created;
+
+	/**
+	 * The number of modified parking spots.
+	 */
+	@Min(0)
+	public int updated;
+
+	/**
+	 * The number of targeted parking spots that already matched.
+	 */
+	@Min(0)
+	public int unchanged;
+
+	/** Default constructor. */
+	public FloorLayoutResponseDto() {
+	}
+
+	/** Constructor with fields. */
+	public FloorLayoutResponseDto(Character floor) {
+		this.floor = floor;
+	}
+
+}
@@ -0,0 +1,34 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import java.util.Collection;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Request to change the status of all parking spots on a floor.
+ */
+public class FloorStatusRequestDto {
+
+	/**
+	 * The new status of the spots.
+	 */
+	@NotNull
+	public ParkingSpotStatus parkingSpotStatus;
+
+	/**
+	 * The vehicle types of the spots to change. Defaults to all.
+	 */
+	public Collection<VehicleType> vehicleTypes = null;
+
+	/** Default constructor. */
+	public FloorStatusRequestDto() {
+	}
+
+	/** Constructor with fields. */
+	public FloorStatusRequestDto(ParkingSpotStatus parkingSpotStatus) {
+		this.parkingSpotStatus = parkingSpotStatus;
+	}
+
+}
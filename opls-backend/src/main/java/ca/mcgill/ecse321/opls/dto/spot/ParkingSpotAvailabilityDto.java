@@ -0,0 +1,54 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Response model for the number of parking spots on a floor with a vehicle
+ * type and status.
+ */
+public class ParkingSpotAvailabilityDto {
+
+	/**
+	 * The floor, null for spots without a floor.
+	 */
+	public Character floor;
+
+	/**
+	 * The vehicle type.
+	 */
+	public VehicleType vehicleType;
+
+	/**
+	 * The parking spot status.
+	 */
+	public ParkingSpotStatus parkingSpotStatus;
+
+	/**
+	 * The number of parking spots.
+	 */
+	@Min(0)
+	public int total;
+
+	/**
+	 * The number of parking spots without an active booking.
+	 */
+	@Min(0)
+	public int available;
+
+	/** Default constructor. */
+	public ParkingSpotAvailabilityDto() {
+	}
+
+	/** Constructor with fields. */
+	public ParkingSpotAvailabilityDto(Character floor, VehicleType vehicleType,
+			ParkingSpotStatus parkingSpotStatus, int total, int available) {
+		this.floor = floor;
+		this.vehicleType = vehicleType;
+		this.parkingSpotStatus = parkingSpotStatus;
+		this.total = total;
+		this.available = available;
+	}
+
+}
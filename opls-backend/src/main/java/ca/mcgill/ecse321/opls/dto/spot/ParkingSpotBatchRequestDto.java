@@ -0,0 +1,32 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request to fetch several parking spots at once.
+ */
+public class ParkingSpotBatchRequestDto {
+
+	/** Maximum number of spots in one request. */
+	public static final int MAX_IDS = 1000;
+
+	/**
+	 * The ids of the parking spots.
+	 */
+	@NotNull
+	@Size(max = MAX_IDS)
+	public List<String> ids;
+
+	/** Default constructor. */
+	public ParkingSpotBatchRequestDto() {
+	}
+
+	/** Constructor with fields. */
+	public ParkingSpotBatchRequestDto(List<String> ids) {
+		this.ids = ids;
+	}
+
+}
@@ -0,0 +1,53 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.mcgill.ecse321.opls.dto.spot.booking.SpotBookingResponseDto;
+
+/**
+ * Parking spots fetched at once, with their current bookings.
+ */
+public class ParkingSpotBatchResponseDto {
+
+	/** A parking spot with its current booking. */
+	public static class Entry {
+
+		/**
+		 * The parking spot.
+		 */
+		public ParkingSpotDto parkingSpot;
+
+		/**
+		 * The current booking, null if the spot is not booked.
+		 */
+		public SpotBookingResponseDto booking;
+
+		/** Default constructor. */
+		public Entry() {
+		}
+
+		/** Constructor with fields. */
+		public Entry(ParkingSpotDto parkingSpot,
+				SpotBookingResponseDto booking) {
+			this.parkingSpot = parkingSpot;
+			this.booking = booking;
+		}
+
+	}
+
+	/**
+	 * The parking spots, in order of request.
+	 */
+	public List<Entry> parkingSpots = new ArrayList<>();
+
+	/**
+	 * The requested ids without a parking spot.
+	 */
+	public List<String> notFound = new ArrayList<>();
+
+	/** Default constructor. */
+	public ParkingSpotBatchResponseDto() {
+	}
+
+}
@@ -36,6 +36,11 @@ public class ParkingSpotDto {
 	 */
 	public String message;
 
+	/**
+	 * The version, incremented on every update. Ignored in requests.
+	 */
+	public Long version;
+
 	/** Default constructor. */
 	public ParkingSpotDto() {
 	}
@@ -46,6 +51,7 @@ public class ParkingSpotDto {
 		this.vehicleType = parkingSpot.getVehicleType();
 		this.parkingSpotStatus = parkingSpot.getParkingSpotStatus();
 		this.message = parkingSpot.getMessage();
+		this.version = parkingSpot.getVersion();
 	}
 
 	/** Convert the DTO into a database entity. */
@@ -0,0 +1,76 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import java.util.Objects;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+
+/**
+ * Occupancy state of a parking spot, published when the spot changes.
+ */
+public class ParkingSpotEventDto {
+
+	/**
+	 * The parking spot id.
+	 */
+	public String id;
+
+	/**
+	 * The floor of the parking spot.
+	 */
+	public Character floor;
+
+	/**
+	 * The vehicle type.
+	 */
+	public VehicleType vehicleType;
+
+	/**
+	 * The parking spot status.
+	 */
+	public ParkingSpotStatus parkingSpotStatus;
+
+	/**
+	 * Whether the spot has an active booking.
+	 */
+	public boolean booked;
+
+	/**
+	 * True if the spot was deleted, in which case only the id is set.
+	 */
+	public Boolean deleted;
+
+	/** Default constructor. */
+	public ParkingSpotEventDto() {
+	}
+
+	/** Constructor with fields. */
+	public ParkingSpotEventDto(String id, Character floor,
+			VehicleType vehicleType, ParkingSpotStatus parkingSpotStatus,
+			boolean booked) {
+		this.id = id;
+		this.floor = floor;
+		this.vehicleType = vehicleType;
+		this.parkingSpotStatus = parkingSpotStatus;
+		this.booked = booked;
+	}
+
+	/** Create the event of a deleted spot. */
+	public static ParkingSpotEventDto deleted(String id) {
+		var event = new ParkingSpotEventDto();
+		event.id = id;
+		event.deleted = true;
+		return event;
+	}
+
+	/** Whether two events describe the same state of a spot. */
+	public boolean sameState(ParkingSpotEventDto other) {
+		return other != null && Objects.equals(id, other.id)
+				&& Objects.equals(floor, other.floor)
+				&& vehicleType == other.vehicleType
+				&& parkingSpotStatus == other.parkingSpotStatus
+				&& booked == other.booked
+				&& Objects.equals(deleted, other.deleted);
+	}
+
+}
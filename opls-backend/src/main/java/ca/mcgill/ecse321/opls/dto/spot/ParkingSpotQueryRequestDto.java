@@ -1,15 +1,21 @@
 package ca.mcgill.ecse321.opls.dto.spot;
 
 import java.util.Collection;
+import java.util.Date;
 
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 
 /**
  * Search request for parking spots. Contains all possible queryable fields.
  */
 public class ParkingSpotQueryRequestDto {
 
+	/** The maximum number of parking spots in a page. */
+	public static final int MAX_LIMIT = 1000;
+
 	/**
 	 * Whether to only search for parking spots without bookings.
 	 */
@@ -30,4 +36,29 @@ public class ParkingSpotQueryRequestDto {
 	 */
 	public Collection<VehicleType> vehicleTypes = null;
 
+	/**
+	 * Start of the time window, inclusive. If set with endDate, unbooked
+	 * searches for parking spots without bookings during the whole window
+	 * instead of at the current time.
+	 */
+	public Date startDate = null;
+
+	/**
+	 * End of the time window, exclusive.
+	 */
+	public Date endDate = null;
+
+	/**
+	 * Only search for parking spots with an identifier after this one. Set to
+	 * the cursor of the previous page to fetch the next page.
+	 */
+	public String after = null;
+
+	/**
+	 * The maximum number of parking spots to return. Defaults to all.
+	 */
+	@Min(1)
+	@Max(MAX_LIMIT)
+	public Integer limit = null;
+
 }
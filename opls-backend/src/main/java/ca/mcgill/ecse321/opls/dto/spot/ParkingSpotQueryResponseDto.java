@@ -20,6 +20,12 @@ public class ParkingSpotQueryResponseDto {
 	@Min(0)
 	public int count;
 
+	/**
+	 * The cursor to request the next page with, null if there are no more
+	 * results.
+	 */
+	public String next;
+
 	/** Default constructor. */
 	public ParkingSpotQueryResponseDto() {
 	}
@@ -30,4 +36,11 @@ public class ParkingSpotQueryResponseDto {
 		this.count = parkingSpots == null ? 0 : parkingSpots.size();
 	}
 
+	/** Constructor with fields for a page of results. */
+	public ParkingSpotQueryResponseDto(Collection<ParkingSpotDto> parkingSpots,
+			String next) {
+		this(parkingSpots);
+		this.next = next;
+	}
+
 }
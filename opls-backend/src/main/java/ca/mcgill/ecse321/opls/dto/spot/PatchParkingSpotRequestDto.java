@@ -0,0 +1,44 @@
+package ca.mcgill.ecse321.opls.dto.spot;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Request to modify some fields of a parking spot. Fields left null are not
+ * modified.
+ */
+public class PatchParkingSpotRequestDto {
+
+	/**
+	 * The new vehicle type.
+	 */
+	public VehicleType vehicleType;
+
+	/**
+	 * The new parking spot status.
+	 */
+	public ParkingSpotStatus parkingSpotStatus;
+
+	/**
+	 * The new message, empty to remove it.
+	 */
+	public String message;
+
+	/**
+	 * The version of the spot the modification is based on. If set, the
+	 * request is rejected when the spot was modified since.
+	 */
+	@Min(0)
+	public Long version;
+
+	/** Default constructor. */
+	public PatchParkingSpotRequestDto() {
+	}
+
+	/** Constructor with the status to set. */
+	public PatchParkingSpotRequestDto(ParkingSpotStatus parkingSpotStatus) {
+		this.parkingSpotStatus = parkingSpotStatus;
+	}
+
+}
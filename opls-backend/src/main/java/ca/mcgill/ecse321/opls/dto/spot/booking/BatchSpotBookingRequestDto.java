@@ -0,0 +1,57 @@
+package ca.mcgill.ecse321.opls.dto.spot.booking;
+
+import java.util.List;
+
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Request for incremental bookings of several parking spots, paid at once.
+ */
+public class BatchSpotBookingRequestDto {
+
+	/** Maximum number of spots in one request. */
+	public static final int MAX_SPOTS = 200;
+
+	/**
+	 * The parking spots to book.
+	 */
+	@NotNull
+	@Size(min = 1, max = MAX_SPOTS, message = "Invalid parking spot IDs.")
+	public List<String> parkingSpotIds;
+
+	/**
+	 * The credit card number to pay for all the bookings.
+	 */
+	@NotNull
+	@Size(min = 10, max = 16, message = "Invalid credit card number.")
+	public String creditCardNumber;
+
+	/**
+	 * Length of the bookings in minutes.
+	 */
+	@Min(value = 1, message = "Duration must be positive.")
+	public int duration;
+
+	/**
+	 * License plate of the fleet or event.
+	 */
+	@NotNull
+	@Size(max = 15, message = "Invalid license plate.")
+	public String licensePlate;
+
+	/**
+	 * Requested vehicle type. Must match with the parking spots.
+	 */
+	@NotNull
+	public VehicleType vehicleType;
+
+	/**
+	 * Whether to book the spots that can be booked when others cannot,
+	 * instead of booking none.
+	 */
+	public boolean bestEffort;
+
+}
@@ -0,0 +1,55 @@
+package ca.mcgill.ecse321.opls.dto.spot.booking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response for incremental bookings of several parking spots.
+ */
+public class BatchSpotBookingResponseDto {
+
+	/** A parking spot that could not be booked. */
+	public static class Failure {
+
+		/**
+		 * The parking spot ID.
+		 */
+		public String parkingSpotId;
+
+		/**
+		 * The reason the spot could not be booked.
+		 */
+		public String error;
+
+		/** Default constructor. */
+		public Failure() {
+		}
+
+		/** Constructor with fields. */
+		public Failure(String parkingSpotId, String error) {
+			this.parkingSpotId = parkingSpotId;
+			this.error = error;
+		}
+
+	}
+
+	/**
+	 * The created bookings, in order of request.
+	 */
+	public List<SpotBookingResponseDto> bookings = new ArrayList<>();
+
+	/**
+	 * The parking spots that were not booked.
+	 */
+	public List<Failure> failed = new ArrayList<>();
+
+	/**
+	 * The amount charged for all the bookings.
+	 */
+	public Double cost;
+
+	/** Default constructor. */
+	public BatchSpotBookingResponseDto() {
+	}
+
+}
@@ -29,4 +29,9 @@ public class MonthlySpotBookingRequestDto {
 	@NotNull
 	public VehicleType vehicleType;
 
+	/**
+	 * Whether to charge the credit card and renew the booking every month.
+	 */
+	public boolean autoRenew;
+
 }
@@ -0,0 +1,30 @@
+package ca.mcgill.ecse321.opls.dto.spot.booking;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import ca.mcgill.ecse321.opls.DateHelper;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Request for an incremental parking spot booking with a vehicle service done
+ * during the parking.
+ */
+public class ParkAndServiceBookingRequestDto
+		extends IncrementalSpotBookingRequestDto {
+
+	/**
+	 * The requested vehicle service.
+	 */
+	@NotNull
+	public String vehicleServiceId;
+
+	/**
+	 * The start date of the vehicle service.
+	 */
+	@NotNull
+	@JsonFormat(shape = JsonFormat.Shape.STRING, pattern = DateHelper.DATE_FORMAT)
+	public Date serviceStartDate;
+
+}
@@ -0,0 +1,37 @@
+package ca.mcgill.ecse321.opls.dto.spot.booking;
+
+import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingDto;
+import ca.mcgill.ecse321.opls.service.ParkAndServiceBookingService.Bundle;
+
+/**
+ * Response for a parking spot booking with a vehicle service.
+ */
+public class ParkAndServiceBookingResponseDto {
+
+	/**
+	 * The parking spot booking.
+	 */
+	public SpotBookingResponseDto spotBooking;
+
+	/**
+	 * The vehicle service booking.
+	 */
+	public ServiceBookingDto serviceBooking;
+
+	/**
+	 * The amount charged for both bookings.
+	 */
+	public Double cost;
+
+	/** Default constructor. */
+	public ParkAndServiceBookingResponseDto() {
+	}
+
+	/** Constructor from the saved bookings. */
+	public ParkAndServiceBookingResponseDto(Bundle bundle) {
+		this.spotBooking = new SpotBookingResponseDto(bundle.getSpotBooking());
+		this.serviceBooking = new ServiceBookingDto(bundle.getServiceBooking());
+		this.cost = bundle.getCost();
+	}
+
+}
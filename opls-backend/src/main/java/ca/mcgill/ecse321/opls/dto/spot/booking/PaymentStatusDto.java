@@ -0,0 +1,51 @@
+package ca.mcgill.ecse321.opls.dto.spot.booking;
+
+import java.util.UUID;
+
+import ca.mcgill.ecse321.opls.service.PaymentPipeline.Payment;
+import ca.mcgill.ecse321.opls.service.PaymentPipeline.PaymentStatus;
+
+/**
+ * Response for the state of the payment of a booking.
+ */
+public class PaymentStatusDto {
+
+	/**
+	 * ID of the paid booking.
+	 */
+	public UUID bookingId;
+
+	/**
+	 * Payment status.
+	 */
+	public PaymentStatus status;
+
+	/**
+	 * Amount to charge to the payment method.
+	 */
+	public double amount;
+
+	/**
+	 * Number of attempts made to charge the payment method.
+	 */
+	public int attempts;
+
+	/**
+	 * Reason the payment failed, null if it did not.
+	 */
+	public String error;
+
+	/** Default constructor. */
+	public PaymentStatusDto() {
+	}
+
+	/** Construct from service class. */
+	public PaymentStatusDto(Payment payment) {
+		this.bookingId = payment.getReference();
+		this.status = payment.getStatus();
+		this.amount = payment.getAmount();
+		this.attempts = payment.getAttempts();
+		this.error = payment.getError();
+	}
+
+}
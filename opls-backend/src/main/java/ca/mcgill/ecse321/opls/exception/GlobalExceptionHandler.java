@@ -1,6 +1,9 @@
 package ca.mcgill.ecse321.opls.exception;
 
+import java.sql.SQLException;
+
 import org.springframework.core.convert.ConversionFailedException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -14,6 +17,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.NoHandlerFoundException;
 
 import ca.mcgill.ecse321.opls.dto.OplsApiErrorResponseDto;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
 
 /**
  * Methods to catch API exceptions and intercept before sending a response.
@@ -21,6 +25,12 @@ import ca.mcgill.ecse321.opls.dto.OplsApiErrorResponseDto;
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+	/** SQL state of a unique constraint violation. */
+	private static final String UNIQUE_VIOLATION = "23505";
+
+	/** SQL state of an exclusion constraint violation. */
+	private static final String EXCLUSION_VIOLATION = "23P01";
+
 	/**
 	 * Handle all exceptions of type OplsApiException.
 	 */
@@ -78,6 +88,48 @@ public class GlobalExceptionHandler {
 				ex.getStatusCode());
 	}
 
+	/**
+	 * Handle database constraint violations. Conflicting rows are reported as
+	 * conflicts, other violations as errors.
+	 */
+	@ExceptionHandler(DataIntegrityViolationException.class)
+	@ResponseBody
+	public ResponseEntity<OplsApiErrorResponseDto> handleIntegrityException(
+			DataIntegrityViolationException ex) {
+		var sqlState = getSqlState(ex);
+		if (EXCLUSION_VIOLATION.equals(sqlState)
+				&& String.valueOf(ex.getMostSpecificCause().getMessage())
+						.contains(
+								VehicleServiceBookingRepository.NO_OVERLAP_CONSTRAINT)) {
+			return new ResponseEntity<OplsApiErrorResponseDto>(
+					new OplsApiErrorResponseDto(
+							"Vehicle service already booked for this timeslot."),
+					HttpStatus.CONFLICT);
+		}
+		if (EXCLUSION_VIOLATION.equals(sqlState)) {
+			return new ResponseEntity<OplsApiErrorResponseDto>(
+					new OplsApiErrorResponseDto("Parking spot already booked."),
+					HttpStatus.CONFLICT);
+		}
+		if (UNIQUE_VIOLATION.equals(sqlState)) {
+			return new ResponseEntity<OplsApiErrorResponseDto>(
+					new OplsApiErrorResponseDto("Conflict with existing data."),
+					HttpStatus.CONFLICT);
+		}
+		return handleGeneralException(ex);
+	}
+
+	/** Find the SQL state of the database error causing an exception. */
+	private static String getSqlState(Throwable ex) {
+		for (var cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException sqlException
+					&& sqlException.getSQLState() != null) {
+				return sqlException.getSQLState();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Handle route not found.
 	 */
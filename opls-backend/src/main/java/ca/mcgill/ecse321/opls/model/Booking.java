@@ -5,8 +5,6 @@ import java.util.Date;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
-import ca.mcgill.ecse321.opls.auth.OAuthHelper;
-
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import jakarta.persistence.Column;
@@ -159,11 +157,6 @@ public abstract class Booking extends UuidModel {
 		return confirmationNumber;
 	}
 
-	public void generateConfirmationNumber() {
-		this.confirmationNumber = OAuthHelper.randomString(CONFIRM_NUM_LENGTH)
-				.toUpperCase();
-	}
-
 	public void setConfirmationNumber(String confirmationNumber) {
 		this.confirmationNumber = confirmationNumber;
 	}
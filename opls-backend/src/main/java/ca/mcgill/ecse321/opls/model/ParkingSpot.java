@@ -2,6 +2,9 @@ package ca.mcgill.ecse321.opls.model;
 
 import java.util.Set;
 
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import jakarta.persistence.CascadeType;
@@ -11,22 +14,29 @@ import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 /**
  * Model for a parking spot in the parking lot.
  */
 @Entity
+@Table(name = "parking_spot", indexes = {
+		@Index(name = "parking_spot_floor_status_type_idx", columnList = "floor, parkingSpotStatus, vehicleType"),
+		@Index(name = "parking_spot_floor_number_idx", columnList = "floor, spotNumber")})
+@DynamicUpdate
 public class ParkingSpot {
 	
 	/**
 	 * Model for a booking for a parking spot.
 	 */
 	@Entity
-	@Table(name = "parking_spot_booking")
+	@Table(name = "parking_spot_booking", indexes = {
+			@Index(name = "parking_spot_booking_confirmation_number_idx", columnList = "confirmationNumber", unique = true)})
 	public static class ParkingSpotBooking extends Booking {
 		/**
 		 * A ParkingSpotBooking can see its associated ParkingSpot.
@@ -35,10 +45,32 @@ public class ParkingSpot {
 		@JoinColumn(name = "parking_spot_id", nullable = true)
 		private ParkingSpot parkingSpot;
 
+		/**
+		 * Progress of the automatic renewal of a booking, saved so that an
+		 * interrupted renewal resumes without charging twice.
+		 */
+		public enum RenewalStatus {
+			/** The account is being charged for the next booking. */
+			CHARGING,
+
+			/** The account was charged, the next booking is not saved yet. */
+			CHARGED,
+
+			/** The next booking was saved. */
+			RENEWED,
+
+			/** The booking could not be renewed. */
+			FAILED
+		}
+
 		// Not null if the reservation should be automatically renewed at the
 		// end.
 		private String billingAccountId;
 
+		@Enumerated(EnumType.STRING)
+		@Column(length = 15)
+		private RenewalStatus renewalStatus;
+
 		public ParkingSpot getParkingSpot() {
 			return parkingSpot;
 		}
@@ -54,6 +86,14 @@ public class ParkingSpot {
 		public void setBillingAccountId(String billingAccountId) {
 			this.billingAccountId = billingAccountId;
 		}
+
+		public RenewalStatus getRenewalStatus() {
+			return renewalStatus;
+		}
+
+		public void setRenewalStatus(RenewalStatus renewalStatus) {
+			this.renewalStatus = renewalStatus;
+		}
 	}
 
 	/**
@@ -85,6 +125,13 @@ public class ParkingSpot {
 	@Column(nullable = false, length = 10)
 	private String id;
 
+	// Upper case floor letter of the identifier, null if it has no floor.
+	@Column(length = 1)
+	private Character floor;
+
+	// Spot number of the identifier, null if it is not numeric.
+	private Integer spotNumber;
+
 	@Enumerated(EnumType.STRING)
 	@Column(nullable = false, length = 15)
 	private VehicleType vehicleType;
@@ -95,6 +142,11 @@ public class ParkingSpot {
 
 	private String message;
 
+	// Incremented on every update, to detect concurrent modifications.
+	@Version
+	@ColumnDefault("0")
+	private long version;
+
 	/**
 	 * A ParkingSpot can see its current booking and history of bookings.
 	 */
@@ -121,9 +173,12 @@ public class ParkingSpot {
 			ParkingSpotStatus parkingSpotStatus) {
 		if (floor <= ' ') {
 			this.id = String.format("%03d", num);
+			this.floor = null;
 		} else {
 			this.id = String.format("%c%03d", floor, num);
+			this.floor = Character.toUpperCase(floor);
 		}
+		this.spotNumber = num;
 
 		this.vehicleType = vehicleType;
 		this.parkingSpotStatus = parkingSpotStatus;
@@ -194,14 +249,44 @@ public class ParkingSpot {
 		this.message = message;
 	}
 	
+	/**
+	 * Set the identifier, and parse the floor and spot number from it. An
+	 * identifier of the form "A015" is on floor A with spot number 15.
+	 */
 	public void overrideId(String id) {
 		this.id = id;
+		this.floor = null;
+		this.spotNumber = null;
+
+		if (id != null && id.length() > 0) {
+			boolean hasFloor = Character.isLetter(id.charAt(0));
+			String num = hasFloor ? id.substring(1) : id;
+			if (num.length() > 0 && num.length() <= 9
+					&& num.chars().allMatch(Character::isDigit)) {
+				this.floor = hasFloor
+						? Character.toUpperCase(id.charAt(0))
+						: null;
+				this.spotNumber = Integer.parseInt(num);
+			}
+		}
 	}
 
 	public String getId() {
 		return id;
 	}
 
+	public Character getFloor() {
+		return floor;
+	}
+
+	public Integer getSpotNumber() {
+		return spotNumber;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
 	public ParkingSpotBooking newBooking() {
 		ParkingSpotBooking psb = new ParkingSpotBooking();
 		psb.setParkingSpot(this);
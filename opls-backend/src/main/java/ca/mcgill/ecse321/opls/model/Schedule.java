@@ -45,6 +45,13 @@ public abstract class Schedule {
 			
 			throw new IllegalArgumentException();
 		}
+
+		/** Get the Day enum of a date. */
+		public static Day fromDate(Date date) {
+			var calendar = Calendar.getInstance();
+			calendar.setTime(date);
+			return fromCalendarDay(calendar.get(Calendar.DAY_OF_WEEK));
+		}
 	}
 
 	@Id
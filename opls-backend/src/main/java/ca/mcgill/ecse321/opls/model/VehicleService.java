@@ -3,9 +3,12 @@ package ca.mcgill.ecse321.opls.model;
 import java.math.BigDecimal;
 import java.util.Date;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -19,7 +22,9 @@ public class VehicleService extends NameIdModel {
 	 * Model for a booking for a vehicle service.
 	 */
 	@Entity
-	@Table(name = "vehicle_service_booking")
+	@Table(name = "vehicle_service_booking", indexes = {
+			@Index(name = "vehicle_service_booking_confirmation_number_idx", columnList = "confirmationNumber", unique = true),
+			@Index(name = "vehicle_service_booking_service_status_dates_idx", columnList = "vehicle_service_id, bookingStatus, startDate, endDate")})
 	public static class VehicleServiceBooking extends Booking {
 		/**
 		 * A VehicleServiceBooking can see its associated VehicleService.
@@ -28,6 +33,9 @@ public class VehicleService extends NameIdModel {
 		@JoinColumn(name = "vehicle_service_id", nullable = false)
 		private VehicleService vehicleService;
 
+		/** Bay the service is done in, null for bookings made with one bay. */
+		private Integer bay;
+
 		public VehicleService getVehicleService() {
 			return vehicleService;
 		}
@@ -35,6 +43,19 @@ public class VehicleService extends NameIdModel {
 		public void setVehicleService(VehicleService vehicleService) {
 			this.vehicleService = vehicleService;
 		}
+
+		public Integer getBay() {
+			return bay;
+		}
+
+		/** Get the bay of the booking, counting bookings without one as the first. */
+		public int getBayOrFirst() {
+			return bay == null ? 0 : bay;
+		}
+
+		public void setBay(Integer bay) {
+			this.bay = bay;
+		}
 	}
 
 	/** Duration in minutes. */
@@ -44,6 +65,11 @@ public class VehicleService extends NameIdModel {
 	@Column(precision = 10, scale = 2, nullable = false)
 	private BigDecimal fee = BigDecimal.ZERO;
 
+	/** Number of bays the service can be done in at the same time. */
+	@Column(nullable = false)
+	@ColumnDefault("1")
+	private int bays = 1;
+
 	public int getDuration() {
 		return duration;
 	}
@@ -60,6 +86,14 @@ public class VehicleService extends NameIdModel {
 		this.fee = BigDecimal.valueOf(fee);
 	}
 
+	public int getBays() {
+		return bays;
+	}
+
+	public void setBays(int bays) {
+		this.bays = bays;
+	}
+
 	public VehicleServiceBooking newBooking(Date startDate) {
 		VehicleServiceBooking vsb = new VehicleServiceBooking();
 		vsb.setVehicleService(this);
@@ -0,0 +1,174 @@
+package ca.mcgill.ecse321.opls.repository;
+
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Saved queries for the booking history tables.
+ */
+class BookingHistoryQueryHelper {
+
+	/*
+	 * Create the history table of a booking table. The history inherits the
+	 * columns of the booking table, including the ones added later, and
+	 * queries on the booking table read the history too, unless they name the
+	 * booking table with ONLY.
+	 *
+	 * @param 1 the booking table.
+	 * @param 2 the constraints of the history table.
+	 */
+	public static final String CREATE_HISTORY_QUERY = "CREATE TABLE IF NOT EXISTS %1$s_history "
+			+ "(%2$s) INHERITS (%1$s)";
+
+	/*
+	 * Index a column of the history table, since indexes are not inherited.
+	 *
+	 * @param 1 the booking table.
+	 * @param 2 the column.
+	 */
+	public static final String CREATE_HISTORY_INDEX_QUERY = "CREATE INDEX IF NOT EXISTS "
+			+ "%1$s_history_%2$s ON %1$s_history (%2$s)";
+
+	/** Fetch the columns of a table that are not generated, in order. */
+	public static final String COLUMNS_QUERY = "SELECT CAST(attname AS text) FROM pg_attribute "
+			+ "WHERE attrelid = CAST(:tableName AS regclass) AND attnum > 0 AND "
+			+ "NOT attisdropped AND attgenerated = '' ORDER BY attnum";
+
+	/*
+	 * Move a batch of the bookings that ended before a date to the history,
+	 * in a single statement.
+	 *
+	 * @param 1 the booking table.
+	 * @param 2 the condition on the bookings to move.
+	 * @param 3 the columns to copy.
+	 * @param :cutoff the date.
+	 * @param :limit the size of the batch.
+	 */
+	public static final String MOVE_ENDED_QUERY = "WITH moved AS (DELETE FROM ONLY %1$s WHERE id IN "
+			+ "(SELECT id FROM ONLY %1$s WHERE end_date < :cutoff AND %2$s "
+			+ "ORDER BY end_date LIMIT :limit FOR UPDATE SKIP LOCKED) RETURNING %3$s) "
+			+ "INSERT INTO %1$s_history (%3$s) SELECT %3$s FROM moved";
+
+	/** Count the bookings in a history table. */
+	public static final String COUNT_QUERY = "SELECT COUNT(1) FROM %1$s_history";
+
+}
+
+/**
+ * Repository to move ended bookings to history tables, so that the booking
+ * tables only hold the current and upcoming bookings and the recently ended
+ * ones. Since the history tables inherit from the booking tables, the entity
+ * repositories still find the moved bookings by ID, uuid or confirmation
+ * number.
+ */
+@Repository
+public class BookingHistoryRepository {
+
+	/** Booking table with a history. */
+	public enum BookingTable {
+		/** The parking_spot_booking table. */
+		PARKING_SPOT("parking_spot_booking",
+				"booking_status NOT IN ('PAID', 'CONFIRMED') AND "
+						+ "(renewal_status IS NULL OR renewal_status IN ('RENEWED', 'FAILED'))",
+				"CHECK (booking_status NOT IN ('PAID', 'CONFIRMED')), "
+						+ "FOREIGN KEY (parking_spot_id) REFERENCES parking_spot (id)"),
+
+		/** The vehicle_service_booking table. */
+		VEHICLE_SERVICE("vehicle_service_booking", "TRUE",
+				"FOREIGN KEY (vehicle_service_id) REFERENCES vehicle_service (id)");
+
+		private final String tableName;
+		private final String movableClause;
+		private final String constraints;
+
+		private BookingTable(String tableName, String movableClause,
+				String constraints) {
+			this.tableName = tableName;
+			this.movableClause = movableClause;
+			this.constraints = constraints;
+		}
+
+		/** Get the name of the booking table. */
+		public String getTableName() {
+			return tableName;
+		}
+	}
+
+	/** Columns indexed in the history tables, to find the moved bookings. */
+	private static final String[] INDEXED_COLUMNS = {"id", "uuid",
+			"confirmation_number", "customer_id", "end_date"};
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Create the history table of a booking table, if missing. Must be called
+	 * after the booking table is created.
+	 *
+	 * @param table
+	 *            The booking table.
+	 */
+	@Transactional
+	public void initializeHistory(BookingTable table) {
+		entityManager.createNativeQuery(String.format(
+				BookingHistoryQueryHelper.CREATE_HISTORY_QUERY,
+				table.tableName,
+				table.constraints
+						+ ", FOREIGN KEY (customer_id) REFERENCES customer (id)"))
+				.executeUpdate();
+		for (var column : INDEXED_COLUMNS) {
+			entityManager.createNativeQuery(String.format(
+					BookingHistoryQueryHelper.CREATE_HISTORY_INDEX_QUERY,
+					table.tableName, column)).executeUpdate();
+		}
+	}
+
+	/**
+	 * Move a batch of the bookings that ended before a date to the history.
+	 * Bookings that may still change, such as paid bookings not completed yet
+	 * or monthly bookings being renewed, are kept.
+	 *
+	 * @param table
+	 *            The booking table.
+	 * @param cutoff
+	 *            The date.
+	 * @param limit
+	 *            The size of the batch.
+	 * @return The number of bookings moved.
+	 */
+	@Transactional
+	public int moveEndedBookings(BookingTable table, Date cutoff, int limit) {
+		@SuppressWarnings("unchecked")
+		List<String> columns = entityManager
+				.createNativeQuery(BookingHistoryQueryHelper.COLUMNS_QUERY)
+				.setParameter("tableName", table.tableName).getResultList();
+
+		return entityManager
+				.createNativeQuery(String.format(
+						BookingHistoryQueryHelper.MOVE_ENDED_QUERY,
+						table.tableName, table.movableClause,
+						String.join(", ", columns)))
+				.setParameter("cutoff", cutoff).setParameter("limit", limit)
+				.executeUpdate();
+	}
+
+	/**
+	 * Count the bookings in the history of a booking table.
+	 *
+	 * @param table
+	 *            The booking table.
+	 * @return The number of bookings.
+	 */
+	public long countHistory(BookingTable table) {
+		return ((Number) entityManager.createNativeQuery(String.format(
+				BookingHistoryQueryHelper.COUNT_QUERY, table.tableName))
+				.getSingleResult()).longValue();
+	}
+
+}
@@ -0,0 +1,69 @@
+package ca.mcgill.ecse321.opls.repository;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Saved queries for the sequence of the confirmation numbers.
+ */
+class ConfirmationNumberQueryHelper {
+
+	/** Name of the sequence shared by the booking tables. */
+	public static final String SEQUENCE = "booking_confirmation_number_seq";
+
+	/*
+	 * Create the sequence, which hands out blocks of values up to the number
+	 * of distinct confirmation numbers.
+	 */
+	public static final String CREATE_SEQUENCE_QUERY = "CREATE SEQUENCE IF NOT EXISTS "
+			+ SEQUENCE + " MINVALUE 0 START 0 INCREMENT BY "
+			+ ConfirmationNumberRepository.BLOCK_SIZE + " MAXVALUE "
+			+ (ConfirmationNumberRepository.CAPACITY - 1);
+
+	/** Reserve the next block of values. */
+	public static final String NEXT_BLOCK_QUERY = "SELECT nextval('"
+			+ SEQUENCE + "')";
+
+}
+
+/**
+ * Repository to reserve values of the sequence from which the confirmation
+ * numbers of all bookings are generated.
+ */
+@Repository
+public class ConfirmationNumberRepository {
+
+	/** Number of values reserved at once. */
+	public static final int BLOCK_SIZE = 64;
+
+	/** Number of values of the sequence. */
+	public static final long CAPACITY = 1L << 30;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/** Create the sequence, if missing. */
+	@Transactional
+	public void initializeSequence() {
+		entityManager
+				.createNativeQuery(
+						ConfirmationNumberQueryHelper.CREATE_SEQUENCE_QUERY)
+				.executeUpdate();
+	}
+
+	/**
+	 * Reserve the next block of values of the sequence.
+	 *
+	 * @return The first value of the block, followed by BLOCK_SIZE - 1 values.
+	 */
+	public long reserveBlock() {
+		return ((Number) entityManager
+				.createNativeQuery(
+						ConfirmationNumberQueryHelper.NEXT_BLOCK_QUERY)
+				.getSingleResult()).longValue();
+	}
+
+}
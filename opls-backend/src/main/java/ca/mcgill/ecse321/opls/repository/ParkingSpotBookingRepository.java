@@ -1,35 +1,176 @@
 package ca.mcgill.ecse321.opls.repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Customer;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking.RenewalStatus;
 
 /**
- * Saved queries for the parking_spot_booking table.
+ * Saved queries for the parking_spot_booking table. Queries on current and
+ * upcoming bookings read ONLY the table, skipping the ended bookings moved to
+ * its history.
  */
 class ParkingSpotBookingQueryHelper {
 
+	/** Name of the constraint forbidding overlapping bookings of a spot. */
+	public static final String NO_OVERLAP_CONSTRAINT = "parking_spot_booking_no_overlap";
+
+	/** Enable the GiST operator classes of scalar types. */
+	public static final String CREATE_BTREE_GIST_QUERY = "CREATE EXTENSION IF NOT EXISTS btree_gist";
+
+	/*
+	 * Add the period column, generated from the start and end dates. Periods
+	 * are half-open, so that a booking may start when the previous one ends.
+	 */
+	public static final String ADD_PERIOD_QUERY = "ALTER TABLE parking_spot_booking "
+			+ "ADD COLUMN IF NOT EXISTS period tsrange "
+			+ "GENERATED ALWAYS AS (tsrange(start_date, end_date, '[)')) STORED";
+
+	/** Bookings holding their parking spot. */
+	public static final String ACTIVE_STATUS_CLAUSE = "(booking_status <> 'COMPLETED')";
+
+	/*
+	 * Forbid overlapping periods of active bookings on a parking spot. The
+	 * constraint is backed by a partial GiST index on the spot and period.
+	 * A constraint created before it was limited to active bookings is
+	 * replaced.
+	 */
+	public static final String ADD_NO_OVERLAP_QUERY = "DO $$ BEGIN "
+			+ "IF EXISTS (SELECT 1 FROM pg_constraint WHERE conname = '"
+			+ NO_OVERLAP_CONSTRAINT
+			+ "' AND pg_get_constraintdef(oid) NOT LIKE '%WHERE%') THEN "
+			+ "ALTER TABLE parking_spot_booking DROP CONSTRAINT "
+			+ NO_OVERLAP_CONSTRAINT + "; END IF; "
+			+ "IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = '"
+			+ NO_OVERLAP_CONSTRAINT + "') THEN "
+			+ "ALTER TABLE parking_spot_booking ADD CONSTRAINT "
+			+ NO_OVERLAP_CONSTRAINT
+			+ " EXCLUDE USING gist (parking_spot_id WITH =, period WITH &&) "
+			+ "WHERE " + ACTIVE_STATUS_CLAUSE + "; "
+			+ "END IF; END $$";
+
+	/** Bookings with a period containing the current date. */
+	public static final String CURRENT_ACTIVE_CLAUSE = QueryHelper.WhereClause.CURRENT_ACTIVE_PERIOD;
+
+	/** Bookings with a period that has not ended yet. */
+	public static final String NOT_ENDED_CLAUSE = QueryHelper.WhereClause.NOT_ENDED_PERIOD;
+
 	/** Fetch whether the parking spot has active bookings. */
-	public static final String IS_CURRENT_ACTIVE_QUERY = "SELECT EXISTS(SELECT 1 FROM parking_spot_booking WHERE "
+	public static final String IS_CURRENT_ACTIVE_QUERY = "SELECT EXISTS(SELECT 1 FROM ONLY parking_spot_booking WHERE "
 			+ "parking_spot_id = :parkingSpotId AND "
-			+ QueryHelper.WhereClause.CURRENT_ACTIVE + ")";
+			+ CURRENT_ACTIVE_CLAUSE + ")";
+
+	/** Fetch whether the parking spot has bookings overlapping a period. */
+	public static final String IS_BOOKED_DURING_QUERY = "SELECT EXISTS(SELECT 1 FROM ONLY parking_spot_booking WHERE "
+			+ "parking_spot_id = :parkingSpotId AND "
+			+ "period && tsrange(:startDate, :endDate, '[)'))";
 
 	/** Fetch the current booking for the parking spot. */
-	public static final String CURRENT_ACTIVE_QUERY = "SELECT * FROM parking_spot_booking WHERE "
+	public static final String CURRENT_ACTIVE_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
 			+ "parking_spot_id = :parkingSpotId AND "
-			+ QueryHelper.WhereClause.CURRENT_ACTIVE;
+			+ CURRENT_ACTIVE_CLAUSE;
+	
+	/** Fetch the current bookings for a set of parking spots. */
+	public static final String CURRENT_ACTIVE_IN_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ "parking_spot_id IN :parkingSpotIds AND "
+			+ CURRENT_ACTIVE_CLAUSE;
 	
 	/** Fetch a customer's active bookings. */
-	public static final String CUSTOMER_ACTIVE_QUERY = "SELECT * FROM parking_spot_booking WHERE "
+	public static final String CUSTOMER_ACTIVE_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
 			+ "customer_id = :customerId AND "
-			+ QueryHelper.WhereClause.CURRENT_ACTIVE;
+			+ CURRENT_ACTIVE_CLAUSE;
+
+	/** Fetch the bookings on parking spots that have not ended yet. */
+	public static final String NOT_ENDED_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ "parking_spot_id IS NOT NULL AND "
+			+ NOT_ENDED_CLAUSE;
+
+	/** Bookings to complete when they end. */
+	public static final String COMPLETABLE_CLAUSE = "(booking_status IN ('PAID', 'CONFIRMED'))";
+
+	/*
+	 * Index the end of the bookings to complete, so that the lifecycle
+	 * queries only read the bookings that have not been completed.
+	 */
+	public static final String ADD_COMPLETABLE_INDEX_QUERY = "CREATE INDEX IF NOT EXISTS "
+			+ "parking_spot_booking_completable ON parking_spot_booking (end_date) WHERE "
+			+ COMPLETABLE_CLAUSE;
+
+	/** Bookings held while their payment is processed. */
+	public static final String HELD_CLAUSE = "(booking_status = 'REQUESTED')";
+
+	/*
+	 * Index the start of the held bookings, so that the sweep of stale holds
+	 * does not read the other bookings.
+	 */
+	public static final String ADD_HELD_INDEX_QUERY = "CREATE INDEX IF NOT EXISTS "
+			+ "parking_spot_booking_held ON parking_spot_booking (start_date) WHERE "
+			+ HELD_CLAUSE;
+
+	/** Fetch the bookings held since before a date. */
+	public static final String HELD_BEFORE_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ HELD_CLAUSE + " AND start_date < :date";
+
+	/** Fetch the bookings to complete. */
+	public static final String COMPLETABLE_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ COMPLETABLE_CLAUSE;
+
+	/** Lock the ended bookings to complete, returning their IDs. */
+	public static final String LOCK_ENDED_QUERY = "SELECT id FROM ONLY parking_spot_booking WHERE "
+			+ COMPLETABLE_CLAUSE + " AND end_date <= LOCALTIMESTAMP "
+			+ "FOR UPDATE";
+
+	/*
+	 * Fetch a chunk of the bookings to renew that end during a window, in
+	 * order of ID, including the renewals left unfinished.
+	 */
+	public static final String RENEWABLE_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ "billing_account_id IS NOT NULL AND parking_spot_id IS NOT NULL AND "
+			+ "booking_status IN ('PAID', 'CONFIRMED', 'COMPLETED') AND "
+			+ "(renewal_status IS NULL OR renewal_status IN ('CHARGING', 'CHARGED')) AND "
+			+ "end_date >= :fromDate AND end_date < :untilDate AND id > :afterId "
+			+ "ORDER BY id LIMIT :limit";
+
+	/*
+	 * Fetch a chunk of the renewals left unfinished by bookings that ended
+	 * before a date, in order of ID.
+	 */
+	public static final String STALE_RENEWALS_QUERY = "SELECT * FROM ONLY parking_spot_booking WHERE "
+			+ "renewal_status IN ('CHARGING', 'CHARGED') AND end_date < :date AND id > :afterId "
+			+ "ORDER BY id LIMIT :limit";
+
+	/** Lock the bookings of a set not being renewed, returning their IDs. */
+	public static final String LOCK_UNCLAIMED_RENEWALS_QUERY = "SELECT id FROM ONLY parking_spot_booking WHERE "
+			+ "id IN :ids AND renewal_status IS NULL ORDER BY id FOR UPDATE";
+
+	/** Lock the bookings of a set at a renewal step, returning their IDs. */
+	public static final String LOCK_RENEWALS_QUERY = "SELECT id FROM ONLY parking_spot_booking WHERE "
+			+ "id IN :ids AND renewal_status = :renewalStatus ORDER BY id FOR UPDATE";
+
+	/** Record the progress of the renewal of bookings. */
+	public static final String SET_RENEWAL_STATUS_QUERY = "UPDATE ONLY parking_spot_booking "
+			+ "SET renewal_status = :renewalStatus WHERE id IN :ids";
+
+	/** Lock the ended bookings to complete in a set, returning their IDs. */
+	public static final String LOCK_ENDED_IN_QUERY = "SELECT id FROM ONLY parking_spot_booking WHERE "
+			+ "id IN :ids AND " + COMPLETABLE_CLAUSE
+			+ " AND end_date <= LOCALTIMESTAMP FOR UPDATE";
+
+	/** Set a set of bookings as completed. */
+	public static final String SET_COMPLETED_QUERY = "UPDATE ONLY parking_spot_booking "
+			+ "SET booking_status = 'COMPLETED' WHERE id IN :ids";
 
 }
 
@@ -64,6 +205,13 @@ public interface ParkingSpotBookingRepository
 		return isParkingSpotBooked(parkingSpot.getId());
 	}
 
+	/** Determine if a booking of the parking spot overlaps a period. */
+	@Query(value = ParkingSpotBookingQueryHelper.IS_BOOKED_DURING_QUERY, nativeQuery = true)
+	boolean isParkingSpotBookedDuring(
+			@Param("parkingSpotId") String parkingSpotId,
+			@Param("startDate") Date startDate,
+			@Param("endDate") Date endDate);
+
 	/** Fetch the current booking for the parking spot. */
 	@Query(value = ParkingSpotBookingQueryHelper.CURRENT_ACTIVE_QUERY, nativeQuery = true)
 	ParkingSpotBooking getActiveBooking(
@@ -74,6 +222,14 @@ public interface ParkingSpotBookingRepository
 		return getActiveBooking(parkingSpot.getId());
 	}
 	
+	/**
+	 * Fetch the current bookings for a set of parking spots. WARNING: this
+	 * method does not accept an empty collection.
+	 */
+	@Query(value = ParkingSpotBookingQueryHelper.CURRENT_ACTIVE_IN_QUERY, nativeQuery = true)
+	Iterable<ParkingSpotBooking> getActiveBookings(
+			@Param("parkingSpotIds") Collection<String> parkingSpotIds);
+	
 	/** Fetch active bookings for a customer. */
 	@Query(value = ParkingSpotBookingQueryHelper.CUSTOMER_ACTIVE_QUERY, nativeQuery = true)
 	Iterable<ParkingSpotBooking> getCustomerActiveBookings(@Param("customerId") int customerId);
@@ -83,4 +239,203 @@ public interface ParkingSpotBookingRepository
 		return getCustomerActiveBookings(customer.getId());
 	}
 
+	/** Fetch the active and upcoming bookings assigned to parking spots. */
+	@Query(value = ParkingSpotBookingQueryHelper.NOT_ENDED_QUERY, nativeQuery = true)
+	Iterable<ParkingSpotBooking> getCurrentAndUpcomingBookings();
+
+	/** Fetch the paid and confirmed bookings, which complete when they end. */
+	@Query(value = ParkingSpotBookingQueryHelper.COMPLETABLE_QUERY, nativeQuery = true)
+	Iterable<ParkingSpotBooking> getCompletableBookings();
+
+	/**
+	 * Fetch the bookings held for a payment since before a date.
+	 *
+	 * @param date
+	 *            The latest start date, exclusive.
+	 */
+	@Query(value = ParkingSpotBookingQueryHelper.HELD_BEFORE_QUERY, nativeQuery = true)
+	Iterable<ParkingSpotBooking> getHeldBookingsBefore(@Param("date") Date date);
+
+	/** Lock the paid and confirmed bookings that ended. */
+	@Query(value = ParkingSpotBookingQueryHelper.LOCK_ENDED_QUERY, nativeQuery = true)
+	List<Integer> lockEndedBookings();
+
+	/**
+	 * Lock the paid and confirmed bookings of a set that ended. WARNING: this
+	 * method does not accept an empty collection.
+	 */
+	@Query(value = ParkingSpotBookingQueryHelper.LOCK_ENDED_IN_QUERY, nativeQuery = true)
+	List<Integer> lockEndedBookings(@Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Set a set of bookings as completed. WARNING: this method does not accept
+	 * an empty collection.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.SET_COMPLETED_QUERY, nativeQuery = true)
+	void setCompleted(@Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Set the paid and confirmed bookings that ended as completed.
+	 *
+	 * @return The IDs of the completed bookings.
+	 */
+	@Transactional
+	default List<Integer> completeEndedBookings() {
+		var ids = lockEndedBookings();
+		if (!ids.isEmpty()) {
+			setCompleted(ids);
+		}
+		return ids;
+	}
+
+	/**
+	 * Set the bookings of a set that ended as completed, if paid or
+	 * confirmed. WARNING: this method does not accept an empty collection.
+	 *
+	 * @return The IDs of the completed bookings.
+	 */
+	@Transactional
+	default List<Integer> completeEndedBookings(Collection<Integer> ids) {
+		var ended = lockEndedBookings(ids);
+		if (!ended.isEmpty()) {
+			setCompleted(ended);
+		}
+		return ended;
+	}
+
+	/**
+	 * Fetch a chunk of the bookings to renew, including the renewals left
+	 * unfinished.
+	 *
+	 * @param fromDate
+	 *            The earliest end date, inclusive.
+	 * @param untilDate
+	 *            The latest end date, exclusive.
+	 * @param afterId
+	 *            Only fetch bookings with a greater ID.
+	 * @param limit
+	 *            The size of the chunk.
+	 * @return The bookings, in order of ID.
+	 */
+	@Query(value = ParkingSpotBookingQueryHelper.RENEWABLE_QUERY, nativeQuery = true)
+	List<ParkingSpotBooking> getRenewableBookings(
+			@Param("fromDate") Date fromDate,
+			@Param("untilDate") Date untilDate, @Param("afterId") int afterId,
+			@Param("limit") int limit);
+
+	/**
+	 * Fetch a chunk of the renewals left unfinished by bookings that ended
+	 * before a date.
+	 *
+	 * @param date
+	 *            The latest end date, exclusive.
+	 * @param afterId
+	 *            Only fetch bookings with a greater ID.
+	 * @param limit
+	 *            The size of the chunk.
+	 * @return The bookings, in order of ID.
+	 */
+	@Query(value = ParkingSpotBookingQueryHelper.STALE_RENEWALS_QUERY, nativeQuery = true)
+	List<ParkingSpotBooking> getStaleRenewals(@Param("date") Date date,
+			@Param("afterId") int afterId, @Param("limit") int limit);
+
+	/** Lock the bookings of a set that are not being renewed. */
+	@Query(value = ParkingSpotBookingQueryHelper.LOCK_UNCLAIMED_RENEWALS_QUERY, nativeQuery = true)
+	List<Integer> lockUnclaimedRenewals(@Param("ids") Collection<Integer> ids);
+
+	/** Lock the bookings of a set at a renewal step. */
+	@Query(value = ParkingSpotBookingQueryHelper.LOCK_RENEWALS_QUERY, nativeQuery = true)
+	List<Integer> lockRenewals(@Param("ids") Collection<Integer> ids,
+			@Param("renewalStatus") String renewalStatus);
+
+	/**
+	 * Start the renewal of the bookings of a set that are not being renewed.
+	 * WARNING: this method does not accept an empty collection.
+	 *
+	 * @return The IDs of the claimed bookings.
+	 */
+	@Transactional
+	default List<Integer> claimRenewals(Collection<Integer> ids) {
+		var claimed = lockUnclaimedRenewals(ids);
+		if (!claimed.isEmpty()) {
+			setRenewalStatus(claimed, RenewalStatus.CHARGING.name());
+		}
+		return claimed;
+	}
+
+	/**
+	 * Move the renewal of the bookings of a set to the next step, if they are
+	 * still at the expected step. WARNING: this method does not accept an
+	 * empty collection.
+	 *
+	 * @param ids
+	 *            The IDs of the bookings.
+	 * @param from
+	 *            The expected step.
+	 * @param to
+	 *            The next step.
+	 * @return The IDs of the moved bookings.
+	 */
+	@Transactional
+	default List<Integer> advanceRenewals(Collection<Integer> ids,
+			RenewalStatus from, RenewalStatus to) {
+		var locked = lockRenewals(ids, from.name());
+		if (!locked.isEmpty()) {
+			setRenewalStatus(locked, to.name());
+		}
+		return locked;
+	}
+
+	/**
+	 * Record the progress of the renewal of bookings. WARNING: this method
+	 * does not accept an empty collection.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.SET_RENEWAL_STATUS_QUERY, nativeQuery = true)
+	void setRenewalStatus(@Param("ids") Collection<Integer> ids,
+			@Param("renewalStatus") String renewalStatus);
+
+	/** Index the end of the bookings to complete, if missing. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.ADD_COMPLETABLE_INDEX_QUERY, nativeQuery = true)
+	void addCompletableIndex();
+
+	/** Index the start of the held bookings, if missing. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.ADD_HELD_INDEX_QUERY, nativeQuery = true)
+	void addHeldIndex();
+
+	/** Enable the GiST operator classes of scalar types. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.CREATE_BTREE_GIST_QUERY, nativeQuery = true)
+	void createBtreeGistExtension();
+
+	/** Add the period column of the bookings, if missing. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.ADD_PERIOD_QUERY, nativeQuery = true)
+	void addPeriodColumn();
+
+	/** Add the constraint forbidding overlapping bookings, if missing. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotBookingQueryHelper.ADD_NO_OVERLAP_QUERY, nativeQuery = true)
+	void addNoOverlapConstraint();
+
+	/**
+	 * Ensure the schema prevents overlapping bookings of a parking spot. Must
+	 * be called after the table is created.
+	 */
+	default void initializeNoOverlapConstraint() {
+		createBtreeGistExtension();
+		addPeriodColumn();
+		addNoOverlapConstraint();
+	}
+
 }
@@ -2,60 +2,83 @@ package ca.mcgill.ecse321.opls.repository;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 /**
  * Saved queries for the parking_spot table.
  */
 class ParkingSpotQueryHelper {
 	
-	private static final String BASE_QUERY_WHERE_CLAUSE = "(:floors IS NULL OR :floors = '' OR id ~* :floors) AND "
-			+ "parking_spot_status IN :statuses AND "
+	/*
+	 * Filter on the floors, left out when querying all floors so that the
+	 * planner can use the index on the other columns.
+	 */
+	private static final String FLOORS_CLAUSE = "floor IN :floors AND ";
+
+	private static final String BASE_QUERY_WHERE_CLAUSE = "parking_spot_status IN :statuses AND "
 			+ "vehicle_type IN :vehicleTypes";
 
 	/*
 	 * Query parking_spot table with parameters.
 	 * 
-	 * @param :floors the String containing target floors, null if query all.
+	 * @param :floors the String array of target floors.
 	 * @param :statuses the String array of ParkingSpotStatus values.
 	 * @param :vehicleTypes the String array of VehicleType values.
 	 */
-	public static final String BASE_QUERY = "SELECT * FROM parking_spot WHERE "
-			+ "(:floors IS NULL OR :floors = '' OR id ~* :floors) AND "
-			+ "parking_spot_status IN :statuses AND "
-			+ "vehicle_type IN :vehicleTypes";
+	public static final String BASE_QUERY = "SELECT * FROM parking_spot ps WHERE "
+			+ FLOORS_CLAUSE + BASE_QUERY_WHERE_CLAUSE;
+
+	/** Query parking_spot table on all floors, as BASE_QUERY. */
+	public static final String BASE_QUERY_ALL_FLOORS = "SELECT * FROM parking_spot ps WHERE "
+			+ BASE_QUERY_WHERE_CLAUSE;
 	
 	/*
 	 * Query count of parking_spot table with parameters.
 	 * 
-	 * @param :floors the String containing target floors, null if query all.
+	 * @param :floors the String array of target floors.
 	 * @param :statuses the String array of ParkingSpotStatus values.
 	 * @param :vehicleTypes the String array of VehicleType values.
 	 */
 	public static final String BASE_QUERY_COUNT = "SELECT COUNT(1) FROM parking_spot ps WHERE "
+			+ FLOORS_CLAUSE + BASE_QUERY_WHERE_CLAUSE;
+
+	/** Query count of parking_spot table on all floors, as BASE_QUERY_COUNT. */
+	public static final String BASE_QUERY_COUNT_ALL_FLOORS = "SELECT COUNT(1) FROM parking_spot ps WHERE "
 			+ BASE_QUERY_WHERE_CLAUSE;
 
-	private static final String NO_BOOKINGS_WHERE_CLAUSE = "(:floors IS NULL OR :floors = '' OR ps.id ~* :floors) AND "
-			+ "ps.parking_spot_status IN :statuses AND "
-			+ "ps.vehicle_type IN :vehicleTypes AND "
-			+ "NOT EXISTS (SELECT 1 FROM parking_spot_booking WHERE parking_spot_id = ps.id AND start_date <= NOW() AND end_date >= NOW())";
+	private static final String NO_BOOKINGS_WHERE_CLAUSE = "parking_spot_status IN :statuses AND "
+			+ "vehicle_type IN :vehicleTypes AND "
+			+ "NOT EXISTS (SELECT 1 FROM ONLY parking_spot_booking WHERE parking_spot_id = ps.id AND "
+			+ QueryHelper.WhereClause.CURRENT_ACTIVE_PERIOD + ")";
 
 	/*
 	 * Query parking_spot table with parameters. Includes a query to the
 	 * parking_spot_booking table to determine if the spot is reserved.
 	 * 
-	 * @param :floors the String containing target floors, null if query all.
+	 * @param :floors the String array of target floors.
 	 * @param :statuses the String array of ParkingSpotStatus values.
 	 * @param :vehicleTypes the String array of VehicleType values.
 	 */
 	public static final String NO_BOOKINGS_QUERY = "SELECT * FROM parking_spot ps WHERE "
+			+ FLOORS_CLAUSE + NO_BOOKINGS_WHERE_CLAUSE;
+
+	/** Query parking_spot table on all floors, as NO_BOOKINGS_QUERY. */
+	public static final String NO_BOOKINGS_QUERY_ALL_FLOORS = "SELECT * FROM parking_spot ps WHERE "
 			+ NO_BOOKINGS_WHERE_CLAUSE;
 
 	/*
@@ -63,20 +86,83 @@ class ParkingSpotQueryHelper {
 	 * query to the parking_spot_booking table to determine if the spot is
 	 * reserved.
 	 * 
-	 * @param :floors the String containing target floors, null if query all.
+	 * @param :floors the String array of target floors.
 	 * @param :statuses the String array of ParkingSpotStatus values.
 	 * @param :vehicleTypes the String array of VehicleType values.
 	 */
 	public static final String NO_BOOKINGS_QUERY_COUNT = "SELECT COUNT(1) FROM parking_spot ps WHERE "
+			+ FLOORS_CLAUSE + NO_BOOKINGS_WHERE_CLAUSE;
+
+	/** Query count of parking_spot table on all floors, as NO_BOOKINGS_QUERY_COUNT. */
+	public static final String NO_BOOKINGS_QUERY_COUNT_ALL_FLOORS = "SELECT COUNT(1) FROM parking_spot ps WHERE "
 			+ NO_BOOKINGS_WHERE_CLAUSE;
 
-	/** Convert a list of queried floors to a regex string. */
-	public static String floorsListToString(char[] floors) {
-		String floorsStr = null;
-		if (floors != null && floors.length > 0) {
-			floorsStr = "[" + String.copyValueOf(floors) + "][0-9]{3}";
+	private static final String STREAM_ORDER_CLAUSE = " AND id > :after ORDER BY id";
+
+	/*
+	 * Stream parking_spot table entries with parameters, in order of id.
+	 * 
+	 * @param :floors the String array of target floors.
+	 * @param :statuses the String array of ParkingSpotStatus values.
+	 * @param :vehicleTypes the String array of VehicleType values.
+	 * @param :after the id to start after, empty to start from the first.
+	 */
+	public static final String STREAM_QUERY = BASE_QUERY + STREAM_ORDER_CLAUSE;
+
+	/** Stream parking_spot table entries on all floors, as STREAM_QUERY. */
+	public static final String STREAM_QUERY_ALL_FLOORS = BASE_QUERY_ALL_FLOORS
+			+ STREAM_ORDER_CLAUSE;
+
+	/*
+	 * Stream parking_spot table entries without active bookings, in order of
+	 * id.
+	 * 
+	 * @param :floors the String array of target floors.
+	 * @param :statuses the String array of ParkingSpotStatus values.
+	 * @param :vehicleTypes the String array of VehicleType values.
+	 * @param :after the id to start after, empty to start from the first.
+	 */
+	public static final String STREAM_NO_BOOKINGS_QUERY = NO_BOOKINGS_QUERY
+			+ STREAM_ORDER_CLAUSE;
+
+	/** Stream parking_spot table entries on all floors, as STREAM_NO_BOOKINGS_QUERY. */
+	public static final String STREAM_NO_BOOKINGS_QUERY_ALL_FLOORS = NO_BOOKINGS_QUERY_ALL_FLOORS
+			+ STREAM_ORDER_CLAUSE;
+
+	/** Number of rows fetched from the database at a time when streaming. */
+	public static final String STREAM_FETCH_SIZE = "100";
+
+	/*
+	 * Populate the floor and spot_number columns of spots saved before they
+	 * existed.
+	 */
+	public static final String BACKFILL_FLOOR_NUMBER_QUERY = "UPDATE parking_spot SET "
+			+ "floor = CASE WHEN id ~ '^[A-Za-z]' THEN UPPER(LEFT(id, 1)) END, "
+			+ "spot_number = CAST(SUBSTRING(id FROM '[0-9]+$') AS INTEGER) "
+			+ "WHERE spot_number IS NULL AND id ~ '^[A-Za-z]?[0-9]{1,9}$'";
+
+	/*
+	 * Set the status of the spots on a floor, in one statement.
+	 * 
+	 * @param :floor the upper case floor.
+	 * @param :status the new ParkingSpotStatus value.
+	 * @param :vehicleTypes the String array of VehicleType values.
+	 */
+	public static final String UPDATE_FLOOR_STATUS_QUERY = "UPDATE parking_spot SET parking_spot_status = :status, version = version + 1 "
+			+ "WHERE floor = :floor AND vehicle_type IN :vehicleTypes AND parking_spot_status <> :status";
+
+	/** Whether a list of queried floors queries all floors. */
+	public static boolean isAllFloors(char[] floors) {
+		return floors == null || floors.length == 0;
+	}
+
+	/** Convert a list of queried floors to upper case Strings. */
+	public static String[] floorsList(char[] floors) {
+		String[] floorsList = new String[floors.length];
+		for (int i = 0; i < floors.length; ++i) {
+			floorsList[i] = String.valueOf(Character.toUpperCase(floors[i]));
 		}
-		return floorsStr;
+		return floorsList;
 	}
 
 	/** Convert each enum value to a String. */
@@ -118,75 +204,199 @@ public interface ParkingSpotRepository
 	/** Find a parking spot by its String identifier. */
 	ParkingSpot findParkingSpotById(String id);
 
+	/**
+	 * Find a parking spot and lock its row until the end of the transaction,
+	 * to serialize the bookings of the spot.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = "SELECT ps FROM ParkingSpot ps WHERE ps.id = :id")
+	ParkingSpot lockParkingSpotById(@Param("id") String id);
+
+	/**
+	 * Find parking spots and lock their rows until the end of the transaction.
+	 * The rows are locked in order of ID, so that overlapping batches do not
+	 * deadlock.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = "SELECT ps FROM ParkingSpot ps WHERE ps.id IN :ids ORDER BY ps.id")
+	Iterable<ParkingSpot> lockParkingSpotsById(
+			@Param("ids") Collection<String> ids);
+
+	/** Find the parking spots on a floor. */
+	Iterable<ParkingSpot> findParkingSpotsByFloor(Character floor);
+
 	/** Find a parking spot on a floor and spot number. */
-	@Query(value = "SELECT * FROM parking_spot WHERE id = CONCAT(:floor, LPAD(CAST(:spot AS VARCHAR), 3, '0'))", nativeQuery = true)
-	ParkingSpot findParkingSpotById(@Param("floor") char floor,
-			@Param("spot") int spot);
+	@Query(value = "SELECT ps FROM ParkingSpot ps WHERE ps.floor = :floor AND ps.spotNumber = :spot")
+	ParkingSpot findParkingSpotByFloorAndSpotNumber(
+			@Param("floor") Character floor, @Param("spot") Integer spot);
+
+	/** Find a parking spot on a floor and spot number. */
+	default ParkingSpot findParkingSpotById(char floor, int spot) {
+		return findParkingSpotByFloorAndSpotNumber(
+				Character.toUpperCase(floor), spot);
+	}
+
+	/**
+	 * Set the status of the spots on a floor, incrementing their version so
+	 * that updates based on their previous state fail. WARNING: this method
+	 * does not accept null for vehicleTypes.
+	 * 
+	 * @param floor
+	 *            Upper case floor.
+	 * @param status
+	 *            The new status.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 * @return The number of changed spots.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Transactional
+	@Query(value = ParkingSpotQueryHelper.UPDATE_FLOOR_STATUS_QUERY, nativeQuery = true)
+	int updateFloorStatusExact(@Param("floor") String floor,
+			@Param("status") String status,
+			@Param("vehicleTypes") String[] vehicleTypes);
+
+	/**
+	 * Set the status of the spots on a floor.
+	 * 
+	 * @param floor
+	 *            The floor.
+	 * @param status
+	 *            The new status.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to change, null or empty to change all.
+	 * @return The number of changed spots.
+	 */
+	default int updateFloorStatus(char floor, ParkingSpotStatus status,
+			Collection<VehicleType> vehicleTypes) {
+		return updateFloorStatusExact(
+				String.valueOf(Character.toUpperCase(floor)),
+				status.toString(),
+				ParkingSpotQueryHelper.vehicleTypeList(vehicleTypes));
+	}
+
+	/** Populate the floor and spot number of spots saved without them. */
+	@Modifying
+	@Transactional
+	@Query(value = ParkingSpotQueryHelper.BACKFILL_FLOOR_NUMBER_QUERY, nativeQuery = true)
+	int backfillFloorAndSpotNumber();
 
 	/**
 	 * Query for parking spots. WARNING: this method does not accept null for
 	 * statuses and vehicleTypes.
 	 * 
 	 * @param floors
-	 *            Regex string containing target floors.
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
 	 * @param statuses
 	 *            List of statuses to match. CANNOT BE NULL.
 	 * @param vehicleTypes
 	 *            List of vehicle types to match. CANNOT BE NULL.
 	 */
 	@Query(value = ParkingSpotQueryHelper.BASE_QUERY, nativeQuery = true)
-	Iterable<ParkingSpot> queryExact(@Param("floors") String floors,
+	Iterable<ParkingSpot> queryExact(@Param("floors") String[] floors,
 			@Param("statuses") String[] statuses,
 			@Param("vehicleTypes") String[] vehicleTypes);
+
+	/**
+	 * Query for parking spots on all floors. WARNING: this method does not
+	 * accept null for statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.BASE_QUERY_ALL_FLOORS, nativeQuery = true)
+	Iterable<ParkingSpot> queryAllFloorsExact(@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes);
 	
 	/**
 	 * Query count of parking spots. WARNING: this method does not accept null for
 	 * statuses and vehicleTypes.
 	 * 
 	 * @param floors
-	 *            Regex string containing target floors.
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
 	 * @param statuses
 	 *            List of statuses to match. CANNOT BE NULL.
 	 * @param vehicleTypes
 	 *            List of vehicle types to match. CANNOT BE NULL.
 	 */
 	@Query(value = ParkingSpotQueryHelper.BASE_QUERY_COUNT, nativeQuery = true)
-	int queryExactCount(@Param("floors") String floors,
+	int queryExactCount(@Param("floors") String[] floors,
 			@Param("statuses") String[] statuses,
 			@Param("vehicleTypes") String[] vehicleTypes);
 
+	/**
+	 * Query count of parking spots on all floors. WARNING: this method does not
+	 * accept null for statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.BASE_QUERY_COUNT_ALL_FLOORS, nativeQuery = true)
+	int queryAllFloorsExactCount(@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes);
+
 	/**
 	 * Query for parking spots without bookings. WARNING: this method does not
 	 * accept null for statuses and vehicleTypes.
 	 * 
 	 * @param floors
-	 *            Regex string containing target floors.
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
 	 * @param statuses
 	 *            List of statuses to match. CANNOT BE NULL.
 	 * @param vehicleTypes
 	 *            List of vehicle types to match. CANNOT BE NULL.
 	 */
 	@Query(value = ParkingSpotQueryHelper.NO_BOOKINGS_QUERY, nativeQuery = true)
-	Iterable<ParkingSpot> queryUnbookedExact(@Param("floors") String floors,
+	Iterable<ParkingSpot> queryUnbookedExact(@Param("floors") String[] floors,
 			@Param("statuses") String[] statuses,
 			@Param("vehicleTypes") String[] vehicleTypes);
 
+	/**
+	 * Query for parking spots on all floors without bookings. WARNING: this
+	 * method does not accept null for statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.NO_BOOKINGS_QUERY_ALL_FLOORS, nativeQuery = true)
+	Iterable<ParkingSpot> queryUnbookedAllFloorsExact(@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes);
+
 	/**
 	 * Query number of parking spots without bookings. WARNING: this method does
 	 * not accept null for statuses and vehicleTypes.
 	 * 
 	 * @param floors
-	 *            Regex string containing target floors.
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
 	 * @param statuses
 	 *            List of statuses to match. CANNOT BE NULL.
 	 * @param vehicleTypes
 	 *            List of vehicle types to match. CANNOT BE NULL.
 	 */
 	@Query(value = ParkingSpotQueryHelper.NO_BOOKINGS_QUERY_COUNT, nativeQuery = true)
-	int queryUnbookedExactCount(@Param("floors") String floors,
+	int queryUnbookedExactCount(@Param("floors") String[] floors,
 			@Param("statuses") String[] statuses,
 			@Param("vehicleTypes") String[] vehicleTypes);
 
+	/**
+	 * Query number of parking spots on all floors without bookings. WARNING:
+	 * this method does not accept null for statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.NO_BOOKINGS_QUERY_COUNT_ALL_FLOORS, nativeQuery = true)
+	int queryUnbookedAllFloorsExactCount(@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes);
+
 	/**
 	 * Query for parking spots.
 	 * 
@@ -201,12 +411,15 @@ public interface ParkingSpotRepository
 	default Iterable<ParkingSpot> query(char[] floors,
 			Collection<ParkingSpotStatus> statuses,
 			Collection<VehicleType> vehicleTypes) {
-		String floorsStr = ParkingSpotQueryHelper.floorsListToString(floors);
 		String[] statusList = ParkingSpotQueryHelper.statusList(statuses);
 		String[] typeList = ParkingSpotQueryHelper
 				.vehicleTypeList(vehicleTypes);
 
-		return queryExact(floorsStr, statusList, typeList);
+		if (ParkingSpotQueryHelper.isAllFloors(floors)) {
+			return queryAllFloorsExact(statusList, typeList);
+		}
+		return queryExact(ParkingSpotQueryHelper.floorsList(floors),
+				statusList, typeList);
 	}
 	
 	/**
@@ -223,12 +436,134 @@ public interface ParkingSpotRepository
 	default int queryCount(char[] floors,
 			Collection<ParkingSpotStatus> statuses,
 			Collection<VehicleType> vehicleTypes) {
-		String floorsStr = ParkingSpotQueryHelper.floorsListToString(floors);
 		String[] statusList = ParkingSpotQueryHelper.statusList(statuses);
 		String[] typeList = ParkingSpotQueryHelper
 				.vehicleTypeList(vehicleTypes);
 
-		return queryExactCount(floorsStr, statusList, typeList);
+		if (ParkingSpotQueryHelper.isAllFloors(floors)) {
+			return queryAllFloorsExactCount(statusList, typeList);
+		}
+		return queryExactCount(ParkingSpotQueryHelper.floorsList(floors),
+				statusList, typeList);
+	}
+
+	/**
+	 * Stream parking spots, in order of id. Must be consumed within a
+	 * transaction. WARNING: this method does not accept null for statuses and
+	 * vehicleTypes.
+	 * 
+	 * @param floors
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 * @param after
+	 *            The id to start after. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.STREAM_QUERY, nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ParkingSpotQueryHelper.STREAM_FETCH_SIZE))
+	Stream<ParkingSpot> streamExact(@Param("floors") String[] floors,
+			@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes,
+			@Param("after") String after);
+
+	/**
+	 * Stream parking spots on all floors, in order of id. Must be consumed
+	 * within a transaction. WARNING: this method does not accept null for
+	 * statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 * @param after
+	 *            The id to start after. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.STREAM_QUERY_ALL_FLOORS, nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ParkingSpotQueryHelper.STREAM_FETCH_SIZE))
+	Stream<ParkingSpot> streamAllFloorsExact(@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes,
+			@Param("after") String after);
+
+	/**
+	 * Stream parking spots without active bookings, in order of id. Must be
+	 * consumed within a transaction. WARNING: this method does not accept null
+	 * for statuses and vehicleTypes.
+	 * 
+	 * @param floors
+	 *            Upper case target floors. CANNOT BE NULL OR EMPTY.
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 * @param after
+	 *            The id to start after. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.STREAM_NO_BOOKINGS_QUERY, nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ParkingSpotQueryHelper.STREAM_FETCH_SIZE))
+	Stream<ParkingSpot> streamUnbookedExact(
+			@Param("floors") String[] floors,
+			@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes,
+			@Param("after") String after);
+
+	/**
+	 * Stream parking spots on all floors without active bookings, in order of
+	 * id. Must be consumed within a transaction. WARNING: this method does not
+	 * accept null for statuses and vehicleTypes.
+	 * 
+	 * @param statuses
+	 *            List of statuses to match. CANNOT BE NULL.
+	 * @param vehicleTypes
+	 *            List of vehicle types to match. CANNOT BE NULL.
+	 * @param after
+	 *            The id to start after. CANNOT BE NULL.
+	 */
+	@Query(value = ParkingSpotQueryHelper.STREAM_NO_BOOKINGS_QUERY_ALL_FLOORS, nativeQuery = true)
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = ParkingSpotQueryHelper.STREAM_FETCH_SIZE))
+	Stream<ParkingSpot> streamUnbookedAllFloorsExact(
+			@Param("statuses") String[] statuses,
+			@Param("vehicleTypes") String[] vehicleTypes,
+			@Param("after") String after);
+
+	/**
+	 * Stream parking spots, in order of id. The stream must be consumed within
+	 * a transaction and closed.
+	 * 
+	 * @param floors
+	 *            The floors to look on, null or empty to query all.
+	 * @param statuses
+	 *            The statuses to query, null or empty to query all.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to query, null or empty to query all.
+	 * @param unbooked
+	 *            Whether to only stream spots without an active booking.
+	 * @param after
+	 *            The id to start after, null to start from the first.
+	 * @return Stream of queried results.
+	 */
+	default Stream<ParkingSpot> stream(char[] floors,
+			Collection<ParkingSpotStatus> statuses,
+			Collection<VehicleType> vehicleTypes, boolean unbooked,
+			String after) {
+		String[] statusList = ParkingSpotQueryHelper.statusList(statuses);
+		String[] typeList = ParkingSpotQueryHelper
+				.vehicleTypeList(vehicleTypes);
+		String afterId = after == null ? "" : after;
+
+		if (ParkingSpotQueryHelper.isAllFloors(floors)) {
+			return unbooked
+					? streamUnbookedAllFloorsExact(statusList, typeList,
+							afterId)
+					: streamAllFloorsExact(statusList, typeList, afterId);
+		}
+		String[] floorsList = ParkingSpotQueryHelper.floorsList(floors);
+		if (unbooked) {
+			return streamUnbookedExact(floorsList, statusList, typeList,
+					afterId);
+		}
+		return streamExact(floorsList, statusList, typeList, afterId);
 	}
 
 	/**
@@ -245,12 +580,15 @@ public interface ParkingSpotRepository
 	default Iterable<ParkingSpot> queryUnbooked(char[] floors,
 			Collection<ParkingSpotStatus> statuses,
 			Collection<VehicleType> vehicleTypes) {
-		String floorsStr = ParkingSpotQueryHelper.floorsListToString(floors);
 		String[] statusList = ParkingSpotQueryHelper.statusList(statuses);
 		String[] typeList = ParkingSpotQueryHelper
 				.vehicleTypeList(vehicleTypes);
 
-		return queryUnbookedExact(floorsStr, statusList, typeList);
+		if (ParkingSpotQueryHelper.isAllFloors(floors)) {
+			return queryUnbookedAllFloorsExact(statusList, typeList);
+		}
+		return queryUnbookedExact(ParkingSpotQueryHelper.floorsList(floors),
+				statusList, typeList);
 	}
 
 	/**
@@ -267,12 +605,16 @@ public interface ParkingSpotRepository
 	default int queryUnbookedCount(char[] floors,
 			Collection<ParkingSpotStatus> statuses,
 			Collection<VehicleType> vehicleTypes) {
-		String floorsStr = ParkingSpotQueryHelper.floorsListToString(floors);
 		String[] statusList = ParkingSpotQueryHelper.statusList(statuses);
 		String[] typeList = ParkingSpotQueryHelper
 				.vehicleTypeList(vehicleTypes);
 
-		return queryUnbookedExactCount(floorsStr, statusList, typeList);
+		if (ParkingSpotQueryHelper.isAllFloors(floors)) {
+			return queryUnbookedAllFloorsExactCount(statusList, typeList);
+		}
+		return queryUnbookedExactCount(
+				ParkingSpotQueryHelper.floorsList(floors), statusList,
+				typeList);
 	}
 
 }
@@ -5,9 +5,28 @@ public class QueryHelper {
 	/** Independent where clauses. */
 	public static class WhereClause {
 		/**
-		 * Query entries with a range containing the current date. Table must
-		 * have "start_date" and "end_date" columns.
+		 * Query entries with a range containing the current date. Ranges are
+		 * half-open, ending at their end date. Table must have "start_date"
+		 * and "end_date" columns.
 		 */
-		public static final String CURRENT_ACTIVE = "(start_date <= NOW() AND end_date >= NOW())";
+		public static final String CURRENT_ACTIVE = "(start_date <= NOW() AND end_date > NOW())";
+
+		/**
+		 * Query entries with a range that has not ended yet. Table must have an
+		 * "end_date" column.
+		 */
+		public static final String NOT_ENDED = "(end_date > NOW())";
+
+		/**
+		 * Query entries with a period containing the current date. Table must
+		 * have a "period" tsrange column.
+		 */
+		public static final String CURRENT_ACTIVE_PERIOD = "(period @> LOCALTIMESTAMP)";
+
+		/**
+		 * Query entries with a period that has not ended yet. Table must have a
+		 * "period" tsrange column.
+		 */
+		public static final String NOT_ENDED_PERIOD = "(period && tsrange(LOCALTIMESTAMP, NULL))";
 	}
 }
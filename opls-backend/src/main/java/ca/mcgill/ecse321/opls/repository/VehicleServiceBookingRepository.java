@@ -4,21 +4,97 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import ca.mcgill.ecse321.opls.model.Booking.DateRange;
-import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Customer;
 import ca.mcgill.ecse321.opls.model.VehicleService;
 import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.criteria.CriteriaBuilder;
-import jakarta.persistence.criteria.CriteriaQuery;
-import jakarta.persistence.criteria.Predicate;
-import jakarta.persistence.criteria.Root;
+
+/**
+ * Saved queries for the vehicle_service_booking table.
+ */
+class VehicleServiceBookingQueryHelper {
+
+	/*
+	 * Forbid overlapping confirmed bookings in a bay of a vehicle service, as
+	 * a safety net for concurrent requests. Periods are half-open, like in the
+	 * services, so a booking may start when the previous one ends. Bookings
+	 * without a bay count as the first. Requires the btree_gist extension.
+	 */
+	public static final String ADD_NO_OVERLAP_QUERY = "DO $$ BEGIN "
+			+ "IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = '"
+			+ VehicleServiceBookingRepository.NO_OVERLAP_CONSTRAINT + "') THEN "
+			+ "ALTER TABLE vehicle_service_booking ADD CONSTRAINT "
+			+ VehicleServiceBookingRepository.NO_OVERLAP_CONSTRAINT
+			+ " EXCLUDE USING gist (vehicle_service_id WITH =, (COALESCE(bay, 0)) WITH =, "
+			+ "tsrange(start_date, end_date, '[)') WITH &&) "
+			+ "WHERE (booking_status = 'CONFIRMED'); "
+			+ "END IF; END $$";
+
+	/** Confirmed bookings of a vehicle service. */
+	public static final String CONFIRMED_CLAUSE = "vehicle_service_id = :vehicleServiceId AND booking_status = 'CONFIRMED'";
+
+	/** Confirmed bookings overlapping a half-open period. */
+	public static final String CONFIRMED_DURING_CLAUSE = CONFIRMED_CLAUSE
+			+ " AND start_date < :endDate AND end_date > :startDate";
+
+	/*
+	 * Fetch the bays of the vehicle service booked during a period, counting
+	 * bookings without a bay as the first, in order.
+	 */
+	public static final String BOOKED_BAYS_DURING_QUERY = "SELECT DISTINCT COALESCE(bay, 0) FROM vehicle_service_booking WHERE "
+			+ CONFIRMED_DURING_CLAUSE + " ORDER BY 1";
+
+	/** Fetch the confirmed bookings of the vehicle service during a period. */
+	public static final String CONFIRMED_DURING_QUERY = "SELECT * FROM vehicle_service_booking WHERE "
+			+ CONFIRMED_DURING_CLAUSE;
+
+	/*
+	 * Determine if confirmed bookings of the vehicle service that have not
+	 * ended are in a bay past a count, counting bookings without a bay as the
+	 * first.
+	 */
+	public static final String HAS_NOT_ENDED_IN_BAYS_FROM_QUERY = "SELECT EXISTS (SELECT 1 FROM ONLY vehicle_service_booking WHERE "
+			+ CONFIRMED_CLAUSE
+			+ " AND COALESCE(bay, 0) >= :bays AND end_date > LOCALTIMESTAMP)";
+
+	/** Fetch the confirmed bookings of the vehicle service ending after a date. */
+	public static final String CONFIRMED_ENDING_AFTER_QUERY = "SELECT * FROM ONLY vehicle_service_booking WHERE "
+			+ CONFIRMED_CLAUSE + " AND end_date > :date";
+
+	/*
+	 * Fetch the date ranges of the confirmed bookings overlapping a half-open
+	 * period, with the names of their services. Served by the
+	 * index on service, status and dates.
+	 */
+	public static final String SEARCH_QUERY = "SELECT e.uuid, s.display_name, e.start_date, e.end_date "
+			+ "FROM vehicle_service_booking e INNER JOIN vehicle_service s ON s.id = e.vehicle_service_id "
+			+ "WHERE e.booking_status = 'CONFIRMED' AND "
+			+ "e.start_date < :endDate AND e.end_date > :startDate";
+
+	/** Only bookings of a set of vehicle services. */
+	public static final String SEARCH_SERVICES_CLAUSE = " AND e.vehicle_service_id = ANY(CAST(:vehicleServiceIds AS varchar[]))";
+
+	/** Only bookings of a customer. */
+	public static final String SEARCH_CUSTOMER_CLAUSE = " AND e.customer_id = :customerId";
+
+	/** Only bookings after the last one of the previous page. */
+	public static final String SEARCH_AFTER_CLAUSE = " AND (e.start_date, e.uuid) > (:afterStartDate, :afterUuid)";
+
+	/** Order of the pages. */
+	public static final String SEARCH_ORDER_CLAUSE = " ORDER BY e.start_date, e.uuid LIMIT :limit";
+
+}
 
 /**
  * Repository to query the vehicle_service_booking table for entries in a
@@ -40,8 +116,36 @@ interface VehicleServiceBookingByRangeRepository {
 	 *            End of the query range.
 	 * @return Queried results.
 	 */
-	Iterable<DateRange> query(Integer customerId,
-			Collection<String> vehicleServiceIds, Date startDate, Date endDate);
+	default Iterable<DateRange> query(Integer customerId,
+			Collection<String> vehicleServiceIds, Date startDate,
+			Date endDate) {
+		return search(customerId, vehicleServiceIds, startDate, endDate, null,
+				Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Query a page of vehicle service bookings, in order of start date and
+	 * uuid.
+	 * 
+	 * @param customerId
+	 *            Id of the booking customer, null if do not apply condition.
+	 * @param vehicleServiceIds
+	 *            Ids of the vehicle services to query, empty or null if do not
+	 *            apply condition.
+	 * @param startDate
+	 *            Start of the query range.
+	 * @param endDate
+	 *            End of the query range.
+	 * @param after
+	 *            The last booking of the previous page, null for the first
+	 *            page.
+	 * @param limit
+	 *            The maximum number of bookings to return.
+	 * @return Queried results.
+	 */
+	List<DateRange> search(Integer customerId,
+			Collection<String> vehicleServiceIds, Date startDate, Date endDate,
+			DateRange after, int limit);
 
 	/**
 	 * Query vehicle service bookings.
@@ -117,7 +221,8 @@ class VehicleServiceBookingByRangeRepositoryImpl
 	private EntityManager entityManager;
 
 	/**
-	 * Query vehicle service bookings.
+	 * Query a page of vehicle service bookings, in order of start date and
+	 * uuid.
 	 * 
 	 * @param customerId
 	 *            Id of the booking customer, null if do not apply condition.
@@ -128,73 +233,59 @@ class VehicleServiceBookingByRangeRepositoryImpl
 	 *            Start of the query range.
 	 * @param endDate
 	 *            End of the query range.
+	 * @param after
+	 *            The last booking of the previous page, null for the first
+	 *            page.
+	 * @param limit
+	 *            The maximum number of bookings to return.
 	 * @return Queried results.
 	 */
 	@Override
-	public Iterable<DateRange> query(Integer customerId,
-			Collection<String> vehicleServiceIds, Date startDate,
-			Date endDate) {
-		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-		CriteriaQuery<DateRange> query = cb.createQuery(DateRange.class);
-		Root<VehicleServiceBooking> vsb = query
-				.from(VehicleServiceBooking.class);
-
-		// range parameters
-		var startRange = cb.parameter(Date.class, "startRange");
-		var endRange = cb.parameter(Date.class, "endRange");
-
-		// create predicate list
-		var predicates = new ArrayList<Predicate>();
-
-		// query within date range
-		/*
-		 * ((:startRange >= e.startDate AND :startRange <= e.endDate) OR " +
-		 * "(e.startDate >= :startRange AND e.startDate <= :endRange)
-		 */
-		var idPath = vsb.<UUID>get("uuid");
-		var startDatePath = vsb.<Date>get("startDate");
-		var endDatePath = vsb.<Date>get("endDate");
-		predicates.add(cb.or(
-				cb.and(cb.greaterThanOrEqualTo(startRange, startDatePath),
-						cb.lessThanOrEqualTo(startRange, endDatePath)),
-				cb.and(cb.greaterThanOrEqualTo(startDatePath, startRange),
-						cb.lessThanOrEqualTo(startDatePath, endRange))));
-		
-		// query confirmed bookings
-		var statusPath = vsb.<BookingStatus>get("bookingStatus");
-		predicates.add(cb.equal(statusPath, BookingStatus.CONFIRMED));
-
-		// query by customer
+	public List<DateRange> search(Integer customerId,
+			Collection<String> vehicleServiceIds, Date startDate, Date endDate,
+			DateRange after, int limit) {
+		boolean byService = vehicleServiceIds != null
+				&& vehicleServiceIds.size() > 0;
+
+		// only add the conditions that apply, to keep the plan simple
+		var sql = new StringBuilder(
+				VehicleServiceBookingQueryHelper.SEARCH_QUERY);
+		if (byService) {
+			sql.append(VehicleServiceBookingQueryHelper.SEARCH_SERVICES_CLAUSE);
+		}
 		if (customerId != null) {
-			var customerJoinPath = vsb.<Customer>get("customer")
-					.<Integer>get("id");
-			predicates.add(cb.equal(customerJoinPath, customerId));
+			sql.append(VehicleServiceBookingQueryHelper.SEARCH_CUSTOMER_CLAUSE);
 		}
-
-		// query by vehicle services
-		if (vehicleServiceIds != null && vehicleServiceIds.size() > 0) {
-			var serviceJoinPath = vsb.<VehicleService>get("vehicleService")
-					.<String>get("id");
-
-			var servicePredicates = new Predicate[vehicleServiceIds.size()];
-			int i = 0;
-			for (var serviceId : vehicleServiceIds) {
-				servicePredicates[i++] = cb.equal(serviceJoinPath, serviceId);
-			}
-			predicates.add(cb.or(servicePredicates));
+		if (after != null) {
+			sql.append(VehicleServiceBookingQueryHelper.SEARCH_AFTER_CLAUSE);
 		}
+		sql.append(VehicleServiceBookingQueryHelper.SEARCH_ORDER_CLAUSE);
 
-		// combine predicates
-		var predicate = cb.and(predicates.toArray(new Predicate[]{}));
-		var serviceNamePath = vsb.<VehicleService>get("vehicleService")
-				.<String>get("displayName");
-		query.multiselect(idPath, serviceNamePath, startDatePath,
-				endDatePath).where(predicate);
+		var query = entityManager.createNativeQuery(sql.toString())
+				.setParameter("startDate", startDate)
+				.setParameter("endDate", endDate)
+				.setParameter("limit", limit);
+		if (byService) {
+			query.setParameter("vehicleServiceIds",
+					vehicleServiceIds.toArray(new String[0]));
+		}
+		if (customerId != null) {
+			query.setParameter("customerId", customerId);
+		}
+		if (after != null) {
+			query.setParameter("afterStartDate", after.startDate)
+					.setParameter("afterUuid", after.uuid);
+		}
 
 		// execute
-		return entityManager.createQuery(query)
-				.setParameter("startRange", startDate)
-				.setParameter("endRange", endDate).getResultList();
+		var results = new ArrayList<DateRange>();
+		for (var row : query.getResultList()) {
+			var columns = (Object[]) row;
+			results.add(new DateRange((UUID) columns[0], (String) columns[1],
+					new Date(((Date) columns[2]).getTime()),
+					new Date(((Date) columns[3]).getTime())));
+		}
+		return results;
 	}
 
 }
@@ -207,6 +298,9 @@ public interface VehicleServiceBookingRepository
 			CrudRepository<VehicleServiceBooking, Integer>,
 			VehicleServiceBookingByRangeRepository {
 
+	/** Name of the constraint forbidding overlapping bookings of a bay. */
+	public static final String NO_OVERLAP_CONSTRAINT = "vehicle_service_booking_no_overlap";
+
 	/** Find all bookings for a customer. */
 	Iterable<VehicleServiceBooking> findVehicleServiceBookingsByCustomer(
 			Customer customer);
@@ -221,4 +315,42 @@ public interface VehicleServiceBookingRepository
 	VehicleServiceBooking findVehicleServiceBookingByConfirmationNumber(
 			String confirmationNumber);
 
+	/**
+	 * Determine if confirmed bookings of the vehicle service that have not
+	 * ended are in a bay past a count.
+	 */
+	@Query(value = VehicleServiceBookingQueryHelper.HAS_NOT_ENDED_IN_BAYS_FROM_QUERY, nativeQuery = true)
+	boolean hasNotEndedInBaysFrom(
+			@Param("vehicleServiceId") String vehicleServiceId,
+			@Param("bays") int bays);
+
+	/** Fetch the bays of the vehicle service booked during a period. */
+	@Query(value = VehicleServiceBookingQueryHelper.BOOKED_BAYS_DURING_QUERY, nativeQuery = true)
+	List<Integer> getBookedBaysDuring(
+			@Param("vehicleServiceId") String vehicleServiceId,
+			@Param("startDate") Date startDate,
+			@Param("endDate") Date endDate);
+
+	/** Fetch the confirmed bookings of the vehicle service during a period. */
+	@Query(value = VehicleServiceBookingQueryHelper.CONFIRMED_DURING_QUERY, nativeQuery = true)
+	Iterable<VehicleServiceBooking> getConfirmedBookingsDuring(
+			@Param("vehicleServiceId") String vehicleServiceId,
+			@Param("startDate") Date startDate,
+			@Param("endDate") Date endDate);
+
+	/** Fetch the confirmed bookings of the vehicle service ending after a date. */
+	@Query(value = VehicleServiceBookingQueryHelper.CONFIRMED_ENDING_AFTER_QUERY, nativeQuery = true)
+	Iterable<VehicleServiceBooking> getConfirmedBookingsEndingAfter(
+			@Param("vehicleServiceId") String vehicleServiceId,
+			@Param("date") Date date);
+
+	/**
+	 * Add the constraint forbidding overlapping bookings of a bay, if missing.
+	 * Must be called after the btree_gist extension is created.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = VehicleServiceBookingQueryHelper.ADD_NO_OVERLAP_QUERY, nativeQuery = true)
+	void addNoOverlapConstraint();
+
 }
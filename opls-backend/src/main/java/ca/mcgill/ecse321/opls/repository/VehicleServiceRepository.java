@@ -1,8 +1,12 @@
 package ca.mcgill.ecse321.opls.repository;
 
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import ca.mcgill.ecse321.opls.model.VehicleService;
+import jakarta.persistence.LockModeType;
 
 /**
  * Repository to interface with the vehicle_service table.
@@ -14,4 +18,20 @@ public interface VehicleServiceRepository
 	/** Find a vehicle service by its String id. */
 	VehicleService findVehicleServiceById(String id);
 
+	/**
+	 * Find a vehicle service and lock its row until the end of the
+	 * transaction, to serialize changes of its bays with its bookings.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query(value = "SELECT vs FROM VehicleService vs WHERE vs.id = :id")
+	VehicleService lockVehicleServiceById(@Param("id") String id);
+
+	/**
+	 * Find a vehicle service and lock its row against changes until the end
+	 * of the transaction, without blocking other bookings of the service.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_READ)
+	@Query(value = "SELECT vs FROM VehicleService vs WHERE vs.id = :id")
+	VehicleService shareVehicleServiceById(@Param("id") String id);
+
 }
@@ -0,0 +1,59 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository;
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository.BookingTable;
+
+/**
+ * Moves the bookings that ended a while ago to the history tables in the
+ * background, so that the queries on current bookings only read a small
+ * table. Bookings are moved in batches, each in its own transaction, to keep
+ * the locks on the booking tables short.
+ */
+@Service
+public class BookingArchiveService {
+
+	@Autowired
+	private BookingHistoryRepository historyRepository;
+
+	@Value("${opls.history.retention-ms:2592000000}")
+	private long retention = 2592000000L;
+
+	@Value("${opls.history.batch-size:1000}")
+	private int batchSize = 1000;
+
+	/** Move the bookings that ended before the retention period. */
+	@Scheduled(initialDelayString = "${opls.history.interval-ms:3600000}", fixedDelayString = "${opls.history.interval-ms:3600000}")
+	public void archiveScheduled() {
+		archiveEndedBookings(new Date());
+	}
+
+	/**
+	 * Move the bookings that ended before the retention period to the history
+	 * tables.
+	 *
+	 * @param now
+	 *            The current date.
+	 * @return The number of bookings moved.
+	 */
+	public int archiveEndedBookings(Date now) {
+		var cutoff = new Date(now.getTime() - retention);
+		int total = 0;
+		for (var table : BookingTable.values()) {
+			int moved;
+			do {
+				moved = historyRepository.moveEndedBookings(table, cutoff,
+						batchSize);
+				total += moved;
+			} while (moved == batchSize);
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,199 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+
+/**
+ * Moves parking spot bookings through their lifecycle. The starts and ends of
+ * the paid and confirmed bookings are kept in a timing wheel, and on every
+ * tick the bookings that ended are set as completed with a single UPDATE, so
+ * that the status of a booking tells whether it ended. Bookings have no status
+ * for having started, so starts are only reported to the listeners. The wheel
+ * is loaded from the database on the first tick, after completing the
+ * bookings that ended while the application was down, and periodically
+ * reloaded to pick up the writes of other instances. Loading queries the
+ * database without holding the lock, and the bookings saved meanwhile are
+ * replayed onto the new wheel.
+ */
+@Service
+public class BookingLifecycleScheduler {
+
+	/** Receives the transitions of bookings. */
+	public interface Listener {
+
+		/** Bookings started. */
+		void bookingsStarted(List<Integer> bookingIds);
+
+		/** Bookings ended and were set as completed. */
+		void bookingsCompleted(List<Integer> bookingIds);
+
+	}
+
+	/** Transition of a booking. */
+	private static class Transition {
+		final int bookingId;
+		final boolean end;
+
+		Transition(int bookingId, boolean end) {
+			this.bookingId = bookingId;
+			this.end = end;
+		}
+	}
+
+	@Autowired
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
+	@Value("${opls.lifecycle.tick-ms:1000}")
+	private long tickLength = 1000;
+
+	private TimingWheel<Transition> wheel = null;
+
+	/** Bookings saved while the wheel is loading, null when not loading. */
+	private List<Runnable> pending = null;
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	/** Register a listener of transitions. */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/** Unregister a listener of transitions. */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/** Schedule the transitions of a saved booking once the transaction commits. */
+	public void bookingSaved(ParkingSpotBooking booking) {
+		final int bookingId = booking.getId();
+		final var status = booking.getBookingStatus();
+		final long start = booking.getStartDate().getTime();
+		final long end = booking.getEndDate().getTime();
+		TransactionHooks.afterCommit(() -> {
+			Runnable task = () -> schedule(bookingId, status, start, end,
+					new Date().getTime());
+			synchronized (this) {
+				if (wheel != null) {
+					task.run();
+				} else if (pending != null) {
+					pending.add(task);
+				}
+			}
+		});
+	}
+
+	/** Number of scheduled transitions, 0 if not loaded. */
+	public synchronized int getScheduledCount() {
+		return wheel == null ? 0 : wheel.size();
+	}
+
+	/** Fire the due transitions. */
+	@Scheduled(fixedDelayString = "${opls.lifecycle.tick-ms:1000}")
+	public void tick() {
+		var completed = new ArrayList<Integer>();
+		// a booking saved while loading can be scheduled twice
+		var started = new LinkedHashSet<Integer>();
+		var ended = new LinkedHashSet<Integer>();
+		boolean loading;
+		synchronized (this) {
+			loading = wheel == null;
+			if (loading) {
+				pending = new ArrayList<>();
+			}
+		}
+		if (loading) {
+			completed.addAll(load());
+		}
+		synchronized (this) {
+			if (wheel != null) {
+				for (var transition : wheel.advance(new Date().getTime())) {
+					(transition.end ? ended : started)
+							.add(transition.bookingId);
+				}
+			}
+		}
+
+		// the update skips bookings rescheduled or completed since
+		if (!ended.isEmpty()) {
+			completed.addAll(bookingRepository.completeEndedBookings(ended));
+		}
+		if (!completed.isEmpty()) {
+			resourceVersionService.bump(Family.SPOTS);
+			for (var listener : listeners) {
+				listener.bookingsCompleted(completed);
+			}
+		}
+		if (!started.isEmpty()) {
+			for (var listener : listeners) {
+				listener.bookingsStarted(new ArrayList<>(started));
+			}
+		}
+	}
+
+	/** Discard the wheel, to load it again from the database. */
+	@Scheduled(initialDelayString = "${opls.lifecycle.reload-ms:600000}", fixedDelayString = "${opls.lifecycle.reload-ms:600000}")
+	public synchronized void reload() {
+		wheel = null;
+	}
+
+	/**
+	 * Complete the bookings that ended and load the wheel.
+	 *
+	 * @return The IDs of the completed bookings.
+	 */
+	private List<Integer> load() {
+		List<Integer> completed;
+		Iterable<ParkingSpotBooking> bookings;
+		try {
+			completed = bookingRepository.completeEndedBookings();
+			bookings = bookingRepository.getCompletableBookings();
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				pending = null;
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			long now = new Date().getTime();
+			wheel = new TimingWheel<>(tickLength, now);
+			for (var booking : bookings) {
+				schedule(booking.getId(), booking.getBookingStatus(),
+						booking.getStartDate().getTime(),
+						booking.getEndDate().getTime(), now);
+			}
+			pending.forEach(Runnable::run);
+			pending = null;
+		}
+		return completed;
+	}
+
+	private void schedule(int bookingId, BookingStatus status, long start,
+			long end, long now) {
+		if (status != BookingStatus.PAID
+				&& status != BookingStatus.CONFIRMED) {
+			return;
+		}
+		if (start > now) {
+			wheel.schedule(start, new Transition(bookingId, false));
+		}
+		wheel.schedule(end, new Transition(bookingId, true));
+	}
+
+}
@@ -0,0 +1,114 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable views of the bookings recently fetched by confirmation number,
+ * such as at the gates. An entry is kept until its booking is invalidated,
+ * or until the booking ends, after which its status changes without a write
+ * of the booking. A fetch that races with an invalidation is not kept, so
+ * that the entry never holds the booking from before a committed write.
+ *
+ * @param <V>
+ *            The type of the immutable views.
+ */
+final class BookingLookupCache<V> {
+
+	/** Entry of a fetched booking. */
+	private static final class Entry<V> {
+		private final V value;
+		/** Time at which the view expires, in milliseconds. */
+		private final long expiresOn;
+
+		private Entry(V value, long expiresOn) {
+			this.value = value;
+			this.expiresOn = expiresOn;
+		}
+	}
+
+	/** Entries, and markers of the fetches in progress, by confirmation number. */
+	private final Map<String, Object> entries;
+
+	/** Time at which the view of a booking expires, in milliseconds. */
+	private final ToLongFunction<V> expiry;
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param capacity
+	 *            The number of bookings kept, the least recently used being
+	 *            dropped first.
+	 * @param expiry
+	 *            The time at which the view of a booking expires, in
+	 *            milliseconds.
+	 */
+	BookingLookupCache(int capacity, ToLongFunction<V> expiry) {
+		this.expiry = expiry;
+		this.entries = Collections
+				.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(
+							Map.Entry<String, Object> eldest) {
+						return size() > capacity;
+					}
+				});
+	}
+
+	/**
+	 * Get the view of a booking, fetching it if not kept.
+	 *
+	 * @param confirmationNumber
+	 *            The confirmation number of the booking.
+	 * @param fetch
+	 *            Fetches the view of the booking.
+	 * @return The view of the booking.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(String confirmationNumber, Supplier<V> fetch) {
+		long now = System.currentTimeMillis();
+		var cached = entries.get(confirmationNumber);
+		if (cached instanceof Entry<?> entry && entry.expiresOn > now) {
+			return (V) entry.value;
+		}
+
+		// an invalidation during the fetch removes the marker
+		var marker = new Object();
+		entries.put(confirmationNumber, marker);
+		V value;
+		try {
+			value = fetch.get();
+		} catch (RuntimeException e) {
+			entries.remove(confirmationNumber, marker);
+			throw e;
+		}
+
+		long expiresOn = expiry.applyAsLong(value);
+		if (expiresOn > now) {
+			entries.replace(confirmationNumber, marker,
+					new Entry<>(value, expiresOn));
+		} else {
+			entries.remove(confirmationNumber, marker);
+		}
+		return value;
+	}
+
+	/**
+	 * Drop the view of a booking once the current transaction commits.
+	 *
+	 * @param confirmationNumber
+	 *            The confirmation number of the changed booking, may be null.
+	 */
+	void invalidate(String confirmationNumber) {
+		if (confirmationNumber != null) {
+			TransactionHooks
+					.afterCommit(() -> entries.remove(confirmationNumber));
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package ca.mcgill.ecse321.opls.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.model.Booking;
+import ca.mcgill.ecse321.opls.repository.ConfirmationNumberRepository;
+
+/**
+ * Generates the confirmation numbers of parking spot and vehicle service
+ * bookings. Each number encodes a value of a database sequence shared by both
+ * booking types, so no two bookings get the same number and no retry is
+ * needed. Values are reserved in blocks to avoid a query per booking, and
+ * scrambled by a fixed permutation so that consecutive bookings do not get
+ * guessable numbers.
+ */
+@Service
+public class ConfirmationNumberGenerator {
+
+	/** Characters of the numbers, without the ones easily mistaken. */
+	static final String ALPHABET = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+	private static final int BITS_PER_CHAR = 5;
+
+	private static final int HALF_BITS = Booking.CONFIRM_NUM_LENGTH
+			* BITS_PER_CHAR / 2;
+
+	private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+
+	private static final int[] ROUND_KEYS = {0x2b7e, 0x1516, 0x28ae, 0x0d2a};
+
+	@Autowired
+	private ConfirmationNumberRepository repository;
+
+	private long next = 0;
+	private long limit = 0;
+
+	/**
+	 * Generate a new confirmation number.
+	 *
+	 * @return The confirmation number.
+	 */
+	public synchronized String next() {
+		if (next == limit) {
+			next = repository.reserveBlock();
+			limit = next + ConfirmationNumberRepository.BLOCK_SIZE;
+		}
+		return encode(next++);
+	}
+
+	/**
+	 * Encode a value of the sequence as a confirmation number.
+	 *
+	 * @param value
+	 *            The value, less than ConfirmationNumberRepository.CAPACITY.
+	 * @return The confirmation number.
+	 */
+	static String encode(long value) {
+		int scrambled = permute((int) value);
+		var chars = new char[Booking.CONFIRM_NUM_LENGTH];
+		for (int i = chars.length - 1; i >= 0; --i) {
+			chars[i] = ALPHABET.charAt(scrambled & (ALPHABET.length() - 1));
+			scrambled >>>= BITS_PER_CHAR;
+		}
+		return String.valueOf(chars);
+	}
+
+	/**
+	 * Permute the values of the sequence with a Feistel network, which maps
+	 * distinct values to distinct values whatever the round function.
+	 */
+	static int permute(int value) {
+		int left = (value >>> HALF_BITS) & HALF_MASK;
+		int right = value & HALF_MASK;
+		for (int key : ROUND_KEYS) {
+			int mixed = (right * 0x5bd1 + key) & HALF_MASK;
+			int round = (mixed ^ (mixed >>> 7)) & HALF_MASK;
+			int previous = right;
+			right = left ^ round;
+			left = previous;
+		}
+		return (left << HALF_BITS) | right;
+	}
+
+}
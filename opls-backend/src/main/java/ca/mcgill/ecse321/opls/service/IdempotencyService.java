@@ -0,0 +1,157 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.mcgill.ecse321.opls.dto.auth.AccessToken;
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+
+/**
+ * Responses of requests sent with an idempotency key, so that a retried
+ * request returns the original response instead of being executed again. A
+ * retry arriving while the original request runs waits for its response.
+ * Failed requests are not kept, so they can be retried. Responses expire after
+ * a time to live.
+ */
+@Service
+public class IdempotencyService {
+
+	/** Header holding the idempotency key of a request. */
+	public static final String HEADER = "Idempotency-Key";
+
+	/** Maximum length of an idempotency key. */
+	public static final int MAX_KEY_LENGTH = 255;
+
+	/** Request executed, or being executed, with a key. */
+	private static class Entry {
+		final String fingerprint;
+		final CompletableFuture<Object> response = new CompletableFuture<>();
+		volatile long expiresOn = Long.MAX_VALUE;
+
+		Entry(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${opls.idempotency.ttl-ms:86400000}")
+	private long ttl = 86400000;
+
+	@Value("${opls.idempotency.wait-ms:30000}")
+	private long waitTime = 30000;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Execute a request at most once per idempotency key.
+	 *
+	 * @param <T>
+	 *            The response type.
+	 * @param key
+	 *            The idempotency key, null to always execute the request.
+	 * @param credentials
+	 *            The credentials of the client, which keys are scoped to.
+	 * @param endpoint
+	 *            The endpoint of the request, which keys are scoped to.
+	 * @param request
+	 *            The request body, which must be the same on retries.
+	 * @param action
+	 *            The request to execute.
+	 * @return The response of the request.
+	 * @throws OplsApiException
+	 *             if the key is invalid, reused for another request, or the
+	 *             original request is still running after the wait time.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, AccessToken credentials, String endpoint,
+			Object request, Supplier<T> action) {
+		if (key == null) {
+			return action.get();
+		}
+		if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Invalid idempotency key.");
+		}
+
+		var scopedKey = credentials.oauthClientId + "/"
+				+ (credentials.isRegistered ? credentials.userAccountId : "")
+				+ endpoint + "#" + key;
+		var entry = new Entry(fingerprint(request));
+		var existing = entries.putIfAbsent(scopedKey, entry);
+		if (existing != null) {
+			if (!existing.fingerprint.equals(entry.fingerprint)) {
+				throw new OplsApiException(HttpStatus.UNPROCESSABLE_ENTITY,
+						"Idempotency key reused for another request.");
+			}
+			return (T) await(existing);
+		}
+
+		try {
+			var response = action.get();
+			entry.expiresOn = System.currentTimeMillis() + ttl;
+			entry.response.complete(response);
+			return response;
+		} catch (RuntimeException e) {
+			// failed requests may be retried
+			entries.remove(scopedKey, entry);
+			entry.response.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/** Number of kept requests. */
+	public int size() {
+		return entries.size();
+	}
+
+	/** Discard the expired responses. */
+	@Scheduled(fixedDelayString = "${opls.idempotency.cleanup-ms:60000}")
+	public void removeExpired() {
+		long now = System.currentTimeMillis();
+		entries.values().removeIf(entry -> entry.expiresOn <= now);
+	}
+
+	private Object await(Entry entry) {
+		try {
+			return entry.response.get(waitTime, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Request with the same idempotency key in progress.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Request with the same idempotency key in progress.");
+		}
+	}
+
+	private String fingerprint(Object request) {
+		try {
+			return ResourceVersionService
+					.digest(objectMapper.writeValueAsString(request));
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Set of half-open intervals [low, high) of timestamps, each identified by a
+ * key, like the periods of bookings in the database.
+ * Backed by a treap ordered by low end, where each node also holds the highest
+ * high end of its subtree. Insertion, removal and checking for an overlap take
+ * logarithmic time in the number of intervals. Not thread safe.
+ *
+ * @param <T>
+ *            The type of the value attached to each interval.
+ */
+class IntervalTree<T> {
+
+	private static class Node<T> {
+		final long low;
+		final long high;
+		final long key;
+		final T value;
+		final int priority;
+		long maxHigh;
+		Node<T> left;
+		Node<T> right;
+
+		Node(long low, long high, long key, T value) {
+			this.low = low;
+			this.high = high;
+			this.key = key;
+			this.value = value;
+			this.priority = ThreadLocalRandom.current().nextInt();
+			this.maxHigh = high;
+		}
+
+		int compareTo(long otherLow, long otherKey) {
+			int c = Long.compare(low, otherLow);
+			return c != 0 ? c : Long.compare(key, otherKey);
+		}
+
+		void update() {
+			maxHigh = high;
+			if (left != null && left.maxHigh > maxHigh) {
+				maxHigh = left.maxHigh;
+			}
+			if (right != null && right.maxHigh > maxHigh) {
+				maxHigh = right.maxHigh;
+			}
+		}
+	}
+
+	private Node<T> root = null;
+	private int size = 0;
+
+	/** Number of intervals. */
+	public int size() {
+		return size;
+	}
+
+	/** Whether there are no intervals. */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Remove all intervals. */
+	public void clear() {
+		root = null;
+		size = 0;
+	}
+
+	/**
+	 * Add an interval. The pair of low end and key must be unique.
+	 *
+	 * @param low
+	 *            The start of the interval, inclusive.
+	 * @param high
+	 *            The end of the interval, exclusive.
+	 * @param key
+	 *            The identifier of the interval.
+	 * @param value
+	 *            The value attached to the interval.
+	 */
+	public void insert(long low, long high, long key, T value) {
+		root = insert(root, new Node<>(low, high, key, value));
+		++size;
+	}
+
+	/**
+	 * Remove an interval.
+	 *
+	 * @param low
+	 *            The start of the interval.
+	 * @param key
+	 *            The identifier of the interval.
+	 * @return Whether the interval was found.
+	 */
+	public boolean remove(long low, long key) {
+		int before = size;
+		root = remove(root, low, key);
+		return size < before;
+	}
+
+	/**
+	 * Determine whether an interval overlaps [low, high).
+	 *
+	 * @param low
+	 *            The start of the range, inclusive.
+	 * @param high
+	 *            The end of the range, exclusive.
+	 * @return Whether an overlapping interval exists.
+	 */
+	public boolean overlaps(long low, long high) {
+		var node = root;
+		while (node != null && node.maxHigh > low) {
+			if (node.low < high && node.high > low) {
+				return true;
+			}
+			// intervals on the right start later than this one
+			if (node.left != null && node.left.maxHigh > low) {
+				node = node.left;
+			} else if (node.low < high) {
+				node = node.right;
+			} else {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the values of the intervals overlapping [low, high).
+	 *
+	 * @param low
+	 *            The start of the range, inclusive.
+	 * @param high
+	 *            The end of the range, exclusive.
+	 * @return The values, in order of interval start.
+	 */
+	public List<T> overlapping(long low, long high) {
+		var result = new ArrayList<T>();
+		collect(root, low, high, result);
+		return result;
+	}
+
+	/** Run an action on every value, in order of interval start. */
+	public void forEach(Consumer<T> action) {
+		forEach(root, action);
+	}
+
+	private Node<T> insert(Node<T> node, Node<T> created) {
+		if (node == null) {
+			return created;
+		}
+		if (created.compareTo(node.low, node.key) < 0) {
+			node.left = insert(node.left, created);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.right = insert(node.right, created);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		node.update();
+		return node;
+	}
+
+	private Node<T> remove(Node<T> node, long low, long key) {
+		if (node == null) {
+			return null;
+		}
+		int c = node.compareTo(low, key);
+		if (c > 0) {
+			node.left = remove(node.left, low, key);
+		} else if (c < 0) {
+			node.right = remove(node.right, low, key);
+		} else {
+			--size;
+			return merge(node.left, node.right);
+		}
+		node.update();
+		return node;
+	}
+
+	private Node<T> merge(Node<T> left, Node<T> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		}
+		right.left = merge(left, right.left);
+		right.update();
+		return right;
+	}
+
+	private Node<T> rotateRight(Node<T> node) {
+		var left = node.left;
+		node.left = left.right;
+		left.right = node;
+		node.update();
+		left.update();
+		return left;
+	}
+
+	private Node<T> rotateLeft(Node<T> node) {
+		var right = node.right;
+		node.right = right.left;
+		right.left = node;
+		node.update();
+		right.update();
+		return right;
+	}
+
+	private void collect(Node<T> node, long low, long high, List<T> result) {
+		if (node == null || node.maxHigh <= low) {
+			return;
+		}
+		collect(node.left, low, high, result);
+		if (node.low >= high) {
+			return;
+		}
+		if (node.high > low) {
+			result.add(node.value);
+		}
+		collect(node.right, low, high, result);
+	}
+
+	private void forEach(Node<T> node, Consumer<T> action) {
+		if (node == null) {
+			return;
+		}
+		forEach(node.left, action);
+		action.accept(node.value);
+		forEach(node.right, action);
+	}
+
+}
@@ -0,0 +1,324 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking.RenewalStatus;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Renews the monthly bookings with a billing account when they end. Bookings
+ * that ended since the catch-up time or end within the window are fetched in
+ * chunks, charged with a bounded number of payments in flight, and followed by
+ * a booking of the same spot for the next month, saved for the whole chunk at
+ * once. The progress of each renewal is saved on the booking before and after
+ * charging, each step only applying if the renewal is still at the previous
+ * one, and charges carry the ID of the booking as reference, so that a
+ * renewal interrupted by a crash is resumed by the next run without charging
+ * twice. Charges of which the next booking cannot be saved are refunded, as
+ * are the unfinished renewals of bookings that ended before the catch-up time.
+ * Scheduled runs happen on a thread of their own.
+ */
+@Service
+public class MonthlyRenewalService {
+
+	/** Outcome of a run of the renewals. */
+	public static class RenewalReport {
+
+		private int renewed = 0;
+		private int failed = 0;
+		private int pending = 0;
+
+		/** Number of bookings renewed. */
+		public int getRenewed() {
+			return renewed;
+		}
+
+		/** Number of bookings that cannot be renewed. */
+		public int getFailed() {
+			return failed;
+		}
+
+		/** Number of bookings left to retry on the next run. */
+		public int getPending() {
+			return pending;
+		}
+
+	}
+
+	/** Outcome of the charge of a renewal. */
+	private enum Charge {
+		PAID, DECLINED, UNAVAILABLE
+	}
+
+	@Autowired
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@Autowired
+	private ParkingLotSystemRepository configurationRepository;
+
+	@Autowired
+	private ParkingSpotBookingService bookingService;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Value("${opls.renewal.window-ms:86400000}")
+	private long window = 86400000;
+
+	@Value("${opls.renewal.catch-up-ms:604800000}")
+	private long catchUp = 604800000;
+
+	@Value("${opls.renewal.chunk-size:500}")
+	private int chunkSize = 500;
+
+	@Value("${opls.renewal.parallelism:8}")
+	private int parallelism = 8;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	/**
+	 * Thread running the scheduled renewals, so that a long run does not hold
+	 * the thread shared by the scheduled tasks.
+	 */
+	private final ExecutorService renewer = Executors
+			.newSingleThreadExecutor(runnable -> {
+				var thread = new Thread(runnable, "opls-renewal");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	@PreDestroy
+	public void shutdown() {
+		renewer.shutdownNow();
+	}
+
+	/**
+	 * Start renewing the bookings ending around now, unless a run is in
+	 * progress.
+	 */
+	@Scheduled(initialDelayString = "${opls.renewal.interval-ms:3600000}", fixedDelayString = "${opls.renewal.interval-ms:3600000}")
+	public void renewScheduled() {
+		if (!running.get()) {
+			renewer.execute(() -> renewEnding(new Date()));
+		}
+	}
+
+	/**
+	 * Renew the bookings that ended since the catch-up time or end within the
+	 * window of a date. Does nothing if a run is in progress.
+	 *
+	 * @param now
+	 *            The current date.
+	 * @return The outcome of the run.
+	 */
+	public RenewalReport renewEnding(Date now) {
+		var report = new RenewalReport();
+		if (!running.compareAndSet(false, true)) {
+			return report;
+		}
+
+		var executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			var fromDate = new Date(now.getTime() - catchUp);
+			var untilDate = new Date(now.getTime() + window);
+			double cost = configurationRepository.getActiveParkingLotSystem()
+					.getMonthlyFee();
+			abandonStale(fromDate, report);
+
+			int afterId = 0;
+			while (true) {
+				var chunk = bookingRepository.getRenewableBookings(fromDate,
+						untilDate, afterId, chunkSize);
+				if (chunk.isEmpty()) {
+					break;
+				}
+				afterId = chunk.get(chunk.size() - 1).getId();
+				renewChunk(chunk, cost, executor, report);
+			}
+		} finally {
+			executor.shutdown();
+			running.set(false);
+		}
+		return report;
+	}
+
+	/**
+	 * Refund and fail the unfinished renewals of bookings that ended before a
+	 * date, too long ago to book the next month.
+	 */
+	private void abandonStale(Date date, RenewalReport report) {
+		int afterId = 0;
+		while (true) {
+			var chunk = bookingRepository.getStaleRenewals(date, afterId,
+					chunkSize);
+			if (chunk.isEmpty()) {
+				break;
+			}
+			afterId = chunk.get(chunk.size() - 1).getId();
+
+			var charging = new ArrayList<Integer>();
+			var charged = new ArrayList<Integer>();
+			for (var booking : chunk) {
+				paymentService.refundPayment(reference(booking));
+				(booking.getRenewalStatus() == RenewalStatus.CHARGED
+						? charged
+						: charging).add(booking.getId());
+			}
+			report.failed += fail(charging, RenewalStatus.CHARGING);
+			report.failed += fail(charged, RenewalStatus.CHARGED);
+		}
+	}
+
+	private void renewChunk(List<ParkingSpotBooking> chunk, double cost,
+			ExecutorService executor, RenewalReport report) {
+		// checkpoint the renewals to start, other runs skip them
+		var fresh = new ArrayList<Integer>();
+		for (var booking : chunk) {
+			if (booking.getRenewalStatus() == null) {
+				fresh.add(booking.getId());
+			}
+		}
+		var claimed = new HashSet<Integer>(
+				fresh.isEmpty() ? fresh : bookingRepository.claimRenewals(fresh));
+
+		var toCharge = new ArrayList<ParkingSpotBooking>();
+		var charged = new ArrayList<ParkingSpotBooking>();
+		var failed = new ArrayList<Integer>();
+		for (var booking : chunk) {
+			var status = booking.getRenewalStatus();
+			if (status == RenewalStatus.CHARGED) {
+				// charged before an interruption
+				charged.add(booking);
+			} else if (status == RenewalStatus.CHARGING
+					|| claimed.contains(booking.getId())) {
+				if (bookingService.isRenewable(booking)) {
+					toCharge.add(booking);
+				} else {
+					if (status == RenewalStatus.CHARGING) {
+						// may have been charged before an interruption
+						paymentService.refundPayment(reference(booking));
+					}
+					failed.add(booking.getId());
+				}
+			}
+		}
+
+		// charge with a bounded number of payments in flight
+		var futures = new ArrayList<Future<Charge>>();
+		for (var booking : toCharge) {
+			futures.add(executor.submit(() -> charge(booking, cost)));
+		}
+		var paid = new ArrayList<ParkingSpotBooking>();
+		for (int i = 0; i < toCharge.size(); ++i) {
+			var booking = toCharge.get(i);
+			switch (await(futures.get(i))) {
+				case PAID :
+					paid.add(booking);
+					break;
+				case DECLINED :
+					failed.add(booking.getId());
+					break;
+				default :
+					// left as charging, retried with the same reference
+					++report.pending;
+			}
+		}
+		if (!paid.isEmpty()) {
+			// skip the renewals moved on by another run since
+			var ids = new ArrayList<Integer>();
+			for (var booking : paid) {
+				ids.add(booking.getId());
+			}
+			var advanced = new HashSet<Integer>(bookingRepository
+					.advanceRenewals(ids, RenewalStatus.CHARGING,
+							RenewalStatus.CHARGED));
+			for (var booking : paid) {
+				if (advanced.contains(booking.getId())) {
+					charged.add(booking);
+				}
+			}
+		}
+		report.failed += fail(failed, RenewalStatus.CHARGING);
+
+		// save the next bookings in one batch
+		if (charged.isEmpty()) {
+			return;
+		}
+		try {
+			report.renewed += bookingService.saveRenewals(charged, cost).size();
+		} catch (DataIntegrityViolationException e) {
+			// a spot was booked since, save the others one by one
+			for (var booking : charged) {
+				try {
+					report.renewed += bookingService
+							.saveRenewals(List.of(booking), cost).size();
+				} catch (DataIntegrityViolationException conflict) {
+					paymentService.refundPayment(reference(booking));
+					report.failed += fail(List.of(booking.getId()),
+							RenewalStatus.CHARGED);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fail the renewals of a set of bookings still at a step.
+	 *
+	 * @return The number of failed renewals.
+	 */
+	private int fail(List<Integer> ids, RenewalStatus from) {
+		return ids.isEmpty()
+				? 0
+				: bookingRepository
+						.advanceRenewals(ids, from, RenewalStatus.FAILED)
+						.size();
+	}
+
+	/** Reference of the charge of the renewal of a booking. */
+	private static String reference(ParkingSpotBooking booking) {
+		return "renewal-" + booking.getUuid();
+	}
+
+	private Charge charge(ParkingSpotBooking booking, double cost) {
+		try {
+			paymentService.submitPayment(booking.getBillingAccountId(), cost,
+					reference(booking));
+			return Charge.PAID;
+		} catch (OplsApiException e) {
+			return e.getStatusCode() == HttpStatus.BAD_REQUEST
+					? Charge.DECLINED
+					: Charge.UNAVAILABLE;
+		}
+	}
+
+	private static Charge await(Future<Charge> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			return Charge.UNAVAILABLE;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Charge.UNAVAILABLE;
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Pool of the free RESERVED parking spots, from which monthly bookings are
+ * given a spot. The pool is seeded from the database, then follows the
+ * changes published by the occupancy index, so spots return to it when their
+ * booking is deleted or ends. Taking a spot is a single atomic removal, so
+ * concurrent requests never receive the same spot. The pool is only a hint:
+ * the booking service locks and checks the spot before booking it.
+ */
+@Service
+public class MonthlySpotAllocator implements ParkingSpotOccupancyIndex.Listener {
+
+	@Autowired
+	private ParkingSpotRepository spotRepository;
+
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	private final ConcurrentSkipListSet<String> pool = new ConcurrentSkipListSet<>();
+
+	/** Spots taken from the pool by bookings not yet saved. */
+	private final Set<String> allocated = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean seeded = false;
+
+	@PostConstruct
+	public void registerListener() {
+		occupancyIndex.addListener(this);
+	}
+
+	/**
+	 * Take a free spot from the pool.
+	 *
+	 * @return The ID of the spot, null if none is free.
+	 */
+	public String allocate() {
+		// bookings that ended return their spot
+		occupancyIndex.refresh();
+		seed();
+
+		var spotId = pool.pollFirst();
+		if (spotId != null) {
+			allocated.add(spotId);
+		}
+		return spotId;
+	}
+
+	/**
+	 * Finish an allocation.
+	 *
+	 * @param spotId
+	 *            The ID of the allocated spot.
+	 * @param free
+	 *            Whether the spot is still free, so it returns to the pool.
+	 */
+	public void release(String spotId, boolean free) {
+		allocated.remove(spotId);
+		if (free) {
+			pool.add(spotId);
+		}
+	}
+
+	/** Number of free spots in the pool. */
+	public int getFreeCount() {
+		seed();
+		return pool.size();
+	}
+
+	/** Fill the pool from the database, if not done since the last reset. */
+	private void seed() {
+		if (seeded) {
+			return;
+		}
+		synchronized (this) {
+			if (seeded) {
+				return;
+			}
+			pool.clear();
+			for (var spot : spotRepository.queryUnbooked(null,
+					Arrays.asList(ParkingSpotStatus.RESERVED), null)) {
+				if (!allocated.contains(spot.getId())) {
+					pool.add(spot.getId());
+				}
+			}
+			seeded = true;
+		}
+	}
+
+	@Override
+	public void spotChanged(ParkingSpotEventDto event) {
+		if (allocated.contains(event.id)) {
+			return;
+		}
+		if (event.parkingSpotStatus == ParkingSpotStatus.RESERVED
+				&& !event.booked) {
+			pool.add(event.id);
+		} else {
+			pool.remove(event.id);
+		}
+	}
+
+	@Override
+	public void reset() {
+		seeded = false;
+	}
+
+}
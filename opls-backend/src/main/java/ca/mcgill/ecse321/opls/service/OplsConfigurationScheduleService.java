@@ -5,6 +5,7 @@ import ca.mcgill.ecse321.opls.model.ParkingLotSystem.ParkingLotSystemSchedule;
 import ca.mcgill.ecse321.opls.model.Schedule.Day;
 import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
 import ca.mcgill.ecse321.opls.repository.ParkingLotSystemScheduleRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -25,6 +26,9 @@ public class OplsConfigurationScheduleService {
     @Autowired
     ParkingLotSystemScheduleRepository parkingLotSystemScheduleRepository;
 
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
     /**
      * Retrieves the parking lot system schedule for the given day.
      * If no schedule for the given day exists, throws an API exception.
@@ -80,6 +84,7 @@ public class OplsConfigurationScheduleService {
                     "the start time is after the end time!");
         }
 
+        resourceVersionService.bump(Family.SCHEDULE);
         return parkingLotSystemScheduleRepository.save(
                 parkingLotSystemRepository.getActiveParkingLotSystem().addSchedule(day, startTime, endTime));
     }
@@ -101,6 +106,7 @@ public class OplsConfigurationScheduleService {
                     "the start time is after the end time!");
         }
 
+        resourceVersionService.bump(Family.SCHEDULE);
         ParkingLotSystemSchedule plss = parkingLotSystemScheduleRepository.findActiveParkingLotScheduleByDay(day);
 
         if (isNull(plss)) {
@@ -127,6 +133,7 @@ public class OplsConfigurationScheduleService {
                     "a schedule for this day does not exist!");
         }
 
+        resourceVersionService.bump(Family.SCHEDULE);
         parkingLotSystemScheduleRepository.delete(plss);
         return plss;
     }
@@ -2,6 +2,7 @@ package ca.mcgill.ecse321.opls.service;
 
 import ca.mcgill.ecse321.opls.model.ParkingLotSystem;
 import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -12,6 +13,9 @@ public class OplsConfigurationService {
     @Autowired
     ParkingLotSystemRepository parkingLotSystemRepository;
 
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
     /**
      * Retrieves the current active parking lot system configuration from the parking lot system configuration
      * repository.
@@ -37,6 +41,7 @@ public class OplsConfigurationService {
         pls.setIncrementFee(incrementFee);
         pls.setIncrementTime(incrementTime);
         pls.setMaxIncrementTime(maxIncrementTime);
+        resourceVersionService.bump(Family.CONFIGURATION);
         return parkingLotSystemRepository.save(pls);
     }
 
@@ -49,6 +54,7 @@ public class OplsConfigurationService {
     public ParkingLotSystem setParkingLotSystemMonthlyFee(double monthlyFee) {
         ParkingLotSystem pls = parkingLotSystemRepository.getActiveParkingLotSystem();
         pls.setMonthlyFee(monthlyFee);
+        resourceVersionService.bump(Family.CONFIGURATION);
         return parkingLotSystemRepository.save(pls);
     }
 
@@ -61,6 +67,7 @@ public class OplsConfigurationService {
     public ParkingLotSystem setParkingLotSystemIncrementFee(double incrementFee) {
         ParkingLotSystem pls = parkingLotSystemRepository.getActiveParkingLotSystem();
         pls.setIncrementFee(incrementFee);
+        resourceVersionService.bump(Family.CONFIGURATION);
         return parkingLotSystemRepository.save(pls);
     }
 
@@ -73,6 +80,7 @@ public class OplsConfigurationService {
     public ParkingLotSystem setParkingLotSystemIncrementTime(int incrementTime) {
         ParkingLotSystem pls = parkingLotSystemRepository.getActiveParkingLotSystem();
         pls.setIncrementTime(incrementTime);
+        resourceVersionService.bump(Family.CONFIGURATION);
         return parkingLotSystemRepository.save(pls);
     }
 
@@ -85,6 +93,7 @@ public class OplsConfigurationService {
     public ParkingLotSystem setParkingLotSystemMaxIncrementTime(int maxIncrementTime) {
         ParkingLotSystem pls = parkingLotSystemRepository.getActiveParkingLotSystem();
         pls.setMaxIncrementTime(maxIncrementTime);
+        resourceVersionService.bump(Family.CONFIGURATION);
         return parkingLotSystemRepository.save(pls);
     }
 
@@ -0,0 +1,164 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import ca.mcgill.ecse321.opls.model.Schedule.Day;
+import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemScheduleRepository;
+
+/**
+ * Books a parking spot and a vehicle service during the parking together, so
+ * that they are validated against the same configuration and schedule, paid
+ * at once, and saved all or none.
+ */
+@Service
+public class ParkAndServiceBookingService {
+
+	@Autowired
+	private ParkingLotSystemRepository configurationRepository;
+
+	@Autowired
+	private ParkingLotSystemScheduleRepository scheduleRepository;
+
+	@Autowired
+	private ParkingSpotBookingService parkingSpotBookingService;
+
+	@Autowired
+	private VehicleServiceBookingService vehicleServiceBookingService;
+
+	/**
+	 * A parking spot booking and a vehicle service booking validated together.
+	 * The spot is claimed until the bundle is closed.
+	 */
+	public static class Bundle implements AutoCloseable {
+
+		private final ParkingSpotReservationEngine.Claim claim;
+		private ParkingSpotBooking spotBooking;
+		private VehicleServiceBooking serviceBooking;
+
+		private Bundle(ParkingSpotReservationEngine.Claim claim) {
+			this.claim = claim;
+		}
+
+		/** The parking spot booking. */
+		public ParkingSpotBooking getSpotBooking() {
+			return spotBooking;
+		}
+
+		/** The vehicle service booking. */
+		public VehicleServiceBooking getServiceBooking() {
+			return serviceBooking;
+		}
+
+		/** Identifier of the payment of the bookings. */
+		public String getReference() {
+			return "bundle-" + spotBooking.getUuid();
+		}
+
+		/** The total cost of the bookings. */
+		public double getCost() {
+			return spotBooking.getCost() + serviceBooking.getCost();
+		}
+
+		/** Release the claim on the spot. */
+		@Override
+		public void close() {
+			claim.close();
+		}
+
+	}
+
+	/**
+	 * Validate a request to park in a spot and have a vehicle service done
+	 * meanwhile. The spot is claimed until the bundle is closed.
+	 *
+	 * @param spot
+	 *            The requested parking spot.
+	 * @param startDate
+	 *            The start date of the parking.
+	 * @param duration
+	 *            Length of the parking in minutes.
+	 * @param vehicleType
+	 *            The type of vehicle the user is trying to park with.
+	 * @param vehicleServiceId
+	 *            Id of the requested vehicle service.
+	 * @param serviceStartDate
+	 *            The start date of the service.
+	 * @return The bundle of bookings with some filled in fields.
+	 * @throws OplsApiException
+	 *             if either booking is invalid, or the service is not done
+	 *             during the parking.
+	 */
+	public Bundle processBundle(ParkingSpot spot, Date startDate,
+			int duration, VehicleType vehicleType, String vehicleServiceId,
+			Date serviceStartDate) {
+		// read the configuration once for both bookings, and the schedule
+		// of each day, as the service can start after midnight
+		var config = configurationRepository.getActiveParkingLotSystem();
+		var startDay = Day.fromDate(startDate);
+		var serviceDay = Day.fromDate(serviceStartDate);
+		var todaySchedule = scheduleRepository
+				.findActiveParkingLotScheduleByDay(startDay);
+		var serviceSchedule = serviceDay == startDay
+				? todaySchedule
+				: scheduleRepository
+						.findActiveParkingLotScheduleByDay(serviceDay);
+
+		var bundle = new Bundle(parkingSpotBookingService.claimSpot(spot));
+		try {
+			bundle.spotBooking = parkingSpotBookingService
+					.processIncrementalBooking(spot, startDate, duration,
+							vehicleType, config, todaySchedule);
+			bundle.serviceBooking = vehicleServiceBookingService.processBooking(
+					vehicleServiceId, serviceStartDate, serviceSchedule);
+
+			// the vehicle stays parked for the whole service
+			if (bundle.serviceBooking.getStartDate()
+					.before(bundle.spotBooking.getStartDate())
+					|| bundle.serviceBooking.getEndDate()
+							.after(bundle.spotBooking.getEndDate())) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Vehicle service must be during the parking.");
+			}
+		} catch (RuntimeException e) {
+			bundle.close();
+			throw e;
+		}
+		return bundle;
+	}
+
+	/**
+	 * Save the bookings of a bundle to the database, both or none of them.
+	 *
+	 * @param bundle
+	 *            The bundle.
+	 * @param userAccountId
+	 *            The ID of the user making the bookings, null if it does not
+	 *            exist.
+	 * @param licensePlate
+	 *            The license plate of the vehicle.
+	 * @return The bundle with the saved entries.
+	 * @throws OplsApiException
+	 *             if the spot or the service was booked meanwhile.
+	 */
+	@Transactional
+	public Bundle saveBundle(Bundle bundle, Integer userAccountId,
+			String licensePlate) {
+		bundle.spotBooking = parkingSpotBookingService.saveBooking(
+				bundle.spotBooking, userAccountId, licensePlate);
+		bundle.serviceBooking = vehicleServiceBookingService.saveBooking(
+				bundle.serviceBooking, userAccountId, licensePlate);
+		return bundle;
+	}
+
+}
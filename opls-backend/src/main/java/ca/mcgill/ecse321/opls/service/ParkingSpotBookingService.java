@@ -1,19 +1,33 @@
 package ca.mcgill.ecse321.opls.service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import ca.mcgill.ecse321.opls.dto.spot.booking.SpotBookingResponseDto;
 import ca.mcgill.ecse321.opls.exception.OplsApiException;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.Customer;
+import ca.mcgill.ecse321.opls.model.ParkingLotSystem;
+import ca.mcgill.ecse321.opls.model.ParkingLotSystem.ParkingLotSystemSchedule;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking.RenewalStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
 import ca.mcgill.ecse321.opls.model.Schedule.Day;
@@ -22,6 +36,7 @@ import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
 import ca.mcgill.ecse321.opls.repository.ParkingLotSystemScheduleRepository;
 import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
 import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
 import jakarta.transaction.Transactional;
 
 @Service
@@ -42,6 +57,109 @@ public class ParkingSpotBookingService {
 	@Autowired
 	private CustomerRepository customerRepository;
 
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
+	@Autowired
+	private ParkingSpotReservationEngine reservationEngine;
+
+	@Autowired
+	private MonthlySpotAllocator monthlyAllocator;
+
+	@Autowired
+	private BookingLifecycleScheduler lifecycleScheduler;
+
+	@Autowired
+	private ConfirmationNumberGenerator confirmationNumbers;
+
+	@Autowired
+	private PaymentPipeline paymentPipeline;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	/**
+	 * Bookings of several parking spots validated together. The spots are
+	 * claimed until the batch is closed.
+	 */
+	public static class BookingBatch implements AutoCloseable {
+
+		private final List<ParkingSpotBooking> bookings = new ArrayList<>();
+		private final Map<String, String> failures = new LinkedHashMap<>();
+		private final Map<String, ParkingSpotReservationEngine.Claim> claims = new HashMap<>();
+		private final UUID reference = UUID.randomUUID();
+
+		private BookingBatch() {
+		}
+
+		/** The bookings of the valid spots, in order of request. */
+		public List<ParkingSpotBooking> getBookings() {
+			return bookings;
+		}
+
+		/** The reasons the other spots cannot be booked, by spot ID. */
+		public Map<String, String> getFailures() {
+			return failures;
+		}
+
+		/** Identifier of the payment of the bookings. */
+		public String getReference() {
+			return "batch-" + reference;
+		}
+
+		/** The total cost of the bookings. */
+		public double getCost() {
+			return bookings.stream().mapToDouble(ParkingSpotBooking::getCost)
+					.sum();
+		}
+
+		/** Release the claims on the spots. */
+		@Override
+		public void close() {
+			claims.values().forEach(ParkingSpotReservationEngine.Claim::close);
+			claims.clear();
+		}
+
+	}
+
+	/** Immutable view of a booking fetched by confirmation number. */
+	private record CachedBooking(UUID uuid, BookingStatus status,
+			String parkingSpotId, String confirmationNumber, long startTime,
+			long endTime, double cost) {
+
+		private CachedBooking(ParkingSpotBooking booking) {
+			this(booking.getUuid(), booking.getBookingStatus(),
+					booking.getParkingSpot() == null
+							? null
+							: booking.getParkingSpot().getId(),
+					booking.getConfirmationNumber(),
+					booking.getStartDate().getTime(),
+					booking.getEndDate().getTime(), booking.getCost());
+		}
+
+		private SpotBookingResponseDto toDto() {
+			var dto = new SpotBookingResponseDto();
+			dto.uuid = uuid;
+			dto.status = status;
+			dto.parkingSpotId = parkingSpotId;
+			dto.confirmationNumber = confirmationNumber;
+			dto.startDate = new Date(startTime);
+			dto.endDate = new Date(endTime);
+			dto.cost = cost;
+			return dto;
+		}
+	}
+
+	/** Number of bookings kept by confirmation number. */
+	private static final int CONFIRMATION_CACHE_SIZE = 1024;
+
+	/** Bookings recently fetched by confirmation number, such as at the gates. */
+	private final BookingLookupCache<CachedBooking> bookingsByConfirmationNumber = new BookingLookupCache<>(
+			CONFIRMATION_CACHE_SIZE, CachedBooking::endTime);
+
 	/**
 	 * Fetch the current booking for the parking spot.
 	 * 
@@ -53,6 +171,28 @@ public class ParkingSpotBookingService {
 		return bookingRepository.getActiveBooking(spot);
 	}
 
+	/**
+	 * Fetch the current bookings for several parking spots in one query.
+	 * 
+	 * @param spots
+	 *            The parking spots.
+	 * @return The ParkingSpotBooking entities by parking spot ID. Spots
+	 *         without a current booking are absent.
+	 */
+	public Map<String, ParkingSpotBooking> getBookings(
+			Collection<ParkingSpot> spots) {
+		var bookings = new HashMap<String, ParkingSpotBooking>();
+		if (spots.isEmpty()) {
+			return bookings;
+		}
+
+		var ids = spots.stream().map(ParkingSpot::getId).toList();
+		for (var booking : bookingRepository.getActiveBookings(ids)) {
+			bookings.put(booking.getParkingSpot().getId(), booking);
+		}
+		return bookings;
+	}
+
 	/**
 	 * Fetch the parking spot booking.
 	 * 
@@ -94,6 +234,24 @@ public class ParkingSpotBookingService {
 		return booking;
 	}
 
+	/**
+	 * Fetch the response for a parking spot booking, kept until the booking
+	 * changes or ends so that repeated lookups, such as at the gates, do not
+	 * reach the database.
+	 * 
+	 * @param confirmationNumber
+	 *            The confirmation number of the booking.
+	 * @return A new response for the booking.
+	 * @throws OplsApiException
+	 *             if the booking is not found.
+	 */
+	public SpotBookingResponseDto getBookingResponse(
+			String confirmationNumber) {
+		return bookingsByConfirmationNumber.get(confirmationNumber,
+				() -> new CachedBooking(getBooking(confirmationNumber)))
+				.toDto();
+	}
+
 	/**
 	 * Fetch bookings by status.
 	 * 
@@ -121,7 +279,75 @@ public class ParkingSpotBookingService {
 	}
 
 	/**
-	 * Validate a parking spot booking request.
+	 * Claim a parking spot for a booking request, so that no concurrent
+	 * request can book it until the claim is closed.
+	 * 
+	 * @param spot
+	 *            The requested parking spot.
+	 * @return The claim, to close once the booking is saved or abandoned.
+	 * @throws OplsApiException
+	 *             if the spot is booked or claimed by another request.
+	 */
+	public ParkingSpotReservationEngine.Claim claimSpot(ParkingSpot spot) {
+		var claim = reservationEngine.claim(spot.getId());
+		try {
+			// checked after claiming, so that no booking is saved meanwhile
+			assertNotBooked(spot);
+		} catch (RuntimeException e) {
+			claim.close();
+			throw e;
+		}
+		return claim;
+	}
+
+	/**
+	 * Lock a parking spot until the end of the transaction, then ensure it is
+	 * not booked.
+	 */
+	private void lockNotBooked(ParkingSpot spot) {
+		spotRepository.lockParkingSpotById(spot.getId());
+		assertNotBooked(spot);
+	}
+
+	/**
+	 * Give a free RESERVED parking spot to a monthly booking. The spot returns
+	 * to the pool if the transaction rolls back.
+	 * 
+	 * @param booking
+	 *            The booking without a parking spot.
+	 * @throws OplsApiException
+	 *             if no spot is free.
+	 */
+	private void assignMonthlySpot(ParkingSpotBooking booking) {
+		while (true) {
+			var spotId = monthlyAllocator.allocate();
+			if (spotId == null) {
+				throw new OplsApiException(HttpStatus.CONFLICT,
+						"No open monthly spots found.");
+			}
+
+			// the pool may be out of date, so check the spot under its lock
+			var spot = spotRepository.lockParkingSpotById(spotId);
+			if (spot == null
+					|| spot.getParkingSpotStatus() != ParkingSpotStatus.RESERVED
+					|| bookingRepository.isParkingSpotBookedDuring(spotId,
+							booking.getStartDate(), booking.getEndDate())) {
+				monthlyAllocator.release(spotId, false);
+				continue;
+			}
+
+			TransactionHooks
+					.afterCommit(() -> monthlyAllocator.release(spotId, false));
+			TransactionHooks
+					.afterRollback(() -> monthlyAllocator.release(spotId, true));
+			booking.setParkingSpot(spot);
+			return;
+		}
+	}
+
+	/**
+	 * Validate a parking spot booking request. The spot must be claimed with
+	 * claimSpot, which ensures it is not booked.
 	 * 
 	 * @param spot
 	 *            The requested parking spot.
@@ -135,7 +361,139 @@ public class ParkingSpotBookingService {
 	 */
 	public ParkingSpotBooking processIncrementalBooking(ParkingSpot spot,
 			Date startDate, int duration, VehicleType vehicleType) {
-		// validate spot
+		// get current configuration
+		var config = configurationRepository.getActiveParkingLotSystem();
+		return processIncrementalBooking(spot, startDate, duration,
+				vehicleType, config, scheduleRepository
+						.findActiveParkingLotScheduleByDay(Day.fromDate(startDate)));
+	}
+
+	/**
+	 * Validate a parking spot booking request against a configuration and
+	 * schedule, so that other bookings can be validated against the same
+	 * ones. The spot must be claimed with claimSpot.
+	 * 
+	 * @param spot
+	 *            The requested parking spot.
+	 * @param startDate
+	 *            The start date of the reservation.
+	 * @param duration
+	 *            Length of the requested booking in minutes.
+	 * @param vehicleType
+	 *            The type of vehicle the user is trying to park with.
+	 * @param config
+	 *            The active configuration.
+	 * @param todaySchedule
+	 *            The schedule on the day of the start date, null if closed.
+	 * @return The the booking with some filled in fields.
+	 */
+	public ParkingSpotBooking processIncrementalBooking(ParkingSpot spot,
+			Date startDate, int duration, VehicleType vehicleType,
+			ParkingLotSystem config, ParkingLotSystemSchedule todaySchedule) {
+		validateSpot(spot, vehicleType);
+
+		int numIncrements = countIncrements(config, duration);
+		var endDate = validatePeriod(config, todaySchedule, startDate,
+				numIncrements);
+
+		return newIncrementalBooking(spot, startDate, endDate,
+				numIncrements * config.getIncrementFee());
+	}
+
+	/**
+	 * Validate a request to book several parking spots at once, against one
+	 * configuration and schedule. The spots are claimed until the batch is
+	 * closed.
+	 * 
+	 * @param spotIds
+	 *            The requested parking spots.
+	 * @param startDate
+	 *            The start date of the reservations.
+	 * @param duration
+	 *            Length of the requested bookings in minutes.
+	 * @param vehicleType
+	 *            The type of vehicle the user is trying to park with.
+	 * @param bestEffort
+	 *            Whether to keep the valid spots when others are invalid.
+	 * @return The batch of bookings with some filled in fields, and the spots
+	 *         that cannot be booked.
+	 * @throws OplsApiException
+	 *             if the period is invalid, if a spot cannot be booked and
+	 *             bestEffort is not set, or if no spot can be booked.
+	 */
+	public BookingBatch processIncrementalBookings(Collection<String> spotIds,
+			Date startDate, int duration, VehicleType vehicleType,
+			boolean bestEffort) {
+		// validate the period once
+		var config = configurationRepository.getActiveParkingLotSystem();
+		int numIncrements = countIncrements(config, duration);
+		var endDate = validatePeriod(config,
+				scheduleRepository.findActiveParkingLotScheduleByDay(
+						Day.fromDate(startDate)),
+				startDate, numIncrements);
+		double cost = numIncrements * config.getIncrementFee();
+
+		// fetch the spots in one query
+		var ids = new LinkedHashSet<String>(spotIds);
+		var spots = new HashMap<String, ParkingSpot>();
+		for (var spot : spotRepository.findAllById(ids)) {
+			spots.put(spot.getId(), spot);
+		}
+
+		// claim the valid spots
+		var batch = new BookingBatch();
+		var failures = new HashMap<String, String>();
+		var claimed = new ArrayList<ParkingSpot>();
+		for (var id : ids) {
+			var spot = spots.get(id);
+			try {
+				if (spot == null) {
+					throw new OplsApiException(HttpStatus.NOT_FOUND,
+							"Parking spot not found.");
+				}
+				validateSpot(spot, vehicleType);
+				batch.claims.put(id, reservationEngine.claim(id));
+				claimed.add(spot);
+			} catch (OplsApiException e) {
+				failures.put(id, e.getReason());
+			}
+		}
+
+		// then check the bookings of the claimed spots in one query
+		var booked = getBookings(claimed);
+		for (var spot : claimed) {
+			if (booked.containsKey(spot.getId())) {
+				batch.claims.remove(spot.getId()).close();
+				failures.put(spot.getId(), "Parking spot already booked.");
+			} else {
+				batch.bookings.add(
+						newIncrementalBooking(spot, startDate, endDate, cost));
+			}
+		}
+
+		for (var id : ids) {
+			if (failures.containsKey(id)) {
+				batch.failures.put(id, failures.get(id));
+			}
+		}
+
+		if (batch.bookings.isEmpty()
+				|| (!bestEffort && !batch.failures.isEmpty())) {
+			batch.close();
+			var details = new StringBuilder();
+			batch.failures.forEach((id, reason) -> details.append(id)
+					.append(": ").append(reason).append('\n'));
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Parking spots cannot be booked.",
+					details.toString().trim());
+		}
+
+		return batch;
+	}
+
+	/** Ensure a parking spot can be booked for a vehicle type. */
+	private static void validateSpot(ParkingSpot spot,
+			VehicleType vehicleType) {
 		if (vehicleType != spot.getVehicleType()) {
 			throw new OplsApiException(HttpStatus.BAD_REQUEST,
 					"Invalid vehicle type.");
@@ -144,48 +502,53 @@ public class ParkingSpotBookingService {
 			throw new OplsApiException(HttpStatus.BAD_REQUEST,
 					"Parking spot is reserved.");
 		}
+	}
 
-		assertNotBooked(spot);
-
-		// get current configuration
-		var config = configurationRepository.getActiveParkingLotSystem();
-
-		// round up duration
+	/** Round a duration in minutes up to a number of increments. */
+	private static int countIncrements(ParkingLotSystem config,
+			int duration) {
 		int numIncrements = duration / config.getIncrementTime();
 		if (duration % config.getIncrementTime() > 0) {
 			numIncrements++;
 		}
-		duration = numIncrements * config.getIncrementTime();
 
-		if (duration > config.getMaxIncrementTime()) {
+		if (numIncrements * config.getIncrementTime() > config
+				.getMaxIncrementTime()) {
 			throw new OplsApiException(HttpStatus.BAD_REQUEST,
 					"Cannot park for more than " + config.getMaxIncrementTime()
 							+ " minutes.");
 		}
+		return numIncrements;
+	}
 
+	/**
+	 * Ensure a period of increments is within opening hours.
+	 * 
+	 * @return The end date of the period.
+	 */
+	private static Date validatePeriod(ParkingLotSystem config,
+			ParkingLotSystemSchedule todaySchedule, Date startDate,
+			int numIncrements) {
 		// compute time in milliseconds
-		var endDate = new Date(
-				startDate.getTime() + TimeUnit.MINUTES.toMillis(duration));
+		var endDate = new Date(startDate.getTime() + TimeUnit.MINUTES
+				.toMillis(numIncrements * config.getIncrementTime()));
 
-		// get schedule for today
-		var calendar = Calendar.getInstance();
-		calendar.setTime(startDate);
-		var todaySchedule = scheduleRepository
-				.findActiveParkingLotScheduleByDay(Day
-						.fromCalendarDay(calendar.get(Calendar.DAY_OF_WEEK)));
 		if (todaySchedule == null
 				|| todaySchedule.inScheduleOnDay(startDate, endDate)) {
 			throw new OplsApiException(HttpStatus.BAD_REQUEST,
 					"Cannot park outside of opening hours.");
 		}
+		return endDate;
+	}
 
-		// create booking entry
+	/** Create the booking entry of an incremental booking. */
+	private static ParkingSpotBooking newIncrementalBooking(ParkingSpot spot,
+			Date startDate, Date endDate, double cost) {
 		var booking = spot.newBooking();
 		booking.setBookingStatus(BookingStatus.REQUESTED);
 		booking.setDateRange(startDate, endDate);
 		booking.setParkingSpot(spot);
-		booking.setCost((double) numIncrements * config.getIncrementFee());
-
+		booking.setCost(cost);
 		return booking;
 	}
 
@@ -216,23 +579,93 @@ public class ParkingSpotBookingService {
 					"No open monthly spots found.");
 		}
 
-		// calculate end date
-		var calendar = Calendar.getInstance();
-		calendar.setTime(startDate);
-		calendar.add(Calendar.MONTH, 1);
-		var endDate = calendar.getTime();
-
 		// create booking entry
 		var booking = new ParkingSpotBooking();
 		booking.setBookingStatus(BookingStatus.REQUESTED);
-		booking.setDateRange(startDate, endDate);
+		booking.setDateRange(startDate, addMonth(startDate));
 		booking.setCost(config.getMonthlyFee());
 
 		return booking;
 	}
 
+	/** Get the date one month after a date. */
+	private static Date addMonth(Date date) {
+		var calendar = Calendar.getInstance();
+		calendar.setTime(date);
+		calendar.add(Calendar.MONTH, 1);
+		return calendar.getTime();
+	}
+
+	/**
+	 * Determine whether the spot of a monthly booking is free for the month
+	 * after it ends.
+	 * 
+	 * @param booking
+	 *            The booking to renew.
+	 * @return Whether the booking can be renewed.
+	 */
+	public boolean isRenewable(ParkingSpotBooking booking) {
+		var endDate = booking.getEndDate();
+		return !bookingRepository.isParkingSpotBookedDuring(
+				booking.getParkingSpot().getId(), endDate, addMonth(endDate));
+	}
+
+	/**
+	 * Save the bookings following paid renewals of monthly bookings, on the
+	 * same spots, and record the renewals as done in the same transaction.
+	 * Bookings of which the renewal is not at the charged step anymore, such
+	 * as when renewed by another run, are skipped.
+	 * 
+	 * @param bookings
+	 *            The renewed bookings.
+	 * @param cost
+	 *            The amount charged for each renewal.
+	 * @return The saved bookings.
+	 */
+	@Transactional
+	public List<ParkingSpotBooking> saveRenewals(
+			Collection<ParkingSpotBooking> bookings, double cost) {
+		var ids = new ArrayList<Integer>();
+		for (var booking : bookings) {
+			ids.add(booking.getId());
+		}
+		var renewed = new HashSet<Integer>(bookingRepository
+				.advanceRenewals(ids, RenewalStatus.CHARGED,
+						RenewalStatus.RENEWED));
+
+		var renewals = new ArrayList<ParkingSpotBooking>();
+		for (var booking : bookings) {
+			if (!renewed.contains(booking.getId())) {
+				continue;
+			}
+			var renewal = booking.getParkingSpot().newBooking();
+			renewal.setDateRange(booking.getEndDate(),
+					addMonth(booking.getEndDate()));
+			renewal.setCost(cost);
+			renewal.setCustomer(booking.getCustomer());
+			renewal.setLicensePlate(booking.getLicensePlate());
+			renewal.setBillingAccountId(booking.getBillingAccountId());
+			renewal.setBookingStatus(BookingStatus.CONFIRMED);
+			renewal.setConfirmationNumber(confirmationNumbers.next());
+			renewals.add(renewal);
+		}
+
+		var saved = new ArrayList<ParkingSpotBooking>();
+		if (renewals.isEmpty()) {
+			return saved;
+		}
+		for (var renewal : bookingRepository.saveAll(renewals)) {
+			occupancyIndex.bookingSaved(renewal);
+			lifecycleScheduler.bookingSaved(renewal);
+			saved.add(renewal);
+		}
+		resourceVersionService.bump(Family.SPOTS);
+		return saved;
+	}
+
 	/**
-	 * Save a parking spot booking to the database.
+	 * Save a parking spot booking to the database. Bookings without a parking
+	 * spot are given a free RESERVED spot.
 	 * 
 	 * @param booking
 	 *            The booking.
@@ -242,14 +675,95 @@ public class ParkingSpotBookingService {
 	 * @param licensePlate
 	 *            The license plate of the parked user.
 	 * @return The saved entry.
+	 * @throws OplsApiException
+	 *             if the spot is booked, or no spot is free for a monthly
+	 *             booking.
 	 */
 	@Transactional
 	public ParkingSpotBooking saveBooking(ParkingSpotBooking booking,
 			Integer userAccountId, String licensePlate) {
-		// determine if yet to be assigned
-		if (booking.getParkingSpot() != null) {
-			booking.setBookingStatus(BookingStatus.CONFIRMED);
+		return saveBooking(booking, userAccountId, licensePlate,
+				BookingStatus.CONFIRMED);
+	}
+
+	/**
+	 * Save a parking spot booking awaiting payment to the database. The
+	 * booking holds its spot in the REQUESTED status until the payment
+	 * completes.
+	 * 
+	 * @param booking
+	 *            The booking.
+	 * @param userAccountId
+	 *            The ID of the user making the booking, null if it does not
+	 *            exist.
+	 * @param licensePlate
+	 *            The license plate of the parked user.
+	 * @return The saved entry.
+	 * @throws OplsApiException
+	 *             if the spot is booked, or no spot is free for a monthly
+	 *             booking.
+	 */
+	@Transactional
+	public ParkingSpotBooking holdBooking(ParkingSpotBooking booking,
+			Integer userAccountId, String licensePlate) {
+		return saveBooking(booking, userAccountId, licensePlate,
+				BookingStatus.REQUESTED);
+	}
+
+	/**
+	 * Apply the outcome of the payment of a held booking. Paid bookings are
+	 * confirmed, and the others are removed to free their spot.
+	 * 
+	 * @param bookingId
+	 *            The ID of the booking.
+	 * @param paid
+	 *            Whether the payment succeeded.
+	 * @throws OplsApiException
+	 *             if the booking does not exist anymore.
+	 */
+	@Transactional
+	public void completePayment(UUID bookingId, boolean paid) {
+		if (!paid) {
+			deleteBooking(bookingId);
+			return;
+		}
+
+		var booking = getBooking(bookingId);
+		booking.setBookingStatus(BookingStatus.CONFIRMED);
+		bookingRepository.save(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		lifecycleScheduler.bookingSaved(booking);
+		resourceVersionService.bump(Family.SPOTS);
+	}
+
+	/**
+	 * Settle the held bookings whose payment has no outcome in the payment
+	 * pipeline anymore, such as after a restart. Bookings charged by the bank
+	 * are confirmed, and the others are removed to free their spot.
+	 */
+	@Scheduled(fixedDelayString = "${opls.payment.sweep-ms:60000}")
+	@Transactional
+	public void settleHeldBookings() {
+		var cutoff = new Date(
+				System.currentTimeMillis() - paymentPipeline.getMaxDuration());
+		for (var booking : bookingRepository.getHeldBookingsBefore(cutoff)) {
+			if (!paymentPipeline.isPending(booking.getUuid())) {
+				completePayment(booking.getUuid(),
+						paymentService.isCharged(booking.getUuid().toString()));
+			}
 		}
+	}
+
+	private ParkingSpotBooking saveBooking(ParkingSpotBooking booking,
+			Integer userAccountId, String licensePlate, BookingStatus status) {
+		// assign a spot to monthly bookings
+		if (booking.getParkingSpot() == null) {
+			assignMonthlySpot(booking);
+		} else {
+			lockNotBooked(booking.getParkingSpot());
+		}
+		booking.setBookingStatus(status);
 
 		// attach registered user
 		if (userAccountId != null) {
@@ -260,9 +774,67 @@ public class ParkingSpotBookingService {
 		booking.setLicensePlate(licensePlate);
 
 		// generate confirmation number
-		booking.generateConfirmationNumber();
+		booking.setConfirmationNumber(confirmationNumbers.next());
+
+		booking = bookingRepository.save(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		occupancyIndex.bookingSaved(booking);
+		lifecycleScheduler.bookingSaved(booking);
+		resourceVersionService.bump(Family.SPOTS);
+		return booking;
+	}
+
+	/**
+	 * Save the bookings of a batch to the database, all or none of them.
+	 * 
+	 * @param bookings
+	 *            The bookings, each with a parking spot.
+	 * @param userAccountId
+	 *            The ID of the user making the bookings, null if it does not
+	 *            exist.
+	 * @param licensePlate
+	 *            The license plate of the parked user.
+	 * @return The saved entries.
+	 * @throws OplsApiException
+	 *             if one of the spots is booked.
+	 */
+	@Transactional
+	public List<ParkingSpotBooking> saveBookings(
+			Collection<ParkingSpotBooking> bookings, Integer userAccountId,
+			String licensePlate) {
+		var ids = new ArrayList<String>();
+		for (var booking : bookings) {
+			ids.add(booking.getParkingSpot().getId());
+		}
+		spotRepository.lockParkingSpotsById(ids);
+		if (bookingRepository.getActiveBookings(ids).iterator().hasNext()) {
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Parking spot already booked.");
+		}
+
+		// attach registered user
+		Customer customer = null;
+		if (userAccountId != null) {
+			customer = customerRepository
+					.findCustomerByUserAccountId(userAccountId);
+		}
 
-		return bookingRepository.save(booking);
+		for (var booking : bookings) {
+			booking.setBookingStatus(BookingStatus.CONFIRMED);
+			booking.setCustomer(customer);
+			booking.setLicensePlate(licensePlate);
+			booking.setConfirmationNumber(confirmationNumbers.next());
+		}
+
+		var saved = new ArrayList<ParkingSpotBooking>();
+		for (var booking : bookingRepository.saveAll(bookings)) {
+			occupancyIndex.bookingSaved(booking);
+			lifecycleScheduler.bookingSaved(booking);
+			saved.add(booking);
+		}
+		resourceVersionService.bump(Family.SPOTS);
+		return saved;
 	}
 
 	/**
@@ -284,7 +856,7 @@ public class ParkingSpotBookingService {
 
 		// update spot
 		if (newSpot != null) {
-			assertNotBooked(newSpot);
+			lockNotBooked(newSpot);
 			booking.setParkingSpot(newSpot);
 		}
 
@@ -294,7 +866,13 @@ public class ParkingSpotBookingService {
 		}
 
 		// save
-		return bookingRepository.save(booking);
+		booking = bookingRepository.save(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		occupancyIndex.bookingSaved(booking);
+		lifecycleScheduler.bookingSaved(booking);
+		resourceVersionService.bump(Family.SPOTS);
+		return booking;
 	}
 
 	/**
@@ -309,6 +887,10 @@ public class ParkingSpotBookingService {
 		var booking = getBooking(bookingId);
 
 		bookingRepository.delete(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		occupancyIndex.bookingRemoved(booking);
+		resourceVersionService.bump(Family.SPOTS);
 
 		return booking;
 	}
@@ -0,0 +1,322 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Publishes changes to the occupancy state of parking spots to subscribers.
+ * Each subscriber first receives a snapshot of all spots, then the changed
+ * spots. Pending changes are coalesced to the latest state of each spot, and a
+ * subscriber that falls too far behind receives a new snapshot instead. A
+ * subscriber that blocks a send for too long is disconnected, so that it does
+ * not hold the shared sender threads. Connections are aborted off the
+ * scheduler thread, since aborting can wait for the blocked send.
+ */
+@Service
+public class ParkingSpotEventService
+		implements
+			ParkingSpotOccupancyIndex.Listener,
+			BookingLifecycleScheduler.Listener {
+
+	/** Name of the event holding the state of all spots. */
+	public static final String SNAPSHOT_EVENT = "snapshot";
+
+	/** Name of the event holding the new state of a spot. */
+	public static final String SPOT_EVENT = "spot";
+
+	/** Destination of the events of a subscriber. */
+	@FunctionalInterface
+	public interface Sink {
+
+		/**
+		 * Send an event to the subscriber.
+		 *
+		 * @param name
+		 *            The event name.
+		 * @param data
+		 *            The event data.
+		 * @throws IOException
+		 *             if the subscriber is disconnected.
+		 */
+		void send(String name, Object data) throws IOException;
+
+		/**
+		 * Close the connection of a subscriber that stopped receiving. May
+		 * block until the stalled send returns.
+		 */
+		default void abort() {
+		}
+
+	}
+
+	/** Subscriber with its buffer of pending changes. */
+	public class Subscription {
+
+		private final Sink sink;
+
+		private final Map<String, ParkingSpotEventDto> pending = new LinkedHashMap<>();
+		private boolean snapshotPending = true;
+		private boolean scheduled = false;
+		private boolean closed = false;
+
+		/** Thread blocked in a send, and since when, null when not sending. */
+		private Thread sendingThread = null;
+		private long sendingSince = 0;
+
+		private Subscription(Sink sink) {
+			this.sink = sink;
+		}
+
+		/** Stop sending events to the subscriber. */
+		public void close() {
+			synchronized (this) {
+				closed = true;
+				pending.clear();
+			}
+			subscriptions.remove(this);
+		}
+
+		private void enqueue(ParkingSpotEventDto event) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				if (!snapshotPending) {
+					// replace the previous state of the spot
+					pending.remove(event.id);
+					pending.put(event.id, event);
+					if (pending.size() > bufferSize) {
+						resync();
+					}
+				}
+				schedule();
+			}
+		}
+
+		private void resync() {
+			synchronized (this) {
+				pending.clear();
+				snapshotPending = true;
+				schedule();
+			}
+		}
+
+		private void schedule() {
+			if (!scheduled && !closed) {
+				scheduled = true;
+				sender.execute(this::drain);
+			}
+		}
+
+		/** Send the pending events, until there are none left. */
+		private void drain() {
+			try {
+				while (true) {
+					boolean sendSnapshot;
+					List<ParkingSpotEventDto> events;
+					synchronized (this) {
+						if (closed || (!snapshotPending && pending.isEmpty())) {
+							scheduled = false;
+							return;
+						}
+						sendSnapshot = snapshotPending;
+						snapshotPending = false;
+						events = new ArrayList<>(pending.values());
+						pending.clear();
+					}
+
+					if (sendSnapshot) {
+						// changes made while taking the snapshot are also queued
+						send(SNAPSHOT_EVENT, occupancyIndex.snapshot());
+					}
+					for (var event : events) {
+						send(SPOT_EVENT, event);
+					}
+				}
+			} catch (Exception e) {
+				close();
+			}
+		}
+
+		private void send(String name, Object data) throws IOException {
+			synchronized (this) {
+				if (closed) {
+					throw new IOException("Subscription closed.");
+				}
+				sendingThread = Thread.currentThread();
+				sendingSince = System.currentTimeMillis();
+			}
+			try {
+				sink.send(name, data);
+			} finally {
+				synchronized (this) {
+					sendingThread = null;
+				}
+			}
+		}
+
+		/**
+		 * Disconnect the subscriber if a send has been blocked for longer than
+		 * the timeout.
+		 */
+		private void evictIfStalled(long now) {
+			synchronized (this) {
+				if (sendingThread == null || now - sendingSince < sendTimeout) {
+					return;
+				}
+				sendingThread.interrupt();
+			}
+			close();
+			aborter.execute(sink::abort);
+		}
+
+	}
+
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Autowired
+	private BookingLifecycleScheduler lifecycleScheduler;
+
+	@Value("${opls.events.buffer-size:256}")
+	private int bufferSize = 256;
+
+	@Value("${opls.events.timeout-ms:1800000}")
+	private long timeout = 1800000;
+
+	@Value("${opls.events.send-timeout-ms:10000}")
+	private long sendTimeout = 10000;
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private final ExecutorService sender = Executors.newFixedThreadPool(4,
+			r -> {
+				var thread = new Thread(r, "opls-spot-events");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/** Threads aborting the connections of stalled subscribers. */
+	private final ExecutorService aborter = Executors.newCachedThreadPool(
+			r -> {
+				var thread = new Thread(r, "opls-spot-events-abort");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	@PostConstruct
+	public void registerListener() {
+		occupancyIndex.addListener(this);
+		lifecycleScheduler.addListener(this);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		occupancyIndex.removeListener(this);
+		lifecycleScheduler.removeListener(this);
+		sender.shutdownNow();
+		aborter.shutdownNow();
+	}
+
+	/**
+	 * Subscribe to changes of the parking spots. A snapshot of all spots is
+	 * sent first.
+	 *
+	 * @param sink
+	 *            The destination of the events.
+	 * @return The subscription, to close when the subscriber disconnects.
+	 */
+	public Subscription subscribe(Sink sink) {
+		var subscription = new Subscription(sink);
+		subscriptions.add(subscription);
+		synchronized (subscription) {
+			subscription.schedule();
+		}
+		return subscription;
+	}
+
+	/** Time in milliseconds after which a subscriber must reconnect. */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/** Number of active subscriptions. */
+	public int getSubscriptionCount() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Apply due booking transitions of the occupancy index, so that bookings
+	 * starting and ending are published without waiting for a query.
+	 */
+	@Scheduled(fixedDelayString = "${opls.events.refresh-ms:1000}")
+	public void refresh() {
+		if (!subscriptions.isEmpty()) {
+			occupancyIndex.refresh();
+		}
+	}
+
+	/**
+	 * Disconnect the subscribers blocked in a send for longer than the send
+	 * timeout.
+	 */
+	@Scheduled(fixedDelayString = "${opls.events.refresh-ms:1000}")
+	public void evictStalled() {
+		long now = System.currentTimeMillis();
+		for (var subscription : subscriptions) {
+			subscription.evictIfStalled(now);
+		}
+	}
+
+	/**
+	 * Publish the spots of bookings that started, without waiting for the
+	 * next refresh.
+	 */
+	@Override
+	public void bookingsStarted(List<Integer> bookingIds) {
+		if (!subscriptions.isEmpty()) {
+			occupancyIndex.advance();
+		}
+	}
+
+	/**
+	 * Publish the spots of bookings that ended, without waiting for the next
+	 * refresh.
+	 */
+	@Override
+	public void bookingsCompleted(List<Integer> bookingIds) {
+		if (!subscriptions.isEmpty()) {
+			occupancyIndex.advance();
+		}
+	}
+
+	@Override
+	public void spotChanged(ParkingSpotEventDto event) {
+		for (var subscription : subscriptions) {
+			subscription.enqueue(event);
+		}
+	}
+
+	@Override
+	public void reset() {
+		for (var subscription : subscriptions) {
+			subscription.resync();
+		}
+	}
+
+}
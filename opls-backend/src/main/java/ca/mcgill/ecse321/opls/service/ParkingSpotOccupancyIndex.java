@@ -0,0 +1,934 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotAvailabilityDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+
+/**
+ * In-memory occupancy index over the parking_spot table. Each spot is given a
+ * slot, and one bitset is kept per floor, status, vehicle type, and for
+ * whether the spot is currently booked. Queries are answered with bitwise
+ * operations, and only the matching spots are fetched from the database. The
+ * upcoming bookings of each spot are kept in an interval tree, to find the
+ * spots free during a time window.
+ * Counters of spots per floor, vehicle type and status are kept alongside, and
+ * the whole index is periodically reconciled with the database. Listeners are
+ * notified of every change to the occupancy state of a spot.
+ */
+@Service
+public class ParkingSpotOccupancyIndex {
+
+	/**
+	 * Receives changes to the occupancy state of spots. Called while the index
+	 * is locked, so implementations must not block or query the index.
+	 */
+	public interface Listener {
+
+		/** The state of a spot changed. */
+		void spotChanged(ParkingSpotEventDto event);
+
+		/** The index was discarded, so all states must be fetched again. */
+		void reset();
+
+	}
+
+	/** Booking interval tracked for a slot. */
+	private static class BookingEntry {
+		final int bookingId;
+		final int slot;
+		final long start;
+		final long end;
+
+		BookingEntry(int bookingId, int slot, long start, long end) {
+			this.bookingId = bookingId;
+			this.slot = slot;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/** Moment when the booked state of a slot must be recomputed. */
+	private static class Transition implements Comparable<Transition> {
+		final long time;
+		final int slot;
+		final int bookingId;
+
+		Transition(long time, int slot, int bookingId) {
+			this.time = time;
+			this.slot = slot;
+			this.bookingId = bookingId;
+		}
+
+		@Override
+		public int compareTo(Transition other) {
+			return Long.compare(time, other.time);
+		}
+	}
+
+	/** Floor, vehicle type and status of a spot, used to key counters. */
+	private static class CounterKey {
+		final Character floor;
+		final VehicleType vehicleType;
+		final ParkingSpotStatus status;
+
+		CounterKey(Character floor, VehicleType vehicleType,
+				ParkingSpotStatus status) {
+			this.floor = floor;
+			this.vehicleType = vehicleType;
+			this.status = status;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof CounterKey)) {
+				return false;
+			}
+			var other = (CounterKey) obj;
+			return Objects.equals(floor, other.floor)
+					&& vehicleType == other.vehicleType
+					&& status == other.status;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(floor, vehicleType, status);
+		}
+	}
+
+	/** Number of spots, and of spots without an active booking. */
+	private static class Counter {
+		int total = 0;
+		int available = 0;
+	}
+
+	private static final Comparator<ParkingSpotAvailabilityDto> AVAILABILITY_ORDER = Comparator
+			.comparing((ParkingSpotAvailabilityDto a) -> a.floor,
+					Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(a -> a.vehicleType,
+					Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparing(a -> a.parkingSpotStatus,
+					Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	@Autowired
+	private ParkingSpotRepository spotRepository;
+
+	@Autowired
+	private ParkingSpotBookingRepository bookingRepository;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** The current contents of the index. */
+	private State state = new State();
+
+	/** Changes made while the index is reconciled, null otherwise. */
+	private List<Consumer<State>> pending = null;
+
+	/** Held while the index is built from the database, one build at a time. */
+	private final Object building = new Object();
+
+	/** Incremented when the index is discarded. */
+	private long generation = 0;
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+
+	/**
+	 * Query identifiers of parking spots.
+	 *
+	 * @param floors
+	 *            The floors to look on, null or empty to query all.
+	 * @param statuses
+	 *            The statuses to query, null or empty to query all.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to query, null or empty to query all.
+	 * @param unbooked
+	 *            Whether to only match spots without an active booking.
+	 * @return The matching parking spot identifiers, in order.
+	 */
+	public List<String> query(char[] floors,
+			Collection<ParkingSpotStatus> statuses,
+			Collection<VehicleType> vehicleTypes, boolean unbooked) {
+		return query(floors, statuses, vehicleTypes, unbooked, null, null,
+				null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Query a page of identifiers of parking spots.
+	 *
+	 * @param floors
+	 *            The floors to look on, null or empty to query all.
+	 * @param statuses
+	 *            The statuses to query, null or empty to query all.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to query, null or empty to query all.
+	 * @param unbooked
+	 *            Whether to only match spots without an active booking, or
+	 *            without a booking during the window if one is given.
+	 * @param startDate
+	 *            The start of the window, inclusive, null for no window.
+	 * @param endDate
+	 *            The end of the window, exclusive, null for no window.
+	 * @param after
+	 *            Only match identifiers ordered after this one, null to start
+	 *            from the first.
+	 * @param limit
+	 *            The maximum number of identifiers to return.
+	 * @return The matching parking spot identifiers, in order.
+	 */
+	public List<String> query(char[] floors,
+			Collection<ParkingSpotStatus> statuses,
+			Collection<VehicleType> vehicleTypes, boolean unbooked,
+			Date startDate, Date endDate, String after, int limit) {
+		prepare();
+
+		lock.readLock().lock();
+		try {
+			var bits = state.match(floors, statuses, vehicleTypes, unbooked,
+					startDate, endDate);
+			var ids = new ArrayList<String>(
+					Math.min(limit, bits.cardinality()));
+			var candidates = after == null
+					? state.slotsById
+					: state.slotsById.tailMap(after, false);
+			for (var entry : candidates.entrySet()) {
+				if (ids.size() >= limit) {
+					break;
+				}
+				if (bits.get(entry.getValue())) {
+					ids.add(entry.getKey());
+				}
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Query number of parking spots.
+	 *
+	 * @param floors
+	 *            The floors to look on, null or empty to query all.
+	 * @param statuses
+	 *            The statuses to query, null or empty to query all.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to query, null or empty to query all.
+	 * @param unbooked
+	 *            Whether to only count spots without an active booking.
+	 * @return Number of matching parking spots.
+	 */
+	public int count(char[] floors, Collection<ParkingSpotStatus> statuses,
+			Collection<VehicleType> vehicleTypes, boolean unbooked) {
+		return count(floors, statuses, vehicleTypes, unbooked, null, null);
+	}
+
+	/**
+	 * Query number of parking spots.
+	 *
+	 * @param floors
+	 *            The floors to look on, null or empty to query all.
+	 * @param statuses
+	 *            The statuses to query, null or empty to query all.
+	 * @param vehicleTypes
+	 *            The vehicle sizes to query, null or empty to query all.
+	 * @param unbooked
+	 *            Whether to only count spots without an active booking, or
+	 *            without a booking during the window if one is given.
+	 * @param startDate
+	 *            The start of the window, inclusive, null for no window.
+	 * @param endDate
+	 *            The end of the window, exclusive, null for no window.
+	 * @return Number of matching parking spots.
+	 */
+	public int count(char[] floors, Collection<ParkingSpotStatus> statuses,
+			Collection<VehicleType> vehicleTypes, boolean unbooked,
+			Date startDate, Date endDate) {
+		prepare();
+
+		lock.readLock().lock();
+		try {
+			return state.match(floors, statuses, vehicleTypes, unbooked, startDate,
+					endDate).cardinality();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the occupancy state of all parking spots.
+	 *
+	 * @return The states, in order of id.
+	 */
+	public List<ParkingSpotEventDto> snapshot() {
+		prepare();
+
+		lock.readLock().lock();
+		try {
+			var result = new ArrayList<ParkingSpotEventDto>(
+					state.slotsById.size());
+			for (int slot : state.slotsById.values()) {
+				result.add(state.stateOf(slot));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Apply due booking transitions, notifying listeners of the changes. */
+	public void refresh() {
+		prepare();
+	}
+
+	/**
+	 * Apply due booking transitions if the index is loaded, without accessing
+	 * the database.
+	 */
+	public void advance() {
+		long now = new Date().getTime();
+
+		lock.readLock().lock();
+		try {
+			if (!state.loaded || state.transitions.isEmpty()
+					|| state.transitions.peek().time > now) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		lock.writeLock().lock();
+		try {
+			state.applyTransitions(now);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Register a listener of changes to the occupancy state of spots. */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	/** Unregister a listener of changes. */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get the number of parking spots, and of spots without an active booking,
+	 * for each floor, vehicle type and status.
+	 *
+	 * @return The counters, in order of floor, vehicle type and status.
+	 */
+	public List<ParkingSpotAvailabilityDto> availability() {
+		prepare();
+
+		lock.readLock().lock();
+		try {
+			var result = new ArrayList<ParkingSpotAvailabilityDto>(
+					state.counters.size());
+			for (var entry : state.counters.entrySet()) {
+				var key = entry.getKey();
+				var counter = entry.getValue();
+				result.add(new ParkingSpotAvailabilityDto(key.floor,
+						key.vehicleType, key.status, counter.total,
+						counter.available));
+			}
+			result.sort(AVAILABILITY_ORDER);
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rebuild the index from the database, correcting any drift from writes
+	 * that did not go through the services. The new index is built without
+	 * the lock, then swapped in after replaying the changes made meanwhile, so
+	 * that queries are not blocked by the reload.
+	 */
+	@Scheduled(initialDelayString = "${opls.occupancy.reconcile-ms:300000}", fixedDelayString = "${opls.occupancy.reconcile-ms:300000}")
+	public void reconcile() {
+		synchronized (building) {
+			rebuild(true);
+		}
+	}
+
+	/**
+	 * Build a new index from the database without the lock, and swap it in
+	 * after replaying the changes made meanwhile. Must hold the build monitor.
+	 *
+	 * @param reset
+	 *            Whether to reset the listeners if the index was not loaded.
+	 */
+	private void rebuild(boolean reset) {
+		long startGeneration;
+		lock.writeLock().lock();
+		try {
+			startGeneration = generation;
+			pending = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		State fresh;
+		try {
+			fresh = load(new Date().getTime());
+		} catch (RuntimeException e) {
+			lock.writeLock().lock();
+			try {
+				pending = null;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			throw e;
+		}
+
+		lock.writeLock().lock();
+		try {
+			// discarded meanwhile, the next query loads the index again
+			if (generation != startGeneration) {
+				return;
+			}
+			for (var change : pending) {
+				change.accept(fresh);
+			}
+			pending = null;
+			fresh.applyTransitions(new Date().getTime());
+
+			var previous = state;
+			state = fresh;
+			fresh.muted = false;
+
+			// notify listeners of the differences
+			if (previous.loaded) {
+				var before = new HashMap<String, ParkingSpotEventDto>();
+				for (int slot : previous.slotsById.values()) {
+					var spotState = previous.stateOf(slot);
+					before.put(spotState.id, spotState);
+				}
+				for (int slot : fresh.slotsById.values()) {
+					var spotState = fresh.stateOf(slot);
+					if (!spotState.sameState(before.remove(spotState.id))) {
+						notifyChanged(spotState);
+					}
+				}
+				for (var id : before.keySet()) {
+					notifyChanged(ParkingSpotEventDto.deleted(id));
+				}
+			} else if (reset) {
+				for (var listener : listeners) {
+					listener.reset();
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** Record a created or modified parking spot once the transaction commits. */
+	public void spotSaved(ParkingSpot spot) {
+		spotsSaved(Collections.singletonList(spot));
+	}
+
+	/** Record created or modified parking spots once the transaction commits. */
+	public void spotsSaved(Collection<ParkingSpot> spots) {
+		final var ids = new ArrayList<String>(spots.size());
+		final var keys = new ArrayList<CounterKey>(spots.size());
+		for (var spot : spots) {
+			ids.add(spot.getId());
+			keys.add(new CounterKey(spot.getFloor(), spot.getVehicleType(),
+					spot.getParkingSpotStatus()));
+		}
+		TransactionHooks.afterCommit(() -> apply(index -> {
+			for (int i = 0; i < ids.size(); ++i) {
+				var key = keys.get(i);
+				index.putSpot(ids.get(i), key.floor, key.vehicleType,
+						key.status);
+			}
+		}));
+	}
+
+	/**
+	 * Record a change of status of the spots on a floor once the transaction
+	 * commits.
+	 *
+	 * @param floor
+	 *            The upper case floor.
+	 * @param status
+	 *            The new status.
+	 * @param vehicleTypes
+	 *            The vehicle sizes of the changed spots, null or empty for
+	 *            all.
+	 */
+	public void floorStatusChanged(char floor, ParkingSpotStatus status,
+			Collection<VehicleType> vehicleTypes) {
+		final var types = vehicleTypes == null || vehicleTypes.isEmpty()
+				? EnumSet.allOf(VehicleType.class)
+				: EnumSet.copyOf(vehicleTypes);
+		TransactionHooks.afterCommit(() -> apply(index -> {
+			var bits = index.floorBits.get(floor);
+			if (bits == null) {
+				return;
+			}
+			bits = (BitSet) bits.clone();
+			for (int slot = bits.nextSetBit(0); slot >= 0; slot = bits
+					.nextSetBit(slot + 1)) {
+				var key = index.keysBySlot.get(slot);
+				if (types.contains(key.vehicleType)) {
+					index.putSpot(index.idsBySlot.get(slot), floor,
+							key.vehicleType, status);
+				}
+			}
+		}));
+	}
+
+	/** Record a deleted parking spot once the transaction commits. */
+	public void spotRemoved(String spotId) {
+		TransactionHooks
+				.afterCommit(() -> apply(index -> index.removeSpot(spotId)));
+	}
+
+	/** Record a created or modified booking once the transaction commits. */
+	public void bookingSaved(ParkingSpotBooking booking) {
+		final int bookingId = booking.getId();
+		final var spotId = booking.getParkingSpot() == null
+				? null
+				: booking.getParkingSpot().getId();
+		final long start = booking.getStartDate().getTime();
+		final long end = booking.getEndDate().getTime();
+		TransactionHooks.afterCommit(() -> apply(index -> {
+			long now = new Date().getTime();
+			index.removeBooking(bookingId, now);
+			index.putBooking(bookingId, spotId, start, end, now);
+		}));
+	}
+
+	/** Record a deleted booking once the transaction commits. */
+	public void bookingRemoved(ParkingSpotBooking booking) {
+		final int bookingId = booking.getId();
+		TransactionHooks.afterCommit(() -> apply(
+				index -> index.removeBooking(bookingId, new Date().getTime())));
+	}
+
+	/**
+	 * Discard the index so it is reloaded from the database on the next query.
+	 * Must be called after writing to the tables without going through the
+	 * services.
+	 */
+	public void invalidate() {
+		lock.writeLock().lock();
+		try {
+			state = new State();
+			pending = null;
+			++generation;
+			for (var listener : listeners) {
+				listener.reset();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply a change to the loaded index, and remember it for the
+	 * reconciliation in progress, if any.
+	 */
+	private void apply(Consumer<State> change) {
+		lock.writeLock().lock();
+		try {
+			if (state.loaded) {
+				change.accept(state);
+			}
+			if (pending != null) {
+				pending.add(change);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Load the index if needed and apply due booking transitions. The index
+	 * is loaded off the lock like a reconciliation, by one query while the
+	 * others wait for it.
+	 */
+	private void prepare() {
+		long now = new Date().getTime();
+
+		lock.readLock().lock();
+		try {
+			if (state.loaded && (state.transitions.isEmpty()
+					|| state.transitions.peek().time > now)) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (!isLoaded()) {
+			synchronized (building) {
+				// retried if discarded during the load
+				while (!isLoaded()) {
+					rebuild(false);
+				}
+			}
+		}
+
+		lock.writeLock().lock();
+		try {
+			state.applyTransitions(new Date().getTime());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean isLoaded() {
+		lock.readLock().lock();
+		try {
+			return state.loaded;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** Build an index from the database, without notifying listeners. */
+	private State load(long now) {
+		var index = new State();
+		index.muted = true;
+		for (var spot : spotRepository.findAll()) {
+			index.putSpot(spot.getId(), spot.getFloor(), spot.getVehicleType(),
+					spot.getParkingSpotStatus());
+		}
+		for (var booking : bookingRepository.getCurrentAndUpcomingBookings()) {
+			index.putBooking(booking.getId(), booking.getParkingSpot().getId(),
+					booking.getStartDate().getTime(),
+					booking.getEndDate().getTime(), now);
+		}
+		index.loaded = true;
+		return index;
+	}
+
+	/**
+	 * Get the identifiers of the spots with a booking during a window.
+	 *
+	 * @param startDate
+	 *            The start of the window, inclusive.
+	 * @param endDate
+	 *            The end of the window, exclusive.
+	 * @return The identifiers of the booked spots.
+	 */
+	public Set<String> bookedDuring(Date startDate, Date endDate) {
+		prepare();
+
+		lock.readLock().lock();
+		try {
+			var bits = state.bookedDuring(startDate.getTime(),
+					endDate.getTime());
+			var ids = new HashSet<String>(bits.cardinality());
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits
+					.nextSetBit(i + 1)) {
+				ids.add(state.idsBySlot.get(i));
+			}
+			return ids;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void notifyChanged(ParkingSpotEventDto event) {
+		for (var listener : listeners) {
+			listener.spotChanged(event);
+		}
+	}
+
+	/**
+	 * Contents of the index. Replaced as a whole when the index is rebuilt
+	 * from the database.
+	 */
+	private class State {
+
+		boolean loaded = false;
+
+		final NavigableMap<String, Integer> slotsById = new TreeMap<>();
+		final List<String> idsBySlot = new ArrayList<>();
+		final BitSet allSpots = new BitSet();
+
+		final Map<Character, BitSet> floorBits = new HashMap<>();
+		final Map<ParkingSpotStatus, BitSet> statusBits = new EnumMap<>(
+				ParkingSpotStatus.class);
+		final Map<VehicleType, BitSet> vehicleTypeBits = new EnumMap<>(
+				VehicleType.class);
+		final BitSet bookedBits = new BitSet();
+
+		final List<CounterKey> keysBySlot = new ArrayList<>();
+		final Map<CounterKey, Counter> counters = new HashMap<>();
+
+		final Map<Integer, BookingEntry> bookingsById = new HashMap<>();
+		final Map<Integer, IntervalTree<BookingEntry>> bookingsBySlot = new HashMap<>();
+		final PriorityQueue<Transition> transitions = new PriorityQueue<>();
+
+		/** Whether listeners are not notified of the changes. */
+		boolean muted = false;
+
+		BitSet bookedDuring(long start, long end) {
+			var bits = new BitSet();
+			for (var entry : bookingsBySlot.entrySet()) {
+				if (entry.getValue().overlaps(start, end)) {
+					bits.set(entry.getKey());
+				}
+			}
+			return bits;
+		}
+
+		BitSet match(char[] floors, Collection<ParkingSpotStatus> statuses,
+				Collection<VehicleType> vehicleTypes, boolean unbooked,
+				Date startDate, Date endDate) {
+			var bits = (BitSet) allSpots.clone();
+
+			if (floors != null && floors.length > 0) {
+				var floorMatch = new BitSet();
+				for (char floor : floors) {
+					var b = floorBits.get(Character.toUpperCase(floor));
+					if (b != null) {
+						floorMatch.or(b);
+					}
+				}
+				bits.and(floorMatch);
+			}
+
+			if (statuses != null && statuses.size() > 0) {
+				var statusMatch = new BitSet();
+				for (var status : statuses) {
+					var b = statusBits.get(status);
+					if (b != null) {
+						statusMatch.or(b);
+					}
+				}
+				bits.and(statusMatch);
+			}
+
+			if (vehicleTypes != null && vehicleTypes.size() > 0) {
+				var typeMatch = new BitSet();
+				for (var type : vehicleTypes) {
+					var b = vehicleTypeBits.get(type);
+					if (b != null) {
+						typeMatch.or(b);
+					}
+				}
+				bits.and(typeMatch);
+			}
+
+			if (unbooked && startDate != null && endDate != null) {
+				bits.andNot(bookedDuring(startDate.getTime(), endDate.getTime()));
+			} else if (unbooked) {
+				bits.andNot(bookedBits);
+			}
+
+			return bits;
+		}
+
+		void putSpot(String id, Character floor, VehicleType vehicleType,
+				ParkingSpotStatus status) {
+			Integer slot = slotsById.get(id);
+			if (slot == null) {
+				slot = allSpots.nextClearBit(0);
+				slotsById.put(id, slot);
+				if (slot < idsBySlot.size()) {
+					idsBySlot.set(slot, id);
+					keysBySlot.set(slot, null);
+				} else {
+					idsBySlot.add(id);
+					keysBySlot.add(null);
+				}
+				allSpots.set(slot);
+			}
+
+			var key = new CounterKey(floor, vehicleType, status);
+			if (key.equals(keysBySlot.get(slot))) {
+				return;
+			}
+			uncount(slot);
+			keysBySlot.set(slot, key);
+			var counter = counters.computeIfAbsent(key, k -> new Counter());
+			++counter.total;
+			if (!bookedBits.get(slot)) {
+				++counter.available;
+			}
+
+			clearAttributes(slot);
+			if (floor != null) {
+				floorBits.computeIfAbsent(floor, f -> new BitSet()).set(slot);
+			}
+			statusBits.computeIfAbsent(status, s -> new BitSet()).set(slot);
+			vehicleTypeBits.computeIfAbsent(vehicleType, t -> new BitSet())
+					.set(slot);
+
+			notifyChanged(stateOf(slot));
+		}
+
+		void removeSpot(String id) {
+			var slot = slotsById.remove(id);
+			if (slot == null) {
+				return;
+			}
+
+			uncount(slot);
+			keysBySlot.set(slot, null);
+			clearAttributes(slot);
+			allSpots.clear(slot);
+			bookedBits.clear(slot);
+			idsBySlot.set(slot, null);
+
+			var entries = bookingsBySlot.remove(slot);
+			if (entries != null) {
+				entries.forEach(entry -> bookingsById.remove(entry.bookingId));
+			}
+
+			notifyChanged(ParkingSpotEventDto.deleted(id));
+		}
+
+		/** Remove a slot from its counter. */
+		void uncount(int slot) {
+			var key = keysBySlot.get(slot);
+			if (key == null) {
+				return;
+			}
+			var counter = counters.get(key);
+			--counter.total;
+			if (!bookedBits.get(slot)) {
+				--counter.available;
+			}
+			if (counter.total == 0) {
+				counters.remove(key);
+			}
+		}
+
+		void clearAttributes(int slot) {
+			for (var b : floorBits.values()) {
+				b.clear(slot);
+			}
+			for (var b : statusBits.values()) {
+				b.clear(slot);
+			}
+			for (var b : vehicleTypeBits.values()) {
+				b.clear(slot);
+			}
+		}
+
+		void putBooking(int bookingId, String spotId, long start, long end,
+				long now) {
+			if (spotId == null || end <= now) {
+				return;
+			}
+			var slot = slotsById.get(spotId);
+			if (slot == null) {
+				return;
+			}
+
+			var entry = new BookingEntry(bookingId, slot, start, end);
+			bookingsById.put(bookingId, entry);
+			bookingsBySlot.computeIfAbsent(slot, s -> new IntervalTree<>())
+					.insert(start, end, bookingId, entry);
+
+			// the booking becomes active at its start and inactive at its end
+			if (start > now) {
+				transitions.add(new Transition(start, slot, bookingId));
+			}
+			transitions.add(new Transition(end, slot, bookingId));
+
+			refreshBooked(slot, now);
+		}
+
+		void removeBooking(int bookingId, long now) {
+			var entry = bookingsById.remove(bookingId);
+			if (entry == null) {
+				return;
+			}
+
+			var entries = bookingsBySlot.get(entry.slot);
+			if (entries != null) {
+				entries.remove(entry.start, bookingId);
+				if (entries.isEmpty()) {
+					bookingsBySlot.remove(entry.slot);
+				}
+			}
+
+			refreshBooked(entry.slot, now);
+		}
+
+		/** Apply the due transitions, dropping the bookings that ended. */
+		void applyTransitions(long now) {
+			while (!transitions.isEmpty() && transitions.peek().time <= now) {
+				var transition = transitions.poll();
+				var entry = bookingsById.get(transition.bookingId);
+				if (entry != null && entry.slot == transition.slot
+						&& entry.end <= now) {
+					removeBooking(entry.bookingId, now);
+				} else {
+					refreshBooked(transition.slot, now);
+				}
+			}
+		}
+
+		/** Recompute whether a slot is booked. */
+		void refreshBooked(int slot, long now) {
+			var entries = bookingsBySlot.get(slot);
+			boolean booked = entries != null && entries.overlaps(now, now + 1);
+			if (booked != bookedBits.get(slot)) {
+				bookedBits.set(slot, booked);
+				var key = keysBySlot.get(slot);
+				if (key != null) {
+					counters.get(key).available += booked ? -1 : 1;
+				}
+				notifyChanged(stateOf(slot));
+			}
+		}
+
+		/** Get the occupancy state of a slot. */
+		ParkingSpotEventDto stateOf(int slot) {
+			var key = keysBySlot.get(slot);
+			return new ParkingSpotEventDto(idsBySlot.get(slot), key.floor,
+					key.vehicleType, key.status, bookedBits.get(slot));
+		}
+
+		void notifyChanged(ParkingSpotEventDto event) {
+			if (!muted) {
+				ParkingSpotOccupancyIndex.this.notifyChanged(event);
+			}
+		}
+
+	}
+
+}
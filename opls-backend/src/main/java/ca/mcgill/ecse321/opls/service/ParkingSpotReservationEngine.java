@@ -0,0 +1,81 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+
+/**
+ * Table of the parking spots being booked. A booking request claims its spot
+ * with a single compare-and-set before the spot is checked, and holds the
+ * claim through payment until the booking is saved, so that concurrent
+ * requests for the same spot fail fast instead of both being charged. Requests
+ * for different spots never contend. The claims only cover this instance; the
+ * booking service also locks the spot row when saving, which guarantees a
+ * single booking across instances.
+ */
+@Service
+public class ParkingSpotReservationEngine {
+
+	/** Claim on a parking spot, released when closed. */
+	public class Claim implements AutoCloseable {
+
+		private final String spotId;
+
+		private Claim(String spotId) {
+			this.spotId = spotId;
+		}
+
+		/** The ID of the claimed parking spot. */
+		public String getSpotId() {
+			return spotId;
+		}
+
+		/** Release the claim. Releasing it again has no effect. */
+		@Override
+		public void close() {
+			claims.remove(spotId, this);
+		}
+
+	}
+
+	private final ConcurrentMap<String, Claim> claims = new ConcurrentHashMap<>();
+
+	/**
+	 * Claim a parking spot.
+	 *
+	 * @param spotId
+	 *            The ID of the parking spot.
+	 * @return The claim, to close once the booking is saved or abandoned.
+	 * @throws OplsApiException
+	 *             if the spot is already claimed.
+	 */
+	public Claim claim(String spotId) {
+		var claim = new Claim(spotId);
+		if (claims.putIfAbsent(spotId, claim) != null) {
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Parking spot already booked.");
+		}
+		return claim;
+	}
+
+	/**
+	 * Determine whether a parking spot is claimed.
+	 *
+	 * @param spotId
+	 *            The ID of the parking spot.
+	 * @return Whether a booking request holds the spot.
+	 */
+	public boolean isClaimed(String spotId) {
+		return claims.containsKey(spotId);
+	}
+
+	/** Number of parking spots currently claimed. */
+	public int getClaimCount() {
+		return claims.size();
+	}
+
+}
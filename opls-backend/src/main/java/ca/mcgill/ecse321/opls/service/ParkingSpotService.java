@@ -1,14 +1,34 @@
 package ca.mcgill.ecse321.opls.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto.SpotRange;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotAvailabilityDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryRequestDto;
 import ca.mcgill.ecse321.opls.exception.OplsApiException;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
 import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 
 @Service
@@ -17,6 +37,15 @@ public class ParkingSpotService {
 	@Autowired
 	private ParkingSpotRepository spotRepository;
 
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
 	/**
 	 * Create a parking spot.
 	 * 
@@ -26,7 +55,10 @@ public class ParkingSpotService {
 	 */
 	@Transactional
 	public ParkingSpot createParkingSpot(ParkingSpot request) {
-		return spotRepository.save(request);
+		var spot = spotRepository.save(request);
+		occupancyIndex.spotSaved(spot);
+		resourceVersionService.bump(Family.SPOTS);
+		return spot;
 	}
 
 	/**
@@ -50,48 +82,270 @@ public class ParkingSpotService {
 	}
 
 	/**
-	 * Query parking spots.
+	 * Fetch several parking spots in one query.
 	 * 
-	 * @param queryReq
-	 *            The query parameters.
-	 * @return The queried results
+	 * @param spotIds
+	 *            The IDs of the parking spots.
+	 * @return The ParkingSpot entities that exist, in order of the IDs and
+	 *         without duplicates.
 	 */
-	public Iterable<ParkingSpot> query(ParkingSpotQueryRequestDto queryReq) {
-		Iterable<ParkingSpot> results = null;
+	public List<ParkingSpot> getParkingSpots(Collection<String> spotIds) {
+		var ids = new LinkedHashSet<>(spotIds);
+		ids.remove(null);
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
 
-		// convert Character list to char array
-		char[] floors = null;
-		if (queryReq.floors != null) {
-			floors = new char[queryReq.floors.size()];
-			int i = 0;
-			for (Character c : queryReq.floors) {
-				floors[i++] = c;
+		var spotsById = new HashMap<String, ParkingSpot>();
+		for (var spot : spotRepository.findAllById(ids)) {
+			spotsById.put(spot.getId(), spot);
+		}
+
+		var spots = new ArrayList<ParkingSpot>(spotsById.size());
+		for (var id : ids) {
+			var spot = spotsById.get(id);
+			if (spot != null) {
+				spots.add(spot);
 			}
 		}
+		return spots;
+	}
+
+	/**
+	 * Query parking spots. The occupancy index selects the matching spots, which
+	 * are then fetched from the database. If the query has a limit, only the
+	 * page of spots after its cursor is fetched.
+	 * 
+	 * @param queryReq
+	 *            The query parameters.
+	 * @return The queried results, in order of id.
+	 * @throws OplsApiException
+	 *             if the time window is invalid.
+	 */
+	public List<ParkingSpot> query(ParkingSpotQueryRequestDto queryReq) {
+		assertValidWindow(queryReq);
+		var ids = occupancyIndex.query(floorsList(queryReq), queryReq.statuses,
+				queryReq.vehicleTypes, queryReq.unbooked, queryReq.startDate,
+				queryReq.endDate, queryReq.after,
+				queryReq.limit == null ? Integer.MAX_VALUE : queryReq.limit);
+
+		var spots = new ArrayList<ParkingSpot>(ids.size());
+		spotRepository.findAllById(ids).forEach(spots::add);
+		spots.sort(Comparator.comparing(ParkingSpot::getId));
+		return spots;
+	}
 
-		// execute query
-		if (queryReq.unbooked) {
-			results = spotRepository.queryUnbooked(floors, queryReq.statuses,
-					queryReq.vehicleTypes);
-		} else {
-			results = spotRepository.query(floors, queryReq.statuses,
-					queryReq.vehicleTypes);
+	/**
+	 * Stream queried parking spots from the database to a consumer, in order of
+	 * id. Each spot is detached once consumed so that the persistence context
+	 * does not grow with the number of results.
+	 * 
+	 * @param queryReq
+	 *            The query parameters.
+	 * @param action
+	 *            The consumer of each queried spot.
+	 * @return The number of consumed spots.
+	 * @throws OplsApiException
+	 *             if the time window is invalid.
+	 */
+	@Transactional
+	public int streamQuery(ParkingSpotQueryRequestDto queryReq,
+			Consumer<ParkingSpot> action) {
+		assertValidWindow(queryReq);
+
+		// spots booked during the window are filtered out of the stream
+		Set<String> booked = null;
+		boolean unbooked = queryReq.unbooked;
+		if (unbooked && queryReq.startDate != null) {
+			booked = occupancyIndex.bookedDuring(queryReq.startDate,
+					queryReq.endDate);
+			unbooked = false;
 		}
 
-		return results;
+		int count = 0;
+		try (var spots = spotRepository.stream(floorsList(queryReq),
+				queryReq.statuses, queryReq.vehicleTypes, unbooked,
+				queryReq.after)) {
+			var it = spots.iterator();
+			while (it.hasNext()
+					&& (queryReq.limit == null || count < queryReq.limit)) {
+				var spot = it.next();
+				if (booked == null || !booked.contains(spot.getId())) {
+					action.accept(spot);
+					++count;
+				}
+				entityManager.detach(spot);
+			}
+		}
+		return count;
 	}
 	
 	/**
-	 * Query count of parking spots.
+	 * Query count of parking spots. Answered from the occupancy index without
+	 * accessing the database.
 	 * 
 	 * @param queryReq
 	 *            The query parameters.
 	 * @return The number of queried results.
+	 * @throws OplsApiException
+	 *             if the time window is invalid.
 	 */
 	public int queryCount(ParkingSpotQueryRequestDto queryReq) {
-		int count = 0;
+		assertValidWindow(queryReq);
+		return occupancyIndex.count(floorsList(queryReq), queryReq.statuses,
+				queryReq.vehicleTypes, queryReq.unbooked, queryReq.startDate,
+				queryReq.endDate);
+	}
 
-		// convert Character list to char array
+	/**
+	 * Get the number of parking spots, and of spots without an active booking,
+	 * for each floor, vehicle type and status. Answered from the occupancy
+	 * index without accessing the database.
+	 * 
+	 * @return The availability counters.
+	 */
+	public List<ParkingSpotAvailabilityDto> getAvailability() {
+		return occupancyIndex.availability();
+	}
+
+	/**
+	 * Apply a layout to a floor in one transaction. Missing spots are created
+	 * and existing spots are modified to match their range, and the
+	 * statements are sent to the database in JDBC batches.
+	 * 
+	 * @param floor
+	 *            The floor, a single letter.
+	 * @param ranges
+	 *            The ranges of spots.
+	 * @return The number of created, modified and unchanged spots.
+	 * @throws OplsApiException
+	 *             if the floor or a range is invalid, or if the ranges
+	 *             overlap.
+	 */
+	@Transactional
+	public FloorLayoutResponseDto applyFloorLayout(String floor,
+			Collection<SpotRange> ranges) {
+		char floorChar = parseFloor(floor);
+		for (var range : ranges) {
+			if (range == null || range.first == null || range.last == null
+					|| range.vehicleType == null
+					|| range.parkingSpotStatus == null) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Range requires spot numbers, a vehicle type and a status.");
+			}
+			if (range.first < 0 || range.last > FloorLayoutRequestDto.MAX_SPOT_NUMBER) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Invalid spot number.");
+			}
+		}
+
+		var sorted = new ArrayList<>(ranges);
+		sorted.sort(Comparator.comparing((SpotRange r) -> r.first));
+		for (int i = 0; i < sorted.size(); ++i) {
+			if (sorted.get(i).first > sorted.get(i).last) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Range must start before it ends.");
+			}
+			if (i > 0 && sorted.get(i).first <= sorted.get(i - 1).last) {
+				throw new OplsApiException(HttpStatus.BAD_REQUEST,
+						"Ranges must not overlap.");
+			}
+		}
+
+		var existing = new HashMap<Integer, ParkingSpot>();
+		for (var spot : spotRepository.findParkingSpotsByFloor(floorChar)) {
+			existing.put(spot.getSpotNumber(), spot);
+		}
+
+		var summary = new FloorLayoutResponseDto(floorChar);
+		var saved = new ArrayList<ParkingSpot>();
+		for (var range : sorted) {
+			for (int number = range.first; number <= range.last; ++number) {
+				var spot = existing.get(number);
+				if (spot == null) {
+					// persist rather than save, which would select each spot
+					spot = new ParkingSpot(floorChar, number, range.vehicleType,
+							range.parkingSpotStatus);
+					entityManager.persist(spot);
+					++summary.created;
+				} else if (spot.getVehicleType() != range.vehicleType
+						|| spot.getParkingSpotStatus() != range.parkingSpotStatus) {
+					// managed, so updated when the transaction is flushed
+					spot.setVehicleType(range.vehicleType);
+					spot.setParkingSpotStatus(range.parkingSpotStatus);
+					++summary.updated;
+				} else {
+					++summary.unchanged;
+					continue;
+				}
+				saved.add(spot);
+			}
+		}
+
+		if (!saved.isEmpty()) {
+			occupancyIndex.spotsSaved(saved);
+			resourceVersionService.bump(Family.SPOTS);
+		}
+		return summary;
+	}
+
+	/**
+	 * Set the status of all spots on a floor with a single UPDATE statement.
+	 * 
+	 * @param floor
+	 *            The floor, a single letter.
+	 * @param status
+	 *            The new status.
+	 * @param vehicleTypes
+	 *            The vehicle sizes of the spots to change, null or empty for
+	 *            all.
+	 * @return The number of modified and unchanged spots.
+	 * @throws OplsApiException
+	 *             if the floor is invalid.
+	 */
+	@Transactional
+	public FloorLayoutResponseDto setFloorStatus(String floor,
+			ParkingSpotStatus status, Collection<VehicleType> vehicleTypes) {
+		char floorChar = parseFloor(floor);
+
+		var summary = new FloorLayoutResponseDto(floorChar);
+		summary.updated = spotRepository.updateFloorStatus(floorChar, status,
+				vehicleTypes);
+		summary.unchanged = spotRepository.queryCount(new char[]{floorChar},
+				null, vehicleTypes) - summary.updated;
+
+		if (summary.updated > 0) {
+			occupancyIndex.floorStatusChanged(floorChar, status, vehicleTypes);
+			resourceVersionService.bump(Family.SPOTS);
+		}
+		return summary;
+	}
+
+	/** Parse a floor, which must be a single letter. */
+	private static char parseFloor(String floor) {
+		if (floor == null || floor.length() != 1
+				|| !Character.isLetter(floor.charAt(0))) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Invalid floor.");
+		}
+		return Character.toUpperCase(floor.charAt(0));
+	}
+
+	/** Assert that a query has either no time window or a valid one. */
+	private static void assertValidWindow(ParkingSpotQueryRequestDto queryReq) {
+		if ((queryReq.startDate == null) != (queryReq.endDate == null)) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Time window requires a start and end date.");
+		}
+		if (queryReq.startDate != null
+				&& !queryReq.startDate.before(queryReq.endDate)) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Time window must start before it ends.");
+		}
+	}
+
+	/** Convert the Character list of a query to a char array. */
+	private static char[] floorsList(ParkingSpotQueryRequestDto queryReq) {
 		char[] floors = null;
 		if (queryReq.floors != null) {
 			floors = new char[queryReq.floors.size()];
@@ -100,19 +354,12 @@ public class ParkingSpotService {
 				floors[i++] = c;
 			}
 		}
-
-		// execute query
-		if (queryReq.unbooked) {
-			count = spotRepository.queryUnbookedCount(floors, queryReq.statuses, queryReq.vehicleTypes);
-		} else {
-			count = spotRepository.queryCount(floors, queryReq.statuses, queryReq.vehicleTypes);
-		}
-
-		return count;
+		return floors;
 	}
 	
 	/**
-	 * Update a parking spot.
+	 * Update a parking spot. The spot is modified in place unless its id
+	 * changes.
 	 *
 	 * @param id spot id
 	 * @param request
@@ -121,12 +368,84 @@ public class ParkingSpotService {
 	 */
 	@Transactional
 	public ParkingSpot updateParkingSpot(String id, ParkingSpotDto request){
+		if (id.equals(request.id)) {
+			return patchParkingSpot(id, null, request.vehicleType,
+					request.parkingSpotStatus,
+					request.message == null ? "" : request.message);
+		}
+
 		ParkingSpot fetchedParkingSpot = getParkingSpot(id);
 		spotRepository.delete(fetchedParkingSpot);
 		ParkingSpot newParkingSpot = request.toModel();
 		spotRepository.save(newParkingSpot);
+		occupancyIndex.spotRemoved(fetchedParkingSpot.getId());
+		occupancyIndex.spotSaved(newParkingSpot);
+		resourceVersionService.bump(Family.SPOTS);
 		return newParkingSpot;
 	}
+	/**
+	 * Modify some fields of a parking spot in place. Only the changed columns
+	 * are written, and the bookings of the spot are not loaded.
+	 * 
+	 * @param id
+	 *            The ID of the parking spot.
+	 * @param version
+	 *            The version the modification is based on, null to skip the
+	 *            check.
+	 * @param vehicleType
+	 *            The new vehicle type, null to keep it.
+	 * @param status
+	 *            The new status, null to keep it.
+	 * @param message
+	 *            The new message, null to keep it or empty to remove it.
+	 * @return The ParkingSpot entity.
+	 * @throws OplsApiException
+	 *             if the spot is not found, or was modified since the version
+	 *             or by a concurrent request.
+	 */
+	@Transactional
+	public ParkingSpot patchParkingSpot(String id, Long version,
+			VehicleType vehicleType, ParkingSpotStatus status,
+			String message) {
+		var spot = getParkingSpot(id);
+		if (version != null && version != spot.getVersion()) {
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Parking spot was modified by another request.");
+		}
+
+		boolean changed = false;
+		if (vehicleType != null && vehicleType != spot.getVehicleType()) {
+			spot.setVehicleType(vehicleType);
+			changed = true;
+		}
+		if (status != null && status != spot.getParkingSpotStatus()) {
+			spot.setParkingSpotStatus(status);
+			changed = true;
+		}
+		if (message != null) {
+			var newMessage = message.isEmpty() ? null : message;
+			if (!Objects.equals(newMessage, spot.getMessage())) {
+				spot.setMessage(newMessage);
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return spot;
+		}
+
+		// the spot is managed, so flushing updates the changed columns where
+		// the version still matches
+		try {
+			entityManager.flush();
+		} catch (OptimisticLockException e) {
+			throw new OplsApiException(HttpStatus.CONFLICT,
+					"Parking spot was modified by another request.");
+		}
+		occupancyIndex.spotSaved(spot);
+		resourceVersionService.bump(Family.SPOTS);
+		return spot;
+	}
+
 	/**
 	 * Delete a parking spot.
 	 *
@@ -136,6 +455,8 @@ public class ParkingSpotService {
 	public ParkingSpot deleteParkingSpot(String id){
 		ParkingSpot fetchedParkingSpot = getParkingSpot(id);
 		spotRepository.delete(fetchedParkingSpot);
+		occupancyIndex.spotRemoved(fetchedParkingSpot.getId());
+		resourceVersionService.bump(Family.SPOTS);
 		return fetchedParkingSpot;
 	}
 
@@ -0,0 +1,341 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Submits payments to the bank off the request threads. Payments wait in a
+ * bounded queue for a fixed pool of workers, which retry the transient
+ * failures of the bank with an increasing delay. An attempt that blocks past
+ * the attempt timeout is interrupted and retried, and a payment without an
+ * outcome by its deadline is rejected. Retries charge the card with the same
+ * reference, so that it is charged at most once, and a charge that cannot be
+ * applied is refunded. The outcome of a payment is
+ * kept for a retention time so that clients can poll it.
+ */
+@Service
+public class PaymentPipeline {
+
+	/** State of a payment. */
+	public enum PaymentStatus {
+		@JsonProperty("pending")
+		PENDING,
+
+		@JsonProperty("paid")
+		PAID,
+
+		@JsonProperty("rejected")
+		REJECTED
+	}
+
+	/** Payment submitted to the pipeline. */
+	public static class Payment {
+
+		private final UUID reference;
+		private final boolean isEmployee;
+		private final double amount;
+		private final long deadline;
+		private volatile String accountNumber;
+		private final AtomicInteger attempts = new AtomicInteger();
+		private volatile PaymentStatus status = PaymentStatus.PENDING;
+		private volatile String error;
+		private volatile long completedOn;
+
+		/** Worker running the current attempt, null between attempts. */
+		private Thread attemptThread = null;
+
+		private Payment(UUID reference, boolean isEmployee,
+				String accountNumber, double amount, long deadline) {
+			this.reference = reference;
+			this.isEmployee = isEmployee;
+			this.accountNumber = accountNumber;
+			this.amount = amount;
+			this.deadline = deadline;
+		}
+
+		/** The ID of the paid resource. */
+		public UUID getReference() {
+			return reference;
+		}
+
+		/** The amount to charge. */
+		public double getAmount() {
+			return amount;
+		}
+
+		/** Number of attempts made so far. */
+		public int getAttempts() {
+			return attempts.get();
+		}
+
+		/** The state of the payment. */
+		public PaymentStatus getStatus() {
+			return status;
+		}
+
+		/** The reason the payment failed, null if it did not. */
+		public String getError() {
+			return error;
+		}
+
+	}
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Value("${opls.payment.workers:4}")
+	private int workerCount = 4;
+
+	@Value("${opls.payment.queue-capacity:1000}")
+	private int queueCapacity = 1000;
+
+	@Value("${opls.payment.max-attempts:3}")
+	private int maxAttempts = 3;
+
+	@Value("${opls.payment.retry-delay-ms:200}")
+	private long retryDelay = 200;
+
+	@Value("${opls.payment.attempt-timeout-ms:10000}")
+	private long attemptTimeout = 10000;
+
+	@Value("${opls.payment.deadline-ms:60000}")
+	private long deadline = 60000;
+
+	@Value("${opls.payment.retention-ms:3600000}")
+	private long retention = 3600000;
+
+	private ThreadPoolExecutor workers;
+
+	private ScheduledExecutorService retries;
+
+	private final Map<UUID, Payment> payments = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void start() {
+		var count = new AtomicInteger();
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 0,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+					var thread = new Thread(runnable,
+							"payment-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			var thread = new Thread(runnable, "payment-retry");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdownNow();
+		retries.shutdownNow();
+	}
+
+	/**
+	 * Queue a payment.
+	 *
+	 * @param reference
+	 *            The ID of the paid resource, which identifies the payment.
+	 * @param isEmployee
+	 *            Whether an employee submits the payment.
+	 * @param accountNumber
+	 *            The credit card or saved account number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param onComplete
+	 *            Action run by the worker with whether the payment succeeded,
+	 *            before the outcome is visible to clients.
+	 * @return The pending payment.
+	 * @throws OplsApiException
+	 *             if the queue is full.
+	 */
+	public Payment submit(UUID reference, boolean isEmployee,
+			String accountNumber, double amount, Consumer<Boolean> onComplete) {
+		var payment = new Payment(reference, isEmployee, accountNumber, amount,
+				System.currentTimeMillis() + deadline);
+		payments.put(reference, payment);
+		try {
+			workers.execute(() -> attempt(payment, onComplete));
+		} catch (RejectedExecutionException e) {
+			payments.remove(reference, payment);
+			throw new OplsApiException(HttpStatus.SERVICE_UNAVAILABLE,
+					"Payment queue is full.");
+		}
+		return payment;
+	}
+
+	/**
+	 * Get a payment.
+	 *
+	 * @param reference
+	 *            The ID of the paid resource.
+	 * @return The payment.
+	 * @throws OplsApiException
+	 *             if no payment was submitted, or its outcome expired.
+	 */
+	public Payment getPayment(UUID reference) {
+		var payment = payments.get(reference);
+		if (payment == null) {
+			throw new OplsApiException(HttpStatus.NOT_FOUND,
+					"Payment not found.");
+		}
+		return payment;
+	}
+
+	/**
+	 * Determine if a payment is waiting for its outcome.
+	 *
+	 * @param reference
+	 *            The ID of the paid resource.
+	 */
+	public boolean isPending(UUID reference) {
+		var payment = payments.get(reference);
+		return payment != null && payment.status == PaymentStatus.PENDING;
+	}
+
+	/**
+	 * Time in milliseconds after which a submitted payment has an outcome,
+	 * including the last attempt started before the deadline.
+	 */
+	public long getMaxDuration() {
+		return deadline + attemptTimeout;
+	}
+
+	/** Number of payments waiting for a worker. */
+	public int getQueueSize() {
+		return workers.getQueue().size();
+	}
+
+	/** Number of payments without an outcome. */
+	public long getPendingCount() {
+		return payments.values().stream()
+				.filter(payment -> payment.status == PaymentStatus.PENDING)
+				.count();
+	}
+
+	/** Forget the outcomes past the retention time. */
+	@Scheduled(fixedDelayString = "${opls.payment.cleanup-ms:60000}")
+	public void removeExpired() {
+		long expiry = System.currentTimeMillis() - retention;
+		payments.values()
+				.removeIf(payment -> payment.status != PaymentStatus.PENDING
+						&& payment.completedOn < expiry);
+	}
+
+	private void attempt(Payment payment, Consumer<Boolean> onComplete) {
+		int attempt = payment.attempts.incrementAndGet();
+		if (System.currentTimeMillis() >= payment.deadline) {
+			complete(payment, "Payment timed out.", onComplete);
+			return;
+		}
+
+		String error = null;
+		boolean transientFailure = false;
+		var watchdog = startAttempt(payment, attempt);
+		try {
+			paymentService.attemptPayment(payment.isEmployee,
+					payment.accountNumber, payment.amount,
+					payment.reference.toString());
+		} catch (OplsApiException e) {
+			error = e.getReason();
+		} catch (TimeoutException | StubBankService.BankUnavailableException e) {
+			error = "Payment could not be processed.";
+			transientFailure = true;
+		} catch (RuntimeException e) {
+			error = "Payment could not be processed.";
+		} finally {
+			endAttempt(payment, watchdog);
+		}
+
+		if (transientFailure && attempt < maxAttempts) {
+			retry(payment, onComplete, retryDelay << (attempt - 1));
+		} else {
+			complete(payment, error, onComplete);
+		}
+	}
+
+	/**
+	 * Record the worker running an attempt, and schedule its interruption
+	 * when the attempt timeout passes.
+	 */
+	private ScheduledFuture<?> startAttempt(Payment payment, int attempt) {
+		synchronized (payment) {
+			payment.attemptThread = Thread.currentThread();
+		}
+		return retries.schedule(() -> {
+			synchronized (payment) {
+				if (payment.attemptThread != null
+						&& payment.attempts.get() == attempt) {
+					payment.attemptThread.interrupt();
+				}
+			}
+		}, attemptTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	private void endAttempt(Payment payment, ScheduledFuture<?> watchdog) {
+		watchdog.cancel(false);
+		synchronized (payment) {
+			payment.attemptThread = null;
+			// clear an interrupt that came after the attempt returned
+			Thread.interrupted();
+		}
+	}
+
+	private void retry(Payment payment, Consumer<Boolean> onComplete,
+			long delay) {
+		retries.schedule(() -> {
+			try {
+				workers.execute(() -> attempt(payment, onComplete));
+			} catch (RejectedExecutionException e) {
+				// wait for room in the queue
+				retry(payment, onComplete, retryDelay);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void complete(Payment payment, String error,
+			Consumer<Boolean> onComplete) {
+		boolean paid = error == null;
+		payment.accountNumber = null;
+		try {
+			onComplete.accept(paid);
+		} catch (RuntimeException e) {
+			if (paid) {
+				// nothing was booked for the charge, give it back
+				paymentService.refundPayment(payment.reference.toString());
+				error = "Payment could not be applied.";
+				paid = false;
+			}
+		}
+		payment.error = error;
+		payment.completedOn = System.currentTimeMillis();
+		payment.status = paid ? PaymentStatus.PAID : PaymentStatus.REJECTED;
+	}
+
+}
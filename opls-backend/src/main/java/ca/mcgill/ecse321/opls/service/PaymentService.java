@@ -1,5 +1,9 @@
 package ca.mcgill.ecse321.opls.service;
 
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
@@ -14,9 +18,15 @@ public class PaymentService {
 	/** Account number to indicate cash payment. */
 	public static final String CASH_ACCOUNT = "0000000000000000";
 
+	@Autowired
+	private StubBankService bank;
+
+	@Value("${opls.payment.timeout-ms:5000}")
+	private long timeout = 5000;
+
 	/**
 	 * Submit a payment to the bank.
-	 * 
+	 *
 	 * @param accountNumber
 	 *            The credit card or saved account number.
 	 * @param amount
@@ -24,6 +34,73 @@ public class PaymentService {
 	 */
 	public double submitPayment(boolean isEmployee, String accountNumber,
 			double amount) {
+		return submitPayment(isEmployee, accountNumber, amount, null);
+	}
+
+	/**
+	 * Submit a payment to the bank, charging the account at most once per
+	 * reference, so that it can be refunded by its reference.
+	 *
+	 * @param accountNumber
+	 *            The credit card or saved account number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param reference
+	 *            Identifier of the payment, null if none.
+	 */
+	public double submitPayment(boolean isEmployee, String accountNumber,
+			double amount, String reference) {
+		try {
+			return attemptPayment(isEmployee, accountNumber, amount, reference);
+		} catch (TimeoutException | StubBankService.BankUnavailableException e) {
+			throw new OplsApiException(HttpStatus.BAD_GATEWAY,
+					"Payment could not be processed.");
+		}
+	}
+
+	/**
+	 * Submit a payment to the bank, charging the account at most once per
+	 * reference.
+	 * 
+	 * @param accountNumber
+	 *            The credit card or saved account number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param reference
+	 *            Identifier of the payment, so that a retried payment does not
+	 *            charge the account again.
+	 */
+	public double submitPayment(String accountNumber, double amount,
+			String reference) {
+		try {
+			bank.charge(accountNumber, amount, timeout, reference);
+			return amount;
+		} catch (TimeoutException | StubBankService.BankUnavailableException e) {
+			throw new OplsApiException(HttpStatus.BAD_GATEWAY,
+					"Payment could not be processed.");
+		}
+	}
+
+	/**
+	 * Submit a payment to the bank once, reporting transient failures so that
+	 * the caller can retry.
+	 *
+	 * @param accountNumber
+	 *            The credit card or saved account number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param reference
+	 *            Identifier of the payment, so that a retried payment does not
+	 *            charge the account again, null if none.
+	 * @throws TimeoutException
+	 *             if the bank does not answer in time.
+	 * @throws StubBankService.BankUnavailableException
+	 *             if the bank fails transiently.
+	 * @throws OplsApiException
+	 *             if the payment is rejected.
+	 */
+	double attemptPayment(boolean isEmployee, String accountNumber,
+			double amount, String reference) throws TimeoutException {
 		if (isEmployee) {
 			if (accountNumber.equals(CASH_ACCOUNT)) {
 				System.out.printf("Charge $%.2f in cash.\n", amount);
@@ -31,13 +108,28 @@ public class PaymentService {
 			}
 		}
 
-		if (accountNumber.length() == 16) {
-			System.out.printf("Charge $%.2f to account.\n", amount, accountNumber);
-			return amount;
-		}
-		else {
-			throw new OplsApiException(HttpStatus.BAD_REQUEST, "Rejected payment.");
-		}
+		bank.charge(accountNumber, amount, timeout, reference);
+		return amount;
+	}
+
+	/**
+	 * Determine if the bank charged a payment.
+	 *
+	 * @param reference
+	 *            Identifier of the payment.
+	 */
+	public boolean isCharged(String reference) {
+		return bank.isCharged(reference);
+	}
+
+	/**
+	 * Refund a payment submitted with a reference, if it was charged.
+	 *
+	 * @param reference
+	 *            Identifier of the payment.
+	 */
+	public void refundPayment(String reference) {
+		bank.refund(reference);
 	}
 
 }
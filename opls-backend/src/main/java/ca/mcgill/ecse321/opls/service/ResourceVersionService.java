@@ -0,0 +1,162 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Versions of the resource families, used as entity tags for conditional
+ * reads. The version of a family increases after every committed write to
+ * it, so a read can be answered as not modified without accessing the
+ * database. Tags include the startup time, so that they are not reused after
+ * a restart.
+ */
+@Service
+public class ResourceVersionService
+		implements
+			ParkingSpotOccupancyIndex.Listener {
+
+	/** Group of resources sharing a version. */
+	public enum Family {
+		/** Parking spots and their bookings. */
+		SPOTS,
+		/** Opening hours of the parking lot. */
+		SCHEDULE,
+		/** Parking lot system configuration. */
+		CONFIGURATION
+	}
+
+	@Autowired
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	private final String epoch = Long
+			.toString(System.currentTimeMillis(), 36);
+
+	private final Map<Family, AtomicLong> versions = new EnumMap<>(
+			Family.class);
+
+	/** Default constructor. */
+	public ResourceVersionService() {
+		for (var family : Family.values()) {
+			versions.put(family, new AtomicLong());
+		}
+	}
+
+	@PostConstruct
+	public void registerListener() {
+		occupancyIndex.addListener(this);
+	}
+
+	/**
+	 * Get the current version of a family.
+	 *
+	 * @param family
+	 *            The resource family.
+	 * @return The version.
+	 */
+	public long getVersion(Family family) {
+		if (family == Family.SPOTS) {
+			// bookings starting or ending change the spots, an index that is
+			// not loaded yet is not read from the database here
+			occupancyIndex.advance();
+		}
+		return versions.get(family).get();
+	}
+
+	/**
+	 * Get the strong entity tag of the current version of a family.
+	 *
+	 * @param family
+	 *            The resource family.
+	 * @return The quoted entity tag.
+	 */
+	public String getETag(Family family) {
+		return getETag(family, null);
+	}
+
+	/**
+	 * Get the strong entity tag of the current version of a family, for a
+	 * representation that also depends on the request.
+	 *
+	 * @param family
+	 *            The resource family.
+	 * @param request
+	 *            Serialized request the representation depends on, null if
+	 *            none.
+	 * @return The quoted entity tag.
+	 */
+	public String getETag(Family family, String request) {
+		var tag = family.name().toLowerCase() + "-" + epoch + "-"
+				+ Long.toString(getVersion(family), 36);
+		if (request != null) {
+			tag += "-" + digest(request);
+		}
+		return "\"" + tag + "\"";
+	}
+
+	/**
+	 * Determine whether an If-None-Match header matches an entity tag.
+	 *
+	 * @param ifNoneMatch
+	 *            The header value, null if absent.
+	 * @param etag
+	 *            The quoted entity tag.
+	 * @return Whether the resource is not modified.
+	 */
+	public static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (var candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Record a write to a family once the transaction commits. */
+	public void bump(Family family) {
+		TransactionHooks.afterCommit(() -> versions.get(family).incrementAndGet());
+	}
+
+	/** Record a write to every family, for writes outside of the services. */
+	public void bumpAll() {
+		for (var family : Family.values()) {
+			versions.get(family).incrementAndGet();
+		}
+	}
+
+	@Override
+	public void spotChanged(ParkingSpotEventDto event) {
+		versions.get(Family.SPOTS).incrementAndGet();
+	}
+
+	@Override
+	public void reset() {
+		versions.get(Family.SPOTS).incrementAndGet();
+	}
+
+	/** Short hexadecimal digest of a string. */
+	static String digest(String request) {
+		try {
+			var hash = MessageDigest.getInstance("SHA-256")
+					.digest(request.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(hash, 0, 12);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+
+/**
+ * Local stand-in for the card processor. Charges take a configurable latency
+ * and fail transiently at a configurable rate, so that the payment pipeline
+ * can be exercised offline. Cards with a number other than 16 digits are
+ * declined. Like a real processor, charges may carry a reference, a reference
+ * is only charged once, and a charge is refunded by its reference.
+ */
+@Service
+public class StubBankService {
+
+	/** Transient failure of the bank, after which a charge may be retried. */
+	public static class BankUnavailableException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		/** Default constructor. */
+		public BankUnavailableException() {
+			super("Bank unavailable.");
+		}
+
+	}
+
+	@Value("${opls.bank.latency-ms:0}")
+	private long latency = 0;
+
+	@Value("${opls.bank.jitter-ms:0}")
+	private long jitter = 0;
+
+	@Value("${opls.bank.failure-rate:0}")
+	private double failureRate = 0;
+
+	private final AtomicLong chargeCount = new AtomicLong();
+
+	private final AtomicLong refundCount = new AtomicLong();
+
+	private final Set<String> references = ConcurrentHashMap.newKeySet();
+
+	private final Set<String> refunded = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Charge a card.
+	 *
+	 * @param accountNumber
+	 *            The credit card number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param timeout
+	 *            Time to wait for the bank in milliseconds.
+	 * @throws TimeoutException
+	 *             if the bank does not answer within the timeout, in which
+	 *             case the card is not charged.
+	 * @throws BankUnavailableException
+	 *             if the bank fails transiently.
+	 * @throws OplsApiException
+	 *             if the card is declined.
+	 */
+	public void charge(String accountNumber, double amount, long timeout)
+			throws TimeoutException {
+		charge(accountNumber, amount, timeout, null);
+	}
+
+	/**
+	 * Charge a card at most once per reference.
+	 *
+	 * @param accountNumber
+	 *            The credit card number.
+	 * @param amount
+	 *            The amount to charge.
+	 * @param timeout
+	 *            Time to wait for the bank in milliseconds.
+	 * @param reference
+	 *            Identifier of the charge, so that retrying it does not charge
+	 *            the card again, null if none.
+	 * @throws TimeoutException
+	 *             if the bank does not answer within the timeout, in which
+	 *             case the card is not charged.
+	 * @throws BankUnavailableException
+	 *             if the bank fails transiently.
+	 * @throws OplsApiException
+	 *             if the card is declined.
+	 */
+	public void charge(String accountNumber, double amount, long timeout,
+			String reference) throws TimeoutException {
+		var random = ThreadLocalRandom.current();
+		long delay = latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0);
+		try {
+			Thread.sleep(Math.min(delay, timeout));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BankUnavailableException();
+		}
+		if (delay > timeout) {
+			throw new TimeoutException("Bank did not answer.");
+		}
+		if (failureRate > 0 && random.nextDouble() < failureRate) {
+			throw new BankUnavailableException();
+		}
+
+		if (accountNumber.length() != 16) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Rejected payment.");
+		}
+		if (reference != null && !references.add(reference)) {
+			// already charged
+			return;
+		}
+		chargeCount.incrementAndGet();
+	}
+
+	/**
+	 * Determine if a charge was made with a reference.
+	 *
+	 * @param reference
+	 *            Identifier of the charge.
+	 */
+	public boolean isCharged(String reference) {
+		return references.contains(reference) && !refunded.contains(reference);
+	}
+
+	/**
+	 * Refund a charge made with a reference. Refunding a reference that was
+	 * not charged, or already refunded, does nothing.
+	 *
+	 * @param reference
+	 *            Identifier of the charge.
+	 */
+	public void refund(String reference) {
+		if (references.contains(reference) && refunded.add(reference)) {
+			refundCount.incrementAndGet();
+		}
+	}
+
+	/** Number of successful charges. */
+	public long getChargeCount() {
+		return chargeCount.get();
+	}
+
+	/** Number of refunded charges. */
+	public long getRefundCount() {
+		return refundCount.get();
+	}
+
+}
@@ -0,0 +1,143 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of values due at given timestamps. Each level has
+ * 64 buckets, each covering 64 buckets of the level below, the first level
+ * covering one tick per bucket. Values are placed on the lowest level whose
+ * span reaches their due time, and move down a level when the wheel reaches
+ * their bucket, so scheduling a value and advancing by one tick take constant
+ * time. Values due beyond the span of the top level wait in an overflow list.
+ * Not thread safe.
+ *
+ * @param <T>
+ *            The type of the scheduled values.
+ */
+class TimingWheel<T> {
+
+	private static final int BITS = 6;
+	private static final int SIZE = 1 << BITS;
+	private static final int MASK = SIZE - 1;
+	private static final int LEVELS = 4;
+
+	private static class Entry<T> {
+		final long tick;
+		final T value;
+
+		Entry(long tick, T value) {
+			this.tick = tick;
+			this.value = value;
+		}
+	}
+
+	private final long tickLength;
+	private final List<List<Entry<T>>> buckets = new ArrayList<>();
+	private List<Entry<T>> overflow = new ArrayList<>();
+	private final List<T> due = new ArrayList<>();
+	private long current;
+	private int size = 0;
+
+	/**
+	 * Create an empty wheel.
+	 *
+	 * @param tickLength
+	 *            The length of a tick in milliseconds.
+	 * @param now
+	 *            The current timestamp in milliseconds.
+	 */
+	public TimingWheel(long tickLength, long now) {
+		this.tickLength = tickLength;
+		this.current = now / tickLength;
+		for (int i = 0; i < LEVELS * SIZE; ++i) {
+			buckets.add(new ArrayList<>());
+		}
+	}
+
+	/** Number of scheduled values. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Schedule a value. Values due at or before the current tick are returned
+	 * by the next advance.
+	 *
+	 * @param time
+	 *            The timestamp the value is due at, in milliseconds.
+	 * @param value
+	 *            The value.
+	 */
+	public void schedule(long time, T value) {
+		// round up, so that values are never returned early
+		long tick = Math.floorDiv(time + tickLength - 1, tickLength);
+		place(new Entry<>(tick, value));
+		++size;
+	}
+
+	/**
+	 * Move the wheel to a timestamp.
+	 *
+	 * @param now
+	 *            The current timestamp in milliseconds.
+	 * @return The values that became due, in order of due tick.
+	 */
+	public List<T> advance(long now) {
+		long target = now / tickLength;
+		var result = new ArrayList<T>(due);
+		due.clear();
+		while (current < target) {
+			++current;
+
+			// move the values of the upper levels down, from the top
+			if ((current & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+				var entries = overflow;
+				overflow = new ArrayList<>();
+				entries.forEach(this::place);
+			}
+			for (int level = LEVELS - 1; level > 0; --level) {
+				if ((current & ((1L << (BITS * level)) - 1)) == 0) {
+					cascade(level);
+				}
+			}
+
+			var bucket = bucket(0, current);
+			for (var entry : bucket) {
+				result.add(entry.value);
+			}
+			bucket.clear();
+			result.addAll(due);
+			due.clear();
+		}
+		size -= result.size();
+		return result;
+	}
+
+	private void cascade(int level) {
+		var bucket = bucket(level, current);
+		var entries = new ArrayList<>(bucket);
+		bucket.clear();
+		entries.forEach(this::place);
+	}
+
+	private void place(Entry<T> entry) {
+		if (entry.tick <= current) {
+			due.add(entry.value);
+			return;
+		}
+		for (int level = 0; level < LEVELS; ++level) {
+			int shift = BITS * (level + 1);
+			if ((entry.tick >> shift) == (current >> shift)) {
+				bucket(level, entry.tick).add(entry);
+				return;
+			}
+		}
+		overflow.add(entry);
+	}
+
+	private List<Entry<T>> bucket(int level, long tick) {
+		return buckets.get(level * SIZE + (int) ((tick >> (BITS * level)) & MASK));
+	}
+
+}
@@ -0,0 +1,44 @@
+package ca.mcgill.ecse321.opls.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Helpers to run code at points of the current transaction.
+ */
+final class TransactionHooks {
+
+	private TransactionHooks() {
+	}
+
+	/** Run the action after the current transaction commits, or now. */
+	static void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronization() {
+						@Override
+						public void afterCommit() {
+							action.run();
+						}
+					});
+		} else {
+			action.run();
+		}
+	}
+
+	/** Run the action if the current transaction rolls back. */
+	static void afterRollback(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager
+					.registerSynchronization(new TransactionSynchronization() {
+						@Override
+						public void afterCompletion(int status) {
+							if (status != STATUS_COMMITTED) {
+								action.run();
+							}
+						}
+					});
+		}
+	}
+
+}
@@ -0,0 +1,187 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
+
+/**
+ * In-memory index of the confirmed bookings of each vehicle service, used to
+ * find a free bay for new bookings without querying the database. The
+ * bookings of a service that had not ended are loaded in one interval tree
+ * per bay on the first check, then kept current as bookings are saved or
+ * deleted. Periods starting before the bookings were loaded are checked
+ * against the database.
+ */
+@Service
+public class VehicleServiceBookingIndex {
+
+	@Autowired
+	private VehicleServiceBookingRepository bookingRepository;
+
+	@Value("${opls.service.index-ttl-ms:300000}")
+	private long ttl = 300000;
+
+	private final Map<String, ServiceBookings> services = new ConcurrentHashMap<>();
+
+	/** Confirmed bookings of a vehicle service. */
+	private static class ServiceBookings {
+
+		/** Date from which the bookings are loaded, -1 if not loaded. */
+		long loadedFrom = -1;
+		long expires;
+
+		/** Bookings of each bay. */
+		final Map<Integer, IntervalTree<Integer>> trees = new HashMap<>();
+
+		/** Bay and start of each booking in the trees, by id. */
+		final Map<Integer, long[]> entriesById = new HashMap<>();
+
+		void add(int id, int bay, long start, long end) {
+			remove(id);
+			trees.computeIfAbsent(bay, b -> new IntervalTree<>()).insert(start,
+					end, id, id);
+			entriesById.put(id, new long[]{bay, start});
+		}
+
+		void remove(int id) {
+			var entry = entriesById.remove(id);
+			if (entry != null) {
+				trees.get((int) entry[0]).remove(entry[1], id);
+			}
+		}
+
+		boolean isFree(int bay, long start, long end) {
+			var tree = trees.get(bay);
+			return tree == null || !tree.overlaps(start, end);
+		}
+
+		void clear() {
+			trees.clear();
+			entriesById.clear();
+		}
+
+	}
+
+	/**
+	 * Find the first bay of a vehicle service without a confirmed booking
+	 * overlapping a half-open period, so that a booking may start when the
+	 * previous one ends.
+	 *
+	 * @param vehicleService
+	 *            The vehicle service.
+	 * @param startDate
+	 *            The start of the period.
+	 * @param endDate
+	 *            The end of the period.
+	 * @return The bay, or -1 if all bays are booked during the period.
+	 */
+	public int findFreeBay(VehicleService vehicleService, Date startDate,
+			Date endDate) {
+		var bookings = services.computeIfAbsent(vehicleService.getId(),
+				id -> new ServiceBookings());
+		long start = startDate.getTime();
+		long end = endDate.getTime();
+		long now = System.currentTimeMillis();
+		synchronized (bookings) {
+			if (bookings.loadedFrom < 0 || now >= bookings.expires) {
+				load(vehicleService.getId(), bookings, now);
+			}
+			if (start >= bookings.loadedFrom) {
+				for (int bay = 0; bay < vehicleService.getBays(); ++bay) {
+					if (bookings.isFree(bay, start, end)) {
+						return bay;
+					}
+				}
+				return -1;
+			}
+		}
+
+		var booked = new HashSet<>(bookingRepository.getBookedBaysDuring(
+				vehicleService.getId(), startDate, endDate));
+		for (int bay = 0; bay < vehicleService.getBays(); ++bay) {
+			if (!booked.contains(bay)) {
+				return bay;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Update the index once a booking is saved.
+	 *
+	 * @param booking
+	 *            The saved booking.
+	 */
+	public void bookingSaved(VehicleServiceBooking booking) {
+		TransactionHooks.afterCommit(() -> update(booking,
+				booking.getBookingStatus() == BookingStatus.CONFIRMED));
+	}
+
+	/**
+	 * Update the index once a booking is deleted.
+	 *
+	 * @param booking
+	 *            The deleted booking.
+	 */
+	public void bookingRemoved(VehicleServiceBooking booking) {
+		TransactionHooks.afterCommit(() -> update(booking, false));
+	}
+
+	/**
+	 * Discard the index so it is reloaded from the database on the next check.
+	 * Must be called after writing to the table without going through the
+	 * services.
+	 */
+	public void invalidate() {
+		services.clear();
+	}
+
+	private void update(VehicleServiceBooking booking, boolean booked) {
+		if (booking.getVehicleService() == null) {
+			return;
+		}
+		var bookings = services.get(booking.getVehicleService().getId());
+		if (bookings == null) {
+			return;
+		}
+		synchronized (bookings) {
+			if (booked && booking.getStartDate() != null
+					&& booking.getEndDate() != null) {
+				bookings.add(booking.getId(), booking.getBayOrFirst(),
+						booking.getStartDate().getTime(),
+						booking.getEndDate().getTime());
+			} else {
+				bookings.remove(booking.getId());
+			}
+		}
+	}
+
+	/*
+	 * Load the bookings that had not ended. The caller holds the lock, so
+	 * updates committed during the load are applied after it.
+	 */
+	private void load(String vehicleServiceId, ServiceBookings bookings,
+			long now) {
+		bookings.clear();
+		for (var booking : bookingRepository.getConfirmedBookingsEndingAfter(
+				vehicleServiceId, new Date(now))) {
+			bookings.add(booking.getId(), booking.getBayOrFirst(),
+					booking.getStartDate().getTime(),
+					booking.getEndDate().getTime());
+		}
+		bookings.loadedFrom = now;
+		bookings.expires = now + ttl;
+	}
+
+}
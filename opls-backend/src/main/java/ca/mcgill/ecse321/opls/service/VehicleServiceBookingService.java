@@ -1,8 +1,11 @@
 package ca.mcgill.ecse321.opls.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -11,9 +14,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingDto;
 import ca.mcgill.ecse321.opls.exception.OplsApiException;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Booking.DateRange;
+import ca.mcgill.ecse321.opls.model.ParkingLotSystem.ParkingLotSystemSchedule;
 import ca.mcgill.ecse321.opls.model.Schedule.Day;
 import ca.mcgill.ecse321.opls.model.VehicleService;
 import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
@@ -37,6 +42,52 @@ public class VehicleServiceBookingService {
 	@Autowired
 	private CustomerRepository customerRepository;
 
+	@Autowired
+	private ConfirmationNumberGenerator confirmationNumbers;
+
+	@Autowired
+	private VehicleServiceBookingIndex bookingIndex;
+
+	@Autowired
+	private VehicleServiceCalendar serviceCalendar;
+
+	/** Immutable view of a booking fetched by confirmation number. */
+	private record CachedBooking(UUID uuid, BookingStatus status,
+			String confirmationNumber, long startTime, long endTime,
+			double cost, String vehicleServiceId, Integer bay,
+			String licensePlate) {
+
+		private CachedBooking(VehicleServiceBooking booking) {
+			this(booking.getUuid(), booking.getBookingStatus(),
+					booking.getConfirmationNumber(),
+					booking.getStartDate().getTime(),
+					booking.getEndDate().getTime(), booking.getCost(),
+					booking.getVehicleService().getId(), booking.getBay(),
+					booking.getLicensePlate());
+		}
+
+		private ServiceBookingDto toDto() {
+			var dto = new ServiceBookingDto();
+			dto.uuid = uuid;
+			dto.status = status;
+			dto.confirmationNumber = confirmationNumber;
+			dto.startDate = new Date(startTime);
+			dto.endDate = new Date(endTime);
+			dto.cost = cost;
+			dto.vehicleServiceId = vehicleServiceId;
+			dto.bay = bay;
+			dto.licensePlate = licensePlate;
+			return dto;
+		}
+	}
+
+	/** Number of bookings kept by confirmation number. */
+	private static final int CONFIRMATION_CACHE_SIZE = 1024;
+
+	/** Bookings recently fetched by confirmation number. */
+	private final BookingLookupCache<CachedBooking> bookingsByConfirmationNumber = new BookingLookupCache<>(
+			CONFIRMATION_CACHE_SIZE, CachedBooking::endTime);
+
 	/**
 	 * Get vehicle service booking by id.
 	 * 
@@ -91,6 +142,22 @@ public class VehicleServiceBookingService {
 		return booking;
 	}
 
+	/**
+	 * Get the response for a booking by confirmation number, kept until the
+	 * booking changes or ends.
+	 * 
+	 * @param confirmationNumber
+	 *            confirmation number of the booking.
+	 * @return a new response for the booking, if found.
+	 */
+	public ServiceBookingDto getVehicleServiceBookingResponse(
+			String confirmationNumber) {
+		return bookingsByConfirmationNumber.get(confirmationNumber,
+				() -> new CachedBooking(
+						getVehicleServiceBooking(confirmationNumber)))
+				.toDto();
+	}
+
 	/**
 	 * Update a vehicle service booking.
 	 * 
@@ -110,7 +177,12 @@ public class VehicleServiceBookingService {
 		if (bookingStatus != null) {
 			booking.setBookingStatus(bookingStatus);
 		}
-		return bookingRepository.save(booking);
+		booking = bookingRepository.save(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		bookingIndex.bookingSaved(booking);
+		serviceCalendar.bookingSaved(booking);
+		return booking;
 	}
 
 	/**
@@ -128,6 +200,10 @@ public class VehicleServiceBookingService {
 					"Booking not found.");
 		}
 		bookingRepository.delete(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		bookingIndex.bookingRemoved(booking);
+		serviceCalendar.bookingRemoved(booking);
 		return booking;
 	}
 
@@ -141,6 +217,24 @@ public class VehicleServiceBookingService {
 	 * @return the booking with some filled in fields.
 	 */
 	public VehicleServiceBooking processBooking(String id, Date startDate) {
+		return processBooking(id, startDate, scheduleRepository
+				.findActiveParkingLotScheduleByDay(Day.fromDate(startDate)));
+	}
+
+	/**
+	 * Validate a vehicle service booking request against a schedule, so that
+	 * other bookings can be validated against the same one.
+	 * 
+	 * @param id
+	 *            Id of the vehicle service that is requested.
+	 * @param startDate
+	 *            The start date of the service.
+	 * @param todaySchedule
+	 *            The schedule on the day of the start date, null if closed.
+	 * @return the booking with some filled in fields.
+	 */
+	public VehicleServiceBooking processBooking(String id, Date startDate,
+			ParkingLotSystemSchedule todaySchedule) {
 		VehicleService vehicleService = serviceRepository
 				.findVehicleServiceById(id);
 		if (vehicleService == null) {
@@ -149,25 +243,15 @@ public class VehicleServiceBookingService {
 		}
 		var endDate = new Date(startDate.getTime()
 				+ TimeUnit.MINUTES.toMillis(vehicleService.getDuration()));
-		var calendar = Calendar.getInstance();
-		calendar.setTime(startDate);
 
-		// ensure service not booked
-		var existingBookings = bookingRepository.query(vehicleService,
-				startDate, endDate);
-		int i = 0;
-		for (@SuppressWarnings("unused") var b : existingBookings) {
-			++i;
-		}
-		if (i > 0) {
+		// find a bay free during the whole booking
+		int bay = bookingIndex.findFreeBay(vehicleService, startDate, endDate);
+		if (bay < 0) {
 			throw new OplsApiException(HttpStatus.CONFLICT,
 					"Vehicle service already booked for this timeslot.");
 		}
 
 		// ensure parking lot not closed
-		var todaySchedule = scheduleRepository
-				.findActiveParkingLotScheduleByDay(Day
-						.fromCalendarDay(calendar.get(Calendar.DAY_OF_WEEK)));
 		if (todaySchedule == null
 				|| todaySchedule.inScheduleOnDay(startDate, endDate)) {
 			throw new OplsApiException(HttpStatus.BAD_REQUEST,
@@ -177,6 +261,7 @@ public class VehicleServiceBookingService {
 		booking.setBookingStatus(BookingStatus.REQUESTED);
 		booking.setDateRange(startDate, endDate);
 		booking.setVehicleService(vehicleService);
+		booking.setBay(bay);
 		booking.setCost(vehicleService.getFee());
 		return booking;
 	}
@@ -197,6 +282,14 @@ public class VehicleServiceBookingService {
 			Integer userAccountId, String licensePlate) {
 		if (booking.getVehicleService() != null
 				&& booking.getStartDate() != null) {
+			// the bays of the service cannot be removed until this commits
+			var vehicleService = serviceRepository.shareVehicleServiceById(
+					booking.getVehicleService().getId());
+			if (booking.getBay() != null
+					&& booking.getBay() >= vehicleService.getBays()) {
+				throw new OplsApiException(HttpStatus.CONFLICT,
+						"Vehicle service already booked for this timeslot.");
+			}
 			booking.setBookingStatus(BookingStatus.CONFIRMED);
 		}
 
@@ -205,8 +298,34 @@ public class VehicleServiceBookingService {
 					.findCustomerByUserAccountId(userAccountId));
 		}
 		booking.setLicensePlate(licensePlate);
-		booking.generateConfirmationNumber();
-		return bookingRepository.save(booking);
+		booking.setConfirmationNumber(confirmationNumbers.next());
+		booking = bookingRepository.save(booking);
+		bookingsByConfirmationNumber
+				.invalidate(booking.getConfirmationNumber());
+		bookingIndex.bookingSaved(booking);
+		serviceCalendar.bookingSaved(booking);
+		return booking;
+	}
+
+	/**
+	 * Get the start times at which a vehicle service can be booked.
+	 * 
+	 * @param id
+	 *            Id of the vehicle service.
+	 * @param from
+	 *            The start of the range, inclusive.
+	 * @param to
+	 *            The end of the range, exclusive.
+	 * @return the free start times, in order.
+	 */
+	public List<Date> getAvailableSlots(String id, Date from, Date to) {
+		VehicleService vehicleService = serviceRepository
+				.findVehicleServiceById(id);
+		if (vehicleService == null) {
+			throw new OplsApiException(HttpStatus.NOT_FOUND,
+					"Vehicle service not found.");
+		}
+		return serviceCalendar.getSlots(vehicleService, from, to, new Date());
 	}
 
 	/**
@@ -226,16 +345,74 @@ public class VehicleServiceBookingService {
 	public Iterable<DateRange> queryBookings(Integer customerUserId,
 			Collection<String> vehicleServiceIds, Date startDate,
 			Date endDate) {
-		Integer customerId = null;
-		if (customerUserId != null) {
-			var customer = customerRepository.findCustomerByUserAccountId(customerUserId);
-			customerId = customer == null
-					? null
-					: customer.getId();
-		}
-		
-		return bookingRepository.query(customerId, vehicleServiceIds, startDate,
-				endDate);
+		return bookingRepository.query(getCustomerId(customerUserId),
+				vehicleServiceIds, startDate, endDate);
+	}
+
+	/**
+	 * Query a page of vehicle service bookings, in order of start date.
+	 * 
+	 * @param customerUserId
+	 *            The ID of the user account to query for, null if do not apply
+	 *            filter.
+	 * @param vehicleServiceIds
+	 *            The IDs of vehicle services.
+	 * @param startDate
+	 *            The start date of the query range.
+	 * @param endDate
+	 *            The end date of the query range.
+	 * @param next
+	 *            The continuation token of the previous page, null for the
+	 *            first page.
+	 * @param limit
+	 *            The maximum number of bookings to return.
+	 * @return The queried results.
+	 */
+	public List<DateRange> queryBookings(Integer customerUserId,
+			Collection<String> vehicleServiceIds, Date startDate, Date endDate,
+			String next, int limit) {
+		var after = next == null ? null : parseContinuationToken(next);
+		return bookingRepository.search(getCustomerId(customerUserId),
+				vehicleServiceIds, startDate, endDate, after, limit);
+	}
+
+	/**
+	 * Get the continuation token of the page following a booking.
+	 * 
+	 * @param last
+	 *            The last booking of the page.
+	 * @return The token.
+	 */
+	public static String getContinuationToken(DateRange last) {
+		var token = last.startDate.getTime() + ":" + last.uuid;
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** Parse a continuation token into the last booking of the page. */
+	private static DateRange parseContinuationToken(String next) {
+		try {
+			var token = new String(Base64.getUrlDecoder().decode(next),
+					StandardCharsets.UTF_8);
+			int separator = token.indexOf(':');
+			var startDate = new Date(
+					Long.parseLong(token.substring(0, separator)));
+			var uuid = UUID.fromString(token.substring(separator + 1));
+			return new DateRange(uuid, startDate, startDate);
+		} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Invalid continuation token.");
+		}
+	}
+
+	/** Get the customer ID of a user account, if any. */
+	private Integer getCustomerId(Integer customerUserId) {
+		if (customerUserId == null) {
+			return null;
+		}
+		var customer = customerRepository
+				.findCustomerByUserAccountId(customerUserId);
+		return customer == null ? null : customer.getId();
 	}
 
 }
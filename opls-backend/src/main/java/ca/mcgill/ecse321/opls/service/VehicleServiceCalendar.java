@@ -0,0 +1,334 @@
+package ca.mcgill.ecse321.opls.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.Schedule;
+import ca.mcgill.ecse321.opls.model.Schedule.Day;
+import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemScheduleRepository;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+
+/**
+ * Calendar of the bookable start times of the vehicle services. Each day of a
+ * service keeps, for each bay, a bit per start time in the opening hours,
+ * cleared when a confirmed booking in the bay overlaps the service starting
+ * then, with the same rule as the check on new bookings. A start time is
+ * bookable if it is free in any bay. Days are loaded from the database when
+ * first read, then updated as bookings are saved or deleted. A day is loaded
+ * again when the opening hours, the duration or the bays of the service
+ * change, or after a while to pick up changes made elsewhere.
+ */
+@Service
+public class VehicleServiceCalendar {
+
+	/** Maximum number of days queried at once. */
+	public static final int MAX_DAYS = 31;
+
+	@Autowired
+	private VehicleServiceBookingRepository bookingRepository;
+
+	@Autowired
+	private ParkingLotSystemScheduleRepository scheduleRepository;
+
+	@Autowired
+	private ResourceVersionService resourceVersionService;
+
+	@Value("${opls.service.slot-step-minutes:15}")
+	private int stepMinutes = 15;
+
+	@Value("${opls.service.calendar-ttl-ms:60000}")
+	private long ttl = 60000;
+
+	/** Loaded days of each service, by start of the day. */
+	private final Map<String, Map<Long, DayCalendar>> calendars = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the start times at which a vehicle service can be booked.
+	 *
+	 * @param service
+	 *            The vehicle service.
+	 * @param from
+	 *            The start of the range, inclusive.
+	 * @param to
+	 *            The end of the range, exclusive.
+	 * @param now
+	 *            The current date, before which no times are returned.
+	 * @return The start times, in order.
+	 */
+	public List<Date> getSlots(VehicleService service, Date from, Date to,
+			Date now) {
+		if (!to.after(from) || to.getTime() - from.getTime() > TimeUnit.DAYS
+				.toMillis(MAX_DAYS)) {
+			throw new OplsApiException(HttpStatus.BAD_REQUEST,
+					"Invalid date range.");
+		}
+
+		long start = Math.max(from.getTime(), now.getTime());
+		var slots = new ArrayList<Date>();
+		var days = calendars.computeIfAbsent(service.getId(),
+				id -> new HashMap<>());
+		synchronized (days) {
+			days.values().removeIf(day -> day.isExpired(now.getTime()));
+
+			long version = resourceVersionService.getVersion(Family.SCHEDULE);
+			for (long day = startOfDay(start); day < to.getTime(); day = nextDay(
+					day)) {
+				var calendar = days.get(day);
+				if (calendar == null || calendar.scheduleVersion != version
+						|| calendar.duration != service.getDuration()
+						|| calendar.bays != service.getBays()) {
+					calendar = loadDay(service, day, version, now.getTime());
+					days.put(day, calendar);
+				}
+				calendar.addSlots(slots, start, to.getTime());
+			}
+		}
+		return slots;
+	}
+
+	/**
+	 * Update the calendar once a booking is saved.
+	 *
+	 * @param booking
+	 *            The saved booking.
+	 */
+	public void bookingSaved(VehicleServiceBooking booking) {
+		TransactionHooks.afterCommit(() -> update(booking,
+				booking.getBookingStatus() == BookingStatus.CONFIRMED));
+	}
+
+	/**
+	 * Update the calendar once a booking is deleted.
+	 *
+	 * @param booking
+	 *            The deleted booking.
+	 */
+	public void bookingRemoved(VehicleServiceBooking booking) {
+		TransactionHooks.afterCommit(() -> update(booking, false));
+	}
+
+	/** Add or remove a booking from the loaded days it overlaps. */
+	private void update(VehicleServiceBooking booking, boolean booked) {
+		if (booking.getVehicleService() == null
+				|| booking.getStartDate() == null
+				|| booking.getEndDate() == null) {
+			return;
+		}
+		var days = calendars.get(booking.getVehicleService().getId());
+		if (days == null) {
+			return;
+		}
+
+		var range = new BookedRange(booking);
+		synchronized (days) {
+			for (var calendar : days.values()) {
+				if (calendar.overlaps(range)) {
+					if (booked) {
+						calendar.add(booking.getUuid(), range);
+					} else {
+						calendar.remove(booking.getUuid());
+					}
+				}
+			}
+		}
+	}
+
+	/** Load a day of a service from the schedule and the bookings. */
+	private DayCalendar loadDay(VehicleService service, long day,
+			long scheduleVersion, long now) {
+		var calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(day);
+		var dayDate = calendar.getTime();
+		var schedule = scheduleRepository
+				.findActiveParkingLotScheduleByDay(Day.fromDate(dayDate));
+
+		long open = day;
+		long close = day;
+		if (schedule != null) {
+			open = Schedule.getTimeOnDate(dayDate, schedule.getStartTime());
+			close = Schedule.getTimeOnDate(dayDate, schedule.getEndTime());
+		}
+
+		var dayCalendar = new DayCalendar(scheduleVersion,
+				service.getDuration(), service.getBays(),
+				TimeUnit.MINUTES.toMillis(stepMinutes), open, close, now + ttl);
+		if (close > open) {
+			for (var booking : bookingRepository.getConfirmedBookingsDuring(
+					service.getId(), new Date(open), new Date(close))) {
+				dayCalendar.bookings.put(booking.getUuid(),
+						new BookedRange(booking));
+			}
+		}
+		dayCalendar.recompute();
+		return dayCalendar;
+	}
+
+	/** Get the start of the day of a date. */
+	private static long startOfDay(long date) {
+		var calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(date);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	/** Get the start of the day after a start of day. */
+	private static long nextDay(long day) {
+		var calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(day);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		return calendar.getTimeInMillis();
+	}
+
+	/** Period of a confirmed booking in a bay. */
+	private static class BookedRange {
+
+		final long start;
+		final long end;
+		final int bay;
+
+		BookedRange(VehicleServiceBooking booking) {
+			this.start = booking.getStartDate().getTime();
+			this.end = booking.getEndDate().getTime();
+			this.bay = booking.getBayOrFirst();
+		}
+
+	}
+
+	/** Bookable start times of a service on a day. */
+	private static class DayCalendar {
+
+		final long scheduleVersion;
+		final int duration;
+		final int bays;
+		final long durationMs;
+		final long step;
+		final long open;
+		final long close;
+		final long expires;
+
+		/** Confirmed bookings overlapping the opening hours. */
+		final Map<UUID, BookedRange> bookings = new HashMap<>();
+
+		/** Number of start times in the opening hours. */
+		final int count;
+
+		/** Bit i of bay b is set if the service can start at open + i * step. */
+		BitSet[] freeByBay;
+
+		/** Start times free in any bay. */
+		BitSet free;
+
+		DayCalendar(long scheduleVersion, int duration, int bays, long step,
+				long open, long close, long expires) {
+			this.scheduleVersion = scheduleVersion;
+			this.duration = duration;
+			this.bays = bays;
+			this.durationMs = TimeUnit.MINUTES.toMillis(duration);
+			this.step = step;
+			this.open = open;
+			this.close = close;
+			this.expires = expires;
+			this.count = close - open >= durationMs
+					? (int) ((close - open - durationMs) / step) + 1
+					: 0;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expires;
+		}
+
+		/** Check if a booking can block a start time of the day. */
+		boolean overlaps(BookedRange range) {
+			return range.start < close && range.end > open;
+		}
+
+		void add(UUID uuid, BookedRange range) {
+			var previous = bookings.put(uuid, range);
+			if (previous != null && previous.bay != range.bay) {
+				recompute();
+			} else {
+				block(range);
+				union();
+			}
+		}
+
+		void remove(UUID uuid) {
+			if (bookings.remove(uuid) != null) {
+				recompute();
+			}
+		}
+
+		void recompute() {
+			freeByBay = new BitSet[bays];
+			for (int bay = 0; bay < bays; ++bay) {
+				freeByBay[bay] = new BitSet(count);
+				freeByBay[bay].set(0, count);
+			}
+			for (var range : bookings.values()) {
+				block(range);
+			}
+			union();
+		}
+
+		/*
+		 * Periods are half-open, so the service starting at s conflicts with
+		 * the booking when s is in (booking start - duration, booking end).
+		 * Bookings in bays the service no longer has are ignored.
+		 */
+		private void block(BookedRange range) {
+			if (range.bay >= bays) {
+				return;
+			}
+			long first = range.start - durationMs - open;
+			long last = range.end - open;
+			int from = (int) Math.max(0, Math.floorDiv(first, step) + 1);
+			int to = (int) Math.min(count - 1, Math.floorDiv(last - 1, step));
+			if (from <= to) {
+				freeByBay[range.bay].clear(from, to + 1);
+			}
+		}
+
+		private void union() {
+			free = new BitSet(count);
+			for (var bayFree : freeByBay) {
+				free.or(bayFree);
+			}
+		}
+
+		/** Add the free start times within [start, end) to the list. */
+		void addSlots(List<Date> slots, long start, long end) {
+			for (int i = free.nextSetBit(0); i >= 0; i = free.nextSetBit(i + 1)) {
+				long slot = open + i * step;
+				if (slot >= end) {
+					break;
+				}
+				if (slot >= start) {
+					slots.add(new Date(slot));
+				}
+			}
+		}
+
+	}
+
+}
@@ -7,6 +7,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import ca.mcgill.ecse321.opls.exception.OplsApiException;
 import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
 import ca.mcgill.ecse321.opls.repository.VehicleServiceRepository;
 
 @Service
@@ -14,6 +15,9 @@ public class VehicleServiceService {
 
 	@Autowired
 	private VehicleServiceRepository vehicleServiceRepository;
+
+	@Autowired
+	private VehicleServiceBookingRepository vehicleServiceBookingRepository;
 	
 
 	
@@ -58,11 +62,27 @@ public class VehicleServiceService {
 	 */
 	@Transactional
 	public VehicleService createVehicleService(String displayName, int duration, double fee) {
+		return createVehicleService(displayName, duration, fee, null);
+	}
+
+	/**
+	 * Method to create a vehicle service with a number of bays
+	 * @param displayName
+	 * @param duration 
+	 * @param fee
+	 * @param bays the number of bookings that can overlap, 1 if null
+	 * @return the created vehicle service
+	 */
+	@Transactional
+	public VehicleService createVehicleService(String displayName, int duration, double fee, Integer bays) {
 
 		VehicleService vs = new VehicleService();
 		vs.setDisplayName(displayName);
 		vs.setDuration(duration);
 		vs.setFee(fee);
+		if (bays != null) {
+			vs.setBays(bays);
+		}
 
 		return vehicleServiceRepository.save(vs);
 
@@ -77,11 +97,36 @@ public class VehicleServiceService {
      */
     @Transactional
     public VehicleService updateVehicleService(String id, String displayName, int duration, double fee) {
+        return updateVehicleService(id, displayName, duration, fee, null);
+    }
+
+    /**
+     * Updates the vehicle service with the given id with the given display name, duration, fee and number of bays.
+     * @param id
+     * @param displayName
+     * @param duration
+     * @param fee
+     * @param bays the number of bookings that can overlap, unchanged if null
+     * @throws OplsApiException if bays are removed while bookings that have not ended are in them
+     */
+    @Transactional
+    public VehicleService updateVehicleService(String id, String displayName, int duration, double fee, Integer bays) {
 
         VehicleService vs = getVehicleService(id);
+        if (bays != null && bays < vs.getBays()) {
+            // bookings confirmed meanwhile wait for the lock, then see the new bays
+            vs = vehicleServiceRepository.lockVehicleServiceById(id);
+            if (vehicleServiceBookingRepository.hasNotEndedInBaysFrom(id, bays)) {
+                throw new OplsApiException(HttpStatus.CONFLICT, "conflict",
+                        "the removed bays have bookings that have not ended");
+            }
+        }
         vs.setDisplayName(displayName);
         vs.setDuration(duration);
         vs.setFee(fee);
+        if (bays != null) {
+            vs.setBays(bays);
+        }
         return vehicleServiceRepository.save(vs);
     }
 
@@ -1,22 +1,34 @@
 package ca.mcgill.ecse321.opls.integration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 
 import ca.mcgill.ecse321.opls.OplsStartupService;
+import ca.mcgill.ecse321.opls.dto.OplsApiErrorResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto.SpotRange;
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.FloorStatusRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotAvailabilityDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryRequestDto;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.PatchParkingSpotRequestDto;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
 import jakarta.annotation.PostConstruct;
@@ -120,6 +132,45 @@ public class TestParkingSpotController extends OplsApiTester{
         assertReturnsError(HttpStatus.NOT_FOUND, "Parking spot not found.", null, HttpMethod.PUT, "/spot/"+spot.getId(),requestBody,null);
 
     }
+    /**
+     * Test endpoint PATCH /spot/{id}
+     */
+    @Test
+    public void testPatchSpotRequest() {
+		var spot = this.exchange(HttpMethod.GET, "/spot/A025",
+				ParkingSpotDto.class, HttpStatus.OK).getBody();
+
+		// toggle the status of the spot
+		var request = new PatchParkingSpotRequestDto(
+				ParkingSpot.ParkingSpotStatus.CLOSED);
+		request.message = "maintenance";
+		request.version = spot.version;
+		var response = this.exchange(HttpMethod.PATCH, "/spot/A025", request,
+				ParkingSpotDto.class, HttpStatus.OK).getBody();
+		assertEquals(ParkingSpot.ParkingSpotStatus.CLOSED,
+				response.parkingSpotStatus);
+		assertEquals(spot.vehicleType, response.vehicleType);
+		assertEquals("maintenance", response.message);
+		assertEquals(spot.version + 1, response.version);
+
+		// modification based on the previous version
+		assertReturnsError(HttpStatus.CONFLICT,
+				"Parking spot was modified by another request.", null,
+				HttpMethod.PATCH, "/spot/A025", request, null);
+
+		// remove the message without a version
+		request = new PatchParkingSpotRequestDto();
+		request.message = "";
+		response = this.exchange(HttpMethod.PATCH, "/spot/A025", request,
+				ParkingSpotDto.class, HttpStatus.OK).getBody();
+		assertNull(response.message);
+		assertEquals(ParkingSpot.ParkingSpotStatus.CLOSED,
+				response.parkingSpotStatus);
+
+		assertReturnsError(HttpStatus.NOT_FOUND, "Parking spot not found.",
+				null, HttpMethod.PATCH, "/spot/F000", request, null);
+    }
+
     /**
      * Test endpoint DELETE /spot/{id}
      */
@@ -182,4 +233,216 @@ public class TestParkingSpotController extends OplsApiTester{
 		assertNull(response.parkingSpots);
     }
 
+    /**
+     * Test endpoint POST /spot/search with pages
+     */
+    @Test
+    public void testSearchSpotPagesRequest() {
+		// page through floor A, which has 70 spots
+		var request = new ParkingSpotQueryRequestDto();
+		request.floors = new ArrayList<Character>();
+		request.floors.add('A');
+		request.unbooked = false;
+		request.limit = 30;
+
+		var ids = new ArrayList<String>();
+		int pages = 0;
+		do {
+			var response = this
+					.exchange(HttpMethod.POST, "/spot/search", request,
+							ParkingSpotQueryResponseDto.class, HttpStatus.OK)
+					.getBody();
+			for (var spot : response.parkingSpots) {
+				ids.add(spot.id);
+			}
+			request.after = response.next;
+			++pages;
+		} while (request.after != null);
+		assertEquals(3, pages);
+		assertEquals(70, ids.size());
+		assertEquals("A000", ids.get(0));
+		assertEquals("A069", ids.get(69));
+
+		// invalid page size
+		request.after = null;
+		request.limit = 0;
+		assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid request body.",
+				null, HttpMethod.POST, "/spot/search", request, null);
+    }
+
+    /**
+     * Test endpoint POST /spot/search/stream
+     */
+    @Test
+    public void testStreamSearchSpotRequest() {
+		// stream the open spots on floor A
+		var request = new ParkingSpotQueryRequestDto();
+		request.floors = new ArrayList<Character>();
+		request.floors.add('A');
+		request.statuses = new ArrayList<ParkingSpot.ParkingSpotStatus>();
+		request.statuses.add(ParkingSpot.ParkingSpotStatus.OPEN);
+		var response = this
+				.exchange(HttpMethod.POST, "/spot/search/stream", request,
+						ParkingSpotQueryResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals(65, response.count);
+		assertEquals(65, response.parkingSpots.size());
+		assertEquals("A005", response.parkingSpots.iterator().next().id);
+		assertNull(response.next);
+
+		// stream a page of spots
+		request.after = "A010";
+		request.limit = 5;
+		response = this
+				.exchange(HttpMethod.POST, "/spot/search/stream", request,
+						ParkingSpotQueryResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals(5, response.count);
+		assertEquals("A011", response.parkingSpots.iterator().next().id);
+		assertEquals("A015", response.next);
+    }
+
+    /**
+     * Test endpoint GET /spot/availability
+     */
+    @Test
+    public void testAvailabilityRequest() {
+		var response = this.exchange(HttpMethod.GET, "/spot/availability",
+				ParkingSpotAvailabilityDto[].class, HttpStatus.OK).getBody();
+
+		// floor A has 20 large and 45 regular open spots
+		int total = 0;
+		for (var counter : response) {
+			total += counter.total;
+			if (counter.floor == 'A'
+					&& counter.parkingSpotStatus == ParkingSpot.ParkingSpotStatus.OPEN) {
+				assertEquals(counter.vehicleType == ParkingSpot.VehicleType.LARGE
+						? 20
+						: 45, counter.available);
+			}
+		}
+		assertEquals(470, total);
+
+		// creating a spot updates the counters
+		var spot = new ParkingSpot('F', 1);
+		this.exchange(HttpMethod.POST, "/spot", new ParkingSpotDto(spot),
+				ParkingSpotDto.class, HttpStatus.OK);
+		response = this.exchange(HttpMethod.GET, "/spot/availability",
+				ParkingSpotAvailabilityDto[].class, HttpStatus.OK).getBody();
+		var last = response[response.length - 1];
+		assertEquals('F', last.floor);
+		assertEquals(1, last.total);
+		assertEquals(1, last.available);
+    }
+
+
+    /**
+     * Test conditional requests to GET /spot/{id} and POST /spot/search/count
+     */
+    @Test
+    public void testConditionalRequests() {
+		var first = this.exchange(HttpMethod.GET, "/spot/A025",
+				ParkingSpotDto.class, HttpStatus.OK);
+		var etag = first.getHeaders().getETag();
+		assertNotNull(etag);
+
+		// unchanged spots are not sent again
+		var headers = new HttpHeaders();
+		headers.setBearerAuth(apiClient.getCredentials().accessToken);
+		headers.setIfNoneMatch(etag);
+		var response = apiClient.exchange(HttpMethod.GET, "/spot/A025",
+				headers, ParkingSpotDto.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertNull(response.getBody());
+
+		// missing spots are not found whatever the tag
+		var missing = apiClient.exchange(HttpMethod.GET, "/spot/0000",
+				headers, OplsApiErrorResponseDto.class);
+		assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+
+		// searches are tagged by their body
+		var queryReq = new ParkingSpotQueryRequestDto();
+		queryReq.floors = Arrays.asList('A');
+		var count = this.exchange(HttpMethod.POST, "/spot/search/count",
+				queryReq, ParkingSpotQueryResponseDto.class, HttpStatus.OK);
+		var searchEtag = count.getHeaders().getETag();
+		assertNotEquals(etag, searchEtag);
+		headers.setIfNoneMatch(searchEtag);
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		var countResponse = apiClient.exchange(HttpMethod.POST,
+				"/spot/search/count", queryReq, headers,
+				ParkingSpotQueryResponseDto.class);
+		assertEquals(HttpStatus.NOT_MODIFIED, countResponse.getStatusCode());
+
+		// a write changes the tags
+		var requestBody = first.getBody();
+		requestBody.message = "changed";
+		this.exchange(HttpMethod.PUT, "/spot/A025", requestBody,
+				ParkingSpotDto.class, HttpStatus.OK);
+		headers.remove(HttpHeaders.CONTENT_TYPE);
+		headers.setIfNoneMatch(etag);
+		response = apiClient.exchange(HttpMethod.GET, "/spot/A025", headers,
+				ParkingSpotDto.class);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("changed", response.getBody().message);
+		assertNotEquals(etag, response.getHeaders().getETag());
+    }
+
+
+    /**
+     * Test endpoints PUT /spot/floor/{floor} and PUT /spot/floor/{floor}/status
+     */
+    @Test
+    public void testFloorLayoutRequests() {
+		// bring a new floor online
+		var layout = new FloorLayoutRequestDto(Arrays.asList(
+				new SpotRange(0, 9, ParkingSpot.VehicleType.LARGE,
+						ParkingSpot.ParkingSpotStatus.OPEN),
+				new SpotRange(10, 149, ParkingSpot.VehicleType.REGULAR,
+						ParkingSpot.ParkingSpotStatus.OPEN)));
+		var summary = this.exchange(HttpMethod.PUT, "/spot/floor/F", layout,
+				FloorLayoutResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals('F', summary.floor);
+		assertEquals(150, summary.created);
+		var spot = this.exchange(HttpMethod.GET, "/spot/F149",
+				ParkingSpotDto.class, HttpStatus.OK).getBody();
+		assertEquals(ParkingSpot.VehicleType.REGULAR, spot.vehicleType);
+
+		// reconfigure part of an existing floor
+		layout.ranges = Arrays.asList(new SpotRange(20, 29,
+				ParkingSpot.VehicleType.LARGE,
+				ParkingSpot.ParkingSpotStatus.OPEN));
+		summary = this.exchange(HttpMethod.PUT, "/spot/floor/A", layout,
+				FloorLayoutResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(0, summary.created);
+		assertEquals(5, summary.updated);
+		assertEquals(5, summary.unchanged);
+
+		// close floor C for maintenance
+		var status = new FloorStatusRequestDto(
+				ParkingSpot.ParkingSpotStatus.CLOSED);
+		summary = this.exchange(HttpMethod.PUT, "/spot/floor/C/status", status,
+				FloorLayoutResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(100, summary.updated);
+		var queryReq = new ParkingSpotQueryRequestDto();
+		queryReq.floors = Arrays.asList('C');
+		queryReq.statuses = Arrays.asList(ParkingSpot.ParkingSpotStatus.CLOSED);
+		var count = this.exchange(HttpMethod.POST, "/spot/search/count",
+				queryReq, ParkingSpotQueryResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals(100, count.count);
+
+		// invalid requests
+		assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid floor.", null,
+				HttpMethod.PUT, "/spot/floor/CC/status", status, null);
+		layout.ranges = Arrays.asList(new SpotRange(0, 1000,
+				ParkingSpot.VehicleType.LARGE,
+				ParkingSpot.ParkingSpotStatus.OPEN));
+		assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid spot number.",
+				null, HttpMethod.PUT, "/spot/floor/A", layout, null);
+		layout.ranges = new ArrayList<>();
+		assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid request body.",
+				null, HttpMethod.PUT, "/spot/floor/A", layout, null);
+    }
+
 }
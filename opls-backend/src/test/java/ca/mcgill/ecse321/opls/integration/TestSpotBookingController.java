@@ -7,9 +7,14 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,21 +22,36 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import ca.mcgill.ecse321.opls.OplsStartupService;
 import ca.mcgill.ecse321.opls.dto.CustomerDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotBatchRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotBatchResponseDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.BatchSpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.BatchSpotBookingResponseDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.IncrementalSpotBookingRequestDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.MonthlySpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.ParkAndServiceBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.ParkAndServiceBookingResponseDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.PatchSpotBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.spot.booking.PaymentStatusDto;
 import ca.mcgill.ecse321.opls.dto.spot.booking.SpotBookingResponseDto;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Booking.DateRange;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
 import ca.mcgill.ecse321.opls.model.auth.OAuthClaim;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
+import ca.mcgill.ecse321.opls.service.IdempotencyService;
+import ca.mcgill.ecse321.opls.service.PaymentPipeline.PaymentStatus;
+import ca.mcgill.ecse321.opls.service.VehicleServiceService;
 import jakarta.annotation.PostConstruct;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
@@ -40,6 +60,18 @@ public class TestSpotBookingController extends OplsApiTester {
 	@Autowired
 	private OplsStartupService startupService;
 
+	@Autowired
+	private ParkingSpotRepository spotRepository;
+
+	@Autowired
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@Autowired
+	private VehicleServiceService vehicleServiceService;
+
+	@Autowired
+	private VehicleServiceBookingRepository serviceBookingRepository;
+
 	@Override
 	@PostConstruct
 	public void specifyAuthentication() {
@@ -85,6 +117,32 @@ public class TestSpotBookingController extends OplsApiTester {
 		assertEquals(expected.status, actual.status);
 	}
 
+	/**
+	 * Test endpoint POST /spot/batch.
+	 */
+	@Test
+	public void testBatchRequest() {
+		var booking = this.exchange(HttpMethod.POST,
+				"/spot/booking/incremental",
+				newIncrementalBookingRequest(30, "A035", VehicleType.REGULAR),
+				SpotBookingResponseDto.class, HttpStatus.OK).getBody();
+
+		var req = new ParkingSpotBatchRequestDto(
+				Arrays.asList("A036", "A035", "Z999", "A036"));
+		var resp = this.exchange(HttpMethod.POST, "/spot/batch", req,
+				ParkingSpotBatchResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(2, resp.parkingSpots.size());
+		assertEquals("A036", resp.parkingSpots.get(0).parkingSpot.id);
+		assertNull(resp.parkingSpots.get(0).booking);
+		assertEquals("A035", resp.parkingSpots.get(1).parkingSpot.id);
+		assertDtoEquals(booking, resp.parkingSpots.get(1).booking);
+		assertEquals(Arrays.asList("Z999"), resp.notFound);
+
+		req.ids = null;
+		assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid request body.",
+				null, HttpMethod.POST, "/spot/batch", req, null);
+	}
+
 	/**
 	 * Test endpoint POST /spot/booking/incremental.
 	 */
@@ -119,6 +177,277 @@ public class TestSpotBookingController extends OplsApiTester {
 		assertTrue(error.hasField("duration", "Duration must be positive."));
 	}
 
+	/**
+	 * Test concurrent requests for the same parking spot.
+	 */
+	@Test
+	public void testConcurrentIncrementalBookingRequests() throws Exception {
+		var req = newIncrementalBookingRequest(30, "A036", VehicleType.REGULAR);
+		var executor = Executors.newFixedThreadPool(8);
+		try {
+			var responses = new ArrayList<Future<HttpStatusCode>>();
+			for (int i = 0; i < 8; ++i) {
+				responses.add(executor.submit(() -> apiClient
+						.exchange(HttpMethod.POST, "/spot/booking/incremental",
+								req, String.class)
+						.getStatusCode()));
+			}
+
+			int booked = 0;
+			for (var response : responses) {
+				var status = response.get(30, TimeUnit.SECONDS);
+				if (status == HttpStatus.OK) {
+					++booked;
+				} else {
+					assertEquals(HttpStatus.CONFLICT, status);
+				}
+			}
+			assertEquals(1, booked);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test retrying a booking request with an idempotency key.
+	 */
+	@Test
+	public void testIdempotentBookingRequest() {
+		var req = newIncrementalBookingRequest(30, "A038", VehicleType.REGULAR);
+		var headers = new HttpHeaders();
+		headers.setBearerAuth(apiClient.getCredentials().accessToken);
+		headers.set(IdempotencyService.HEADER, UUID.randomUUID().toString());
+
+		var first = apiClient.exchange(HttpMethod.POST,
+				"/spot/booking/incremental", req, headers,
+				SpotBookingResponseDto.class);
+		assertEquals(HttpStatus.OK, first.getStatusCode());
+		var retry = apiClient.exchange(HttpMethod.POST,
+				"/spot/booking/incremental", req, headers,
+				SpotBookingResponseDto.class);
+		assertEquals(HttpStatus.OK, retry.getStatusCode());
+		assertEquals(first.getBody().uuid, retry.getBody().uuid);
+		assertEquals(first.getBody().confirmationNumber,
+				retry.getBody().confirmationNumber);
+		assertEquals(1, bookingRepository.count());
+
+		// the key cannot be reused for another request
+		req.parkingSpotId = "A039";
+		var other = apiClient.exchange(HttpMethod.POST,
+				"/spot/booking/incremental", req, headers, String.class);
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, other.getStatusCode());
+		assertEquals(1, bookingRepository.count());
+	}
+
+	/** Poll the payment of a booking until it completes. */
+	private PaymentStatusDto awaitPayment(UUID bookingId)
+			throws InterruptedException {
+		PaymentStatusDto payment = null;
+		for (int i = 0; i < 100; ++i) {
+			payment = this.exchange(HttpMethod.GET,
+					"/spot/booking/" + bookingId + "/payment", null,
+					PaymentStatusDto.class, HttpStatus.OK).getBody();
+			if (payment.status != PaymentStatus.PENDING) {
+				break;
+			}
+			Thread.sleep(50);
+		}
+		return payment;
+	}
+
+	/**
+	 * Test booking requests paid asynchronously.
+	 */
+	@Test
+	public void testAsyncBookingRequest() throws InterruptedException {
+		var req = newIncrementalBookingRequest(30, "A046", VehicleType.REGULAR);
+		var headers = new HttpHeaders();
+		headers.setBearerAuth(apiClient.getCredentials().accessToken);
+		headers.set("Prefer", "respond-async");
+
+		// the booking holds the spot until paid
+		var accepted = apiClient.exchange(HttpMethod.POST,
+				"/spot/booking/incremental", req, headers,
+				SpotBookingResponseDto.class);
+		assertEquals(HttpStatus.ACCEPTED, accepted.getStatusCode());
+		var booking = accepted.getBody();
+		assertEquals(BookingStatus.REQUESTED, booking.status);
+		assertEquals("/spot/booking/" + booking.uuid + "/payment",
+				accepted.getHeaders().getLocation().toString());
+		assertReturnsError(HttpStatus.CONFLICT, "Parking spot already booked.",
+				null, HttpMethod.POST, "/spot/booking/incremental", req, null);
+
+		var payment = awaitPayment(booking.uuid);
+		assertEquals(PaymentStatus.PAID, payment.status);
+		assertEquals(0.50, payment.amount);
+		assertEquals(1, payment.attempts);
+		assertEquals(BookingStatus.CONFIRMED,
+				this.exchange(HttpMethod.GET, "/spot/A046/booking", null,
+						SpotBookingResponseDto.class, HttpStatus.OK)
+						.getBody().status);
+
+		// rejected payments free the spot
+		req.parkingSpotId = "A047";
+		req.creditCardNumber = "123412341234";
+		booking = apiClient.exchange(HttpMethod.POST,
+				"/spot/booking/incremental", req, headers,
+				SpotBookingResponseDto.class).getBody();
+		payment = awaitPayment(booking.uuid);
+		assertEquals(PaymentStatus.REJECTED, payment.status);
+		assertEquals("Rejected payment.", payment.error);
+		this.exchange(HttpMethod.GET, "/spot/A047/booking", null,
+				SpotBookingResponseDto.class, HttpStatus.NOT_FOUND);
+
+		assertReturnsError(HttpStatus.NOT_FOUND, "Payment not found.", null,
+				HttpMethod.GET, "/spot/booking/" + UUID.randomUUID() + "/payment",
+				null, null);
+	}
+
+	/**
+	 * Test requesting a booking overlapping an upcoming booking of the spot.
+	 */
+	@Test
+	public void testOverlappingIncrementalBookingRequest() {
+		var upcoming = spotRepository.findParkingSpotById("A037").newBooking();
+		upcoming.setLicensePlate("WXYZ");
+		upcoming.setDateRangeMinutes(
+				new Date(System.currentTimeMillis() + 1200000), 60);
+		bookingRepository.save(upcoming);
+
+		var req = newIncrementalBookingRequest(30, "A037", VehicleType.REGULAR);
+		assertReturnsError(HttpStatus.CONFLICT, "Parking spot already booked.",
+				null, HttpMethod.POST, "/spot/booking/incremental", req, null);
+
+		// bookings ending before the upcoming one are accepted
+		req.duration = 10;
+		this.exchange(HttpMethod.POST, "/spot/booking/incremental", req,
+				SpotBookingResponseDto.class, HttpStatus.OK);
+	}
+
+	/**
+	 * Test endpoint POST /spot/booking/batch.
+	 */
+	@Test
+	public void testBatchBookingRequest() {
+		var req = new BatchSpotBookingRequestDto();
+		req.creditCardNumber = "1234123412341234";
+		req.duration = 30;
+		req.licensePlate = "ABCD";
+		req.vehicleType = VehicleType.REGULAR;
+		req.parkingSpotIds = Arrays.asList("A040", "A041", "A042", "A043",
+				"A044");
+
+		// valid request
+		var resp = this.exchange(HttpMethod.POST, "/spot/booking/batch", req,
+				BatchSpotBookingResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(5, resp.bookings.size());
+		assertEquals(0, resp.failed.size());
+		assertEquals(2.50, resp.cost, 1e-9);
+		for (int i = 0; i < 5; ++i) {
+			var booking = resp.bookings.get(i);
+			assertEquals(req.parkingSpotIds.get(i), booking.parkingSpotId);
+			assertEquals(BookingStatus.CONFIRMED, booking.status);
+			assertEquals(0.50, booking.cost);
+			assertDtoEquals(booking, this.exchange(HttpMethod.GET,
+					"/spot/" + booking.parkingSpotId + "/booking", null,
+					SpotBookingResponseDto.class, HttpStatus.OK).getBody());
+		}
+
+		// booked and reserved spots fail the whole batch
+		req.parkingSpotIds = Arrays.asList("A044", "A045", "B000");
+		assertReturnsError(HttpStatus.CONFLICT,
+				"Parking spots cannot be booked.", null, HttpMethod.POST,
+				"/spot/booking/batch", req, null);
+		this.exchange(HttpMethod.GET, "/spot/A045/booking", null,
+				SpotBookingResponseDto.class, HttpStatus.NOT_FOUND);
+
+		// unless the request is best effort
+		req.bestEffort = true;
+		resp = this.exchange(HttpMethod.POST, "/spot/booking/batch", req,
+				BatchSpotBookingResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(1, resp.bookings.size());
+		assertEquals("A045", resp.bookings.get(0).parkingSpotId);
+		assertEquals(0.50, resp.cost, 1e-9);
+		assertEquals(2, resp.failed.size());
+		assertEquals("A044", resp.failed.get(0).parkingSpotId);
+		assertEquals("B000", resp.failed.get(1).parkingSpotId);
+		assertEquals("Parking spot is reserved.", resp.failed.get(1).error);
+
+		// invalid request
+		req.parkingSpotIds = new ArrayList<>();
+		var error = assertReturnsError(HttpStatus.BAD_REQUEST,
+				"Invalid request body.", null, HttpMethod.POST,
+				"/spot/booking/batch", req, null);
+		assertTrue(error.hasField("parkingSpotIds", "Invalid parking spot IDs."));
+	}
+
+	/**
+	 * Test endpoint POST /spot/booking/incremental/service.
+	 */
+	@Test
+	public void testParkAndServiceBookingRequest() {
+		var carWash = vehicleServiceService.createVehicleService("Car Wash",
+				30, 12.5);
+		var now = System.currentTimeMillis();
+
+		var req = new ParkAndServiceBookingRequestDto();
+		req.creditCardNumber = "1234123412341234";
+		req.duration = 60;
+		req.licensePlate = "ABCD";
+		req.parkingSpotId = "A046";
+		req.vehicleType = VehicleType.REGULAR;
+		req.vehicleServiceId = carWash.getId();
+		req.serviceStartDate = new Date(now + TimeUnit.MINUTES.toMillis(5));
+
+		// valid request
+		var resp = this.exchange(HttpMethod.POST,
+				"/spot/booking/incremental/service", req,
+				ParkAndServiceBookingResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals("A046", resp.spotBooking.parkingSpotId);
+		assertEquals(BookingStatus.CONFIRMED, resp.spotBooking.status);
+		assertEquals(carWash.getId(), resp.serviceBooking.vehicleServiceId);
+		assertEquals(BookingStatus.CONFIRMED, resp.serviceBooking.status);
+		assertEquals(12.5, resp.serviceBooking.cost);
+		assertEquals(resp.spotBooking.cost + resp.serviceBooking.cost,
+				resp.cost, 1e-9);
+		assertDtoEquals(resp.spotBooking, this.exchange(HttpMethod.GET,
+				"/spot/A046/booking", null, SpotBookingResponseDto.class,
+				HttpStatus.OK).getBody());
+
+		// services outside the parking book neither
+		req.parkingSpotId = "A047";
+		req.serviceStartDate = new Date(now + TimeUnit.MINUTES.toMillis(45));
+		assertReturnsError(HttpStatus.BAD_REQUEST,
+				"Vehicle service must be during the parking.", null,
+				HttpMethod.POST, "/spot/booking/incremental/service", req,
+				null);
+		req.serviceStartDate = new Date(now + TimeUnit.MINUTES.toMillis(10));
+		assertReturnsError(HttpStatus.CONFLICT,
+				"Vehicle service already booked for this timeslot.", null,
+				HttpMethod.POST, "/spot/booking/incremental/service", req,
+				null);
+		this.exchange(HttpMethod.GET, "/spot/A047/booking", null,
+				SpotBookingResponseDto.class, HttpStatus.NOT_FOUND);
+
+		// the spot booking is rolled back when the service booking fails
+		var booked = carWash.newBooking(
+				new Date(now + TimeUnit.MINUTES.toMillis(50)));
+		booked.setLicensePlate("WXYZ");
+		booked.setBookingStatus(BookingStatus.CONFIRMED);
+		booked.setBay(0);
+		serviceBookingRepository.save(booked);
+
+		req.duration = 120;
+		req.serviceStartDate = new Date(now + TimeUnit.MINUTES.toMillis(50));
+		assertReturnsError(HttpStatus.CONFLICT,
+				"Vehicle service already booked for this timeslot.", null,
+				HttpMethod.POST, "/spot/booking/incremental/service", req,
+				null);
+		this.exchange(HttpMethod.GET, "/spot/A047/booking", null,
+				SpotBookingResponseDto.class, HttpStatus.NOT_FOUND);
+	}
+
 	/**
 	 * Test endpoint POST /spot/booking/monthly.
 	 */
@@ -134,8 +463,8 @@ public class TestSpotBookingController extends OplsApiTester {
 				SpotBookingResponseDto.class, HttpStatus.OK).getBody();
 		assertNotNull(resp.uuid);
 		assertNotNull(resp.confirmationNumber);
-		assertEquals(BookingStatus.PAID, resp.status);
-		assertNull(resp.parkingSpotId);
+		assertEquals(BookingStatus.CONFIRMED, resp.status);
+		assertEquals("B000", resp.parkingSpotId);
 		assertEquals(60.00, resp.cost);
 
 		var startCalendar = Calendar.getInstance();
@@ -143,6 +472,11 @@ public class TestSpotBookingController extends OplsApiTester {
 		startCalendar.add(Calendar.MONTH, 1);
 		assertEquals(resp.endDate.getTime(), startCalendar.getTimeInMillis());
 
+		// the next booking is given another reserved spot
+		var next = this.exchange(HttpMethod.POST, "/spot/booking/monthly", req,
+				SpotBookingResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals("B001", next.parkingSpotId);
+
 		// invalid request
 		req.creditCardNumber = "123";
 		req.licensePlate = "AAAAAAAAAAAAAAAAAAAAA";
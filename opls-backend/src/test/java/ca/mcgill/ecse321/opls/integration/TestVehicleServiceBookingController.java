@@ -2,13 +2,17 @@ package ca.mcgill.ecse321.opls.integration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -28,6 +32,7 @@ import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingQueryRequestDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingQueryResponseDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.ServiceBookingRequestDto;
+import ca.mcgill.ecse321.opls.dto.service.booking.ServiceSlotsResponseDto;
 import ca.mcgill.ecse321.opls.dto.service.booking.UpdateServiceBookingRequestDto;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Booking.DateRange;
@@ -129,6 +134,37 @@ public class TestVehicleServiceBookingController extends OplsApiTester {
 		assertTrue(error.hasField("licensePlate", "Invalid license plate."));
 	}
 
+	/**
+	 * Test booking a vehicle service with several bays.
+	 */
+	@Test
+	public void testVehicleServiceBookingBays() {
+		carWash = vehicleServiceService.updateVehicleService(carWash.getId(),
+				displayName, duration, fee, 2);
+		var req = new ServiceBookingRequestDto(licensePlate, "1234567890123456",
+				startDate);
+		var endpoint = "/service/" + carWash.getId() + "/booking";
+
+		// bookings at the same time take the free bays
+		var first = this.exchange(HttpMethod.POST, endpoint, req,
+				ServiceBookingDto.class, HttpStatus.OK).getBody();
+		assertEquals(0, first.bay);
+		var second = this.exchange(HttpMethod.POST, endpoint, req,
+				ServiceBookingDto.class, HttpStatus.OK).getBody();
+		assertEquals(1, second.bay);
+
+		assertReturnsError(HttpStatus.CONFLICT,
+				"Vehicle service already booked for this timeslot.", null,
+				HttpMethod.POST, endpoint, req, null);
+
+		// the first bay is free again once its booking is deleted
+		this.exchange(HttpMethod.DELETE, "/service/booking/" + first.uuid,
+				ServiceBookingDto.class, HttpStatus.OK);
+		var third = this.exchange(HttpMethod.POST, endpoint, req,
+				ServiceBookingDto.class, HttpStatus.OK).getBody();
+		assertEquals(0, third.bay);
+	}
+
 	/**
 	 * Test endpoint GET /service/booking.
 	 */
@@ -182,7 +218,9 @@ public class TestVehicleServiceBookingController extends OplsApiTester {
 		queryReq.queryOwn = true;
 		queryReq.vehicleServiceIds = Collections.singleton(carWash.getId());
 		queryReq.startDate = startDate;
-		queryReq.endDate = startDate2;
+		// the range is half-open, so it must end after the second booking starts
+		queryReq.endDate = new Date(
+				startDate2.getTime() + TimeUnit.MINUTES.toMillis(1));
 		var response = this
 				.exchange(HttpMethod.POST, endpoint, queryReq,
 						ServiceBookingQueryResponseDto.class, HttpStatus.OK)
@@ -219,6 +257,35 @@ public class TestVehicleServiceBookingController extends OplsApiTester {
 			assertEquals(startDate, foundBooking.startDate);
 		}
 
+		// query in pages
+		req.startDate = startDate2;
+		var booking2 = this.exchange(HttpMethod.POST,
+				"/service/" + carWash.getId() + "/booking", req,
+				ServiceBookingDto.class, HttpStatus.OK).getBody();
+		queryReq.limit = 1;
+		response = this
+				.exchange(HttpMethod.POST, endpoint, queryReq,
+						ServiceBookingQueryResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals(1, response.count);
+		assertEquals(booking.uuid, response.bookings.iterator().next().uuid);
+		assertNotNull(response.next);
+		queryReq.next = response.next;
+		response = this
+				.exchange(HttpMethod.POST, endpoint, queryReq,
+						ServiceBookingQueryResponseDto.class, HttpStatus.OK)
+				.getBody();
+		assertEquals(1, response.count);
+		assertEquals(booking2.uuid, response.bookings.iterator().next().uuid);
+		assertNull(response.next);
+
+		queryReq.next = "invalid";
+		this.assertReturnsError(HttpStatus.BAD_REQUEST,
+				"Invalid continuation token.", null, HttpMethod.POST, endpoint,
+				queryReq, null);
+		queryReq.next = null;
+		queryReq.limit = null;
+
 		// invalid query
 		queryReq.startDate = null;
 		queryReq.endDate = null;
@@ -260,4 +327,54 @@ public class TestVehicleServiceBookingController extends OplsApiTester {
 		this.assertReturnsError(HttpStatus.NOT_FOUND, "Booking not found.", null, HttpMethod.DELETE, endpointBad, null);
 	}
 
+	/**
+	 * Test endpoint GET /service/{serviceId}/slots.
+	 */
+	@Test
+	public void testGetSlots() {
+		var calendar = Calendar.getInstance();
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		calendar.set(Calendar.HOUR_OF_DAY, 11);
+		calendar.set(Calendar.MINUTE, 30);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		var from = calendar.getTime();
+		var noon = new Date(from.getTime() + TimeUnit.MINUTES.toMillis(30));
+		var to = new Date(from.getTime() + TimeUnit.MINUTES.toMillis(90));
+		var format = new SimpleDateFormat(DateHelper.DATE_FORMAT);
+		var endpoint = "/service/" + carWash.getId() + "/slots?from="
+				+ format.format(from) + "&to=" + format.format(to);
+
+		var resp = this.exchange(HttpMethod.GET, endpoint,
+				ServiceSlotsResponseDto.class, HttpStatus.OK).getBody();
+		assertEquals(carWash.getId(), resp.vehicleServiceId);
+		assertEquals(6, resp.count);
+		assertEquals(from, resp.startDates.get(0));
+
+		// booked times are no longer listed
+		var req = new ServiceBookingRequestDto(licensePlate,
+				"1234567890123456", noon);
+		this.exchange(HttpMethod.POST, "/service/" + carWash.getId() + "/booking",
+				req, ServiceBookingDto.class, HttpStatus.OK);
+		resp = this.exchange(HttpMethod.GET, endpoint,
+				ServiceSlotsResponseDto.class, HttpStatus.OK).getBody();
+		// the periods are half-open, so only the booked time conflicts
+		assertEquals(5, resp.count);
+		assertEquals(from, resp.startDates.get(0));
+		assertEquals(new Date(noon.getTime() + TimeUnit.MINUTES.toMillis(15)),
+				resp.startDates.get(2));
+
+		// invalid requests
+		this.assertReturnsError(HttpStatus.NOT_FOUND,
+				"Vehicle service not found.", null, HttpMethod.GET,
+				"/service/invalid/slots?from=" + format.format(from) + "&to="
+						+ format.format(to),
+				null);
+		this.assertReturnsError(HttpStatus.BAD_REQUEST, "Invalid date range.",
+				null, HttpMethod.GET, "/service/" + carWash.getId()
+						+ "/slots?from=" + format.format(to) + "&to="
+						+ format.format(from),
+				null);
+	}
+
 }
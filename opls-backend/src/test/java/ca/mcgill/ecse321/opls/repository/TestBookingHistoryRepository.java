@@ -0,0 +1,150 @@
+package ca.mcgill.ecse321.opls.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository.BookingTable;
+
+@SpringBootTest
+public class TestBookingHistoryRepository {
+
+	private static final long DAY = 86400000;
+
+	@Autowired
+	private BookingHistoryRepository historyRepository;
+
+	@Autowired
+	private ParkingSpotRepository parkingSpotRepository;
+
+	@Autowired
+	private ParkingSpotBookingRepository parkingSpotBookingRepository;
+
+	@Autowired
+	private VehicleServiceRepository vehicleServiceRepository;
+
+	@Autowired
+	private VehicleServiceBookingRepository vehicleServiceBookingRepository;
+
+	@AfterEach
+	public void clearDatabase() {
+		parkingSpotBookingRepository.deleteAll();
+		parkingSpotRepository.deleteAll();
+		vehicleServiceBookingRepository.deleteAll();
+		vehicleServiceRepository.deleteAll();
+	}
+
+	private ParkingSpotBooking saveBooking(ParkingSpot ps, Date start,
+			BookingStatus status, String confirmationNumber) {
+		var booking = ps.newBooking();
+		booking.setLicensePlate("ABCD");
+		booking.setDateRangeMinutes(start, 30);
+		booking.setBookingStatus(status);
+		booking.setConfirmationNumber(confirmationNumber);
+		return parkingSpotBookingRepository.save(booking);
+	}
+
+	/**
+	 * Test moving ended parking spot bookings to the history.
+	 */
+	@Test
+	public void testMoveParkingSpotBookings() {
+		var ps = parkingSpotRepository.save(new ParkingSpot('A', 15));
+		var now = new Date().getTime();
+
+		var old = saveBooking(ps, new Date(now - 40 * DAY),
+				BookingStatus.COMPLETED, "B7K2Q2");
+		var oldPaid = saveBooking(ps, new Date(now - 39 * DAY),
+				BookingStatus.PAID, "B7K2Q3");
+		var recent = saveBooking(ps, new Date(now - DAY),
+				BookingStatus.COMPLETED, "B7K2Q4");
+		var current = saveBooking(ps, new Date(now - 60000),
+				BookingStatus.PAID, "B7K2Q5");
+
+		var cutoff = new Date(now - 30 * DAY);
+		assertEquals(1, historyRepository.moveEndedBookings(
+				BookingTable.PARKING_SPOT, cutoff, 10));
+		assertEquals(0, historyRepository.moveEndedBookings(
+				BookingTable.PARKING_SPOT, cutoff, 10));
+		assertEquals(1, historyRepository.countHistory(BookingTable.PARKING_SPOT));
+
+		// moved bookings are still found
+		assertNotNull(parkingSpotBookingRepository
+				.findParkingSpotBookingByUuid(old.getUuid()));
+		assertEquals(old.getId(),
+				parkingSpotBookingRepository
+						.findParkingSpotBookingByConfirmationNumber(
+								old.getConfirmationNumber())
+						.getId());
+		assertTrue(parkingSpotBookingRepository.findById(old.getId())
+				.isPresent());
+		var completed = new ArrayList<Integer>();
+		parkingSpotBookingRepository
+				.findParkingSpotBookingsByBookingStatus(BookingStatus.COMPLETED)
+				.forEach(booking -> completed.add(booking.getId()));
+		assertEquals(2, completed.size());
+		assertTrue(completed.contains(old.getId()));
+
+		// current bookings are unchanged
+		assertTrue(parkingSpotBookingRepository.isParkingSpotBooked(ps));
+		assertEquals(current.getId(),
+				parkingSpotBookingRepository.getActiveBooking(ps).getId());
+		assertFalse(parkingSpotBookingRepository.isParkingSpotBookedDuring(
+				ps.getId(), new Date(now - 41 * DAY), new Date(now - 39 * DAY - 60000)));
+		assertNotNull(parkingSpotBookingRepository
+				.findParkingSpotBookingByUuid(oldPaid.getUuid()));
+		assertNotNull(parkingSpotBookingRepository
+				.findParkingSpotBookingByUuid(recent.getUuid()));
+
+		// moved bookings are deleted through the booking table
+		parkingSpotBookingRepository.deleteById(old.getId());
+		assertEquals(0, historyRepository.countHistory(BookingTable.PARKING_SPOT));
+	}
+
+	/**
+	 * Test moving ended vehicle service bookings to the history in batches.
+	 */
+	@Test
+	public void testMoveVehicleServiceBookings() {
+		var service = new VehicleService();
+		service.setDisplayName("Tire change");
+		service.setDuration(30);
+		service = vehicleServiceRepository.save(service);
+		var now = new Date().getTime();
+
+		for (int i = 0; i < 3; ++i) {
+			var booking = service.newBooking(new Date(now - (40 + i) * DAY));
+			booking.setLicensePlate("ABCD");
+			booking.setBookingStatus(BookingStatus.CONFIRMED);
+			vehicleServiceBookingRepository.save(booking);
+		}
+		var booking = service.newBooking(new Date(now + DAY));
+		booking.setLicensePlate("ABCD");
+		booking = vehicleServiceBookingRepository.save(booking);
+
+		var cutoff = new Date(now - 30 * DAY);
+		assertEquals(2, historyRepository.moveEndedBookings(
+				BookingTable.VEHICLE_SERVICE, cutoff, 2));
+		assertEquals(1, historyRepository.moveEndedBookings(
+				BookingTable.VEHICLE_SERVICE, cutoff, 2));
+		assertEquals(3,
+				historyRepository.countHistory(BookingTable.VEHICLE_SERVICE));
+		assertEquals(4, vehicleServiceBookingRepository.count());
+		assertNotNull(vehicleServiceBookingRepository
+				.findVehicleServiceBookingByUuid(booking.getUuid()));
+	}
+
+}
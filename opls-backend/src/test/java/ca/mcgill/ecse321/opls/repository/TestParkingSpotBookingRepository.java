@@ -4,8 +4,11 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.UUID;
 
@@ -13,10 +16,13 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.Customer;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking.RenewalStatus;
 
 @SpringBootTest
 public class TestParkingSpotBookingRepository {
@@ -150,4 +156,145 @@ public class TestParkingSpotBookingRepository {
 		assertFalse(parkingSpotBookingRepository.isParkingSpotBooked(ps1));
 	}
 
+	/**
+	 * Test that bookings of a parking spot cannot overlap.
+	 */
+	@Test
+	public void testOverlap() {
+		var ps1 = parkingSpotRepository.save(new ParkingSpot('A', 15));
+		var ps2 = parkingSpotRepository.save(new ParkingSpot('A', 16));
+		var start = new Date();
+		parkingSpotBookingRepository.save(newBooking(ps1, "ABCD", start, 30));
+
+		// overlapping booking of the same spot
+		var overlapping = newBooking(ps1, "ABCD",
+				new Date(start.getTime() + 60000), 30);
+		assertThrows(DataIntegrityViolationException.class,
+				() -> parkingSpotBookingRepository.save(overlapping));
+
+		// bookings of other spots, or starting when the booking ends
+		parkingSpotBookingRepository.save(newBooking(ps2, "ABCD", start, 30));
+		parkingSpotBookingRepository.save(newBooking(ps1, "ABCD",
+				new Date(start.getTime() + 30 * 60000), 30));
+		assertEquals(3, parkingSpotBookingRepository.count());
+		assertTrue(parkingSpotBookingRepository.isParkingSpotBooked(ps1));
+	}
+
+	/**
+	 * Test that confirmation numbers are unique.
+	 */
+	@Test
+	public void testUniqueConfirmationNumber() {
+		var ps1 = parkingSpotRepository.save(new ParkingSpot('A', 15));
+		var start = new Date();
+		var psb = newBooking(ps1, "ABCD", start, 30);
+		psb.setConfirmationNumber("B7K2QX");
+		parkingSpotBookingRepository.save(psb);
+
+		var duplicate = newBooking(ps1, "ABCD",
+				new Date(start.getTime() + 30 * 60000), 30);
+		duplicate.setConfirmationNumber("B7K2QX");
+		assertThrows(DataIntegrityViolationException.class,
+				() -> parkingSpotBookingRepository.save(duplicate));
+
+		// bookings without a confirmation number yet
+		parkingSpotBookingRepository.save(newBooking(ps1, "ABCD",
+				new Date(start.getTime() + 60 * 60000), 30));
+		parkingSpotBookingRepository.save(newBooking(ps1, "ABCD",
+				new Date(start.getTime() + 90 * 60000), 30));
+		assertEquals(3, parkingSpotBookingRepository.count());
+	}
+
+	/**
+	 * Test completing the bookings that ended.
+	 */
+	@Test
+	public void testCompleteEnded() {
+		var ps1 = parkingSpotRepository.save(new ParkingSpot('A', 15));
+		var ps2 = parkingSpotRepository.save(new ParkingSpot('A', 16));
+		var now = new Date().getTime();
+
+		var ended = newBooking(ps1, "ABCD", new Date(now - 60 * 60000), 30);
+		ended.setBookingStatus(BookingStatus.CONFIRMED);
+		ended = parkingSpotBookingRepository.save(ended);
+		var unpaid = parkingSpotBookingRepository
+				.save(newBooking(ps2, "ABCD", new Date(now - 60 * 60000), 30));
+		var current = newBooking(ps1, "ABCD", new Date(now - 60000), 30);
+		current.setBookingStatus(BookingStatus.PAID);
+		current = parkingSpotBookingRepository.save(current);
+
+		parkingSpotBookingRepository.completeEndedBookings(
+				Arrays.asList(ended.getId(), unpaid.getId(), current.getId()));
+		assertEquals(BookingStatus.COMPLETED, parkingSpotBookingRepository
+				.findById(ended.getId()).get().getBookingStatus());
+		assertEquals(BookingStatus.REQUESTED, parkingSpotBookingRepository
+				.findById(unpaid.getId()).get().getBookingStatus());
+		assertEquals(BookingStatus.PAID, parkingSpotBookingRepository
+				.findById(current.getId()).get().getBookingStatus());
+
+		// completed bookings are not returned again
+		assertTrue(parkingSpotBookingRepository.completeEndedBookings()
+				.isEmpty());
+		var completable = new ArrayList<Integer>();
+		parkingSpotBookingRepository.getCompletableBookings()
+				.forEach(booking -> completable.add(booking.getId()));
+		assertEquals(Arrays.asList(current.getId()), completable);
+	}
+
+	/**
+	 * Test fetching and checkpointing the renewals of monthly bookings.
+	 */
+	@Test
+	public void testRenewals() {
+		var ps1 = parkingSpotRepository.save(new ParkingSpot('B', 1));
+		var ps2 = parkingSpotRepository.save(new ParkingSpot('B', 2));
+		var now = new Date().getTime();
+
+		var renewable = newBooking(ps1, "ABCD", new Date(now - 60 * 60000), 30);
+		renewable.setBookingStatus(BookingStatus.COMPLETED);
+		renewable.setBillingAccountId("1234567812345678");
+		renewable = parkingSpotBookingRepository.save(renewable);
+		var unpaid = newBooking(ps2, "ABCD", new Date(now - 60 * 60000), 30);
+		unpaid.setBillingAccountId("1234567812345678");
+		unpaid = parkingSpotBookingRepository.save(unpaid);
+		var notRenewed = newBooking(ps2, "ABCD", new Date(now - 10 * 60000), 30);
+		notRenewed.setBookingStatus(BookingStatus.PAID);
+		notRenewed = parkingSpotBookingRepository.save(notRenewed);
+
+		var from = new Date(now - 120 * 60000);
+		var until = new Date(now + 120 * 60000);
+		var renewables = parkingSpotBookingRepository.getRenewableBookings(from,
+				until, 0, 10);
+		assertEquals(1, renewables.size());
+		assertEquals(renewable.getId(), renewables.get(0).getId());
+		assertTrue(parkingSpotBookingRepository
+				.getRenewableBookings(from, until, renewable.getId(), 10)
+				.isEmpty());
+
+		// a renewal is only claimed once
+		var ids = Arrays.asList(renewable.getId());
+		assertEquals(ids, parkingSpotBookingRepository.claimRenewals(ids));
+		assertTrue(parkingSpotBookingRepository.claimRenewals(ids).isEmpty());
+		assertEquals(RenewalStatus.CHARGING,
+				parkingSpotBookingRepository.getRenewableBookings(from, until,
+						0, 10).get(0).getRenewalStatus());
+
+		// steps only apply to renewals at the expected step
+		assertTrue(parkingSpotBookingRepository.advanceRenewals(ids,
+				RenewalStatus.CHARGED, RenewalStatus.RENEWED).isEmpty());
+		assertEquals(ids, parkingSpotBookingRepository.advanceRenewals(ids,
+				RenewalStatus.CHARGING, RenewalStatus.CHARGED));
+		assertEquals(ids, parkingSpotBookingRepository
+				.getStaleRenewals(new Date(now), 0, 10).stream()
+				.map(booking -> booking.getId()).toList());
+		assertTrue(parkingSpotBookingRepository
+				.getStaleRenewals(from, 0, 10).isEmpty());
+
+		// renewed bookings are not fetched again
+		assertEquals(ids, parkingSpotBookingRepository.advanceRenewals(ids,
+				RenewalStatus.CHARGED, RenewalStatus.RENEWED));
+		assertTrue(parkingSpotBookingRepository
+				.getRenewableBookings(from, until, 0, 10).isEmpty());
+	}
+
 }
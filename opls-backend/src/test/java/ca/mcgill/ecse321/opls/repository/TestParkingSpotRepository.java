@@ -3,6 +3,7 @@ package ca.mcgill.ecse321.opls.repository;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.util.Arrays;
@@ -13,6 +14,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
@@ -82,8 +84,12 @@ public class TestParkingSpotRepository {
 		var result = parkingSpotRepository.findParkingSpotById("A015");
 		assertNotNull(result);
 		assertEquals(message, result.getMessage());
+		assertEquals('A', result.getFloor());
+		assertEquals(15, result.getSpotNumber());
 		result = parkingSpotRepository.findParkingSpotById('A', 15);
 		assertEquals(message, result.getMessage());
+		result = parkingSpotRepository.findParkingSpotById('a', 15);
+		assertEquals(message, result.getMessage());
 
 		// ensure list queries find it
 		assertExists(parkingSpotRepository.query(null, null, null), ps.getId(),
@@ -94,6 +100,9 @@ public class TestParkingSpotRepository {
 				ps.getId(), message);
 		assertExists(parkingSpotRepository.query(new char[]{'A'}, null, null),
 				ps.getId(), message);
+		assertExists(
+				parkingSpotRepository.query(new char[]{'b', 'a'}, null, null),
+				ps.getId(), message);
 		assertExists(
 				parkingSpotRepository.query(null,
 						Arrays.asList(ParkingSpotStatus.OPEN), null),
@@ -195,7 +204,7 @@ public class TestParkingSpotRepository {
 
 		// set to reserved
 		ps.setParkingSpotStatus(ParkingSpotStatus.RESERVED);
-		parkingSpotRepository.save(ps);
+		ps = parkingSpotRepository.save(ps);
 
 		// ensure list queries for open spots do not find it
 		assertAbsent(
@@ -218,7 +227,7 @@ public class TestParkingSpotRepository {
 
 		// set to open
 		ps.setParkingSpotStatus(ParkingSpotStatus.OPEN);
-		parkingSpotRepository.save(ps);
+		ps = parkingSpotRepository.save(ps);
 
 		// ensure list queries find it
 		assertExists(
@@ -238,6 +247,37 @@ public class TestParkingSpotRepository {
 				ps.getId());
 	}
 
+	/**
+	 * Test setting the status of a floor.
+	 */
+	@Test
+	public void testUpdateFloorStatus() {
+		var ps_reg = parkingSpotRepository.save(new ParkingSpot('A', 15,
+				VehicleType.REGULAR, ParkingSpotStatus.OPEN));
+		var ps_lg = parkingSpotRepository.save(new ParkingSpot('A', 16,
+				VehicleType.LARGE, ParkingSpotStatus.OPEN));
+		var ps_other = parkingSpotRepository.save(new ParkingSpot('B', 15,
+				VehicleType.REGULAR, ParkingSpotStatus.OPEN));
+
+		assertEquals(1, parkingSpotRepository.updateFloorStatus('a',
+				ParkingSpotStatus.CLOSED, Arrays.asList(VehicleType.REGULAR)));
+		var updated = parkingSpotRepository.findParkingSpotById(ps_reg.getId());
+		assertEquals(ParkingSpotStatus.CLOSED, updated.getParkingSpotStatus());
+
+		// the version changes, so stale updates of the spot fail
+		assertEquals(ps_reg.getVersion() + 1, updated.getVersion());
+		ps_reg.setParkingSpotStatus(ParkingSpotStatus.OPEN);
+		final var stale = ps_reg;
+		assertThrows(ObjectOptimisticLockingFailureException.class,
+				() -> parkingSpotRepository.save(stale));
+
+		// other sizes and floors are not changed
+		assertEquals(ps_lg.getVersion(), parkingSpotRepository
+				.findParkingSpotById(ps_lg.getId()).getVersion());
+		assertEquals(ParkingSpotStatus.OPEN, parkingSpotRepository
+				.findParkingSpotById(ps_other.getId()).getParkingSpotStatus());
+	}
+
 	/**
 	 * Test cases of the search query on parking spot.
 	 */
@@ -1,6 +1,9 @@
 package ca.mcgill.ecse321.opls.repository;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.util.ArrayList;
@@ -13,6 +16,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import ca.mcgill.ecse321.opls.model.Booking;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
@@ -163,6 +167,153 @@ public class TestVehicleServiceBookingRepository {
 		}
 	}
 
+	/**
+	 * Test querying pages of bookings by date range.
+	 */
+	@Test
+	public void testSearchPages() {
+		var services = new VehicleService[2];
+		for (int i = 0; i < services.length; ++i) {
+			services[i] = new VehicleService();
+			services[i].setDisplayName("Tire change " + i);
+			services[i].setDuration(30);
+			services[i] = serviceRepo.save(services[i]);
+		}
+
+		// two bookings of each service at every start date
+		var start = new Date();
+		var expected = new ArrayList<VehicleServiceBooking>();
+		for (int i = 0; i < 3; ++i) {
+			var date = new Date(start.getTime() + TimeUnit.HOURS.toMillis(i));
+			for (var service : services) {
+				expected.add(bookingRepo.save(newBooking(service, "ABCD", date)));
+			}
+		}
+		expected.sort((a, b) -> {
+			int c = a.getStartDate().compareTo(b.getStartDate());
+			// the database compares uuids as unsigned bytes
+			return c != 0
+					? c
+					: a.getUuid().toString().compareTo(b.getUuid().toString());
+		});
+		var end = new Date(start.getTime() + TimeUnit.HOURS.toMillis(3));
+
+		// follow the pages
+		var fetched = new ArrayList<DateRange>();
+		DateRange after = null;
+		List<DateRange> page;
+		do {
+			page = bookingRepo.search(null, null, start, end, after, 4);
+			fetched.addAll(page);
+			after = page.isEmpty() ? null : page.get(page.size() - 1);
+		} while (page.size() == 4);
+		assertEquals(expected.size(), fetched.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			assertEquals(expected.get(i).getUuid(), fetched.get(i).uuid);
+			assertEquals(expected.get(i).getStartDate(),
+					fetched.get(i).startDate);
+		}
+
+		// filter by services
+		page = bookingRepo.search(null, List.of(services[1].getId()), start,
+				end, null, 10);
+		assertEquals(3, page.size());
+		for (var range : page) {
+			assertEquals(services[1].getDisplayName(), range.name);
+		}
+		assertEquals(6, bookingRepo.search(null,
+				List.of(services[0].getId(), services[1].getId()), start, end,
+				null, 10).size());
+	}
+
+	/**
+	 * Test checking the confirmed bookings of a service for conflicts.
+	 */
+	@Test
+	public void testConfirmedBookings() {
+		var service = new VehicleService();
+		service.setDisplayName("Tire change");
+		service.setDuration(30);
+		service = serviceRepo.save(service);
+
+		var now = new Date();
+		var booking = bookingRepo.save(newBooking(service, "ABCD", now));
+		var ended = bookingRepo.save(newBooking(service, "ABCD",
+				new Date(now.getTime() - TimeUnit.HOURS.toMillis(2))));
+		var requested = newBooking(service, "ABCD",
+				new Date(now.getTime() + TimeUnit.HOURS.toMillis(2)));
+		requested.setBookingStatus(BookingStatus.REQUESTED);
+		requested = bookingRepo.save(requested);
+
+		// periods are half-open, so touching periods do not conflict
+		assertEquals(List.of(), bookingRepo.getBookedBaysDuring(
+				service.getId(), booking.getEndDate(),
+				new Date(booking.getEndDate().getTime()
+						+ TimeUnit.MINUTES.toMillis(30))));
+		assertEquals(List.of(0), bookingRepo.getBookedBaysDuring(
+				service.getId(),
+				new Date(booking.getEndDate().getTime() - 1),
+				new Date(booking.getEndDate().getTime()
+						+ TimeUnit.MINUTES.toMillis(30))));
+		assertEquals(List.of(0), bookingRepo.getBookedBaysDuring(
+				service.getId(), ended.getStartDate(),
+				new Date(ended.getStartDate().getTime() + 1)));
+		assertEquals(List.of(), bookingRepo.getBookedBaysDuring(
+				service.getId(), ended.getEndDate(), now));
+		assertEquals(List.of(), bookingRepo.getBookedBaysDuring(
+				service.getId(), requested.getStartDate(),
+				requested.getEndDate()));
+
+		var during = new ArrayList<Integer>();
+		bookingRepo.getConfirmedBookingsDuring(service.getId(),
+				ended.getStartDate(), new Date(now.getTime() + 1))
+				.forEach(b -> during.add(b.getId()));
+		assertEquals(2, during.size());
+		assertTrue(during.contains(ended.getId()));
+
+		var confirmed = new ArrayList<Integer>();
+		bookingRepo.getConfirmedBookingsEndingAfter(service.getId(), now)
+				.forEach(b -> confirmed.add(b.getId()));
+		assertEquals(List.of(booking.getId()), confirmed);
+	}
+
+	/**
+	 * Test that confirmed bookings cannot overlap in a bay.
+	 */
+	@Test
+	public void testNoOverlap() {
+		var service = new VehicleService();
+		service.setDisplayName("Tire change");
+		service.setDuration(30);
+		service.setBays(2);
+		service = serviceRepo.save(service);
+
+		var now = new Date();
+		bookingRepo.save(newBooking(service, "ABCD", now));
+
+		var first = newBooking(service, "EFGH", now);
+		first.setBay(0);
+		assertThrows(DataIntegrityViolationException.class,
+				() -> bookingRepo.save(first));
+
+		var second = newBooking(service, "EFGH", now);
+		second.setBay(1);
+		bookingRepo.save(second);
+
+		// bookings that are not confirmed do not take the bay
+		var requested = newBooking(service, "IJKL", now);
+		requested.setBay(1);
+		requested.setBookingStatus(BookingStatus.REQUESTED);
+		bookingRepo.save(requested);
+
+		assertEquals(List.of(0, 1), bookingRepo.getBookedBaysDuring(
+				service.getId(), now, new Date(now.getTime() + 1)));
+
+		// the second bay cannot be removed while its booking has not ended
+		assertTrue(bookingRepo.hasNotEndedInBaysFrom(service.getId(), 1));
+		assertFalse(bookingRepo.hasNotEndedInBaysFrom(service.getId(), 2));
+	}
+
 	@Test
 	public void testCreateRead() {
 		var vehicleService = new VehicleService();
@@ -0,0 +1,54 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository;
+import ca.mcgill.ecse321.opls.repository.BookingHistoryRepository.BookingTable;
+
+/**
+ * Test the BookingArchiveService class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestBookingArchiveService {
+
+	@Mock
+	private BookingHistoryRepository historyRepository;
+
+	@InjectMocks
+	private BookingArchiveService archiveService;
+
+	/**
+	 * Test moving bookings in batches until none are left.
+	 */
+	@Test
+	public void testArchiveEndedBookings() {
+		ReflectionTestUtils.setField(archiveService, "batchSize", 10);
+		when(historyRepository.moveEndedBookings(eq(BookingTable.PARKING_SPOT),
+				any(), eq(10))).thenReturn(10, 10, 3);
+		when(historyRepository.moveEndedBookings(
+				eq(BookingTable.VEHICLE_SERVICE), any(), eq(10))).thenReturn(0);
+
+		var now = new Date();
+		assertEquals(23, archiveService.archiveEndedBookings(now));
+		var cutoff = new Date(now.getTime() - 2592000000L);
+		verify(historyRepository, times(3))
+				.moveEndedBookings(BookingTable.PARKING_SPOT, cutoff, 10);
+		verify(historyRepository, times(1))
+				.moveEndedBookings(BookingTable.VEHICLE_SERVICE, cutoff, 10);
+	}
+
+}
@@ -0,0 +1,169 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+
+/**
+ * Test the BookingLifecycleScheduler class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestBookingLifecycleScheduler {
+
+	@Mock
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@Mock
+	private ResourceVersionService resourceVersionService;
+
+	@InjectMocks
+	private BookingLifecycleScheduler scheduler;
+
+	private List<ParkingSpotBooking> bookings;
+
+	/** IDs of the bookings that ended, as the database would complete them. */
+	private List<Integer> ended;
+
+	private List<Integer> started;
+	private List<Integer> completed;
+
+	@BeforeEach
+	public void setupMocks() {
+		bookings = new ArrayList<>();
+		ended = new ArrayList<>(Arrays.asList(1));
+		started = new ArrayList<>();
+		completed = new ArrayList<>();
+
+		lenient().when(bookingRepository.getCompletableBookings())
+				.thenAnswer((InvocationOnMock invocation) -> bookings);
+		lenient().when(bookingRepository.completeEndedBookings())
+				.thenAnswer((InvocationOnMock invocation) -> {
+					var result = new ArrayList<>(ended);
+					ended.clear();
+					return result;
+				});
+		lenient().when(bookingRepository.completeEndedBookings(any()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					Collection<Integer> ids = invocation.getArgument(0);
+					return new ArrayList<>(ids);
+				});
+
+		ReflectionTestUtils.setField(scheduler, "tickLength", 10L);
+		scheduler.addListener(new BookingLifecycleScheduler.Listener() {
+			@Override
+			public void bookingsStarted(List<Integer> bookingIds) {
+				started.addAll(bookingIds);
+			}
+
+			@Override
+			public void bookingsCompleted(List<Integer> bookingIds) {
+				completed.addAll(bookingIds);
+			}
+		});
+	}
+
+	private static ParkingSpotBooking newBooking(int id, BookingStatus status,
+			long startOffsetMs, long endOffsetMs) {
+		var now = new Date().getTime();
+		var booking = new ParkingSpot('A', id).newBooking();
+		booking.overrideId(id);
+		booking.setBookingStatus(status);
+		booking.setDateRange(new Date(now + startOffsetMs),
+				new Date(now + endOffsetMs));
+		return booking;
+	}
+
+	/**
+	 * Test completing bookings when they end.
+	 */
+	@Test
+	public void testTick() throws InterruptedException {
+		bookings.add(newBooking(2, BookingStatus.CONFIRMED, -1000, 100));
+		bookings.add(newBooking(3, BookingStatus.PAID, 100, 200));
+		bookings.add(newBooking(4, BookingStatus.CONFIRMED, -1000, 60000));
+
+		// bookings that ended while down are completed when loading
+		assertEquals(0, scheduler.getScheduledCount());
+		scheduler.tick();
+		assertEquals(Arrays.asList(1), completed);
+		assertEquals(4, scheduler.getScheduledCount());
+		verify(resourceVersionService, times(1)).bump(Family.SPOTS);
+
+		// held bookings are only scheduled once paid
+		scheduler.bookingSaved(
+				newBooking(5, BookingStatus.REQUESTED, -1000, 100));
+		scheduler.bookingSaved(
+				newBooking(6, BookingStatus.CONFIRMED, -1000, 100));
+		assertEquals(5, scheduler.getScheduledCount());
+
+		Thread.sleep(250);
+		scheduler.tick();
+		assertEquals(Arrays.asList(3), started);
+		assertEquals(4, completed.size());
+		assertEquals(Arrays.asList(2, 3, 6),
+				completed.stream().skip(1).sorted().toList());
+		verify(bookingRepository, times(1)).completeEndedBookings(any());
+		assertEquals(1, scheduler.getScheduledCount());
+
+		// nothing to do
+		scheduler.tick();
+		verify(resourceVersionService, times(2)).bump(Family.SPOTS);
+
+		// reload from the database
+		scheduler.reload();
+		bookings.clear();
+		scheduler.tick();
+		assertEquals(0, scheduler.getScheduledCount());
+		verify(bookingRepository, times(2)).completeEndedBookings();
+		verify(resourceVersionService, times(2)).bump(Family.SPOTS);
+		verify(bookingRepository, never()).completeEndedBookings(
+				Arrays.asList(4));
+	}
+
+	/**
+	 * Test scheduling the bookings saved while the wheel is loading.
+	 */
+	@Test
+	public void testSaveWhileLoading() {
+		var saved = newBooking(2, BookingStatus.CONFIRMED, -1000, 60000);
+		lenient().when(bookingRepository.getCompletableBookings())
+				.thenAnswer((InvocationOnMock invocation) -> {
+					// committed after the query read the bookings
+					scheduler.bookingSaved(saved);
+					return bookings;
+				});
+
+		scheduler.tick();
+		assertEquals(1, scheduler.getScheduledCount());
+
+		// not loading, the next load reads the booking
+		scheduler.reload();
+		scheduler.bookingSaved(saved);
+		assertEquals(0, scheduler.getScheduledCount());
+	}
+
+}
@@ -0,0 +1,78 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ca.mcgill.ecse321.opls.model.Booking;
+import ca.mcgill.ecse321.opls.repository.ConfirmationNumberRepository;
+
+/**
+ * Test the ConfirmationNumberGenerator class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestConfirmationNumberGenerator {
+
+	@Mock
+	private ConfirmationNumberRepository repository;
+
+	@InjectMocks
+	private ConfirmationNumberGenerator generator;
+
+	/**
+	 * Test that distinct values give distinct numbers.
+	 */
+	@Test
+	public void testEncode() {
+		var numbers = new HashSet<String>();
+		for (long value = 0; value < 1 << 18; ++value) {
+			var number = ConfirmationNumberGenerator.encode(value);
+			assertEquals(Booking.CONFIRM_NUM_LENGTH, number.length());
+			for (var c : number.toCharArray()) {
+				assertTrue(ConfirmationNumberGenerator.ALPHABET.indexOf(c) >= 0);
+			}
+			assertTrue(numbers.add(number));
+		}
+
+		// the last values of the sequence too
+		for (long value = ConfirmationNumberRepository.CAPACITY
+				- 1000; value < ConfirmationNumberRepository.CAPACITY; ++value) {
+			assertTrue(numbers.add(ConfirmationNumberGenerator.encode(value)));
+		}
+
+		// consecutive values are not consecutive numbers
+		assertNotEquals(ConfirmationNumberGenerator.encode(1).substring(0, 5),
+				ConfirmationNumberGenerator.encode(2).substring(0, 5));
+	}
+
+	/**
+	 * Test reserving values of the sequence in blocks.
+	 */
+	@Test
+	public void testNext() {
+		when(repository.reserveBlock()).thenReturn(0L,
+				(long) ConfirmationNumberRepository.BLOCK_SIZE);
+
+		var numbers = new HashSet<String>();
+		for (int i = 0; i < ConfirmationNumberRepository.BLOCK_SIZE + 1; ++i) {
+			numbers.add(generator.next());
+		}
+		assertEquals(ConfirmationNumberRepository.BLOCK_SIZE + 1,
+				numbers.size());
+		assertTrue(numbers.contains(ConfirmationNumberGenerator
+				.encode(ConfirmationNumberRepository.BLOCK_SIZE)));
+		verify(repository, times(2)).reserveBlock();
+	}
+
+}
@@ -0,0 +1,163 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static ca.mcgill.ecse321.opls.TestUtils.assertThrowsApiException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ca.mcgill.ecse321.opls.dto.auth.AccessToken;
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+
+/**
+ * Test the IdempotencyService class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestIdempotencyService {
+
+	@Spy
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@InjectMocks
+	private IdempotencyService service;
+
+	private AccessToken credentials;
+
+	private AtomicInteger executions;
+
+	@BeforeEach
+	public void setup() {
+		credentials = new AccessToken();
+		credentials.oauthClientId = "tester";
+		executions = new AtomicInteger();
+	}
+
+	private Object[] book(String key, Object request) {
+		return service.execute(key, credentials, "/booking", request, () -> {
+			executions.incrementAndGet();
+			return new Object[]{request};
+		});
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Test returning the original response to retries.
+	 */
+	@Test
+	public void testRetry() {
+		var response = book("key-1", "request");
+		assertSame(response, book("key-1", "request"));
+		assertEquals(1, executions.get());
+
+		// requests without a key, or with other keys, are executed
+		book(null, "request");
+		book("key-2", "request");
+		assertEquals(3, executions.get());
+
+		// keys are scoped to the client
+		credentials.isRegistered = true;
+		credentials.userAccountId = 12;
+		book("key-1", "request");
+		assertEquals(4, executions.get());
+
+		// invalid requests
+		assertThrowsApiException(HttpStatus.UNPROCESSABLE_ENTITY,
+				"Idempotency key reused for another request.",
+				() -> book("key-1", "other request"));
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Invalid idempotency key.", () -> book(" ", "request"));
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Invalid idempotency key.",
+				() -> book("k".repeat(256), "request"));
+	}
+
+	/**
+	 * Test retrying failed requests and expiring responses.
+	 */
+	@Test
+	public void testFailureAndExpiry() {
+		assertThrowsApiException(HttpStatus.BAD_REQUEST, "Rejected payment.",
+				() -> service.execute("key", credentials, "/booking", "request",
+						() -> {
+							throw new OplsApiException(HttpStatus.BAD_REQUEST,
+									"Rejected payment.");
+						}));
+		assertEquals(0, service.size());
+		book("key", "request");
+		assertEquals(1, executions.get());
+
+		service.removeExpired();
+		assertEquals(1, service.size());
+		ReflectionTestUtils.setField(service, "ttl", 0L);
+		book("other", "request");
+		service.removeExpired();
+		assertEquals(1, service.size());
+	}
+
+	/**
+	 * Test that a concurrent retry waits for the original request.
+	 */
+	@Test
+	public void testConcurrentRetry() throws Exception {
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			var original = executor.submit(() -> service.execute("key",
+					credentials, "/booking", "request", () -> {
+						started.countDown();
+						await(release);
+						executions.incrementAndGet();
+						return new Object[]{"booking"};
+					}));
+			started.await(5, TimeUnit.SECONDS);
+			var retry = executor.submit(() -> book("key", "request"));
+
+			Thread.sleep(50);
+			release.countDown();
+			assertSame(original.get(5, TimeUnit.SECONDS),
+					retry.get(5, TimeUnit.SECONDS));
+			assertEquals(1, executions.get());
+
+			// retries time out while the original request runs
+			ReflectionTestUtils.setField(service, "waitTime", 10L);
+			var blocked = new CountDownLatch(1);
+			executor.submit(() -> service.execute("slow", credentials,
+					"/booking", "request", () -> {
+						started.countDown();
+						await(blocked);
+						return "booking";
+					}));
+			Thread.sleep(50);
+			var e = assertThrows(OplsApiException.class,
+					() -> book("slow", "request"));
+			assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+			blocked.countDown();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
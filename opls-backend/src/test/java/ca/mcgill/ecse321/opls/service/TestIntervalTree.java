@@ -0,0 +1,82 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the IntervalTree class.
+ */
+public class TestIntervalTree {
+
+	/**
+	 * Test adding, removing and searching for intervals.
+	 */
+	@Test
+	public void testOverlaps() {
+		var tree = new IntervalTree<String>();
+		assertTrue(tree.isEmpty());
+		assertFalse(tree.overlaps(0, 100));
+
+		tree.insert(10, 20, 1, "a");
+		tree.insert(30, 40, 2, "b");
+		tree.insert(15, 35, 3, "c");
+		assertEquals(3, tree.size());
+
+		// intervals are half-open
+		assertTrue(tree.overlaps(19, 20));
+		assertTrue(tree.overlaps(0, 11));
+		assertFalse(tree.overlaps(0, 10));
+		assertFalse(tree.overlaps(40, 50));
+		assertEquals(Arrays.asList("a", "c"), tree.overlapping(12, 16));
+		assertEquals(Arrays.asList("c", "b"), tree.overlapping(32, 33));
+
+		// remove the interval joining the others
+		assertTrue(tree.remove(15, 3));
+		assertFalse(tree.remove(15, 3));
+		assertEquals(2, tree.size());
+		assertFalse(tree.overlaps(20, 30));
+		assertEquals(Arrays.asList("a", "b"), tree.overlapping(0, 100));
+	}
+
+	/**
+	 * Test the tree against a list of intervals.
+	 */
+	@Test
+	public void testRandom() {
+		var random = new Random(321);
+		var tree = new IntervalTree<long[]>();
+		var intervals = new ArrayList<long[]>();
+
+		for (int i = 0; i < 2000; ++i) {
+			if (intervals.isEmpty() || random.nextInt(3) > 0) {
+				long low = random.nextInt(10000);
+				var interval = new long[]{low, low + random.nextInt(200), i};
+				tree.insert(interval[0], interval[1], i, interval);
+				intervals.add(interval);
+			} else {
+				var interval = intervals.remove(random.nextInt(intervals.size()));
+				assertTrue(tree.remove(interval[0], interval[2]));
+			}
+
+			long low = random.nextInt(10200);
+			long high = low + random.nextInt(100);
+			int expected = 0;
+			for (var interval : intervals) {
+				if (interval[0] < high && interval[1] > low) {
+					++expected;
+				}
+			}
+			assertEquals(intervals.size(), tree.size());
+			assertEquals(expected > 0, tree.overlaps(low, high));
+			assertEquals(expected, tree.overlapping(low, high).size());
+		}
+	}
+
+}
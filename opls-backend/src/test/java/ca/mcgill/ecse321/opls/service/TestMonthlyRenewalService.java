@@ -0,0 +1,342 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.ParkingLotSystem;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking.RenewalStatus;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+
+/**
+ * Test the MonthlyRenewalService class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestMonthlyRenewalService {
+
+	private static final String DECLINED_ACCOUNT = "1111111111111111";
+	private static final String UNAVAILABLE_ACCOUNT = "2222222222222222";
+
+	@Mock
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@Mock
+	private ParkingLotSystemRepository configurationRepository;
+
+	@Mock
+	private ParkingSpotBookingService bookingService;
+
+	@Mock
+	private PaymentService paymentService;
+
+	@InjectMocks
+	private MonthlyRenewalService renewalService;
+
+	/** Bookings in the database, by ID. */
+	private Map<Integer, ParkingSpotBooking> bookings;
+
+	/** IDs of the bookings of which the spot is booked next month. */
+	private List<Integer> taken;
+
+	/** IDs of the renewals that conflict with another booking when saved. */
+	private List<Integer> conflicting;
+
+	private List<String> charges;
+	private List<String> refunds;
+	private List<Integer> renewed;
+
+	@BeforeEach
+	public void setupMocks() {
+		bookings = new HashMap<>();
+		taken = new ArrayList<>();
+		conflicting = new ArrayList<>();
+		charges = new ArrayList<>();
+		refunds = new ArrayList<>();
+		renewed = new ArrayList<>();
+
+		var config = new ParkingLotSystem();
+		config.setMonthlyFee(60);
+		lenient().when(configurationRepository.getActiveParkingLotSystem())
+				.thenReturn(config);
+
+		lenient().when(bookingRepository.getRenewableBookings(any(), any(),
+				anyInt(), anyInt()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					Date fromDate = invocation.getArgument(0);
+					int afterId = invocation.getArgument(2);
+					int limit = invocation.getArgument(3);
+					return bookings.values().stream()
+							.filter(b -> b.getId() > afterId)
+							.filter(b -> !b.getEndDate().before(fromDate))
+							.filter(b -> b.getRenewalStatus() == null
+									|| b.getRenewalStatus() == RenewalStatus.CHARGING
+									|| b.getRenewalStatus() == RenewalStatus.CHARGED)
+							.sorted((a, b) -> a.getId() - b.getId())
+							.limit(limit).toList();
+				});
+		lenient().when(bookingRepository.claimRenewals(anyCollection()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					Collection<Integer> ids = invocation.getArgument(0);
+					var claimed = new ArrayList<Integer>();
+					for (var id : ids) {
+						if (bookings.get(id).getRenewalStatus() == null) {
+							bookings.get(id).setRenewalStatus(
+									RenewalStatus.CHARGING);
+							claimed.add(id);
+						}
+					}
+					return claimed;
+				});
+		lenient().when(bookingRepository.advanceRenewals(anyCollection(),
+				any(), any())).thenAnswer((InvocationOnMock invocation) -> {
+					Collection<Integer> ids = invocation.getArgument(0);
+					RenewalStatus from = invocation.getArgument(1);
+					RenewalStatus to = invocation.getArgument(2);
+					var advanced = new ArrayList<Integer>();
+					for (var id : ids) {
+						if (bookings.get(id).getRenewalStatus() == from) {
+							bookings.get(id).setRenewalStatus(to);
+							advanced.add(id);
+						}
+					}
+					return advanced;
+				});
+		lenient().when(bookingRepository.getStaleRenewals(any(), anyInt(),
+				anyInt())).thenAnswer((InvocationOnMock invocation) -> {
+					Date date = invocation.getArgument(0);
+					int afterId = invocation.getArgument(1);
+					int limit = invocation.getArgument(2);
+					return bookings.values().stream()
+							.filter(b -> b.getId() > afterId)
+							.filter(b -> b.getEndDate().before(date))
+							.filter(b -> b.getRenewalStatus() == RenewalStatus.CHARGING
+									|| b.getRenewalStatus() == RenewalStatus.CHARGED)
+							.sorted((a, b) -> a.getId() - b.getId())
+							.limit(limit).toList();
+				});
+		lenient().doAnswer((InvocationOnMock invocation) -> {
+			refunds.add(invocation.getArgument(0));
+			return null;
+		}).when(paymentService).refundPayment(anyString());
+
+		lenient().when(bookingService.isRenewable(any()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					ParkingSpotBooking booking = invocation.getArgument(0);
+					return !taken.contains(booking.getId());
+				});
+		lenient().when(bookingService.saveRenewals(anyCollection(), anyDouble()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					Collection<ParkingSpotBooking> renewals = invocation
+							.getArgument(0);
+					for (var booking : renewals) {
+						if (conflicting.contains(booking.getId())) {
+							throw new DataIntegrityViolationException(
+									"Spot booked.");
+						}
+					}
+					var saved = new ArrayList<ParkingSpotBooking>();
+					for (var booking : renewals) {
+						if (booking.getRenewalStatus() == RenewalStatus.CHARGED) {
+							booking.setRenewalStatus(RenewalStatus.RENEWED);
+							renewed.add(booking.getId());
+							saved.add(booking);
+						}
+					}
+					return saved;
+				});
+
+		lenient().when(paymentService.submitPayment(anyString(), anyDouble(),
+				anyString())).thenAnswer((InvocationOnMock invocation) -> {
+					String account = invocation.getArgument(0);
+					if (account.equals(DECLINED_ACCOUNT)) {
+						throw new OplsApiException(HttpStatus.BAD_REQUEST,
+								"Rejected payment.");
+					} else if (account.equals(UNAVAILABLE_ACCOUNT)) {
+						throw new OplsApiException(HttpStatus.BAD_GATEWAY,
+								"Payment could not be processed.");
+					}
+					synchronized (charges) {
+						charges.add(invocation.getArgument(2));
+					}
+					return invocation.getArgument(1);
+				});
+
+		ReflectionTestUtils.setField(renewalService, "chunkSize", 2);
+		ReflectionTestUtils.setField(renewalService, "parallelism", 2);
+	}
+
+	private ParkingSpotBooking addBooking(int id, String account,
+			RenewalStatus status) {
+		var booking = new ParkingSpot('B', id).newBooking();
+		booking.overrideId(id);
+		booking.setBookingStatus(BookingStatus.CONFIRMED);
+		booking.setDateRangeMinutes(new Date(), 30);
+		booking.setBillingAccountId(account);
+		booking.setRenewalStatus(status);
+		bookings.put(id, booking);
+		return booking;
+	}
+
+	/**
+	 * Test renewing bookings in chunks.
+	 */
+	@Test
+	public void testRenewEnding() {
+		var b1 = addBooking(1, "1234567812345678", null);
+		addBooking(2, DECLINED_ACCOUNT, null);
+		addBooking(3, "1234567812345678", null);
+		addBooking(4, UNAVAILABLE_ACCOUNT, null);
+		addBooking(5, "1234567812345678", null);
+		taken.add(5);
+
+		var report = renewalService.renewEnding(new Date());
+		assertEquals(2, report.getRenewed());
+		assertEquals(2, report.getFailed());
+		assertEquals(1, report.getPending());
+		assertEquals(Arrays.asList(1, 3), renewed);
+		assertEquals(2, charges.size());
+		assertEquals("renewal-" + b1.getUuid(), charges.get(0));
+		assertEquals(RenewalStatus.FAILED, bookings.get(2).getRenewalStatus());
+		assertEquals(RenewalStatus.CHARGING,
+				bookings.get(4).getRenewalStatus());
+		assertEquals(RenewalStatus.FAILED, bookings.get(5).getRenewalStatus());
+
+		// spots booked since are not charged
+		verify(paymentService, times(4)).submitPayment(anyString(),
+				anyDouble(), anyString());
+		verify(paymentService, never()).submitPayment(anyString(),
+				anyDouble(), eq("renewal-" + bookings.get(5).getUuid()));
+
+		// the unavailable charge is retried on the next run
+		bookings.get(4).setBillingAccountId("1234567812345678");
+		report = renewalService.renewEnding(new Date());
+		assertEquals(1, report.getRenewed());
+		assertEquals(Arrays.asList(1, 3, 4), renewed);
+	}
+
+	/**
+	 * Test running the scheduled renewals off the calling thread.
+	 */
+	@Test
+	public void testRenewScheduled() throws InterruptedException {
+		addBooking(1, "1234567812345678", null);
+		var gate = new CountDownLatch(1);
+		var config = configurationRepository.getActiveParkingLotSystem();
+		doAnswer((InvocationOnMock invocation) -> {
+			gate.await(5, TimeUnit.SECONDS);
+			return config;
+		}).when(configurationRepository).getActiveParkingLotSystem();
+
+		renewalService.renewScheduled();
+		assertEquals(0, renewed.size());
+
+		gate.countDown();
+		for (int i = 0; i < 200 && renewed.isEmpty(); ++i) {
+			Thread.sleep(10);
+		}
+		assertEquals(Arrays.asList(1), renewed);
+		renewalService.shutdown();
+	}
+
+	/**
+	 * Test resuming interrupted renewals without charging again.
+	 */
+	@Test
+	public void testResume() {
+		addBooking(1, "1234567812345678", RenewalStatus.CHARGED);
+		addBooking(2, "1234567812345678", RenewalStatus.CHARGED);
+		addBooking(3, "1234567812345678", null);
+		conflicting.add(2);
+
+		var report = renewalService.renewEnding(new Date());
+		assertEquals(2, report.getRenewed());
+		assertEquals(1, report.getFailed());
+		assertEquals(Arrays.asList(1, 3), renewed);
+		assertEquals(1, charges.size());
+		assertEquals(RenewalStatus.FAILED, bookings.get(2).getRenewalStatus());
+
+		// the charge of the booking that cannot be renewed is refunded
+		assertEquals(Arrays.asList("renewal-" + bookings.get(2).getUuid()),
+				refunds);
+	}
+
+	/**
+	 * Test refunding the unfinished renewals of bookings that ended before the
+	 * catch-up time.
+	 */
+	@Test
+	public void testAbandonStale() {
+		var now = new Date();
+		var stale = addBooking(1, "1234567812345678", RenewalStatus.CHARGED);
+		stale.setDateRangeMinutes(new Date(now.getTime() - 60 * 60000), 30);
+		var recent = addBooking(2, "1234567812345678", RenewalStatus.CHARGING);
+		recent.setDateRangeMinutes(new Date(now.getTime() - 40 * 60000), 30);
+		ReflectionTestUtils.setField(renewalService, "catchUp", 20 * 60000L);
+
+		var report = renewalService.renewEnding(now);
+		assertEquals(1, report.getFailed());
+		assertEquals(RenewalStatus.FAILED, stale.getRenewalStatus());
+		assertEquals(Arrays.asList("renewal-" + stale.getUuid()), refunds);
+
+		// unfinished renewals within the catch-up time are resumed
+		assertEquals(1, report.getRenewed());
+		assertEquals(Arrays.asList(2), renewed);
+	}
+
+	/**
+	 * Test skipping the renewals moved on by another run.
+	 */
+	@Test
+	public void testConcurrentRun() {
+		var booking = addBooking(1, "1234567812345678", RenewalStatus.CHARGING);
+		lenient().doAnswer((InvocationOnMock invocation) -> {
+			// another run renews the booking while this one charges
+			booking.setRenewalStatus(RenewalStatus.RENEWED);
+			return true;
+		}).when(bookingService).isRenewable(any());
+
+		var report = renewalService.renewEnding(new Date());
+		assertEquals(0, report.getRenewed());
+		assertEquals(0, report.getFailed());
+		assertEquals(RenewalStatus.RENEWED, booking.getRenewalStatus());
+		verify(bookingService, never()).saveRenewals(anyCollection(),
+				anyDouble());
+		assertEquals(0, refunds.size());
+	}
+
+}
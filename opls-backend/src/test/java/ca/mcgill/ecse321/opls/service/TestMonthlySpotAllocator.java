@@ -0,0 +1,141 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+
+/**
+ * Test the MonthlySpotAllocator class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestMonthlySpotAllocator {
+
+	@Mock
+	private ParkingSpotRepository spotRepository;
+
+	@Mock
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@InjectMocks
+	private MonthlySpotAllocator allocator;
+
+	private List<ParkingSpot> freeSpots;
+
+	@BeforeEach
+	public void setupMocks() {
+		freeSpots = new ArrayList<>();
+		for (int i = 0; i < 50; ++i) {
+			freeSpots.add(new ParkingSpot('B', i, VehicleType.REGULAR,
+					ParkingSpotStatus.RESERVED));
+		}
+
+		lenient().when(spotRepository.queryUnbooked(isNull(), any(), isNull()))
+				.thenAnswer((InvocationOnMock invocation) -> freeSpots);
+	}
+
+	private static ParkingSpotEventDto spotState(String id,
+			ParkingSpotStatus status, boolean booked) {
+		return new ParkingSpotEventDto(id, id.charAt(0), VehicleType.REGULAR,
+				status, booked);
+	}
+
+	/**
+	 * Test taking spots from the pool and returning them.
+	 */
+	@Test
+	public void testAllocate() {
+		assertEquals(50, allocator.getFreeCount());
+		var first = allocator.allocate();
+		assertEquals("B000", first);
+		assertEquals(49, allocator.getFreeCount());
+
+		// allocated spots ignore changes until released
+		allocator.spotChanged(spotState(first, ParkingSpotStatus.RESERVED,
+				false));
+		assertEquals(49, allocator.getFreeCount());
+		allocator.release(first, true);
+		assertEquals(first, allocator.allocate());
+		allocator.release(first, false);
+		assertEquals(49, allocator.getFreeCount());
+
+		// spots return when their booking ends, and leave when booked
+		allocator.spotChanged(spotState(first, ParkingSpotStatus.RESERVED,
+				false));
+		allocator.spotChanged(spotState("B001", ParkingSpotStatus.RESERVED,
+				true));
+		allocator.spotChanged(spotState("B002", ParkingSpotStatus.OPEN,
+				false));
+		allocator.spotChanged(ParkingSpotEventDto.deleted("B003"));
+		assertEquals(47, allocator.getFreeCount());
+
+		// resets seed the pool again
+		freeSpots = Collections.emptyList();
+		allocator.reset();
+		assertNull(allocator.allocate());
+	}
+
+	/**
+	 * Test that concurrent allocations never return the same spot.
+	 */
+	@Test
+	public void testConcurrentAllocate() throws Exception {
+		int threads = 8;
+		var executor = Executors.newFixedThreadPool(threads);
+		var start = new CountDownLatch(1);
+		Set<String> allocated = ConcurrentHashMap.newKeySet();
+
+		try {
+			var tasks = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < threads; ++t) {
+				tasks.add(executor.submit((Callable<Integer>) () -> {
+					start.await();
+					int count = 0;
+					String spotId;
+					while ((spotId = allocator.allocate()) != null) {
+						allocated.add(spotId);
+						++count;
+					}
+					return count;
+				}));
+			}
+			start.countDown();
+
+			int total = 0;
+			for (var task : tasks) {
+				total += task.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(50, total);
+			assertEquals(50, allocated.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -31,6 +31,9 @@ public class TestOplsConfigurationScheduleService {
     @Mock
     private ParkingLotSystemScheduleRepository parkingLotSystemScheduleRepository;
 
+    @Mock
+    private ResourceVersionService resourceVersionService;
+
     @InjectMocks
     private OplsConfigurationScheduleService oplsConfigurationScheduleService;
 
@@ -19,6 +19,9 @@ public class TestOplsConfigurationService {
     @Mock
     private ParkingLotSystemRepository parkingLotSystemRepository;
 
+    @Mock
+    private ResourceVersionService resourceVersionService;
+
     @InjectMocks
     private OplsConfigurationService oplsConfigurationService;
 
@@ -14,14 +14,18 @@ import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
@@ -63,6 +67,30 @@ public class TestParkingSpotBookingService {
 	@Mock
 	private CustomerRepository customerRepository;
 
+	@Mock
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Mock
+	private ResourceVersionService resourceVersionService;
+
+	@Spy
+	private ParkingSpotReservationEngine reservationEngine = new ParkingSpotReservationEngine();
+
+	@Mock
+	private MonthlySpotAllocator monthlyAllocator;
+
+	@Mock
+	private BookingLifecycleScheduler lifecycleScheduler;
+
+	@Mock
+	private ConfirmationNumberGenerator confirmationNumbers;
+
+	@Mock
+	private PaymentPipeline paymentPipeline;
+
+	@Mock
+	private PaymentService paymentService;
+
 	@InjectMocks
 	private ParkingSpotBookingService service;
 
@@ -79,6 +107,14 @@ public class TestParkingSpotBookingService {
 	private ParkingSpot psReserved;
 	private ParkingLotSystem config;
 
+	@BeforeEach
+	public void setupConfirmationNumbers() {
+		var sequence = new AtomicLong();
+		lenient().when(confirmationNumbers.next())
+				.thenAnswer((InvocationOnMock invocation) -> ConfirmationNumberGenerator
+						.encode(sequence.getAndIncrement()));
+	}
+
 	private void setupMocks() {
 		ps = new ParkingSpot('A', 35, MY_VEHICLE_TYPE, ParkingSpotStatus.OPEN);
 		psBooked = new ParkingSpot('B', 35, MY_VEHICLE_TYPE,
@@ -111,6 +147,7 @@ public class TestParkingSpotBookingService {
 		config.setMonthlyFee(60.0);
 		lenient().when(configurationRepository.getActiveParkingLotSystem())
 				.thenAnswer((InvocationOnMock invocation) -> config);
+
 	}
 
 	/**
@@ -127,8 +164,9 @@ public class TestParkingSpotBookingService {
 		final var notMyStatus = BookingStatus.PAID;
 		assertNotEquals(myStatus, notMyStatus);
 		var booking = psBooked.newBooking();
-		booking.generateConfirmationNumber();
+		booking.setConfirmationNumber("B7K2QX");
 		booking.setBookingStatus(myStatus);
+		booking.setDateRangeMinutes(new Date(), 60);
 		lenient().when(bookingRepository.getActiveBooking(psBooked))
 				.thenAnswer((InvocationOnMock invocation) -> booking);
 		lenient()
@@ -162,6 +200,18 @@ public class TestParkingSpotBookingService {
 		assertEquals(booking.getConfirmationNumber(),
 				response.getConfirmationNumber());
 
+		// fetch for several parking spots
+		lenient()
+				.when(bookingRepository.getActiveBookings(
+						Arrays.asList(ps.getId(), psBooked.getId())))
+				.thenAnswer((
+						InvocationOnMock invocation) -> (Iterable<ParkingSpotBooking>) Arrays
+								.asList(booking));
+		var bookings = service.getBookings(Arrays.asList(ps, psBooked));
+		assertEquals(1, bookings.size());
+		assertEquals(booking, bookings.get(psBooked.getId()));
+		assertEquals(0, service.getBookings(Arrays.asList()).size());
+
 		// fetch by ID
 		response = service.getBooking(booking.getUuid());
 		assertNotNull(response);
@@ -177,6 +227,23 @@ public class TestParkingSpotBookingService {
 		assertNotNull(response);
 		assertEquals(booking.getUuid(), response.getUuid());
 
+		// fetch the response by confirmation number, kept until a write
+		var dto = service.getBookingResponse(booking.getConfirmationNumber());
+		assertEquals(booking.getUuid(), dto.uuid);
+		assertEquals(psBooked.getId(), dto.parkingSpotId);
+		assertEquals(booking.getEndDate(), dto.endDate);
+		dto.status = BookingStatus.COMPLETED;
+		dto = service.getBookingResponse(booking.getConfirmationNumber());
+		assertEquals(myStatus, dto.status);
+		verify(bookingRepository, times(2))
+				.findParkingSpotBookingByConfirmationNumber(
+						booking.getConfirmationNumber());
+		service.deleteBooking(booking.getUuid());
+		service.getBookingResponse(booking.getConfirmationNumber());
+		verify(bookingRepository, times(3))
+				.findParkingSpotBookingByConfirmationNumber(
+						booking.getConfirmationNumber());
+
 		// fetch by confirmation number
 		assertThrowsApiException(HttpStatus.NOT_FOUND, "Booking not found.",
 				() -> service.getBooking(UUID.randomUUID().toString()));
@@ -211,6 +278,27 @@ public class TestParkingSpotBookingService {
 				() -> service.assertNotBooked(psBooked));
 	}
 
+	/**
+	 * Test claiming a parking spot for a booking request.
+	 */
+	@Test
+	public void testClaimSpot() {
+		setupMocks();
+
+		// only one request holds the spot at a time
+		var claim = service.claimSpot(ps);
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spot already booked.", () -> service.claimSpot(ps));
+		claim.close();
+		service.claimSpot(ps).close();
+
+		// booked spots are not left claimed
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spot already booked.",
+				() -> service.claimSpot(psBooked));
+		assertEquals(0, reservationEngine.getClaimCount());
+	}
+
 	/**
 	 * Test processing and validating an incremental booking request.
 	 */
@@ -269,6 +357,85 @@ public class TestParkingSpotBookingService {
 						MY_VEHICLE_TYPE));
 	}
 
+	/**
+	 * Test processing and saving a request to book several spots.
+	 */
+	@Test
+	public void testProcessIncrementalBookings() throws ParseException {
+		setupMocks();
+
+		lenient()
+				.when(scheduleRepository
+						.findActiveParkingLotScheduleByDay(any(Day.class)))
+				.thenAnswer((InvocationOnMock invocation) -> config
+						.addSchedule(Day.MONDAY, "00:00:00", "23:59:59"));
+		var ps2 = new ParkingSpot('A', 36, MY_VEHICLE_TYPE,
+				ParkingSpotStatus.OPEN);
+		lenient().when(spotRepository.findAllById(any()))
+				.thenAnswer((InvocationOnMock invocation) -> Arrays.asList(ps,
+						ps2, psBooked, psReserved));
+		var booking = psBooked.newBooking();
+		lenient().when(bookingRepository.getActiveBookings(any()))
+				.thenAnswer((
+						InvocationOnMock invocation) -> (Iterable<ParkingSpotBooking>) Arrays
+								.asList(booking));
+		lenient().when(bookingRepository.saveAll(any()))
+				.thenAnswer((InvocationOnMock invocation) -> invocation
+						.getArgument(0));
+
+		final var startDate = DateHelper.parseDate("2023-03-16 14:15:15");
+		var ids = Arrays.asList(MY_PS_ID, "A036", BOOKED_PS_ID,
+				RESERVED_PS_ID, NOT_FOUND_PS_ID);
+
+		// all or nothing
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spots cannot be booked.",
+				() -> service.processIncrementalBookings(ids, startDate, 30,
+						MY_VEHICLE_TYPE, false));
+		assertEquals(0, reservationEngine.getClaimCount());
+
+		// best effort
+		try (var batch = service.processIncrementalBookings(ids, startDate, 30,
+				MY_VEHICLE_TYPE, true)) {
+			assertEquals(2, batch.getBookings().size());
+			assertEquals(MY_PS_ID,
+					batch.getBookings().get(0).getParkingSpot().getId());
+			assertEquals(2 * 2 * config.getIncrementFee(), batch.getCost(),
+					1e-9);
+			assertEquals(Arrays.asList(BOOKED_PS_ID, RESERVED_PS_ID,
+					NOT_FOUND_PS_ID),
+					List.copyOf(batch.getFailures().keySet()));
+			assertEquals("Parking spot not found.",
+					batch.getFailures().get(NOT_FOUND_PS_ID));
+			assertEquals(2, reservationEngine.getClaimCount());
+
+			// the spots are booked again when saving
+			assertThrowsApiException(HttpStatus.CONFLICT,
+					"Parking spot already booked.",
+					() -> service.saveBookings(batch.getBookings(), null,
+							"ABCD"));
+			lenient().when(bookingRepository.getActiveBookings(any()))
+					.thenAnswer((
+							InvocationOnMock invocation) -> Collections.EMPTY_LIST);
+			var saved = service.saveBookings(batch.getBookings(), null,
+					"ABCD");
+			assertEquals(2, saved.size());
+			assertEquals(BookingStatus.CONFIRMED,
+					saved.get(1).getBookingStatus());
+			assertEquals("ABCD", saved.get(1).getLicensePlate());
+			assertNotNull(saved.get(1).getConfirmationNumber());
+			verify(occupancyIndex, times(2)).bookingSaved(any());
+		}
+		assertEquals(0, reservationEngine.getClaimCount());
+
+		// nothing to book
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spots cannot be booked.",
+				() -> service.processIncrementalBookings(
+						Arrays.asList(NOT_FOUND_PS_ID), startDate, 30,
+						MY_VEHICLE_TYPE, true));
+	}
+
 	/**
 	 * Test processing and validating a monthly booking request.
 	 */
@@ -347,6 +514,7 @@ public class TestParkingSpotBookingService {
 		assertEquals(customer.getSavedLicensePlate(),
 				resp.getCustomer().getSavedLicensePlate());
 		verify(bookingRepository, times(1)).save(resp);
+		verify(occupancyIndex, times(1)).bookingSaved(resp);
 
 		// valid patch request
 		var ps2 = new ParkingSpot('B', 36);
@@ -369,6 +537,114 @@ public class TestParkingSpotBookingService {
 		assertNotNull(resp);
 		assertEquals("ABCD", resp.getLicensePlate());
 		verify(bookingRepository, times(1)).delete(resp);
+		verify(occupancyIndex, times(1)).bookingRemoved(resp);
+	}
+
+	/**
+	 * Test holding a booking until its payment completes.
+	 */
+	@Test
+	public void testHoldBooking() {
+		setupMocks();
+		lenient().when(bookingRepository.save(any(ParkingSpotBooking.class)))
+				.thenAnswer((InvocationOnMock invocation) -> invocation
+						.getArgument(0));
+
+		var paid = service.holdBooking(ps.newBooking(), null, "ABCD");
+		assertEquals(BookingStatus.REQUESTED, paid.getBookingStatus());
+		assertNotNull(paid.getConfirmationNumber());
+		verify(occupancyIndex, times(1)).bookingSaved(paid);
+		lenient()
+				.when(bookingRepository
+						.findParkingSpotBookingByUuid(paid.getUuid()))
+				.thenAnswer((InvocationOnMock invocation) -> paid);
+
+		// paid bookings are confirmed
+		service.completePayment(paid.getUuid(), true);
+		assertEquals(BookingStatus.CONFIRMED, paid.getBookingStatus());
+		verify(bookingRepository, times(2)).save(paid);
+
+		// rejected bookings free their spot
+		var rejected = service.holdBooking(ps.newBooking(), null, "ABCD");
+		lenient()
+				.when(bookingRepository
+						.findParkingSpotBookingByUuid(rejected.getUuid()))
+				.thenAnswer((InvocationOnMock invocation) -> rejected);
+		service.completePayment(rejected.getUuid(), false);
+		verify(bookingRepository, times(1)).delete(rejected);
+		verify(occupancyIndex, times(1)).bookingRemoved(rejected);
+	}
+
+	/**
+	 * Test settling the held bookings left without a pending payment.
+	 */
+	@Test
+	public void testSettleHeldBookings() {
+		setupMocks();
+		lenient().when(bookingRepository.save(any(ParkingSpotBooking.class)))
+				.thenAnswer((InvocationOnMock invocation) -> invocation
+						.getArgument(0));
+
+		var pending = service.holdBooking(ps.newBooking(), null, "ABCD");
+		var charged = service.holdBooking(ps.newBooking(), null, "ABCD");
+		var lost = service.holdBooking(ps.newBooking(), null, "ABCD");
+		for (var booking : Arrays.asList(pending, charged, lost)) {
+			lenient()
+					.when(bookingRepository
+							.findParkingSpotBookingByUuid(booking.getUuid()))
+					.thenAnswer((InvocationOnMock invocation) -> booking);
+		}
+		lenient().when(bookingRepository.getHeldBookingsBefore(any()))
+				.thenAnswer((InvocationOnMock invocation) -> Arrays
+						.asList(pending, charged, lost));
+		lenient().when(paymentPipeline.isPending(pending.getUuid()))
+				.thenReturn(true);
+		lenient().when(paymentService.isCharged(charged.getUuid().toString()))
+				.thenReturn(true);
+
+		service.settleHeldBookings();
+		assertEquals(BookingStatus.REQUESTED, pending.getBookingStatus());
+		assertEquals(BookingStatus.CONFIRMED, charged.getBookingStatus());
+		verify(bookingRepository, times(1)).delete(lost);
+		verify(bookingRepository, times(0)).delete(pending);
+		verify(occupancyIndex, times(1)).bookingRemoved(lost);
+	}
+
+	/**
+	 * Test giving a spot to a monthly booking when saving it.
+	 */
+	@Test
+	public void testSaveMonthlyBooking() {
+		setupMocks();
+		lenient().when(bookingRepository.save(any(ParkingSpotBooking.class)))
+				.thenAnswer((InvocationOnMock invocation) -> invocation
+						.getArgument(0));
+		lenient().when(spotRepository.lockParkingSpotById(RESERVED_PS_ID))
+				.thenAnswer((InvocationOnMock invocation) -> psReserved);
+		lenient().when(spotRepository.lockParkingSpotById(MY_PS_ID))
+				.thenAnswer((InvocationOnMock invocation) -> ps);
+		lenient()
+				.when(spotRepository.queryUnbookedCount(null,
+						Arrays.asList(ParkingSpotStatus.RESERVED), null))
+				.thenAnswer((InvocationOnMock invocation) -> 100);
+
+		// spots of the pool that are not reserved are skipped
+		lenient().when(monthlyAllocator.allocate()).thenReturn(MY_PS_ID,
+				RESERVED_PS_ID, null);
+		var booking = service.processMonthlyBooking(new Date(),
+				MY_VEHICLE_TYPE);
+		var resp = service.saveBooking(booking, null, "ABCD");
+		assertEquals(RESERVED_PS_ID, resp.getParkingSpot().getId());
+		assertEquals(BookingStatus.CONFIRMED, resp.getBookingStatus());
+		verify(monthlyAllocator, times(1)).release(MY_PS_ID, false);
+		verify(monthlyAllocator, times(1)).release(RESERVED_PS_ID, false);
+
+		// no free spot left
+		var other = service.processMonthlyBooking(new Date(),
+				MY_VEHICLE_TYPE);
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"No open monthly spots found.",
+				() -> service.saveBooking(other, null, "ABCD"));
 	}
 
 }
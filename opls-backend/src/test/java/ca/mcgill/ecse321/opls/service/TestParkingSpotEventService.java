@@ -0,0 +1,274 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+
+/**
+ * Test the ParkingSpotEventService class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestParkingSpotEventService {
+
+	@Mock
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Mock
+	private BookingLifecycleScheduler lifecycleScheduler;
+
+	@InjectMocks
+	private ParkingSpotEventService service;
+
+	private List<ParkingSpotEventDto> snapshot;
+
+	/** Events received by the subscriber, as name and data. */
+	private List<Object[]> received;
+
+	/** Released to let the subscriber receive the next event. */
+	private CountDownLatch gate;
+
+	@BeforeEach
+	public void setupMocks() {
+		snapshot = Arrays.asList(spotState("A001", false),
+				spotState("A002", true));
+		received = Collections.synchronizedList(new ArrayList<>());
+		gate = new CountDownLatch(0);
+
+		lenient().when(occupancyIndex.snapshot())
+				.thenAnswer((InvocationOnMock invocation) -> snapshot);
+	}
+
+	private static ParkingSpotEventDto spotState(String id, boolean booked) {
+		return new ParkingSpotEventDto(id, id.charAt(0), VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN, booked);
+	}
+
+	private void receive(String name, Object data) throws IOException {
+		try {
+			gate.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		received.add(new Object[]{name, data});
+	}
+
+	private static void waitFor(BooleanSupplier condition)
+			throws InterruptedException {
+		for (int i = 0; i < 200 && !condition.getAsBoolean(); ++i) {
+			Thread.sleep(10);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	/**
+	 * Test receiving the snapshot and the following changes.
+	 */
+	@Test
+	public void testSubscribe() throws InterruptedException {
+		service.subscribe(this::receive);
+		waitFor(() -> received.size() == 1);
+		assertEquals(ParkingSpotEventService.SNAPSHOT_EVENT,
+				received.get(0)[0]);
+		assertEquals(snapshot, received.get(0)[1]);
+
+		var event = spotState("A001", true);
+		service.spotChanged(event);
+		waitFor(() -> received.size() == 2);
+		assertEquals(ParkingSpotEventService.SPOT_EVENT, received.get(1)[0]);
+		assertEquals(event, received.get(1)[1]);
+	}
+
+	/**
+	 * Test coalescing changes for a slow subscriber.
+	 */
+	@Test
+	public void testCoalesce() throws InterruptedException {
+		gate = new CountDownLatch(1);
+		service.subscribe(this::receive);
+
+		// wait for the snapshot to be sending
+		Thread.sleep(50);
+		service.spotChanged(spotState("A001", true));
+		service.spotChanged(spotState("A002", false));
+		var latest = spotState("A001", false);
+		service.spotChanged(latest);
+		gate.countDown();
+
+		waitFor(() -> received.size() == 3);
+		assertEquals(ParkingSpotEventService.SNAPSHOT_EVENT,
+				received.get(0)[0]);
+		assertEquals("A002", ((ParkingSpotEventDto) received.get(1)[1]).id);
+		assertEquals(latest, received.get(2)[1]);
+
+		Thread.sleep(50);
+		assertEquals(3, received.size());
+	}
+
+	/**
+	 * Test sending a new snapshot when the buffer of a subscriber overflows.
+	 */
+	@Test
+	public void testOverflow() throws InterruptedException {
+		ReflectionTestUtils.setField(service, "bufferSize", 2);
+		gate = new CountDownLatch(1);
+		service.subscribe(this::receive);
+
+		Thread.sleep(50);
+		service.spotChanged(spotState("A001", true));
+		service.spotChanged(spotState("A002", false));
+		service.spotChanged(spotState("A003", false));
+		gate.countDown();
+
+		waitFor(() -> received.size() == 2);
+		assertEquals(ParkingSpotEventService.SNAPSHOT_EVENT,
+				received.get(0)[0]);
+		assertEquals(ParkingSpotEventService.SNAPSHOT_EVENT,
+				received.get(1)[0]);
+
+		// resets of the index also send a new snapshot
+		service.reset();
+		waitFor(() -> received.size() == 3);
+		assertEquals(ParkingSpotEventService.SNAPSHOT_EVENT,
+				received.get(2)[0]);
+	}
+
+	/**
+	 * Test dropping disconnected subscribers.
+	 */
+	@Test
+	public void testDisconnect() throws InterruptedException {
+		var subscription = service.subscribe(this::receive);
+		service.subscribe((name, data) -> {
+			throw new IOException("disconnected");
+		});
+		waitFor(() -> service.getSubscriptionCount() == 1);
+
+		subscription.close();
+		assertEquals(0, service.getSubscriptionCount());
+		service.spotChanged(spotState("A001", true));
+		Thread.sleep(50);
+		assertEquals(1, received.size());
+	}
+
+	/**
+	 * Test disconnecting a subscriber blocked in a send.
+	 */
+	@Test
+	public void testStalled() throws InterruptedException {
+		ReflectionTestUtils.setField(service, "sendTimeout", 50L);
+		gate = new CountDownLatch(1);
+		var aborted = new CountDownLatch(1);
+		service.subscribe(new ParkingSpotEventService.Sink() {
+			@Override
+			public void send(String name, Object data) throws IOException {
+				receive(name, data);
+			}
+
+			@Override
+			public void abort() {
+				aborted.countDown();
+			}
+		});
+
+		// not stalled yet
+		service.evictStalled();
+		assertEquals(1, service.getSubscriptionCount());
+
+		Thread.sleep(100);
+		service.evictStalled();
+		assertEquals(0, service.getSubscriptionCount());
+		assertTrue(aborted.await(1, TimeUnit.SECONDS));
+
+		// the blocked send was interrupted instead of completing
+		Thread.sleep(50);
+		assertEquals(0, received.size());
+	}
+
+	/**
+	 * Test evicting a subscriber of which the abort waits for the blocked
+	 * send, without blocking the caller.
+	 */
+	@Test
+	public void testStalledAbortBlocks() throws InterruptedException {
+		ReflectionTestUtils.setField(service, "sendTimeout", 50L);
+		var release = new CountDownLatch(1);
+		var aborted = new CountDownLatch(1);
+		service.subscribe(new ParkingSpotEventService.Sink() {
+			@Override
+			public synchronized void send(String name, Object data) {
+				// like a socket write, ignores interrupts
+				while (release.getCount() > 0) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// keep blocking
+					}
+				}
+			}
+
+			@Override
+			public synchronized void abort() {
+				aborted.countDown();
+			}
+		});
+
+		Thread.sleep(100);
+		long start = System.currentTimeMillis();
+		service.evictStalled();
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(0, service.getSubscriptionCount());
+		assertEquals(1, aborted.getCount());
+
+		// the abort completes once the send returns
+		release.countDown();
+		assertTrue(aborted.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test publishing the transitions of the booking lifecycle.
+	 */
+	@Test
+	public void testLifecycle() throws InterruptedException {
+		service.registerListener();
+		verify(occupancyIndex, times(1)).addListener(service);
+		verify(lifecycleScheduler, times(1)).addListener(service);
+
+		// no subscribers to publish to
+		service.bookingsCompleted(Arrays.asList(1));
+		verify(occupancyIndex, never()).advance();
+
+		service.subscribe(this::receive);
+		service.bookingsStarted(Arrays.asList(2));
+		service.bookingsCompleted(Arrays.asList(1));
+		verify(occupancyIndex, times(2)).advance();
+
+		service.shutdown();
+		verify(lifecycleScheduler, times(1)).removeListener(service);
+	}
+
+}
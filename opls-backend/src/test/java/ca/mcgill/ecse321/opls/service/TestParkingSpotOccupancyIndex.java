@@ -0,0 +1,442 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotEventDto;
+import ca.mcgill.ecse321.opls.model.ParkingSpot;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotBooking;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
+import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotBookingRepository;
+import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+
+/**
+ * Test the ParkingSpotOccupancyIndex class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestParkingSpotOccupancyIndex {
+
+	@Mock
+	private ParkingSpotRepository spotRepository;
+
+	@Mock
+	private ParkingSpotBookingRepository bookingRepository;
+
+	@InjectMocks
+	private ParkingSpotOccupancyIndex index;
+
+	private ParkingSpot psRegOpen;
+	private ParkingSpot psLgOpen;
+	private ParkingSpot psRegReserved;
+	private ParkingSpot psRegClosed;
+
+	private List<ParkingSpotBooking> bookings;
+
+	@BeforeEach
+	public void setupMocks() {
+		psRegOpen = new ParkingSpot('A', 15, VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN);
+		psLgOpen = new ParkingSpot('A', 16, VehicleType.LARGE,
+				ParkingSpotStatus.OPEN);
+		psRegReserved = new ParkingSpot('B', 15, VehicleType.REGULAR,
+				ParkingSpotStatus.RESERVED);
+		psRegClosed = new ParkingSpot('C', 15, VehicleType.REGULAR,
+				ParkingSpotStatus.CLOSED);
+		bookings = new ArrayList<>();
+
+		lenient().when(spotRepository.findAll())
+				.thenAnswer((InvocationOnMock invocation) -> Arrays.asList(
+						psRegOpen, psLgOpen, psRegReserved, psRegClosed));
+		lenient().when(bookingRepository.getCurrentAndUpcomingBookings())
+				.thenAnswer((InvocationOnMock invocation) -> bookings);
+	}
+
+	private static ParkingSpotBooking newBooking(ParkingSpot spot, int id,
+			long startOffsetMs, long endOffsetMs) {
+		var now = new Date().getTime();
+		var booking = spot.newBooking();
+		booking.overrideId(id);
+		booking.setDateRange(new Date(now + startOffsetMs),
+				new Date(now + endOffsetMs));
+		return booking;
+	}
+
+	/**
+	 * Test querying the index by attributes.
+	 */
+	@Test
+	public void testQuery() {
+		assertEquals(4, index.count(null, null, null, false));
+		assertEquals(
+				Arrays.asList(psRegOpen.getId(), psLgOpen.getId()),
+				index.query(new char[]{'A'}, null, null, false));
+		assertEquals(Arrays.asList(psRegOpen.getId(), psLgOpen.getId()),
+				index.query(null, Arrays.asList(ParkingSpotStatus.OPEN), null,
+						false));
+		assertEquals(Arrays.asList(psLgOpen.getId()),
+				index.query(new char[]{'a', 'B'}, null,
+						Arrays.asList(VehicleType.LARGE), false));
+		assertEquals(2, index.count(new char[]{'B', 'C'}, null,
+				Arrays.asList(VehicleType.REGULAR), false));
+		assertEquals(0, index.count(new char[]{'D'}, null, null, false));
+
+		// ordered pages of results
+		assertEquals(Arrays.asList(psRegOpen.getId(), psLgOpen.getId()),
+				index.query(null, null, null, false, null, null, null, 2));
+		assertEquals(Arrays.asList(psRegReserved.getId(), psRegClosed.getId()),
+				index.query(null, null, null, false, null, null,
+						psLgOpen.getId(), 2));
+		assertEquals(Arrays.asList(psRegReserved.getId(), psRegClosed.getId()),
+				index.query(null, null, Arrays.asList(VehicleType.REGULAR),
+						false, null, null, "A999", 5));
+		assertEquals(0, index.query(null, null, null, false, null, null,
+				psRegClosed.getId(), 2).size());
+
+		// index is only loaded once
+		verify(spotRepository, times(1)).findAll();
+	}
+
+	/**
+	 * Test keeping the index current with parking spot writes.
+	 */
+	@Test
+	public void testSpotWrites() {
+		assertEquals(4, index.count(null, null, null, true));
+
+		// add a spot
+		var ps = new ParkingSpot('D', 1, VehicleType.LARGE,
+				ParkingSpotStatus.OPEN);
+		index.spotSaved(ps);
+		assertEquals(Arrays.asList(ps.getId()),
+				index.query(new char[]{'D'}, null, null, true));
+
+		// modify the spot
+		ps.setParkingSpotStatus(ParkingSpotStatus.CLOSED);
+		index.spotSaved(ps);
+		assertEquals(0, index.count(new char[]{'D'},
+				Arrays.asList(ParkingSpotStatus.OPEN), null, true));
+		assertEquals(1, index.count(new char[]{'D'},
+				Arrays.asList(ParkingSpotStatus.CLOSED), null, true));
+
+		// remove spots
+		index.spotRemoved(ps.getId());
+		index.spotRemoved(psRegOpen.getId());
+		assertEquals(0, index.count(new char[]{'D'}, null, null, false));
+		assertEquals(Arrays.asList(psLgOpen.getId()),
+				index.query(new char[]{'A'}, null, null, false));
+
+		// reload after invalidating
+		index.invalidate();
+		assertEquals(4, index.count(null, null, null, false));
+		verify(spotRepository, times(2)).findAll();
+	}
+
+	/**
+	 * Test loading the index without blocking the writes.
+	 */
+	@Test
+	public void testLoad() throws InterruptedException {
+		var loading = new CountDownLatch(1);
+		var gate = new CountDownLatch(1);
+		lenient().when(spotRepository.findAll())
+				.thenAnswer((InvocationOnMock invocation) -> {
+					loading.countDown();
+					gate.await(5, TimeUnit.SECONDS);
+					return Arrays.asList(psRegOpen, psLgOpen, psRegReserved,
+							psRegClosed);
+				});
+
+		var counts = new ArrayList<Integer>();
+		var queries = new ArrayList<Thread>();
+		for (int i = 0; i < 2; ++i) {
+			var query = new Thread(() -> {
+				int count = index.count(null, null, null, false);
+				synchronized (counts) {
+					counts.add(count);
+				}
+			});
+			query.start();
+			queries.add(query);
+		}
+		assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+		// writes during the load are applied to the loaded index
+		var ps = new ParkingSpot('D', 1, VehicleType.LARGE,
+				ParkingSpotStatus.OPEN);
+		long start = System.currentTimeMillis();
+		index.spotSaved(ps);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		gate.countDown();
+		for (var query : queries) {
+			query.join(5000);
+		}
+
+		assertEquals(Arrays.asList(5, 5), counts);
+		assertEquals(Arrays.asList(ps.getId()),
+				index.query(new char[]{'D'}, null, null, false));
+		verify(spotRepository, times(1)).findAll();
+	}
+
+	/**
+	 * Test keeping the index current with bulk parking spot writes.
+	 */
+	@Test
+	public void testBulkSpotWrites() {
+		assertEquals(2, index.count(new char[]{'A'}, null, null, false));
+
+		var ps1 = new ParkingSpot('A', 17, VehicleType.LARGE,
+				ParkingSpotStatus.OPEN);
+		var ps2 = new ParkingSpot('A', 18, VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN);
+		index.spotsSaved(Arrays.asList(ps1, ps2));
+		assertEquals(4, index.count(new char[]{'A'},
+				Arrays.asList(ParkingSpotStatus.OPEN), null, false));
+
+		// close the large spots of floor A
+		index.floorStatusChanged('A', ParkingSpotStatus.CLOSED,
+				Arrays.asList(VehicleType.LARGE));
+		assertEquals(Arrays.asList(psLgOpen.getId(), ps1.getId()),
+				index.query(null, Arrays.asList(ParkingSpotStatus.CLOSED),
+						Arrays.asList(VehicleType.LARGE), false));
+
+		// close the whole floor
+		index.floorStatusChanged('A', ParkingSpotStatus.CLOSED, null);
+		assertEquals(0, index.count(new char[]{'A'},
+				Arrays.asList(ParkingSpotStatus.OPEN), null, false));
+		assertEquals(4, index.count(new char[]{'A'},
+				Arrays.asList(ParkingSpotStatus.CLOSED), null, false));
+		assertEquals(1, index.count(new char[]{'C'},
+				Arrays.asList(ParkingSpotStatus.CLOSED), null, false));
+	}
+
+	/**
+	 * Test tracking the booked state of the spots.
+	 */
+	@Test
+	public void testBookings() {
+		final long minute = TimeUnit.MINUTES.toMillis(1);
+
+		// active booking loaded from the database
+		bookings.add(newBooking(psRegOpen, 1, -minute, 30 * minute));
+		assertFalse(index.query(null, null, null, true)
+				.contains(psRegOpen.getId()));
+		assertEquals(3, index.count(null, null, null, true));
+
+		// new active booking
+		var booking = newBooking(psLgOpen, 2, -minute, 30 * minute);
+		index.bookingSaved(booking);
+		assertEquals(2, index.count(null, null, null, true));
+
+		// move the booking to another spot
+		booking.setParkingSpot(psRegClosed);
+		index.bookingSaved(booking);
+		assertTrue(index.query(null, null, null, true)
+				.contains(psLgOpen.getId()));
+		assertFalse(index.query(null, null, null, true)
+				.contains(psRegClosed.getId()));
+
+		// delete the booking
+		index.bookingRemoved(booking);
+		assertEquals(3, index.count(null, null, null, true));
+
+		// upcoming and past bookings do not count
+		index.bookingSaved(newBooking(psLgOpen, 3, 30 * minute, 60 * minute));
+		index.bookingSaved(newBooking(psRegReserved, 4, -60 * minute,
+				-30 * minute));
+		assertEquals(3, index.count(null, null, null, true));
+	}
+
+	/**
+	 * Test a booking becoming active and ending while indexed.
+	 */
+	@Test
+	public void testBookingTransitions() throws InterruptedException {
+		assertEquals(4, index.count(null, null, null, true));
+
+		index.bookingSaved(newBooking(psRegOpen, 1, 200, 400));
+		assertEquals(4, index.count(null, null, null, true));
+
+		Thread.sleep(300);
+		assertEquals(3, index.count(null, null, null, true));
+
+		Thread.sleep(250);
+		assertEquals(4, index.count(null, null, null, true));
+
+		// advancing does not load the index
+		index.invalidate();
+		index.advance();
+		verify(spotRepository, times(1)).findAll();
+	}
+
+	/**
+	 * Test the availability counters.
+	 */
+	@Test
+	public void testAvailability() {
+		final long minute = TimeUnit.MINUTES.toMillis(1);
+
+		var counters = index.availability();
+		assertEquals(4, counters.size());
+		var first = counters.get(0);
+		assertEquals('A', first.floor);
+		assertEquals(VehicleType.REGULAR, first.vehicleType);
+		assertEquals(ParkingSpotStatus.OPEN, first.parkingSpotStatus);
+		assertEquals(1, first.total);
+		assertEquals(1, first.available);
+
+		// booking the spot makes it unavailable
+		var booking = newBooking(psRegOpen, 1, -minute, 30 * minute);
+		index.bookingSaved(booking);
+		first = index.availability().get(0);
+		assertEquals(1, first.total);
+		assertEquals(0, first.available);
+
+		// a second spot in the same group
+		var ps = new ParkingSpot('A', 17, VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN);
+		index.spotSaved(ps);
+		first = index.availability().get(0);
+		assertEquals(2, first.total);
+		assertEquals(1, first.available);
+
+		// changing the status moves the booked spot to another group
+		psRegOpen.setParkingSpotStatus(ParkingSpotStatus.CLOSED);
+		index.spotSaved(psRegOpen);
+		counters = index.availability();
+		assertEquals(5, counters.size());
+		assertEquals(ParkingSpotStatus.CLOSED, counters.get(1).parkingSpotStatus);
+		assertEquals(1, counters.get(1).total);
+		assertEquals(0, counters.get(1).available);
+		assertEquals(1, counters.get(0).available);
+
+		// deleting the booking and spots
+		index.bookingRemoved(booking);
+		assertEquals(1, index.availability().get(1).available);
+		index.spotRemoved(psRegOpen.getId());
+		index.spotRemoved(ps.getId());
+		assertEquals(3, index.availability().size());
+
+		// reconcile with the database
+		index.reconcile();
+		assertEquals(4, index.availability().size());
+		verify(spotRepository, times(2)).findAll();
+	}
+
+	/**
+	 * Test notifying listeners of changes to the spots.
+	 */
+	@Test
+	public void testListeners() {
+		final long minute = TimeUnit.MINUTES.toMillis(1);
+		var events = new ArrayList<ParkingSpotEventDto>();
+		var resets = new ArrayList<Boolean>();
+		index.addListener(new ParkingSpotOccupancyIndex.Listener() {
+			@Override
+			public void spotChanged(ParkingSpotEventDto event) {
+				events.add(event);
+			}
+
+			@Override
+			public void reset() {
+				resets.add(true);
+			}
+		});
+
+		// loading does not notify
+		assertEquals(4, index.snapshot().size());
+		assertEquals(0, events.size());
+
+		// booking a spot
+		var booking = newBooking(psRegOpen, 1, -minute, 30 * minute);
+		index.bookingSaved(booking);
+		assertEquals(1, events.size());
+		assertEquals(psRegOpen.getId(), events.get(0).id);
+		assertTrue(events.get(0).booked);
+
+		// saving an unchanged spot does not notify
+		index.spotSaved(psRegOpen);
+		assertEquals(1, events.size());
+		psRegOpen.setParkingSpotStatus(ParkingSpotStatus.CLOSED);
+		index.spotSaved(psRegOpen);
+		assertEquals(2, events.size());
+		assertEquals(ParkingSpotStatus.CLOSED,
+				events.get(1).parkingSpotStatus);
+
+		// deleting a spot
+		index.spotRemoved(psLgOpen.getId());
+		assertEquals(3, events.size());
+		assertEquals(psLgOpen.getId(), events.get(2).id);
+		assertTrue(events.get(2).deleted);
+
+		// reconciling notifies of the differences with the database
+		bookings.add(booking);
+		psRegClosed.setParkingSpotStatus(ParkingSpotStatus.OPEN);
+		index.reconcile();
+		assertEquals(5, events.size());
+		assertEquals(psLgOpen.getId(), events.get(3).id);
+		assertEquals(psRegClosed.getId(), events.get(4).id);
+		assertEquals(ParkingSpotStatus.OPEN, events.get(4).parkingSpotStatus);
+
+		// invalidating resets listeners
+		index.invalidate();
+		assertEquals(1, resets.size());
+	}
+
+	/**
+	 * Test querying spots free during a time window.
+	 */
+	@Test
+	public void testWindow() {
+		final long hour = TimeUnit.HOURS.toMillis(1);
+		var now = new Date().getTime();
+
+		// psRegOpen is booked from 1h to 2h, psLgOpen from 3h to 5h
+		bookings.add(newBooking(psRegOpen, 1, hour, 2 * hour));
+		bookings.add(newBooking(psLgOpen, 2, 3 * hour, 5 * hour));
+		assertEquals(4, index.count(null, null, null, true));
+
+		assertEquals(Arrays.asList(psLgOpen.getId()),
+				index.query(new char[]{'A'}, null, null, true,
+						new Date(now + 90 * 60000), new Date(now + 150 * 60000),
+						null, 10));
+		assertEquals(2, index.count(new char[]{'A'}, null, null, true,
+				new Date(now + 2 * hour + 60000), new Date(now + 3 * hour)));
+		assertEquals(0, index.count(new char[]{'A'}, null, null, true,
+				new Date(now), new Date(now + 6 * hour)));
+
+		// the window is ignored when not searching for unbooked spots
+		assertEquals(2, index.count(new char[]{'A'}, null, null, false,
+				new Date(now), new Date(now + 6 * hour)));
+
+		// a new booking fills the gap
+		index.bookingSaved(newBooking(psRegOpen, 3, 2 * hour + 60000,
+				3 * hour - 60000));
+		assertEquals(1, index.count(new char[]{'A'}, null, null, true,
+				new Date(now + 2 * hour + 60000), new Date(now + 3 * hour)));
+		assertEquals(new HashSet<>(Arrays.asList(psRegOpen.getId())),
+				index.bookedDuring(new Date(now + 2 * hour + 60000),
+						new Date(now + 3 * hour)));
+	}
+
+}
@@ -0,0 +1,92 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static ca.mcgill.ecse321.opls.TestUtils.assertThrowsApiException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+
+/**
+ * Test the ParkingSpotReservationEngine class.
+ */
+public class TestParkingSpotReservationEngine {
+
+	/**
+	 * Test claiming and releasing parking spots.
+	 */
+	@Test
+	public void testClaim() {
+		var engine = new ParkingSpotReservationEngine();
+
+		var claim = engine.claim("A001");
+		assertEquals("A001", claim.getSpotId());
+		assertTrue(engine.isClaimed("A001"));
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spot already booked.", () -> engine.claim("A001"));
+
+		// other spots are independent
+		engine.claim("A002");
+		assertEquals(2, engine.getClaimCount());
+
+		// releasing twice does not release a newer claim
+		claim.close();
+		assertFalse(engine.isClaimed("A001"));
+		var newClaim = engine.claim("A001");
+		claim.close();
+		assertTrue(engine.isClaimed("A001"));
+		newClaim.close();
+		assertFalse(engine.isClaimed("A001"));
+	}
+
+	/**
+	 * Test that concurrent requests for a spot claim it only once.
+	 */
+	@Test
+	public void testConcurrentClaims() throws Exception {
+		var engine = new ParkingSpotReservationEngine();
+		int threads = 8;
+		int spots = 200;
+		var executor = Executors.newFixedThreadPool(threads);
+		var start = new CountDownLatch(1);
+
+		try {
+			var tasks = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < threads; ++t) {
+				tasks.add(executor.submit((Callable<Integer>) () -> {
+					start.await();
+					int claimed = 0;
+					for (int i = 0; i < spots; ++i) {
+						try {
+							engine.claim("A" + i);
+							++claimed;
+						} catch (OplsApiException e) {
+						}
+					}
+					return claimed;
+				}));
+			}
+			start.countDown();
+
+			int total = 0;
+			for (var task : tasks) {
+				total += task.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(spots, total);
+			assertEquals(spots, engine.getClaimCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
@@ -9,7 +9,10 @@ import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.stream.Stream;
 
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotDto;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,12 +24,14 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 
+import ca.mcgill.ecse321.opls.dto.spot.FloorLayoutRequestDto.SpotRange;
 import ca.mcgill.ecse321.opls.dto.spot.ParkingSpotQueryRequestDto;
 import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.ParkingSpotStatus;
 import ca.mcgill.ecse321.opls.model.ParkingSpot.VehicleType;
 import ca.mcgill.ecse321.opls.repository.ParkingSpotRepository;
+import jakarta.persistence.EntityManager;
 
 /**
  * Test the ParkingSpotService class.
@@ -37,6 +42,15 @@ public class TestParkingSpotService {
 	@Mock
 	private ParkingSpotRepository spotRepository;
 
+	@Mock
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@Mock
+	private ResourceVersionService resourceVersionService;
+
+	@Mock
+	private EntityManager entityManager;
+
 	@InjectMocks
 	private ParkingSpotService service;
 
@@ -105,13 +119,33 @@ public class TestParkingSpotService {
 		
 		var unbooked = Arrays.asList(ps1, ps2);
 		var all = Arrays.asList(ps1, ps2, ps3);
+		var unbookedIds = Arrays.asList(ps1.getId(), ps2.getId());
+		var allIds = Arrays.asList(ps1.getId(), ps2.getId(), ps3.getId());
 		
 		lenient()
-			.when(spotRepository.queryUnbooked(null, null, null))
+			.when(occupancyIndex.query(null, null, null, true, null, null,
+					null, Integer.MAX_VALUE))
+			.thenAnswer((InvocationOnMock invocation) -> unbookedIds);
+		lenient()
+			.when(occupancyIndex.query(null, null, null, false, null, null,
+					null, Integer.MAX_VALUE))
+			.thenAnswer((InvocationOnMock invocation) -> allIds);
+		lenient()
+			.when(spotRepository.findAllById(unbookedIds))
 			.thenAnswer((InvocationOnMock invocation) -> unbooked);
 		lenient()
-			.when(spotRepository.query(null, null, null))
+			.when(spotRepository.findAllById(allIds))
 			.thenAnswer((InvocationOnMock invocation) -> all);
+		lenient()
+			.when(occupancyIndex.query(null, null, null, false, null, null,
+					ps1.getId(), 1))
+			.thenAnswer((InvocationOnMock invocation) -> Arrays.asList(ps2.getId()));
+		lenient()
+			.when(spotRepository.findAllById(Arrays.asList(ps2.getId())))
+			.thenAnswer((InvocationOnMock invocation) -> Arrays.asList(ps2));
+		lenient()
+			.when(occupancyIndex.count(null, null, null, true, null, null))
+			.thenAnswer((InvocationOnMock invocation) -> unbooked.size());
 		
 		// execute query for unbooked spots
 		var req = new ParkingSpotQueryRequestDto();
@@ -135,6 +169,57 @@ public class TestParkingSpotService {
 			assertTrue(all.contains(ps));
 		}
 		assertEquals(all.size(), i);
+
+		// execute query for a page of spots
+		req.after = ps1.getId();
+		req.limit = 1;
+		response = service.query(req);
+		assertEquals(Arrays.asList(ps2), response);
+		req.after = null;
+		req.limit = null;
+		
+		// execute count query for unbooked spots
+		req.unbooked = true;
+		assertEquals(unbooked.size(), service.queryCount(req));
+		verify(spotRepository, times(0)).queryUnbookedCount(null, null, null);
+
+		// invalid time windows
+		req.startDate = new Date();
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Time window requires a start and end date.",
+				() -> service.query(req));
+		req.endDate = req.startDate;
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Time window must start before it ends.",
+				() -> service.queryCount(req));
+	}
+
+	/**
+	 * Test streaming queried parking spots.
+	 */
+	@Test
+	public void testStreamQuery() {
+		var ps1 = new ParkingSpot('A', 35);
+		var ps2 = new ParkingSpot('B', 35);
+		var ps3 = new ParkingSpot('C', 35);
+
+		lenient()
+			.when(spotRepository.stream(null, null, null, true, null))
+			.thenAnswer((InvocationOnMock invocation) -> Stream.of(ps1, ps2, ps3));
+
+		// stream all spots
+		var req = new ParkingSpotQueryRequestDto();
+		var streamed = new ArrayList<ParkingSpot>();
+		assertEquals(3, service.streamQuery(req, streamed::add));
+		assertEquals(Arrays.asList(ps1, ps2, ps3), streamed);
+		verify(entityManager, times(1)).detach(ps3);
+
+		// stream with a limit
+		req.limit = 2;
+		streamed.clear();
+		assertEquals(2, service.streamQuery(req, streamed::add));
+		assertEquals(Arrays.asList(ps1, ps2), streamed);
+		verify(entityManager, times(1)).detach(ps3);
 	}
 	/**
 	 * Test updating a parking spot.
@@ -153,6 +238,123 @@ public class TestParkingSpotService {
 		assertEquals(spot.getMessage(),res.getMessage());
 		assertEquals(spot.getVehicleType(),res.getVehicleType());
 	}
+
+	/**
+	 * Test modifying some fields of a parking spot in place.
+	 */
+	@Test
+	public void testPatchParkingSpot() {
+		var res = service.patchParkingSpot(MY_PS_ID, 0L, null,
+				ParkingSpotStatus.CLOSED, "maintenance");
+		assertEquals(ParkingSpotStatus.CLOSED, res.getParkingSpotStatus());
+		assertEquals(MY_VEHICLE_TYPE, res.getVehicleType());
+		assertEquals("maintenance", res.getMessage());
+		verify(entityManager, times(1)).flush();
+		verify(occupancyIndex, times(1)).spotSaved(res);
+		verify(spotRepository, times(0)).delete(any(ParkingSpot.class));
+
+		// empty message removes it, unchanged fields are not written
+		res = service.patchParkingSpot(MY_PS_ID, null, null, null, "");
+		assertEquals(null, res.getMessage());
+		service.patchParkingSpot(MY_PS_ID, null, MY_VEHICLE_TYPE, null, null);
+		verify(entityManager, times(2)).flush();
+
+		assertThrowsApiException(HttpStatus.CONFLICT,
+				"Parking spot was modified by another request.",
+				() -> service.patchParkingSpot(MY_PS_ID, 3L, null,
+						ParkingSpotStatus.OPEN, null));
+		assertThrowsApiException(HttpStatus.NOT_FOUND,
+				"Parking spot not found.",
+				() -> service.patchParkingSpot(NOT_FOUND_PS_ID, null, null,
+						ParkingSpotStatus.OPEN, null));
+	}
+	/**
+	 * Test fetching several parking spots in one query.
+	 */
+	@Test
+	public void testGetParkingSpots() {
+		var ps1 = new ParkingSpot('A', 35);
+		var ps2 = new ParkingSpot('B', 1);
+		lenient().when(spotRepository.findAllById(any()))
+				.thenAnswer((InvocationOnMock invocation) -> Arrays.asList(ps2, ps1));
+
+		// in order of request, without duplicates or missing spots
+		var spots = service.getParkingSpots(Arrays.asList(ps1.getId(),
+				NOT_FOUND_PS_ID, ps2.getId(), ps1.getId()));
+		assertEquals(Arrays.asList(ps1, ps2), spots);
+		verify(spotRepository, times(1)).findAllById(any());
+
+		// no query without ids
+		assertTrue(service.getParkingSpots(new ArrayList<>()).isEmpty());
+		verify(spotRepository, times(1)).findAllById(any());
+	}
+
+	/**
+	 * Test applying a layout to a floor.
+	 */
+	@Test
+	public void testApplyFloorLayout() {
+		var unchanged = new ParkingSpot('D', 0, VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN);
+		var changed = new ParkingSpot('D', 1, VehicleType.REGULAR,
+				ParkingSpotStatus.OPEN);
+		lenient().when(spotRepository.findParkingSpotsByFloor('D'))
+				.thenAnswer((InvocationOnMock invocation) -> Arrays
+						.asList(unchanged, changed));
+
+		var summary = service.applyFloorLayout("d", Arrays.asList(
+				new SpotRange(1, 9, VehicleType.LARGE, ParkingSpotStatus.OPEN),
+				new SpotRange(0, 0, VehicleType.REGULAR,
+						ParkingSpotStatus.OPEN)));
+		assertEquals('D', summary.floor);
+		assertEquals(8, summary.created);
+		assertEquals(1, summary.updated);
+		assertEquals(1, summary.unchanged);
+		assertEquals(VehicleType.LARGE, changed.getVehicleType());
+
+		// new spots are persisted without a select each
+		verify(entityManager, times(8)).persist(any(ParkingSpot.class));
+		verify(spotRepository, times(0)).save(any(ParkingSpot.class));
+		verify(occupancyIndex, times(1)).spotsSaved(any());
+
+		// invalid layouts
+		assertThrowsApiException(HttpStatus.BAD_REQUEST, "Invalid floor.",
+				() -> service.applyFloorLayout("DD", new ArrayList<>()));
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Range must start before it ends.",
+				() -> service.applyFloorLayout("D", Arrays.asList(
+						new SpotRange(5, 4, VehicleType.REGULAR,
+								ParkingSpotStatus.OPEN))));
+		assertThrowsApiException(HttpStatus.BAD_REQUEST,
+				"Ranges must not overlap.",
+				() -> service.applyFloorLayout("D", Arrays.asList(
+						new SpotRange(5, 10, VehicleType.REGULAR,
+								ParkingSpotStatus.OPEN),
+						new SpotRange(0, 5, VehicleType.REGULAR,
+								ParkingSpotStatus.OPEN))));
+	}
+
+	/**
+	 * Test changing the status of the spots on a floor.
+	 */
+	@Test
+	public void testSetFloorStatus() {
+		lenient().when(spotRepository.updateFloorStatus('C',
+				ParkingSpotStatus.CLOSED, null))
+				.thenAnswer((InvocationOnMock invocation) -> 90);
+		lenient().when(spotRepository.queryCount(any(), any(), any()))
+				.thenAnswer((InvocationOnMock invocation) -> 100);
+
+		var summary = service.setFloorStatus("c", ParkingSpotStatus.CLOSED,
+				null);
+		assertEquals('C', summary.floor);
+		assertEquals(0, summary.created);
+		assertEquals(90, summary.updated);
+		assertEquals(10, summary.unchanged);
+		verify(occupancyIndex, times(1)).floorStatusChanged('C',
+				ParkingSpotStatus.CLOSED, null);
+	}
+
 	/**
 	 * Test deleting a parking spot.
 	 */
@@ -0,0 +1,253 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static ca.mcgill.ecse321.opls.TestUtils.assertThrowsApiException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.service.PaymentPipeline.Payment;
+import ca.mcgill.ecse321.opls.service.PaymentPipeline.PaymentStatus;
+
+/**
+ * Test the PaymentPipeline class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestPaymentPipeline {
+
+	private static final String FLAKY_ACCOUNT = "1111222233334444";
+	private static final String DOWN_ACCOUNT = "5555666677778888";
+	private static final String SLOW_ACCOUNT = "9999000011112222";
+	private static final String HUNG_ACCOUNT = "3333444455556666";
+
+	@Mock
+	private PaymentService paymentService;
+
+	@InjectMocks
+	private PaymentPipeline pipeline;
+
+	/** Outcomes reported to the callers, by payment. */
+	private Map<UUID, Boolean> outcomes;
+
+	private AtomicInteger flakyAttempts;
+
+	private CountDownLatch gate;
+
+	@BeforeEach
+	public void setupMocks() throws TimeoutException {
+		outcomes = new ConcurrentHashMap<>();
+		flakyAttempts = new AtomicInteger();
+		gate = new CountDownLatch(0);
+
+		lenient()
+				.when(paymentService.attemptPayment(anyBoolean(), anyString(),
+						anyDouble(), anyString()))
+				.thenAnswer((InvocationOnMock invocation) -> {
+					String account = invocation.getArgument(1);
+					switch (account) {
+						case FLAKY_ACCOUNT :
+							if (flakyAttempts.incrementAndGet() < 3) {
+								throw new StubBankService.BankUnavailableException();
+							}
+							break;
+						case DOWN_ACCOUNT :
+							throw new TimeoutException();
+						case SLOW_ACCOUNT :
+							gate.await(5, TimeUnit.SECONDS);
+							break;
+						case HUNG_ACCOUNT :
+							try {
+								Thread.sleep(5000);
+							} catch (InterruptedException e) {
+								throw new StubBankService.BankUnavailableException();
+							}
+							break;
+						default :
+							if (account.length() != 16) {
+								throw new OplsApiException(
+										HttpStatus.BAD_REQUEST,
+										"Rejected payment.");
+							}
+					}
+					return invocation.getArgument(2);
+				});
+
+		ReflectionTestUtils.setField(pipeline, "workerCount", 1);
+		ReflectionTestUtils.setField(pipeline, "queueCapacity", 2);
+		ReflectionTestUtils.setField(pipeline, "retryDelay", 5L);
+		pipeline.start();
+	}
+
+	@AfterEach
+	public void shutdown() {
+		pipeline.shutdown();
+	}
+
+	private Payment submit(String account) {
+		var reference = UUID.randomUUID();
+		return pipeline.submit(reference, false, account, 10.0,
+				paid -> outcomes.put(reference, paid));
+	}
+
+	private Payment await(Payment payment) throws InterruptedException {
+		for (int i = 0; i < 200
+				&& payment.getStatus() == PaymentStatus.PENDING; ++i) {
+			Thread.sleep(10);
+		}
+		return payment;
+	}
+
+	/**
+	 * Test paid and rejected payments.
+	 */
+	@Test
+	public void testSubmit() throws InterruptedException {
+		var payment = await(submit("1234123412341234"));
+		assertEquals(PaymentStatus.PAID, payment.getStatus());
+		assertEquals(1, payment.getAttempts());
+		assertNull(payment.getError());
+		assertEquals(true, outcomes.get(payment.getReference()));
+		assertEquals(payment, pipeline.getPayment(payment.getReference()));
+
+		// declined cards are not retried
+		payment = await(submit("123412341234"));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals(1, payment.getAttempts());
+		assertEquals("Rejected payment.", payment.getError());
+		assertEquals(false, outcomes.get(payment.getReference()));
+
+		assertThrowsApiException(HttpStatus.NOT_FOUND, "Payment not found.",
+				() -> pipeline.getPayment(UUID.randomUUID()));
+	}
+
+	/**
+	 * Test refunding a charge of which the outcome cannot be applied.
+	 */
+	@Test
+	public void testCompleteFails() throws InterruptedException {
+		var reference = UUID.randomUUID();
+		var payment = await(pipeline.submit(reference, false,
+				"1234123412341234", 10.0, paid -> {
+					throw new IllegalStateException("booking removed");
+				}));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals("Payment could not be applied.", payment.getError());
+		verify(paymentService).refundPayment(reference.toString());
+
+		// rejected payments have nothing to refund
+		payment = await(pipeline.submit(UUID.randomUUID(), false,
+				"123412341234", 10.0, paid -> {
+					throw new IllegalStateException("booking removed");
+				}));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals("Rejected payment.", payment.getError());
+		verify(paymentService, times(1)).refundPayment(anyString());
+	}
+
+	/**
+	 * Test retrying the transient failures of the bank.
+	 */
+	@Test
+	public void testRetry() throws InterruptedException {
+		var payment = await(submit(FLAKY_ACCOUNT));
+		assertEquals(PaymentStatus.PAID, payment.getStatus());
+		assertEquals(3, payment.getAttempts());
+
+		payment = await(submit(DOWN_ACCOUNT));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals(3, payment.getAttempts());
+		assertEquals("Payment could not be processed.", payment.getError());
+		assertEquals(false, outcomes.get(payment.getReference()));
+	}
+
+	/**
+	 * Test rejecting payments when the queue is full.
+	 */
+	@Test
+	public void testQueueFull() throws InterruptedException {
+		gate = new CountDownLatch(1);
+		var running = submit(SLOW_ACCOUNT);
+		for (int i = 0; i < 200 && running.getAttempts() == 0; ++i) {
+			Thread.sleep(10);
+		}
+		submit(SLOW_ACCOUNT);
+		submit(SLOW_ACCOUNT);
+		assertEquals(2, pipeline.getQueueSize());
+		assertThrowsApiException(HttpStatus.SERVICE_UNAVAILABLE,
+				"Payment queue is full.", () -> submit(SLOW_ACCOUNT));
+		assertEquals(3, pipeline.getPendingCount());
+
+		gate.countDown();
+		await(running);
+		for (int i = 0; i < 200 && pipeline.getPendingCount() > 0; ++i) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, pipeline.getPendingCount());
+		assertEquals(3, outcomes.size());
+		assertTrue(outcomes.values().stream().allMatch(paid -> paid));
+
+		// outcomes are forgotten after the retention time
+		ReflectionTestUtils.setField(pipeline, "retention", -1L);
+		pipeline.removeExpired();
+		assertThrowsApiException(HttpStatus.NOT_FOUND, "Payment not found.",
+				() -> pipeline.getPayment(running.getReference()));
+	}
+
+	/**
+	 * Test interrupting the attempts that exceed the attempt timeout.
+	 */
+	@Test
+	public void testAttemptTimeout() throws InterruptedException {
+		ReflectionTestUtils.setField(pipeline, "attemptTimeout", 20L);
+		var payment = await(submit(HUNG_ACCOUNT));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals(3, payment.getAttempts());
+		assertEquals("Payment could not be processed.", payment.getError());
+
+		// the interrupts do not leak to the next payment
+		payment = await(submit("1234123412341234"));
+		assertEquals(PaymentStatus.PAID, payment.getStatus());
+		assertEquals(1, payment.getAttempts());
+	}
+
+	/**
+	 * Test rejecting the payments without an outcome by their deadline.
+	 */
+	@Test
+	public void testDeadline() throws InterruptedException {
+		ReflectionTestUtils.setField(pipeline, "deadline", 20L);
+		ReflectionTestUtils.setField(pipeline, "retryDelay", 50L);
+		var payment = await(submit(FLAKY_ACCOUNT));
+		assertEquals(PaymentStatus.REJECTED, payment.getStatus());
+		assertEquals(2, payment.getAttempts());
+		assertEquals("Payment timed out.", payment.getError());
+		assertEquals(false, outcomes.get(payment.getReference()));
+		assertEquals(false, pipeline.isPending(payment.getReference()));
+	}
+
+}
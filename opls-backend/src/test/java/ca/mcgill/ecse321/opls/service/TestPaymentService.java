@@ -2,12 +2,16 @@ package ca.mcgill.ecse321.opls.service;
 
 import static ca.mcgill.ecse321.opls.TestUtils.assertThrowsApiException;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * Test the PaymentService class.
@@ -15,6 +19,9 @@ import org.springframework.http.HttpStatus;
 @ExtendWith(MockitoExtension.class)
 public class TestPaymentService {
 
+	@Spy
+	private StubBankService bank = new StubBankService();
+
 	@InjectMocks
 	private PaymentService service;
 
@@ -31,6 +38,43 @@ public class TestPaymentService {
 		// submit invalid payment
 		assertThrowsApiException(HttpStatus.BAD_REQUEST, "Rejected payment.",
 				() -> service.submitPayment(false, "1234", amount));
+
+		// bank unavailable
+		ReflectionTestUtils.setField(bank, "failureRate", 1.0);
+		assertThrowsApiException(HttpStatus.BAD_GATEWAY,
+				"Payment could not be processed.",
+				() -> service.submitPayment(false, "1234123412341234", amount));
+		assertEquals(amount, service.submitPayment(true,
+				PaymentService.CASH_ACCOUNT, amount));
+
+		// bank too slow
+		ReflectionTestUtils.setField(bank, "failureRate", 0.0);
+		ReflectionTestUtils.setField(bank, "latency", 50L);
+		ReflectionTestUtils.setField(service, "timeout", 10L);
+		assertThrowsApiException(HttpStatus.BAD_GATEWAY,
+				"Payment could not be processed.",
+				() -> service.submitPayment(false, "1234123412341234", amount));
+		assertEquals(1, bank.getChargeCount());
+	}
+
+	@Test
+	public void testRefundPayment() {
+		final double amount = 15.0;
+
+		// payments with a reference are charged once
+		assertEquals(amount, service.submitPayment(false, "1234123412341234",
+				amount, "bundle-1"));
+		assertEquals(amount, service.submitPayment(false, "1234123412341234",
+				amount, "bundle-1"));
+		assertEquals(1, bank.getChargeCount());
+		assertTrue(service.isCharged("bundle-1"));
+
+		// refunds apply once, and only to charged payments
+		service.refundPayment("bundle-1");
+		service.refundPayment("bundle-1");
+		service.refundPayment("bundle-2");
+		assertEquals(1, bank.getRefundCount());
+		assertFalse(service.isCharged("bundle-1"));
 	}
 
 }
@@ -0,0 +1,84 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+
+/**
+ * Test the ResourceVersionService class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestResourceVersionService {
+
+	@Mock
+	private ParkingSpotOccupancyIndex occupancyIndex;
+
+	@InjectMocks
+	private ResourceVersionService service;
+
+	/**
+	 * Test that writes only change the version of their family.
+	 */
+	@Test
+	public void testBump() {
+		var spots = service.getETag(Family.SPOTS);
+		var schedule = service.getETag(Family.SCHEDULE);
+		assertEquals(spots, service.getETag(Family.SPOTS));
+		assertTrue(spots.startsWith("\"spots-"));
+		assertTrue(spots.endsWith("\""));
+
+		// outside of a transaction, the version changes immediately
+		service.bump(Family.SPOTS);
+		assertEquals(1, service.getVersion(Family.SPOTS));
+		assertNotEquals(spots, service.getETag(Family.SPOTS));
+		assertEquals(schedule, service.getETag(Family.SCHEDULE));
+
+		// changes of the occupancy index change the spots
+		service.spotChanged(null);
+		service.reset();
+		assertEquals(3, service.getVersion(Family.SPOTS));
+		verify(occupancyIndex, atLeastOnce()).advance();
+		verify(occupancyIndex, never()).refresh();
+
+		service.bumpAll();
+		assertEquals(1, service.getVersion(Family.CONFIGURATION));
+		assertEquals(1, service.getVersion(Family.SCHEDULE));
+	}
+
+	/**
+	 * Test tags of representations depending on the request.
+	 */
+	@Test
+	public void testRequestTag() {
+		var tag = service.getETag(Family.SPOTS, "{\"floors\":[\"A\"]}");
+		assertEquals(tag, service.getETag(Family.SPOTS, "{\"floors\":[\"A\"]}"));
+		assertNotEquals(tag, service.getETag(Family.SPOTS, "{\"floors\":[\"B\"]}"));
+		assertNotEquals(tag, service.getETag(Family.SPOTS));
+	}
+
+	/**
+	 * Test matching If-None-Match headers.
+	 */
+	@Test
+	public void testMatches() {
+		var tag = "\"spots-abc-1\"";
+		assertFalse(ResourceVersionService.matches(null, tag));
+		assertTrue(ResourceVersionService.matches(tag, tag));
+		assertTrue(ResourceVersionService.matches("*", tag));
+		assertTrue(ResourceVersionService.matches("\"x\", " + tag, tag));
+		assertFalse(ResourceVersionService.matches("\"spots-abc-2\"", tag));
+	}
+
+}
@@ -0,0 +1,76 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the TimingWheel class.
+ */
+public class TestTimingWheel {
+
+	/**
+	 * Test returning values when they become due.
+	 */
+	@Test
+	public void testAdvance() {
+		var wheel = new TimingWheel<String>(1000, 100500);
+		wheel.schedule(100000, "past");
+		wheel.schedule(101200, "soon");
+		wheel.schedule(101000, "next");
+		wheel.schedule(100000 + 3600000, "hour");
+		wheel.schedule(100000 + 400L * 86400000, "overflow");
+		assertEquals(5, wheel.size());
+
+		// values are never returned early
+		assertEquals(Arrays.asList("past"), wheel.advance(100900));
+		assertEquals(Arrays.asList("next"), wheel.advance(101999));
+		assertEquals(Arrays.asList("soon"), wheel.advance(102000));
+		assertTrue(wheel.advance(100000 + 3599000).isEmpty());
+		assertEquals(Arrays.asList("hour"), wheel.advance(100000 + 3600000));
+		assertTrue(wheel.advance(100000 + 399L * 86400000).isEmpty());
+		assertEquals(Arrays.asList("overflow"),
+				wheel.advance(100000 + 400L * 86400000));
+		assertEquals(0, wheel.size());
+	}
+
+	/**
+	 * Test the wheel against a list of due times.
+	 */
+	@Test
+	public void testRandom() {
+		var random = new Random(321);
+		long now = 1678974915000L;
+		var wheel = new TimingWheel<long[]>(1000, now);
+		var pending = new ArrayList<long[]>();
+
+		for (int i = 0; i < 3000; ++i) {
+			for (int j = random.nextInt(4); j > 0; --j) {
+				// mostly near, some hours or days away
+				long delay = random.nextInt(5) == 0
+						? random.nextInt(3 * 86400) * 1000L
+						: random.nextInt(600000);
+				var value = new long[]{now + delay - 30000};
+				wheel.schedule(value[0], value);
+				pending.add(value);
+			}
+
+			// jump ahead now and then
+			now += random.nextInt(3) == 0 ? random.nextInt(7200) * 1000L : 1000;
+			for (var value : wheel.advance(now)) {
+				assertTrue(value[0] <= now);
+				assertTrue(pending.remove(value));
+			}
+			for (var value : pending) {
+				assertTrue(value[0] > now);
+			}
+			assertEquals(pending.size(), wheel.size());
+		}
+	}
+
+}
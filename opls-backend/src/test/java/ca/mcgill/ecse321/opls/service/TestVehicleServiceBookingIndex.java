@@ -0,0 +1,189 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
+
+/**
+ * Test the VehicleServiceBookingIndex class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestVehicleServiceBookingIndex {
+
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+	@Mock
+	private VehicleServiceBookingRepository bookingRepository;
+
+	@InjectMocks
+	private VehicleServiceBookingIndex bookingIndex;
+
+	private VehicleService carWash;
+	private List<VehicleServiceBooking> bookings;
+	private long now;
+
+	@BeforeEach
+	public void setupMocks() {
+		carWash = new VehicleService();
+		carWash.setId("carWash");
+		carWash.setDuration(30);
+		bookings = new ArrayList<>();
+		now = new Date().getTime();
+
+		lenient()
+				.when(bookingRepository.getConfirmedBookingsEndingAfter(
+						anyString(), any(Date.class)))
+				.thenAnswer((InvocationOnMock invocation) -> new ArrayList<>(
+						bookings));
+	}
+
+	private VehicleServiceBooking newBooking(int id, long start) {
+		var booking = carWash.newBooking(new Date(start));
+		booking.overrideId(id);
+		booking.setBookingStatus(BookingStatus.CONFIRMED);
+		return booking;
+	}
+
+	private boolean isBooked(long start, long end) {
+		return findFreeBay(start, end) < 0;
+	}
+
+	private int findFreeBay(long start, long end) {
+		return bookingIndex.findFreeBay(carWash, new Date(start),
+				new Date(end));
+	}
+
+	/**
+	 * Test checking periods against the loaded bookings.
+	 */
+	@Test
+	public void testIsBooked() {
+		var booking = newBooking(1, now + HOUR);
+		bookings.add(booking);
+
+		assertTrue(isBooked(now + HOUR, now + 2 * HOUR));
+		assertFalse(isBooked(now + HOUR / 4, now + HOUR / 2));
+		assertFalse(isBooked(now + 2 * HOUR, now + 3 * HOUR));
+
+		// periods are half-open, as in the database, so touching periods do
+		// not conflict
+		assertFalse(isBooked(now + HOUR / 2, now + HOUR));
+		assertFalse(isBooked(booking.getEndDate().getTime(), now + 3 * HOUR));
+		assertTrue(isBooked(now + HOUR / 2, now + HOUR + 1));
+
+		verify(bookingRepository, times(1))
+				.getConfirmedBookingsEndingAfter(anyString(), any(Date.class));
+		verify(bookingRepository, never()).getBookedBaysDuring(anyString(),
+				any(Date.class), any(Date.class));
+	}
+
+	/**
+	 * Test keeping the index current as bookings are saved and deleted.
+	 */
+	@Test
+	public void testUpdates() {
+		assertFalse(isBooked(now + HOUR, now + 2 * HOUR));
+
+		var booking = newBooking(1, now + HOUR);
+		bookingIndex.bookingSaved(booking);
+		assertTrue(isBooked(now + HOUR, now + 2 * HOUR));
+
+		// saving again does not add the booking twice
+		bookingIndex.bookingSaved(booking);
+		booking.setBookingStatus(BookingStatus.COMPLETED);
+		bookingIndex.bookingSaved(booking);
+		assertFalse(isBooked(now + HOUR, now + 2 * HOUR));
+
+		booking.setBookingStatus(BookingStatus.CONFIRMED);
+		bookingIndex.bookingSaved(booking);
+		bookingIndex.bookingRemoved(booking);
+		assertFalse(isBooked(now + HOUR, now + 2 * HOUR));
+
+		verify(bookingRepository, times(1))
+				.getConfirmedBookingsEndingAfter(anyString(), any(Date.class));
+	}
+
+	/**
+	 * Test falling back to the database and loading the bookings again.
+	 */
+	@Test
+	public void testFallback() {
+		lenient()
+				.when(bookingRepository.getBookedBaysDuring(anyString(),
+						any(Date.class), any(Date.class)))
+				.thenAnswer((InvocationOnMock invocation) -> List.of(0));
+
+		// periods before the bookings were loaded
+		assertTrue(isBooked(now - 2 * HOUR, now - HOUR));
+		verify(bookingRepository, times(1)).getBookedBaysDuring(anyString(),
+				any(Date.class), any(Date.class));
+
+		ReflectionTestUtils.setField(bookingIndex, "ttl", 0);
+		bookingIndex.invalidate();
+		isBooked(now + HOUR, now + 2 * HOUR);
+		verify(bookingRepository, times(2))
+				.getConfirmedBookingsEndingAfter(anyString(), any(Date.class));
+
+		// expired bookings are loaded again
+		bookings.add(newBooking(1, now + 3 * HOUR));
+		assertFalse(isBooked(now + HOUR, now + 2 * HOUR));
+		assertTrue(isBooked(now + 3 * HOUR, now + 4 * HOUR));
+		verify(bookingRepository, times(4))
+				.getConfirmedBookingsEndingAfter(anyString(), any(Date.class));
+	}
+
+	/**
+	 * Test finding a free bay of a service with several bays.
+	 */
+	@Test
+	public void testBays() {
+		carWash.setBays(2);
+		bookings.add(newBooking(1, now + HOUR));
+
+		assertEquals(1, findFreeBay(now + HOUR, now + 2 * HOUR));
+		assertEquals(0, findFreeBay(now + 2 * HOUR, now + 3 * HOUR));
+
+		var booking = newBooking(2, now + HOUR);
+		booking.setBay(1);
+		bookingIndex.bookingSaved(booking);
+		assertEquals(-1, findFreeBay(now + HOUR, now + 2 * HOUR));
+
+		// moving a booking to another bay frees its previous bay
+		booking.setBay(0);
+		bookingIndex.bookingSaved(booking);
+		assertEquals(1, findFreeBay(now + HOUR, now + 2 * HOUR));
+
+		// past periods are checked against the database
+		lenient()
+				.when(bookingRepository.getBookedBaysDuring(anyString(),
+						any(Date.class), any(Date.class)))
+				.thenAnswer((InvocationOnMock invocation) -> List.of(0));
+		assertEquals(1, findFreeBay(now - 2 * HOUR, now - HOUR));
+	}
+
+}
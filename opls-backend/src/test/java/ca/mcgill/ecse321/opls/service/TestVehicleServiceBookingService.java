@@ -57,6 +57,15 @@ public class TestVehicleServiceBookingService {
     @Mock
     private ParkingLotSystemScheduleRepository pLSSRepository;
 
+    @Mock
+    private ConfirmationNumberGenerator confirmationNumbers;
+
+    @Mock
+    private VehicleServiceBookingIndex bookingIndex;
+
+    @Mock
+    private VehicleServiceCalendar serviceCalendar;
+
 
     @InjectMocks
     private VehicleServiceBookingService service;
@@ -88,6 +97,8 @@ public class TestVehicleServiceBookingService {
 
 		lenient().when(serviceRepository.findVehicleServiceById(goodId))
 				.thenAnswer((InvocationOnMock invocation) -> carWash);
+		lenient().when(serviceRepository.shareVehicleServiceById(goodId))
+				.thenAnswer((InvocationOnMock invocation) -> carWash);
 
 		lenient()
 				.when(serviceRepository
@@ -98,6 +109,9 @@ public class TestVehicleServiceBookingService {
 		lenient().when(configRepository.getActiveParkingLotSystem())
 				.thenAnswer((InvocationOnMock invocation) -> config);
 
+		lenient().when(confirmationNumbers.next())
+				.thenAnswer((InvocationOnMock invocation) -> "B7K2QX");
+
 		lenient()
 				.when(pLSSRepository
 						.findActiveParkingLotScheduleByDay(any(Day.class)))
@@ -134,7 +148,7 @@ public class TestVehicleServiceBookingService {
 
         assertNotEquals(myStatus, notMyStatus);
         booking = carWash.newBooking(startDate);
-        booking.generateConfirmationNumber();
+        booking.setConfirmationNumber("B7K2QX");
         booking.setBookingStatus(myStatus);
         
         assertNotNull(booking);
@@ -153,6 +167,25 @@ public class TestVehicleServiceBookingService {
 
         // invalid request
         assertThrowsApiException(HttpStatus.NOT_FOUND, "Booking not found.", () -> service.getVehicleServiceBooking(UUID.randomUUID()));
+
+        // get the response by confirmation number, kept until the booking changes
+        booking = carWash.newBooking(new Date(System.currentTimeMillis() + 3600000));
+        booking.setConfirmationNumber("C8L3RY");
+        booking.setBookingStatus(myStatus);
+        lenient()
+                    .when(bookingRepository.findVehicleServiceBookingByConfirmationNumber("C8L3RY"))
+                    .thenAnswer((InvocationOnMock invocation) -> booking);
+        lenient()
+                    .when(bookingRepository.findVehicleServiceBookingByUuid(booking.getUuid()))
+                    .thenAnswer((InvocationOnMock invocation) -> booking);
+        var dto = service.getVehicleServiceBookingResponse("C8L3RY");
+        assertEquals(booking.getUuid(), dto.uuid);
+        assertEquals(carWash.getId(), dto.vehicleServiceId);
+        dto = service.getVehicleServiceBookingResponse("C8L3RY");
+        verify(bookingRepository, times(1)).findVehicleServiceBookingByConfirmationNumber("C8L3RY");
+        service.deleteVehicleServiceBooking(booking.getUuid());
+        service.getVehicleServiceBookingResponse("C8L3RY");
+        verify(bookingRepository, times(2)).findVehicleServiceBookingByConfirmationNumber("C8L3RY");
     }
 
     /**
@@ -173,6 +206,7 @@ public class TestVehicleServiceBookingService {
 		assertEquals(carWash.getFee(), response.getCost());
 		assertEquals(carWash.getDuration(),
 				(int) (response.getDateRange().getDurationMinutes()));
+		assertEquals(0, response.getBay());
 
 		// invalid request
 		assertThrowsApiException(HttpStatus.BAD_REQUEST,
@@ -185,11 +219,9 @@ public class TestVehicleServiceBookingService {
 				() -> service.processBooking(goodId, badStartDate));
 
 		// invalid request
-		var bookedDateRange = new DateRange(response.getStartDate(), response.getEndDate());
 		lenient()
-				.when(bookingRepository.query(carWash, startDate,
-						endDate))
-				.thenAnswer((InvocationOnMock invocation) -> Collections.singleton(bookedDateRange));
+				.when(bookingIndex.findFreeBay(carWash, startDate, endDate))
+				.thenAnswer((InvocationOnMock invocation) -> -1);
 		assertThrowsApiException(HttpStatus.CONFLICT,
 				"Vehicle service already booked for this timeslot.",
 				() -> service.processBooking(goodId, startDate));
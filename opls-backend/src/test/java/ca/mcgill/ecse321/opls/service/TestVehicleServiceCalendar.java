@@ -0,0 +1,220 @@
+package ca.mcgill.ecse321.opls.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import ca.mcgill.ecse321.opls.exception.OplsApiException;
+import ca.mcgill.ecse321.opls.model.Booking.BookingStatus;
+import ca.mcgill.ecse321.opls.model.ParkingLotSystem;
+import ca.mcgill.ecse321.opls.model.Schedule.Day;
+import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.model.VehicleService.VehicleServiceBooking;
+import ca.mcgill.ecse321.opls.repository.ParkingLotSystemScheduleRepository;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
+import ca.mcgill.ecse321.opls.service.ResourceVersionService.Family;
+
+/**
+ * Test the VehicleServiceCalendar class.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TestVehicleServiceCalendar {
+
+	@Mock
+	private VehicleServiceBookingRepository bookingRepository;
+
+	@Mock
+	private ParkingLotSystemScheduleRepository scheduleRepository;
+
+	@Mock
+	private ResourceVersionService resourceVersionService;
+
+	@InjectMocks
+	private VehicleServiceCalendar serviceCalendar;
+
+	private VehicleService carWash;
+	private List<VehicleServiceBooking> bookings;
+	private long scheduleVersion;
+
+	/** Start of the day after today. */
+	private long tomorrow;
+
+	@BeforeEach
+	public void setupMocks() {
+		carWash = new VehicleService();
+		carWash.setId("carWash");
+		carWash.setDuration(30);
+		bookings = new ArrayList<>();
+		scheduleVersion = 0;
+
+		var calendar = Calendar.getInstance();
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		tomorrow = calendar.getTimeInMillis();
+
+		var config = new ParkingLotSystem();
+		lenient()
+				.when(scheduleRepository
+						.findActiveParkingLotScheduleByDay(any(Day.class)))
+				.thenAnswer((InvocationOnMock invocation) -> config
+						.addSchedule(invocation.getArgument(0), "08:00:00",
+								"10:00:00"));
+		lenient()
+				.when(bookingRepository.getConfirmedBookingsDuring(anyString(),
+						any(Date.class), any(Date.class)))
+				.thenAnswer((InvocationOnMock invocation) -> new ArrayList<>(
+						bookings));
+		lenient().when(resourceVersionService.getVersion(Family.SCHEDULE))
+				.thenAnswer((InvocationOnMock invocation) -> scheduleVersion);
+	}
+
+	/** Get a time tomorrow. */
+	private Date at(int hour, int minute) {
+		return new Date(tomorrow + TimeUnit.HOURS.toMillis(hour)
+				+ TimeUnit.MINUTES.toMillis(minute));
+	}
+
+	private List<Date> getSlotsTomorrow() {
+		return serviceCalendar.getSlots(carWash, new Date(tomorrow),
+				at(24, 0), new Date());
+	}
+
+	private VehicleServiceBooking newBooking(int hour, int minute) {
+		var booking = carWash.newBooking(at(hour, minute));
+		booking.setBookingStatus(BookingStatus.CONFIRMED);
+		return booking;
+	}
+
+	/**
+	 * Test listing the start times in the opening hours.
+	 */
+	@Test
+	public void testOpeningHours() {
+		var slots = getSlotsTomorrow();
+		assertEquals(7, slots.size());
+		assertEquals(at(8, 0), slots.get(0));
+		assertEquals(at(9, 30), slots.get(6));
+
+		// only start times in the range
+		slots = serviceCalendar.getSlots(carWash, at(8, 20), at(9, 0),
+				new Date());
+		assertEquals(List.of(at(8, 30), at(8, 45)), slots);
+	}
+
+	/**
+	 * Test that the start times conflicting with a booking are not listed.
+	 */
+	@Test
+	public void testBookedSlots() {
+		var existing = newBooking(8, 30);
+		bookings.add(existing);
+
+		// periods are half-open, so touching bookings do not conflict
+		assertEquals(List.of(at(8, 0), at(9, 0), at(9, 15), at(9, 30)),
+				getSlotsTomorrow());
+
+		// saved and deleted bookings update the loaded day
+		var saved = newBooking(9, 15);
+		serviceCalendar.bookingSaved(saved);
+		assertEquals(List.of(at(8, 0)), getSlotsTomorrow());
+
+		serviceCalendar.bookingRemoved(existing);
+		assertEquals(List.of(at(8, 0), at(8, 15), at(8, 30), at(8, 45)),
+				getSlotsTomorrow());
+
+		saved.setBookingStatus(BookingStatus.COMPLETED);
+		serviceCalendar.bookingSaved(saved);
+		assertEquals(7, getSlotsTomorrow().size());
+
+		verify(bookingRepository, times(1)).getConfirmedBookingsDuring(
+				anyString(), any(Date.class), any(Date.class));
+	}
+
+	/**
+	 * Test loading the days again when the opening hours change.
+	 */
+	@Test
+	public void testScheduleChanged() {
+		getSlotsTomorrow();
+		getSlotsTomorrow();
+		verify(bookingRepository, times(1)).getConfirmedBookingsDuring(
+				anyString(), any(Date.class), any(Date.class));
+
+		++scheduleVersion;
+		getSlotsTomorrow();
+		verify(bookingRepository, times(2)).getConfirmedBookingsDuring(
+				anyString(), any(Date.class), any(Date.class));
+
+		// longer services have fewer start times
+		carWash.setDuration(60);
+		assertEquals(5, getSlotsTomorrow().size());
+	}
+
+	/**
+	 * Test that a start time is listed while a bay is free.
+	 */
+	@Test
+	public void testBays() {
+		carWash.setBays(2);
+		bookings.add(newBooking(8, 30));
+		assertEquals(7, getSlotsTomorrow().size());
+
+		var saved = newBooking(8, 30);
+		saved.setBay(1);
+		serviceCalendar.bookingSaved(saved);
+		assertEquals(List.of(at(8, 0), at(9, 0), at(9, 15), at(9, 30)),
+				getSlotsTomorrow());
+
+		// bookings in removed bays are ignored
+		carWash.setBays(1);
+		bookings.add(saved);
+		assertEquals(List.of(at(8, 0), at(9, 0), at(9, 15), at(9, 30)),
+				getSlotsTomorrow());
+		bookings.remove(0);
+		carWash.setBays(2);
+		assertEquals(7, getSlotsTomorrow().size());
+	}
+
+	/**
+	 * Test querying invalid ranges.
+	 */
+	@Test
+	public void testInvalidRange() {
+		var e = assertThrows(OplsApiException.class,
+				() -> serviceCalendar.getSlots(carWash, at(9, 0), at(8, 0),
+						new Date()));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+		e = assertThrows(OplsApiException.class,
+				() -> serviceCalendar.getSlots(carWash, new Date(tomorrow),
+						at(24 * 40, 0), new Date()));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+
+		// past start times are not listed
+		assertEquals(List.of(), serviceCalendar.getSlots(carWash,
+				new Date(tomorrow), at(24, 0), at(24, 0)));
+	}
+
+}
@@ -8,6 +8,7 @@ import java.util.UUID;
 import java.util.*;
 
 import ca.mcgill.ecse321.opls.model.VehicleService;
+import ca.mcgill.ecse321.opls.repository.VehicleServiceBookingRepository;
 import ca.mcgill.ecse321.opls.repository.VehicleServiceRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,6 +25,9 @@ public class TestVehicleServiceService {
     @Mock
     private VehicleServiceRepository vehicleServiceRepository;
 
+    @Mock
+    private VehicleServiceBookingRepository vehicleServiceBookingRepository;
+
     @InjectMocks
     private VehicleServiceService vehicleServiceService;
 
@@ -48,6 +52,9 @@ public class TestVehicleServiceService {
         lenient().when(vehicleServiceRepository.findVehicleServiceById(id)).
                 thenAnswer((InvocationOnMock invocation) -> vehicleServices[0]);
 
+        lenient().when(vehicleServiceRepository.lockVehicleServiceById(id)).
+                thenAnswer((InvocationOnMock invocation) -> vehicleServices[0]);
+
         lenient().when(vehicleServiceRepository.findVehicleServiceById(notId)).
                 thenAnswer((InvocationOnMock invocation) -> null);
 
@@ -114,6 +121,22 @@ public class TestVehicleServiceService {
         
     }
 
+    @Test
+    public void testUpdateVehicleServiceBays() {
+        vehicleServiceService.updateVehicleService(id, displayName, duration, fee, 3);
+        assertEquals(3, vehicleService.getBays());
+
+        // bays with bookings that have not ended cannot be removed
+        when(vehicleServiceBookingRepository.hasNotEndedInBaysFrom(id, 1)).thenReturn(true);
+        assertThrowsApiException(HttpStatus.CONFLICT, "conflict",
+        () -> vehicleServiceService.updateVehicleService(id, displayName, duration, fee, 1));
+        assertEquals(3, vehicleService.getBays());
+
+        vehicleServiceService.updateVehicleService(id, displayName, duration, fee, 2);
+        assertEquals(2, vehicleService.getBays());
+        verify(vehicleServiceRepository, times(2)).lockVehicleServiceById(id);
+    }
+
     @Test
     public void testDeleteVehicleService() {
         // test valid request